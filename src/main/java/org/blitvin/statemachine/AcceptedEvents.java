@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Map;
+
+/**
+ * Immutable set of event types accepted by a node, that is event types for 
+ * which the node has transition (null transitions included). Node having 
+ * default transition accepts all event types. Node replaces the object
+ * whenever its transitions change, so the set can be read without locking.
+ * @author blitvin
+ */
+final class AcceptedEvents {
+
+    static final AcceptedEvents NONE = new AcceptedEvents(new long[0], false);
+
+    private final long[] bits;
+    private final boolean hasDefaultTransition;
+
+    private AcceptedEvents(long[] bits, boolean hasDefaultTransition) {
+        this.bits = bits;
+        this.hasDefaultTransition = hasDefaultTransition;
+    }
+
+    static <EventType extends Enum<EventType>> AcceptedEvents of(Map<EventType, Transition<EventType>> transitions,
+            Transition<EventType> defaultTransition) {
+        if (transitions == null) {
+            return NONE;
+        }
+        int maxOrdinal = -1;
+        for (EventType event : transitions.keySet()) {
+            maxOrdinal = Math.max(maxOrdinal, event.ordinal());
+        }
+        long[] bits = new long[(maxOrdinal >> 6) + 1];
+        for (Map.Entry<EventType, Transition<EventType>> cur : transitions.entrySet()) {
+            if (cur.getValue() != null) {
+                int ordinal = cur.getKey().ordinal();
+                bits[ordinal >> 6] |= 1L << ordinal;
+            }
+        }
+        return new AcceptedEvents(bits, defaultTransition != null);
+    }
+
+    boolean accepts(int eventOrdinal) {
+        if (hasDefaultTransition) {
+            return true;
+        }
+        int word = eventOrdinal >> 6;
+        return word >= 0 && word < bits.length && (bits[word] & (1L << eventOrdinal)) != 0;
+    }
+
+    boolean hasDefaultTransition() {
+        return hasDefaultTransition;
+    }
+
+    /**
+     * @return copy of the mask, bit i is set if event type with ordinal i has
+     * explicit transition
+     */
+    long[] toLongArray() {
+        return bits.clone();
+    }
+}
@@ -34,8 +34,8 @@ public class AspectEnabledStateMachine <EventType extends Enum<EventType>> exten
 	}
 	
 	AspectEnabledStateMachine(HashMap<String, FSMNode<EventType>> nodes,
-			FSMNode<EventType> initial) throws BadStateMachineSpecification {
-		super(nodes, initial);
+			FSMNode<EventType> initial, Class<EventType> eventTypeClass) throws BadStateMachineSpecification {
+		super(nodes, initial, eventTypeClass);
 	}
         
     @Override
@@ -32,6 +32,10 @@ class AspectNode<EventType extends Enum<EventType>> implements FSMNode<EventType
 
     final private FSMNode delegate;
     private StateMachineAspects<EventType> aspects;
+    /**
+     * point-cuts implemented by aspects object, 0 if there is no aspects object
+     */
+    private int pointCuts;
     StateMachineDriver<EventType> containingFSM;
     
 
@@ -40,6 +44,16 @@ class AspectNode<EventType extends Enum<EventType>> implements FSMNode<EventType
         return delegate.getState();
     }
 
+    @Override
+    public boolean hasState() {
+        return delegate.hasState();
+    }
+
+    @Override
+    public void setStateFactory(FSMStateFactory<EventType> factory) {
+        delegate.setStateFactory(factory);
+    }
+
     @Override
     public boolean holdsFinalState() {
         return delegate.holdsFinalState();
@@ -65,6 +79,21 @@ class AspectNode<EventType extends Enum<EventType>> implements FSMNode<EventType
         delegate.setDefaultTransition(transition);
     }
 
+    @Override
+    public Transition<EventType> getTransition(EventType event) {
+        return delegate.getTransition(event);
+    }
+
+    @Override
+    public Transition<EventType> getDefaultTransition() {
+        return delegate.getDefaultTransition();
+    }
+
+    @Override
+    public AcceptedEvents getAcceptedEvents() {
+        return delegate.getAcceptedEvents();
+    }
+
     @Override
     public void doesHoldFinalState() {
         delegate.doesHoldFinalState();
@@ -74,6 +103,46 @@ class AspectNode<EventType extends Enum<EventType>> implements FSMNode<EventType
     public String getName() {
         return delegate.getName();
     }
+
+    @Override
+    public int getOrdinal() {
+        return delegate.getOrdinal();
+    }
+
+    @Override
+    public void setOrdinal(int ordinal) {
+        delegate.setOrdinal(ordinal);
+    }
+
+    @Override
+    public FSMNode<EventType> getParent() {
+        return delegate.getParent();
+    }
+
+    @Override
+    public void setHierarchy(FSMNode<EventType> parent, FSMNode<EventType>[][] exitPaths, FSMNode<EventType>[][] entryPaths) {
+        delegate.setHierarchy(parent, exitPaths, entryPaths);
+    }
+
+    @Override
+    public void inheritTransitions(FSMNode<EventType> parent, EventType[] events) {
+        delegate.inheritTransitions(parent, events);
+    }
+
+    @Override
+    public void clearInheritedTransitions() {
+        delegate.clearInheritedTransitions();
+    }
+
+    @Override
+    public void ancestorIn(StateMachineEvent<EventType> event, FSMNode<EventType> prevState) {
+        delegate.ancestorIn(event, prevState);
+    }
+
+    @Override
+    public void ancestorOut(StateMachineEvent<EventType> event, FSMNode<EventType> target) {
+        delegate.ancestorOut(event, target);
+    }
     
     private static class AspectPropertyListener<EventType extends Enum<EventType>> implements PropertyChangeListener{
 
@@ -86,7 +155,7 @@ class AspectNode<EventType extends Enum<EventType>> implements FSMNode<EventType
         @Override
         public void onPropertyChange(Object property, Object newVale, Object oldValue) {
             assert(property.equals(StateMachineBuilder.ASPECTS_PROPERTY));
-            node.aspects = (StateMachineAspects<EventType>)newVale;
+            node.setAspects((StateMachineAspects<EventType>)newVale);
         }
         
     }
@@ -95,45 +164,52 @@ class AspectNode<EventType extends Enum<EventType>> implements FSMNode<EventType
     private AspectPropertyListener<EventType> listener = null;
     public void setAspects(StateMachineAspects<EventType> aspects) {
         this.aspects = aspects;
+        pointCuts = CallbackMasks.of(aspects);
     }
     
     AspectNode(FSMNode<EventType> delegate){
         this.delegate = delegate;
         aspects = null;
+        pointCuts = 0;
         containingFSM = null;
     }
        
     @Override
     public void eventIn(StateMachineEvent<EventType> event, FSMNode<EventType> prevState) {
-        if (aspects == null)
-            delegate.eventIn(event, prevState);
-        else {
-            if (aspects.onControlEntersState(event, delegate.getState(), prevState.getState()))
-               delegate.eventIn(event,prevState);
+        if ((pointCuts & CallbackCapabilities.CONTROL_ENTERS_STATE) == 0
+                || aspects.onControlEntersState(event, delegate.getState(), prevState.getState()))
+            delegate.eventIn(event,prevState);
+        if ((pointCuts & CallbackCapabilities.TRANSITION_FINISH) != 0)
             aspects.onTransitionFinish(event,containingFSM.getCurrentState(), prevState.getState());
-        }
     }
     
     @Override
     public FSMNode<EventType> nodeToTransitTo(StateMachineEvent<EventType> event) throws InvalidEventException {
-        if (aspects != null && !aspects.onTransitionStart(event))
-            return null;
-        try {
-            FSMNode<EventType> target = delegate.nodeToTransitTo(event);
-            if (target == null) {
-                if (aspects != null) 
-                    aspects.onNullTransition(event);
-                return null;
-            }
-            if (aspects != null && !aspects.onControlLeavesState(event, delegate.getState(), target.getState()))
-                return null;
-            else
-                return target;
-        } catch(InvalidEventException e){
-            if (aspects != null) 
+        FSMNode<EventType> target = tryNodeToTransitTo(event);
+        if (target == BasicNode.REJECTED)
+            throw InvalidEventException.NOT_ACCEPTED;
+        return target == BasicNode.VETOED ? null : target;
+    }
+
+    @Override
+    public FSMNode<EventType> tryNodeToTransitTo(StateMachineEvent<EventType> event) {
+        if ((pointCuts & CallbackCapabilities.TRANSITION_START) != 0 && !aspects.onTransitionStart(event))
+            return BasicNode.VETOED;
+        FSMNode<EventType> target = delegate.tryNodeToTransitTo(event);
+        if (target == BasicNode.REJECTED) {
+            if ((pointCuts & CallbackCapabilities.TRANSITION_FINISH) != 0) 
                 aspects.onTransitionFinish(event, delegate.getState(), delegate.getState());
-            throw e;
+            return target;
+        }
+        if (target == null) {
+            if ((pointCuts & CallbackCapabilities.NULL_TRANSITION) != 0) 
+                aspects.onNullTransition(event);
+            return null;
         }
+        if ((pointCuts & CallbackCapabilities.CONTROL_LEAVES_STATE) != 0
+                && !aspects.onControlLeavesState(event, delegate.getState(), target.getState()))
+            return BasicNode.VETOED;
+        return target;
     }
     /**
      * this method is called to complete initialization, which is in this case means
@@ -19,6 +19,8 @@ package org.blitvin.statemachine;
 
 
 import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -28,16 +30,101 @@ import java.util.Map.Entry;
  */
 class BasicNode<EventType extends Enum<EventType>> implements FSMNode<EventType>{
 
-    protected State<EventType> state;
+    /**
+     * returned by tryNodeToTransitTo() if event is not accepted
+     */
+    static final FSMNode REJECTED = new BasicNode("rejected", null);
+    /**
+     * returned by tryNodeToTransitTo() if aspect stopped processing of the event
+     */
+    static final FSMNode VETOED = new BasicNode("vetoed", null);
+
+    /**
+     * volatile since deferred State object may be created by thread querying
+     * the FSM while other thread processes events, see getState()
+     */
+    protected volatile State<EventType> state;
     protected EnumMap<EventType,Transition<EventType>> transitions;
     protected Transition<EventType> defaultTransition;
     protected boolean holdsFinalState;
     protected StateMachineDriver<EventType> containingFSM;
     protected final String name;
+    /**
+     * callbacks of the state to be invoked, see CallbackCapabilities
+     */
+    protected int callbacks;
+    protected int ordinal = -1;
+    /**
+     * events accepted by the node, replaced whenever transitions change
+     */
+    protected volatile AcceptedEvents accepted;
+    
+    /**
+     * creates State object on first use, null if State object is not deferred
+     */
+    protected volatile FSMStateFactory<EventType> stateFactory;
+    private HashMap<Object, Object> stateInitializer;
     
+    protected FSMNode<EventType> parent;
+    /**
+     * ancestors to leave/enter indexed by ordinal of the other node of the
+     * transition, null if the node has no parent (see StateHierarchy)
+     */
+    protected FSMNode<EventType>[][] exitPaths;
+    protected FSMNode<EventType>[][] entryPaths;
+    /**
+     * events which transitions are copied from parent state, null if none
+     */
+    private EnumSet<EventType> inheritedEvents;
+    private boolean defaultInherited = false;
+    
+    /**
+     * Deferred State object is created on first call, by whichever thread
+     * calls first: thread processing the event or thread querying the FSM
+     * (e.g. getStateByName() of concurrent FSM). Creation is guarded by the
+     * node lock, so the State object is created and attached to FSM exactly
+     * once and published only after onStateAttachedToFSM() completes
+     */
     @Override
     public State<EventType> getState() {
-        return state;
+        State<EventType> retVal = state;
+        if (retVal == null && stateFactory != null)
+            retVal = createState();
+        return retVal;
+    }
+
+    private synchronized State<EventType> createState() {
+        FSMStateFactory<EventType> factory = stateFactory;
+        if (state != null || factory == null)
+            return state;
+        State<EventType> created = factory.get(name, stateInitializer);
+        if (created == null)
+            throw new IllegalStateException("Can't create State object for state " + name);
+        if (containingFSM != null) {
+            try {
+                created.onStateAttachedToFSM(stateInitializer, containingFSM);
+            } catch (BadStateMachineSpecification e) {
+                throw new IllegalStateException("Can't attach State object of state " + name, e);
+            }
+        }
+        callbacks = CallbackMasks.of(created);
+        state = created;
+        stateFactory = null;
+        stateInitializer = null;
+        return created;
+    }
+
+    @Override
+    public boolean hasState() {
+        return state != null;
+    }
+
+    @Override
+    public void setStateFactory(FSMStateFactory<EventType> factory) {
+        setState(null);
+        stateFactory = factory;
+        // actual callbacks are known when State object is created
+        callbacks = CallbackCapabilities.STATE_CALLBACKS;
     }
     
     @Override
@@ -45,30 +132,63 @@ class BasicNode<EventType extends Enum<EventType>> implements FSMNode<EventType>
         if (this.state != null)
             this.state.onStateDetachedFromFSM();
         this.state = state;
+        stateFactory = null;
+        callbacks = CallbackMasks.of(state);
     }
 
     @Override
     public void eventIn(StateMachineEvent<EventType> event, FSMNode<EventType> prevState) {
-        state.onStateBecomesCurrent(event, prevState.getState());
+        if (entryPaths != null) {
+            FSMNode<EventType>[] path = entryPaths[prevState.getOrdinal()];
+            for (int i = 0; i < path.length; ++i)
+                path[i].ancestorIn(event, prevState);
+        }
+        if ((callbacks & CallbackCapabilities.BECOMES_CURRENT) != 0)
+            getState().onStateBecomesCurrent(event, prevState.getState());
+    }
+
+    @Override
+    public void ancestorIn(StateMachineEvent<EventType> event, FSMNode<EventType> prevState) {
+        if ((callbacks & CallbackCapabilities.BECOMES_CURRENT) != 0)
+            getState().onStateBecomesCurrent(event, prevState.getState());
     }
 
     @Override
     public FSMNode<EventType> nodeToTransitTo(StateMachineEvent<EventType> event) throws InvalidEventException {
+        FSMNode<EventType> target = tryNodeToTransitTo(event);
+        if (target == REJECTED)
+            throw InvalidEventException.NOT_ACCEPTED;
+        return target;
+    }
+
+    @Override
+    public FSMNode<EventType> tryNodeToTransitTo(StateMachineEvent<EventType> event) {
+        return tryNodeToTransitTo(event, null);
+    }
+
+    /**
+     * @param view FSM passed to guards of guarded transition, null for the
+     * containing FSM
+     */
+    FSMNode<EventType> tryNodeToTransitTo(StateMachineEvent<EventType> event, FSMStateView<EventType> view) {
         Transition<EventType> transition = transitions.get(event.getEventType());
         if (transition == NullTransition.NULL_TRANSITION)
             return null;
         if (transition == null){
             if (defaultTransition == null) {
-                state.onInvalidTransition(event);
-                throw new InvalidEventException();
+                if ((callbacks & CallbackCapabilities.INVALID_TRANSITION) != 0)
+                    getState().onInvalidTransition(event);
+                return REJECTED;
             }
             if (defaultTransition == NullTransition.NULL_TRANSITION)
                 return null;
            transition = defaultTransition;
         }
         
-        FSMNode<EventType> target =transition.getTarget(event);
-        
+        FSMNode<EventType> target = view != null && transition instanceof GuardedTransition
+                ? ((GuardedTransition<EventType>) transition).getTarget(event, view) : transition.getTarget(event);
+        if (target == REJECTED && (callbacks & CallbackCapabilities.INVALID_TRANSITION) != 0)
+            getState().onInvalidTransition(event); // no guard of guarded transition accepted the event
         return target;
     }
 
@@ -82,22 +202,29 @@ class BasicNode<EventType extends Enum<EventType>> implements FSMNode<EventType>
             Transition<EventType> defaultTransition, boolean holdsFinalState){
         this.name = name;
         this.state = state;
+        callbacks = CallbackMasks.of(state);
         this.transitions = transitions;
         this.defaultTransition = defaultTransition;
         this.holdsFinalState = holdsFinalState;
+        accepted = AcceptedEvents.of(transitions, defaultTransition);
     }
     
     BasicNode(String name,EnumMap<EventType,Transition<EventType>> transitions){
         state = null;
+        callbacks = 0;
         this.name = name;
         this.transitions = transitions;
         defaultTransition = null;
         holdsFinalState = false;
+        accepted = AcceptedEvents.of(transitions, null);
     }
     
     @Override
     public void setTransition(EventType event,Transition<EventType> transition){
         transitions.put(event, transition);
+        if (inheritedEvents != null)
+            inheritedEvents.remove(event);
+        accepted = AcceptedEvents.of(transitions, defaultTransition);
     }
     
     
@@ -108,19 +235,37 @@ class BasicNode<EventType extends Enum<EventType>> implements FSMNode<EventType>
 
     @Override
     public void eventOut(StateMachineEvent<EventType> event, FSMNode<EventType> target) {
-        state.onStateIsNoLongerCurrent(event, target.getState());
+        if ((callbacks & CallbackCapabilities.NO_LONGER_CURRENT) != 0)
+            getState().onStateIsNoLongerCurrent(event, target.getState());
+        if (exitPaths != null) {
+            FSMNode<EventType>[] path = exitPaths[target.getOrdinal()];
+            for (int i = 0; i < path.length; ++i)
+                path[i].ancestorOut(event, target);
+        }
+    }
+
+    @Override
+    public void ancestorOut(StateMachineEvent<EventType> event, FSMNode<EventType> target) {
+        if ((callbacks & CallbackCapabilities.NO_LONGER_CURRENT) != 0)
+            getState().onStateIsNoLongerCurrent(event, target.getState());
     }
 
     @Override
     public void onStateMachineInitialized(Map<?, ?> initializer, StateMachineDriver<EventType> containingMachine) throws BadStateMachineSpecification {
         containingFSM = containingMachine;
        for(Entry<EventType,Transition<EventType>> cur: transitions.entrySet()){
+           if (inheritedEvents != null && inheritedEvents.contains(cur.getKey()))
+               continue; // initialized by the state defining it
            cur.getValue().onStateMachineInitialized((Map<?,?>)initializer.get(cur.getValue()),
                    containingMachine, state);
        }
-       if (defaultTransition != null) {
+       if (defaultTransition != null && !defaultInherited) {
            defaultTransition.onStateMachineInitialized((Map<?,?>)initializer.get(defaultTransition), containingMachine, state);
        }
+       if (state == null && stateFactory != null) {
+           stateInitializer = (HashMap<Object, Object>) initializer.get(this);
+           return; // State object is attached when created
+       }
        getState().onStateAttachedToFSM((Map<?,?>)initializer.get(this),containingMachine);
     }
 
@@ -130,8 +275,25 @@ class BasicNode<EventType extends Enum<EventType>> implements FSMNode<EventType>
     @Override
     public void setDefaultTransition(Transition<EventType> defaultTransition){
         this.defaultTransition = defaultTransition;
+        defaultInherited = false;
+        accepted = AcceptedEvents.of(transitions, defaultTransition);
+    }
+
+    @Override
+    public AcceptedEvents getAcceptedEvents() {
+        return accepted;
     }
     
+    @Override
+    public Transition<EventType> getTransition(EventType event) {
+        return transitions.get(event);
+    }
+
+    @Override
+    public Transition<EventType> getDefaultTransition() {
+        return defaultTransition;
+    }
+
     @Override
     public void doesHoldFinalState(){
         holdsFinalState = true;
@@ -141,4 +303,65 @@ class BasicNode<EventType extends Enum<EventType>> implements FSMNode<EventType>
     public String getName() {
         return name;
     }
+
+    @Override
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    @Override
+    public void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    @Override
+    public FSMNode<EventType> getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setHierarchy(FSMNode<EventType> parent, FSMNode<EventType>[][] exitPaths, FSMNode<EventType>[][] entryPaths) {
+        this.parent = parent;
+        this.exitPaths = exitPaths;
+        this.entryPaths = entryPaths;
+    }
+
+    /**
+     * own transitions (explicit and default) take precedence, so state with
+     * default transition inherits nothing
+     */
+    @Override
+    public void inheritTransitions(FSMNode<EventType> parent, EventType[] events) {
+        if (defaultTransition != null)
+            return;
+        for (EventType event : events) {
+            Transition<EventType> inherited = parent.getTransition(event);
+            if (inherited != null && !transitions.containsKey(event)) {
+                transitions.put(event, inherited);
+                if (inheritedEvents == null)
+                    inheritedEvents = EnumSet.of(event);
+                else
+                    inheritedEvents.add(event);
+            }
+        }
+        if (parent.getDefaultTransition() != null) {
+            defaultTransition = parent.getDefaultTransition();
+            defaultInherited = true;
+        }
+        accepted = AcceptedEvents.of(transitions, defaultTransition);
+    }
+
+    @Override
+    public void clearInheritedTransitions() {
+        if (inheritedEvents != null) {
+            for (EventType event : inheritedEvents)
+                transitions.remove(event);
+            inheritedEvents = null;
+        }
+        if (defaultInherited) {
+            defaultTransition = null;
+            defaultInherited = false;
+        }
+        accepted = AcceptedEvents.of(transitions, defaultTransition);
+    }
 }
\ No newline at end of file
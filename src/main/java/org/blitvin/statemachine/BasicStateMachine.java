@@ -17,7 +17,7 @@
  */
 package org.blitvin.statemachine;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,22 +32,76 @@ import java.util.Set;
 class BasicStateMachine<EventType extends Enum<EventType>> implements StateMachineDriver<EventType>, FSMStateView<EventType> {
 
     FSMNode<EventType> current;
+    /**
+     * copy of current written on every state change, canAccept() is called by
+     * producer threads of concurrent FSMs and reads this one
+     */
+    volatile FSMNode<EventType> publishedCurrent;
     HashMap<String, FSMNode<EventType>> nodes;
+    /**
+     * names of states merged by minimization mapped to names of remaining states,
+     * null if there are no merged states
+     */
+    HashMap<String, String> aliases;
+    /**
+     * nodes indexed by ordinal, slot of merged node refers to the node it is merged to
+     */
+    FSMNode<EventType>[] nodesByOrdinal;
     private boolean initialized = false;
+    private static final PropertyKey<?>[] NO_KEYS = new PropertyKey<?>[0];
+    private static final PropertyChangeListener[] NO_LISTENERS = new PropertyChangeListener[0];
+    /**
+     * properties without typed key
+     */
     HashMap<Object, Object> properties;
-    HashMap<Object, ArrayList<PropertyChangeListener>> propertyChangeListeners;
+    /**
+     * listeners of properties without typed key, arrays are replaced on change
+     */
+    HashMap<Object, PropertyChangeListener[]> propertyChangeListeners;
+    PropertyChangeListener[] catchAllListeners = NO_LISTENERS;
+    PropertyKey<?>[] propertyKeys = NO_KEYS;
+    HashMap<Object, PropertyKey<?>> propertyKeysByName;
+    Object[] slots = new Object[0];
+    PropertyChangeListener[][] slotListeners = new PropertyChangeListener[0][];
+    final Class<EventType> eventTypeClass;
 
-    public BasicStateMachine(HashMap<String, FSMNode<EventType>> nodes, FSMNode<EventType> initial) {
+    public BasicStateMachine(HashMap<String, FSMNode<EventType>> nodes, FSMNode<EventType> initial,
+            Class<EventType> eventTypeClass) {
         this.nodes = nodes;
+        nodesByOrdinal = indexNodes(nodes);
+        this.eventTypeClass = eventTypeClass;
         current = initial;
+        publishedCurrent = initial;
         properties = new HashMap<>();
         propertyChangeListeners = new HashMap<>();
+        propertyKeysByName = new HashMap<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <EventType extends Enum<EventType>> FSMNode<EventType>[] indexNodes(Map<String, FSMNode<EventType>> nodes) {
+        int size = 0;
+        for (FSMNode<EventType> node : nodes.values()) {
+            size = Math.max(size, node.getOrdinal() + 1);
+        }
+        FSMNode<EventType>[] retVal = new FSMNode[size];
+        for (FSMNode<EventType> node : nodes.values()) {
+            if (node.getOrdinal() >= 0) {
+                retVal[node.getOrdinal()] = node;
+            }
+        }
+        return retVal;
+    }
+
+    boolean isOwnNode(FSMNode<EventType> node) {
+        int ordinal = node.getOrdinal();
+        return ordinal >= 0 && ordinal < nodesByOrdinal.length && nodesByOrdinal[ordinal] == node;
     }
 
     @Override
     public boolean setCurrentNode(FSMNode<EventType> node) {
-        if (nodes.containsValue(node)) {
+        if (isOwnNode(node)) {
             current = node;
+            publishedCurrent = node;
             return true;
         }
         return false;
@@ -55,31 +109,61 @@ class BasicStateMachine<EventType extends Enum<EventType>> implements StateMachi
 
     @Override
     public boolean setCurrentNode(String nodeName){
-        FSMNode<EventType> newCurrentNode = nodes.get(nodeName);
+        FSMNode<EventType> newCurrentNode = lookupNode(nodeName);
         if (newCurrentNode != null) {
             current = newCurrentNode;
+            publishedCurrent = newCurrentNode;
             return true;
         }
         return false;
     }
     @Override
     public FSMNode<EventType> getNodeByName(String name) {
-        return nodes.get(name);
+        return lookupNode(name);
+    }
+
+    private FSMNode<EventType> lookupNode(String name) {
+        FSMNode<EventType> retVal = nodes.get(name);
+        if (retVal == null && aliases != null) {
+            String alias = aliases.get(name);
+            if (alias != null) {
+                retVal = nodes.get(alias);
+            }
+        }
+        return retVal;
     }
 
     @Override
     public void completeInitialization(Map<?, Map<?, ?>> initializer) throws BadStateMachineSpecification {
-        properties.putAll(initializer.get(null));
+        for (Map.Entry<?, ?> property : initializer.get(null).entrySet()) {
+            PropertyKey<?> key = propertyKeysByName.get(property.getKey());
+            if (key == null) {
+                properties.put(property.getKey(), property.getValue());
+            } else if (property.getValue() == null || key.getType().isInstance(property.getValue())) {
+                slots[key.slot] = property.getValue();
+            } else {
+                throw new BadStateMachineSpecification("value of property " + key.getName() 
+                        + " is not instance of " + key.getType().getName());
+            }
+        }
         for (Entry<String, FSMNode<EventType>> cur : nodes.entrySet()) {
             cur.getValue().onStateMachineInitialized(initializer, this);
         }
+        StateHierarchy.resolve(this, initializer);
 
-        for (Map.Entry<Object, ArrayList<PropertyChangeListener>> subscribersEntry : propertyChangeListeners.entrySet()) {
+        for (Map.Entry<Object, PropertyChangeListener[]> subscribersEntry : propertyChangeListeners.entrySet()) {
             Object property = properties.get(subscribersEntry.getKey());
             for (PropertyChangeListener subscriber : subscribersEntry.getValue()) {
                 subscriber.onPropertyChange(subscribersEntry.getKey(), property, null);
             }
-
+        }
+        for (PropertyChangeListener subscriber : catchAllListeners) {
+            subscriber.onPropertyChange(null, properties.get(null), null);
+        }
+        for (int i = 0; i < slots.length; ++i) {
+            for (PropertyChangeListener subscriber : slotListeners[i]) {
+                subscriber.onPropertyChange(propertyKeys[i].getName(), slots[i], null);
+            }
         }
         initialized = true;
     }
@@ -99,6 +183,67 @@ class BasicStateMachine<EventType extends Enum<EventType>> implements StateMachi
         }
     }
 
+    @Override
+    public void transit(EventType event) throws InvalidEventException {
+        transit(EnumEvent.of(event));
+    }
+
+    @Override
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        return step(event, event);
+    }
+
+    /**
+     * non-throwing transition step
+     * @param event event to process
+     * @param callbackEvent event passed to callbacks
+     * @return outcome of the step
+     */
+    TransitStatus step(StateMachineEvent<EventType> event, StateMachineEvent<EventType> callbackEvent) {
+        FSMNode<EventType> next = current.tryNodeToTransitTo(event);
+        if (next == null)
+            return TransitStatus.NULL_TRANSITION;
+        if (next == BasicNode.REJECTED)
+            return TransitStatus.REJECTED;
+        if (next == BasicNode.VETOED)
+            return TransitStatus.VETOED_BY_ASPECT;
+        current.eventOut(callbackEvent, next);
+        next.eventIn(callbackEvent, current);
+        setCurrentNode(next);
+        return TransitStatus.APPLIED;
+    }
+
+    @Override
+    public void transit(int eventOrdinal) throws InvalidEventException {
+        transit(EnumEvent.of(eventTypeClass, eventOrdinal));
+    }
+
+    @Override
+    public BatchTransitResult transitAll(StateMachineEvent<EventType>[] events, int off, int len) {
+        return transitEach(this, events, off, len);
+    }
+
+    static <EventType extends Enum<EventType>> BatchTransitResult transitEach(StateMachine<EventType> fsm,
+            StateMachineEvent<EventType>[] events, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; ++i) {
+            try {
+                fsm.transit(events[i]);
+            } catch (InvalidEventException e) {
+                return new BatchTransitResult(i - off, i, e);
+            } catch (RuntimeException e) {
+                return new BatchTransitResult(i - off, i,
+                        new InvalidEventException("exception happened during transition processing", e));
+            }
+        }
+        return new BatchTransitResult(len, -1, null);
+    }
+
+    @Override
+    public Class<EventType> getEventTypeClass() {
+        return eventTypeClass;
+    }
+
     @Override
     public boolean isInFinalState() {
         return current.holdsFinalState();
@@ -111,43 +256,141 @@ class BasicStateMachine<EventType extends Enum<EventType>> implements StateMachi
   
     @Override
     public State<EventType> getStateByName(String stateName) {
-        return nodes.get(stateName).getState();
+        return lookupNode(stateName).getState();
     }
 
-    private void notifySubscribers(ArrayList<PropertyChangeListener> subscribers,
+    private static void notifySubscribers(PropertyChangeListener[] subscribers,
             Object name, Object prev, Object value){
         if (subscribers != null){
            for (PropertyChangeListener cur : subscribers) {
-                    cur.onPropertyChange(name, prev, value);
+                    cur.onPropertyChange(name, value, prev);
                 }
         }
     }
 
+    static PropertyChangeListener[] add(PropertyChangeListener[] listeners, PropertyChangeListener listener) {
+        PropertyChangeListener[] retVal = Arrays.copyOf(listeners, listeners.length + 1);
+        retVal[listeners.length] = listener;
+        return retVal;
+    }
+
+    static PropertyChangeListener[] remove(PropertyChangeListener[] listeners, PropertyChangeListener listener) {
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i].equals(listener)) {
+                PropertyChangeListener[] retVal = new PropertyChangeListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, retVal, 0, i);
+                System.arraycopy(listeners, i + 1, retVal, i, retVal.length - i);
+                return retVal;
+            }
+        }
+        return listeners;
+    }
+
+    private int slotOf(PropertyKey<?> key) {
+        int slot = key.slot;
+        if (slot >= propertyKeys.length || propertyKeys[slot] != key) {
+            throw new IllegalArgumentException("property key " + key + " is not defined for this FSM");
+        }
+        return slot;
+    }
+
+    @Override
+    public void definePropertyKeys(PropertyKey<?>[] keys) {
+        propertyKeys = keys.clone();
+        slots = new Object[keys.length];
+        slotListeners = new PropertyChangeListener[keys.length][];
+        propertyKeysByName.clear();
+        for (int i = 0; i < keys.length; ++i) {
+            slotListeners[i] = NO_LISTENERS;
+            propertyKeysByName.put(keys[i].getName(), keys[i]);
+            if (properties.containsKey(keys[i].getName())) {
+                slots[i] = properties.remove(keys[i].getName());
+            }
+            PropertyChangeListener[] listeners = propertyChangeListeners.remove(keys[i].getName());
+            if (listeners != null) {
+                slotListeners[i] = listeners;
+            }
+        }
+    }
+
+    @Override
+    public <T> PropertyKey<T> getPropertyKey(Object name, Class<T> type) {
+        PropertyKey<?> key = propertyKeysByName.get(name);
+        if (key == null) {
+            return null;
+        }
+        if (key.getType() != type) {
+            throw new IllegalArgumentException("property key " + key + " doesn't have type " + type.getSimpleName());
+        }
+        return (PropertyKey<T>) key;
+    }
+
+    @Override
+    public <T> T get(PropertyKey<T> key) {
+        return (T) slots[slotOf(key)];
+    }
+
+    @Override
+    public <T> void set(PropertyKey<T> key, T value) {
+        int slot = slotOf(key);
+        Object prev = slots[slot];
+        slots[slot] = value;
+        if (initialized) {
+            notifySubscribers(slotListeners[slot], key.getName(), prev, value);
+            notifySubscribers(catchAllListeners, key.getName(), prev, value);
+        }
+    }
+
+    @Override
+    public void registerKeyListener(PropertyChangeListener listener, PropertyKey<?> key) {
+        int slot = slotOf(key);
+        slotListeners[slot] = add(slotListeners[slot], listener);
+    }
+
+    @Override
+    public void deregisterKeyListener(PropertyChangeListener listener, PropertyKey<?> key) {
+        int slot = slotOf(key);
+        slotListeners[slot] = remove(slotListeners[slot], listener);
+    }
+
     @Override
     public boolean setProperty(Object name, Object value) {
+        PropertyKey key = propertyKeysByName.get(name);
+        if (key != null) {
+            if (value != null && !key.getType().isInstance(value)) {
+                throw new IllegalArgumentException("value of property " + name + " is not instance of " 
+                        + key.getType().getName());
+            }
+            set(key, value);
+            return true;
+        }
         Object prev = properties.put(name, value);
         if (initialized) {
             // notify subscibers for specific object
             notifySubscribers(propertyChangeListeners.get(name), name, prev, value);
             // notify catch-all subscribers
-            notifySubscribers(propertyChangeListeners.get(null), name, prev, value);
+            notifySubscribers(catchAllListeners, name, prev, value);
         }
         return true;
     }
 
     @Override
     public Object getProperty(Object name) {
-        return properties.get(name);
+        PropertyKey<?> key = propertyKeysByName.get(name);
+        return key == null ? properties.get(name) : slots[key.slot];
     }
 
     @Override
     public void registerPropertyChangeListener(PropertyChangeListener listener, Object propertyName) {
-        ArrayList<PropertyChangeListener> subscribers = propertyChangeListeners.get(propertyName);
-        if (subscribers == null) {
-            subscribers = new ArrayList<>();
-            propertyChangeListeners.put(propertyName, subscribers);
+        PropertyKey<?> key = propertyKeysByName.get(propertyName);
+        if (key != null) {
+            registerKeyListener(listener, key);
+        } else if (propertyName == null) {
+            catchAllListeners = add(catchAllListeners, listener);
+        } else {
+            PropertyChangeListener[] subscribers = propertyChangeListeners.get(propertyName);
+            propertyChangeListeners.put(propertyName, add(subscribers == null ? NO_LISTENERS : subscribers, listener));
         }
-        subscribers.add(listener);
     }
 
     @Override
@@ -161,19 +404,60 @@ class BasicStateMachine<EventType extends Enum<EventType>> implements StateMachi
         return current.getName();
     }
 
+    @Override
+    public boolean canAccept(EventType eventType) {
+        return publishedCurrent.getAcceptedEvents().accepts(eventType.ordinal());
+    }
+
+    @Override
+    public int getCurrentStateIndex() {
+        return current.getOrdinal();
+    }
+
+    @Override
+    public String getStateName(int index) {
+        if (index < 0 || index >= nodesByOrdinal.length || nodesByOrdinal[index] == null) {
+            return null;
+        }
+        return nodesByOrdinal[index].getName();
+    }
+
+    @Override
+    public int getStateIndex(String stateName) {
+        FSMNode<EventType> node = lookupNode(stateName);
+        return node == null ? -1 : node.getOrdinal();
+    }
+
     @Override
     public Set<String> getStateNames() {
         return nodes.keySet();
     }
 
+    /**
+     * @return snapshot of FSM properties, both typed and untyped ones
+     */
     @Override
     public HashMap<Object, Object> getFSMProperties() {
-        return properties;
+        HashMap<Object, Object> retVal = new HashMap<>(properties);
+        for (int i = 0; i < slots.length; ++i) {
+            retVal.put(propertyKeys[i].getName(), slots[i]);
+        }
+        return retVal;
     }
 
     @Override
     public void deregisterPropertyChangeListener(PropertyChangeListener listener, Object propertyName) {
-        propertyChangeListeners.get(propertyName).remove(listener);
+        PropertyKey<?> key = propertyKeysByName.get(propertyName);
+        if (key != null) {
+            deregisterKeyListener(listener, key);
+        } else if (propertyName == null) {
+            catchAllListeners = remove(catchAllListeners, listener);
+        } else {
+            PropertyChangeListener[] subscribers = propertyChangeListeners.get(propertyName);
+            if (subscribers != null) {
+                propertyChangeListeners.put(propertyName, remove(subscribers, listener));
+            }
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * BatchTransitResult is immutable outcome of processing of events batch (see
+ * StateMachine.transitAll). Batch processing stops on first event which
+ * can't be processed, so events before failed index are applied and events
+ * after it are not sent to the FSM.
+ * @author blitvin
+ */
+public final class BatchTransitResult {
+
+    private final int applied;
+    private final int failedIndex;
+    private final InvalidEventException failure;
+
+    public BatchTransitResult(int applied, int failedIndex, InvalidEventException failure) {
+        this.applied = applied;
+        this.failedIndex = failedIndex;
+        this.failure = failure;
+    }
+
+    /**
+     * @return number of events successfully processed by the FSM
+     */
+    public int getApplied() {
+        return applied;
+    }
+
+    /**
+     * @return index (in the events array passed to transitAll) of event failed 
+     * processing, -1 if all events are processed
+     */
+    public int getFailedIndex() {
+        return failedIndex;
+    }
+
+    /**
+     * @return exception thrown by processing of failed event, null if all events are processed
+     */
+    public InvalidEventException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return true if all events of the batch are processed
+     */
+    public boolean isCompleted() {
+        return failedIndex < 0;
+    }
+}
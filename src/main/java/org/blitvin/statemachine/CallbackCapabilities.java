@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * State or aspects object implementing this interface declares which of its
+ * callbacks actually do something. Nodes read the capabilities once, when the
+ * state or aspects object is attached, and don't invoke absent callbacks during
+ * transition processing at all. Objects not implementing the interface are
+ * assumed to implement every callback. StateSkeleton implements the interface
+ * and detects overridden callbacks automatically, so states derived from it
+ * need no extra code.
+ * Note that onStateAttachedToFSM() and onStateDetachedFromFSM() are always
+ * invoked, as those are not part of transition processing
+ * @author blitvin
+ */
+public interface CallbackCapabilities {
+
+    /**
+     * State.onStateBecomesCurrent() does something
+     */
+    int BECOMES_CURRENT = 1;
+    /**
+     * State.onStateIsNoLongerCurrent() does something
+     */
+    int NO_LONGER_CURRENT = 1 << 1;
+    /**
+     * State.onInvalidTransition() does something
+     */
+    int INVALID_TRANSITION = 1 << 2;
+    /**
+     * all state transition callbacks
+     */
+    int STATE_CALLBACKS = BECOMES_CURRENT | NO_LONGER_CURRENT | INVALID_TRANSITION;
+
+    /**
+     * StateMachineAspects.onTransitionStart() does something
+     */
+    int TRANSITION_START = 1 << 3;
+    /**
+     * StateMachineAspects.onNullTransition() does something
+     */
+    int NULL_TRANSITION = 1 << 4;
+    /**
+     * StateMachineAspects.onControlLeavesState() does something
+     */
+    int CONTROL_LEAVES_STATE = 1 << 5;
+    /**
+     * StateMachineAspects.onControlEntersState() does something
+     */
+    int CONTROL_ENTERS_STATE = 1 << 6;
+    /**
+     * StateMachineAspects.onTransitionFinish() does something
+     */
+    int TRANSITION_FINISH = 1 << 7;
+    /**
+     * all aspect point-cuts
+     */
+    int ASPECT_CALLBACKS = TRANSITION_START | NULL_TRANSITION | CONTROL_LEAVES_STATE
+            | CONTROL_ENTERS_STATE | TRANSITION_FINISH;
+
+    /**
+     * @return bitwise or of constants of callbacks implemented by the object.
+     * Expected to be constant for the lifetime of the object
+     */
+    int getCallbackCapabilities();
+}
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * Helper for reading capabilities of states and aspects objects, see
+ * CallbackCapabilities
+ * @author blitvin
+ */
+final class CallbackMasks {
+
+    private CallbackMasks() {
+    }
+
+    /**
+     * @param state state object, may be null
+     * @return mask of state callbacks to be invoked
+     */
+    static int of(State<?> state) {
+        if (state == null)
+            return 0;
+        if (state instanceof CallbackCapabilities)
+            return ((CallbackCapabilities) state).getCallbackCapabilities() & CallbackCapabilities.STATE_CALLBACKS;
+        return CallbackCapabilities.STATE_CALLBACKS;
+    }
+
+    /**
+     * @param aspects aspects object, may be null
+     * @return mask of aspect point-cuts to be invoked
+     */
+    static int of(StateMachineAspects<?> aspects) {
+        if (aspects == null)
+            return 0;
+        if (aspects instanceof CallbackCapabilities)
+            return ((CallbackCapabilities) aspects).getCallbackCapabilities() & CallbackCapabilities.ASPECT_CALLBACKS;
+        return CallbackCapabilities.ASPECT_CALLBACKS;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Arrays;
+
+/**
+ * CharClassTable maps characters (or bytes) to event types, that is it
+ * defines alphabet of StateMachineScanner. Table holds entry for each of 256
+ * first characters, all other characters are mapped to default event type.
+ * <pre>
+ * CharClassTable&lt;TokensEnum&gt; table = new CharClassTable&lt;&gt;(TokensEnum.class, TokensEnum.OTHER)
+ *      .set('0', '9', TokensEnum.DIGIT).set(" \t", TokensEnum.WHITESPACE);
+ * </pre>
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class CharClassTable<EventType extends Enum<EventType>> {
+
+    public static final int TABLE_SIZE = 256;
+
+    private final Class<EventType> eventTypeClass;
+    private final EventType defaultClass;
+    final int[] classes;
+
+    public CharClassTable(Class<EventType> eventTypeClass, EventType defaultClass) {
+        this.eventTypeClass = eventTypeClass;
+        this.defaultClass = defaultClass;
+        classes = new int[TABLE_SIZE];
+        Arrays.fill(classes, defaultClass.ordinal());
+    }
+
+    /**
+     * maps single character to the event type
+     * @param c character, must be less than TABLE_SIZE
+     * @param eventType event type
+     * @return this table
+     */
+    public CharClassTable<EventType> set(char c, EventType eventType) {
+        classes[c] = eventType.ordinal();
+        return this;
+    }
+
+    /**
+     * maps range of characters [from, to] to the event type
+     * @param from first character of the range
+     * @param to last character of the range, must be less than TABLE_SIZE
+     * @param eventType event type
+     * @return this table
+     */
+    public CharClassTable<EventType> set(char from, char to, EventType eventType) {
+        for (int c = from; c <= to; ++c) {
+            classes[c] = eventType.ordinal();
+        }
+        return this;
+    }
+
+    /**
+     * maps each character of the string to the event type
+     * @param chars characters to map
+     * @param eventType event type
+     * @return this table
+     */
+    public CharClassTable<EventType> set(String chars, EventType eventType) {
+        for (int i = 0; i < chars.length(); ++i) {
+            classes[chars.charAt(i)] = eventType.ordinal();
+        }
+        return this;
+    }
+
+    public EventType getEventType(char c) {
+        return eventTypeClass.getEnumConstants()[c < TABLE_SIZE ? classes[c] : defaultClass.ordinal()];
+    }
+
+    public EventType getDefaultClass() {
+        return defaultClass;
+    }
+
+    public Class<EventType> getEventTypeClass() {
+        return eventTypeClass;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CompiledStateMachine is BASIC FSM which transitions graph is compiled to
+ * flat table (see TransitionTable) once FSM initialization is completed.
+ * Processing of event resolved by the table is single array lookup instead
+ * of map lookup and transition object dispatch. Transitions which can't be
+ * resolved in advance (customized transitions, invalid events, aspect nodes)
+ * are processed by the node as in BasicStateMachine, so the behavior
+ * (callbacks, exceptions) is identical to BASIC FSM.
+ * @author blitvin
+ */
+class CompiledStateMachine<EventType extends Enum<EventType>> extends BasicStateMachine<EventType> {
+
+    TransitionTable<EventType> table;
+    int currentIndex;
+
+    public CompiledStateMachine(HashMap<String, FSMNode<EventType>> nodes, FSMNode<EventType> initial,
+            Class<EventType> eventTypeClass) {
+        super(nodes, initial, eventTypeClass);
+        currentIndex = -1;
+    }
+
+    @Override
+    public void completeInitialization(Map<?, Map<?, ?>> initializer) throws BadStateMachineSpecification {
+        super.completeInitialization(initializer);
+        compile(false);
+    }
+
+    /**
+     * (re)builds transition table from current topology of the FSM
+     * @param compressEvents if true event types behaving identically share 
+     * column of the table
+     */
+    void compile(boolean compressEvents) {
+        table = new TransitionTable<>(nodes.values(), eventTypeClass, compressEvents);
+        currentIndex = table.indexOf(current);
+    }
+
+    @Override
+    public void transit(StateMachineEvent<EventType> event) throws InvalidEventException {
+        if (table == null) {
+            super.transit(event);
+            return;
+        }
+        int target = table.target(currentIndex, event.getEventType().ordinal());
+        if (target >= 0) {
+            FSMNode<EventType> next = table.nodes[target];
+            current.eventOut(event, next);
+            next.eventIn(event, current);
+            current = next;
+            publishedCurrent = next;
+            currentIndex = target;
+        } else if (target != TransitionTable.NULL_TRANSITION) {
+            FSMNode<EventType> next = current.nodeToTransitTo(event);
+            if (next != null) {
+                current.eventOut(event, next);
+                next.eventIn(event, current);
+                setCurrentNode(next);
+            }
+        }
+    }
+
+    @Override
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        if (table == null) {
+            return super.tryTransit(event);
+        }
+        int target = table.target(currentIndex, event.getEventType().ordinal());
+        if (target >= 0) {
+            FSMNode<EventType> next = table.nodes[target];
+            current.eventOut(event, next);
+            next.eventIn(event, current);
+            current = next;
+            publishedCurrent = next;
+            currentIndex = target;
+            return TransitStatus.APPLIED;
+        }
+        if (target == TransitionTable.NULL_TRANSITION) {
+            return TransitStatus.NULL_TRANSITION;
+        }
+        return step(event, event);
+    }
+
+    @Override
+    public boolean setCurrentNode(FSMNode<EventType> node) {
+        if (table == null) {
+            return super.setCurrentNode(node);
+        }
+        int index = table.indexOf(node);
+        if (index < 0) {
+            return false;
+        }
+        current = node;
+        publishedCurrent = node;
+        currentIndex = index;
+        return true;
+    }
+
+    @Override
+    public boolean setCurrentNode(String nodeName) {
+        if (!super.setCurrentNode(nodeName)) {
+            return false;
+        }
+        if (table != null) {
+            currentIndex = table.indexOf(current);
+        }
+        return true;
+    }
+}
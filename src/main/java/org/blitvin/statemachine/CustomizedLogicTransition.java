@@ -30,10 +30,32 @@ import java.util.Map;
 class CustomizedLogicTransition<EventType extends Enum<EventType>> implements Transition<EventType> {
     CustomizedTransitionsLogicState<EventType> myState= null;
     StateMachineDriver<EventType> containingFSM = null;
+    private ResolvedTarget<EventType> lastTarget = null;
+    
+    /**
+     * name returned by the state together with node it is resolved to, kept
+     * in single immutable object so the transition can be shared by threads
+     */
+    private static final class ResolvedTarget<EventType extends Enum<EventType>> {
+        final String name;
+        final FSMNode<EventType> node;
+
+        ResolvedTarget(String name, FSMNode<EventType> node) {
+            this.name = name;
+            this.node = node;
+        }
+    }
     
     @Override
     public FSMNode<EventType> getTarget(StateMachineEvent<EventType> event){
-        return containingFSM.getNodeByName(myState.stateToTransitTo(event)); // error handling
+        String name = myState.stateToTransitTo(event);
+        ResolvedTarget<EventType> last = lastTarget;
+        // states typically return constants, so identity check avoids lookup by name
+        if (last != null && last.name == name)
+            return last.node;
+        FSMNode<EventType> retVal = containingFSM.getNodeByName(name); // error handling
+        lastTarget = new ResolvedTarget<>(name, retVal);
+        return retVal;
     }
         
     @Override
@@ -45,5 +67,6 @@ class CustomizedLogicTransition<EventType extends Enum<EventType>> implements Tr
             throw new BadStateMachineSpecification("CustomizedLogicTransition works only with CustomizedTransitionsLogicState");
         }
         containingFSM = containingMachine;
+        lastTarget = null;
     }
 }
\ No newline at end of file
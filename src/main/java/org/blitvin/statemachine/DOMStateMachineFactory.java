@@ -66,6 +66,7 @@ public class DOMStateMachineFactory extends	StateMachineFactory {
 	static final String EVENT_TYPE_IMPL_CLASS_TAG="eventTypeClass";
 	static final String DEFAULT_TRANSITION="other_events_transition";
 	static final String ENABLE_ASPECT_TAG="enableAspect";
+        static final String GUARD_TAG="guard";
         
 	protected static final String XSD_FILE = "state_machines.xsd";
 	public static final String DEFAULT_XML_FILE="empty.xml";
@@ -313,6 +314,7 @@ public class DOMStateMachineFactory extends	StateMachineFactory {
                         }    
                     }
                     fillAttributes(transitionNode, builder, standardTransitionTags);
+                    addGuards(transitionElem, builder);
                 }
             }
         }
@@ -320,6 +322,21 @@ public class DOMStateMachineFactory extends	StateMachineFactory {
         return builder;
     }
 
+    private void addGuards(Element transitionElem, StateMachineBuilder builder) throws BadStateMachineSpecification {
+        NodeList guardNodes = transitionElem.getChildNodes();
+        for (int i = 0; i < guardNodes.getLength(); ++i) {
+            Node guardNode = guardNodes.item(i);
+            if (guardNode.getNodeType() != Node.ELEMENT_NODE || !guardNode.getNodeName().equals(GUARD_TAG))
+                continue;
+            Element guardElem = (Element) guardNode;
+            Class<?> guardClass = getClass(guardElem, TransitionGuard.class);
+            if (guardClass == null)
+                throw new BadStateMachineSpecification("guard element requires attribute " + IMPL_CLASS_TAG);
+            builder.addGuard((Class<? extends TransitionGuard>) guardClass,
+                    guardElem.getAttribute(StateMachineBuilder.TARGET_STATE));
+        }
+    }
+
     @Override
     public Set<String> getNamesOfProvidedFSMs() {
         HashSet<String> retVal = new HashSet<>(stateMachineSpecs.keySet());
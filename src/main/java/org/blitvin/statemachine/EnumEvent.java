@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * EnumEvent is immutable event without payload, that is event defined only
+ * by its event type. There is single EnumEvent object per enum constant, those
+ * are created once per event type class and cached, so transit(EventType) and
+ * transit(int) don't allocate event objects.
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class EnumEvent<EventType extends Enum<EventType>> implements StateMachineEvent<EventType> {
+
+    private static final ClassValue<EnumEvent<?>[]> EVENTS = new ClassValue<EnumEvent<?>[]>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected EnumEvent<?>[] computeValue(Class<?> type) {
+            Enum[] constants = (Enum[]) type.getEnumConstants();
+            EnumEvent<?>[] retVal = new EnumEvent<?>[constants.length];
+            for (int i = 0; i < constants.length; ++i) {
+                retVal[i] = new EnumEvent(constants[i]);
+            }
+            return retVal;
+        }
+    };
+
+    private final EventType eventType;
+
+    private EnumEvent(EventType eventType) {
+        this.eventType = eventType;
+    }
+
+    @Override
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @param <EventType> type of the event
+     * @param eventType enum constant
+     * @return cached event object for the constant
+     */
+    @SuppressWarnings("unchecked")
+    public static <EventType extends Enum<EventType>> EnumEvent<EventType> of(EventType eventType) {
+        return (EnumEvent<EventType>) EVENTS.get(eventType.getDeclaringClass())[eventType.ordinal()];
+    }
+
+    /**
+     * @param <EventType> type of the event
+     * @param eventTypeClass enum class of the event type
+     * @param ordinal ordinal of the enum constant
+     * @return cached event object for the constant
+     * @throws InvalidEventException if ordinal is out of range of the enum constants
+     */
+    @SuppressWarnings("unchecked")
+    public static <EventType extends Enum<EventType>> EnumEvent<EventType> of(Class<EventType> eventTypeClass, int ordinal)
+            throws InvalidEventException {
+        EnumEvent<?>[] events = EVENTS.get(eventTypeClass);
+        if (ordinal < 0 || ordinal >= events.length) {
+            throw new InvalidEventException("ordinal " + ordinal + " is out of range of " + eventTypeClass.getSimpleName());
+        }
+        return (EnumEvent<EventType>) events[ordinal];
+    }
+
+    @Override
+    public String toString() {
+        return eventType.toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import org.blitvin.statemachine.StateMachineBuilder.OVERFLOW_POLICY;
+
+/**
+ * Array based FIFO queue of events with fixed capacity, used for internal
+ * events. Array is allocated once, so adding and polling events doesn't 
+ * allocate memory (unless the queue grows with GROW overflow policy).
+ * @author blitvin
+ */
+final class EventRingQueue<EventType extends Enum<EventType>> {
+
+    private StateMachineEvent<EventType>[] events;
+    private int head;
+    private int size;
+    private final OVERFLOW_POLICY policy;
+    private long dropped;
+    private int highWaterMark;
+
+    @SuppressWarnings("unchecked")
+    EventRingQueue(int capacity, OVERFLOW_POLICY policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("queue capacity must be positive");
+        }
+        events = new StateMachineEvent[capacity];
+        this.policy = policy;
+    }
+
+    /**
+     * @param event event to add
+     * @throws InvalidEventException if queue is full and policy is THROW
+     */
+    void add(StateMachineEvent<EventType> event) throws InvalidEventException {
+        if (size == events.length) {
+            switch (policy) {
+                case DROP:
+                    ++dropped;
+                    return;
+                case GROW:
+                    grow();
+                    break;
+                default:
+                    throw new InvalidEventException("internal events queue is full, capacity " + events.length);
+            }
+        }
+        int tail = head + size;
+        if (tail >= events.length) {
+            tail -= events.length;
+        }
+        events[tail] = event;
+        if (++size > highWaterMark) {
+            highWaterMark = size;
+        }
+    }
+
+    /**
+     * @return oldest event in the queue, null if queue is empty
+     */
+    StateMachineEvent<EventType> poll() {
+        if (size == 0) {
+            return null;
+        }
+        StateMachineEvent<EventType> retVal = events[head];
+        events[head] = null;
+        if (++head == events.length) {
+            head = 0;
+        }
+        --size;
+        return retVal;
+    }
+
+    void clear() {
+        while (poll() != null) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        StateMachineEvent<EventType>[] newEvents = new StateMachineEvent[events.length * 2];
+        for (int i = 0; i < size; ++i) {
+            int index = head + i;
+            newEvents[i] = events[index < events.length ? index : index - events.length];
+        }
+        events = newEvents;
+        head = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return events.length;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    int highWaterMark() {
+        return highWaterMark;
+    }
+}
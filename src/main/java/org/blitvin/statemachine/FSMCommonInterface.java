@@ -34,6 +34,35 @@ public interface FSMCommonInterface<EventType extends Enum<EventType>> {
      */
     String getNameOfCurrentState();
 
+    /**
+     * States are indexed by small integers in order of declaration, index
+     * allows to identify state without string comparison
+     * @return index of current state
+     */
+    int getCurrentStateIndex();
+
+    /**
+     * @param index index of the state
+     * @return name of state with given index, null if there is no such state
+     */
+    String getStateName(int index);
+
+    /**
+     * @param stateName name of the state
+     * @return index of the state, -1 if there is no such state
+     */
+    int getStateIndex(String stateName);
+
+    /**
+     * Checks whether current state has transition (incl. null or default one)
+     * for the event type. The check reads current state without locking, so 
+     * in multi-threaded FSMs the answer reflects the last completed transition
+     * and may be outdated by the time it is used
+     * @param eventType type of the event
+     * @return false if current state would reject the event
+     */
+    boolean canAccept(EventType eventType);
+
     /**
      *
      * @return immutable collection containing states of the FSM /
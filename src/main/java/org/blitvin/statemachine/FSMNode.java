@@ -25,8 +25,29 @@ import java.util.Map;
  */
 interface FSMNode<EventType extends Enum<EventType>> {
     State<EventType> getState();
+    /**
+     * @return true if State object is set, false if there is no State object
+     * yet or its creation is deferred
+     */
+    boolean hasState();
+    /**
+     * defers creation of State object to first use of the state
+     * @param factory factory creating the State object
+     */
+    void setStateFactory(FSMStateFactory<EventType> factory);
     void eventIn(StateMachineEvent<EventType> event, FSMNode<EventType> prevState);
     FSMNode<EventType> nodeToTransitTo(StateMachineEvent<EventType> event) throws InvalidEventException;
+    /**
+     * non-throwing counterpart of nodeToTransitTo()
+     * @param event event to process
+     * @return target node, null for null transition, BasicNode.REJECTED if
+     * event is not accepted or BasicNode.VETOED if aspect stopped processing
+     */
+    FSMNode<EventType> tryNodeToTransitTo(StateMachineEvent<EventType> event);
+    /**
+     * @return immutable set of events the node has transitions for
+     */
+    AcceptedEvents getAcceptedEvents();
     boolean holdsFinalState();
     void eventOut(StateMachineEvent<EventType> event, FSMNode<EventType>target);
     void onStateMachineInitialized(Map<?,?>  initializer,
@@ -37,6 +58,47 @@ interface FSMNode<EventType extends Enum<EventType>> {
     void setState(State<EventType> state);
     void setTransition(EventType event ,Transition<EventType> transition);
     void setDefaultTransition(Transition<EventType> transition);
+    /**
+     * @param event event type
+     * @return transition defined for the event type or inherited from parent
+     * state, null if none
+     */
+    Transition<EventType> getTransition(EventType event);
+    Transition<EventType> getDefaultTransition();
     void doesHoldFinalState();
     String getName();
+    /**
+     * @return dense index of the node assigned by builder in order of state
+     * declaration, -1 if not assigned
+     */
+    int getOrdinal();
+    void setOrdinal(int ordinal);
+    /**
+     * @return parent state of the node, null for top level state
+     */
+    FSMNode<EventType> getParent();
+    /**
+     * sets position of the node in hierarchy of states, see StateHierarchy
+     * @param parent parent state, null for top level state
+     * @param exitPaths ancestors left on transition to node with given
+     * ordinal, nearest first; null if the node has no parent
+     * @param entryPaths ancestors entered on transition from node with given
+     * ordinal, outermost first; null if the node has no parent
+     */
+    void setHierarchy(FSMNode<EventType> parent, FSMNode<EventType>[][] exitPaths, FSMNode<EventType>[][] entryPaths);
+    /**
+     * copies transitions of parent state for events the node doesn't handle
+     * itself, copied transitions are shared with the parent
+     */
+    void inheritTransitions(FSMNode<EventType> parent, EventType[] events);
+    void clearInheritedTransitions();
+    /**
+     * invoked when control enters descendant of the node from outside of
+     * the node's subtree
+     */
+    void ancestorIn(StateMachineEvent<EventType> event, FSMNode<EventType> prevState);
+    /**
+     * invoked when control leaves the node's subtree from descendant of the node
+     */
+    void ancestorOut(StateMachineEvent<EventType> event, FSMNode<EventType> target);
 }
\ No newline at end of file
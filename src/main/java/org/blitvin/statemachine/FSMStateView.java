@@ -27,4 +27,30 @@ package org.blitvin.statemachine;
 public interface FSMStateView<EventType extends Enum<EventType>> extends FSMCommonInterface<EventType>{
      void registerPropertyChangeListener(PropertyChangeListener listener, Object propertyName);
      void deregisterPropertyChangeListener(PropertyChangeListener listener, Object propertyName);
+
+     /**
+      * @param name name of the property
+      * @param type expected type of the property value
+      * @return key defined for the property on the builder, null if there is no such key
+      * @throws IllegalArgumentException if the key is defined with different type
+      */
+     <T> PropertyKey<T> getPropertyKey(Object name, Class<T> type);
+
+     /**
+      * @param key key of the property
+      * @return value of the property
+      * @throws IllegalArgumentException if the key is not defined for this FSM
+      */
+     <T> T get(PropertyKey<T> key);
+
+     /**
+      * sets property value and notifies listeners of the property
+      * @param key key of the property
+      * @param value new value
+      * @throws IllegalArgumentException if the key is not defined for this FSM
+      */
+     <T> void set(PropertyKey<T> key, T value);
+
+     void registerKeyListener(PropertyChangeListener listener, PropertyKey<?> key);
+     void deregisterKeyListener(PropertyChangeListener listener, PropertyKey<?> key);
 }
\ No newline at end of file
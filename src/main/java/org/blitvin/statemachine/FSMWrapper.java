@@ -41,6 +41,31 @@ public class FSMWrapper<EventType extends Enum<EventType>> implements StateMachi
         wrapped.transit(event);
     }
 
+    @Override
+    public void transit(EventType event) throws InvalidEventException {
+        transit(EnumEvent.of(event));
+    }
+
+    @Override
+    public void transit(int eventOrdinal) throws InvalidEventException {
+        transit(EnumEvent.of(getEventTypeClass(), eventOrdinal));
+    }
+
+    @Override
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        return wrapped.tryTransit(event);
+    }
+
+    @Override
+    public BatchTransitResult transitAll(StateMachineEvent<EventType>[] events, int off, int len) {
+        return BasicStateMachine.transitEach(this, events, off, len);
+    }
+
+    @Override
+    public Class<EventType> getEventTypeClass() {
+        return wrapped.getEventTypeClass();
+    }
+
     @Override
     public boolean isInFinalState() {
  return wrapped.isInFinalState();
@@ -69,6 +94,26 @@ public class FSMWrapper<EventType extends Enum<EventType>> implements StateMachi
         return wrapped.getStateByName(stateName);
     }
 
+    @Override
+    public boolean canAccept(EventType eventType) {
+        return wrapped.canAccept(eventType);
+    }
+
+    @Override
+    public int getCurrentStateIndex() {
+        return wrapped.getCurrentStateIndex();
+    }
+
+    @Override
+    public String getStateName(int index) {
+        return wrapped.getStateName(index);
+    }
+
+    @Override
+    public int getStateIndex(String stateName) {
+        return wrapped.getStateIndex(stateName);
+    }
+
     @Override
     public boolean setProperty(Object name, Object value) {
      return wrapped.setProperty(name, value);
@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.ArrayList;
+import java.util.Map;
+import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
+
+/**
+ * Transition choosing target state by ordered list of (guard, target) pairs.
+ * Target names are resolved to nodes when FSM is initialized, so event handling
+ * is a plain loop over arrays. If no guard accepts the event, the transition
+ * goes to state set by property toState, if there is no such property the
+ * event is rejected as if there were no transition for it.
+ * @author blitvin
+ */
+class GuardedTransition<EventType extends Enum<EventType>> implements Transition<EventType> {
+
+    private final ArrayList<TransitionGuard<EventType>> guardList = new ArrayList<>();
+    private final ArrayList<String> targetNames = new ArrayList<>();
+    TransitionGuard<EventType>[] guards;
+    FSMNode<EventType>[] targets;
+    FSMNode<EventType> fallback;
+    private FSMStateView<EventType> fsm;
+
+    void addGuard(TransitionGuard<EventType> guard, String target) {
+        guardList.add(guard);
+        targetNames.add(target);
+    }
+
+    @Override
+    public FSMNode<EventType> getTarget(StateMachineEvent<EventType> event) {
+        return getTarget(event, fsm);
+    }
+
+    /**
+     * @param view FSM passed to guards, differs from containing FSM if the
+     * transition is shared by instances of StateMachineDefinition
+     */
+    FSMNode<EventType> getTarget(StateMachineEvent<EventType> event, FSMStateView<EventType> view) {
+        for (int i = 0; i < guards.length; ++i) {
+            if (guards[i].accept(event, view)) {
+                return targets[i];
+            }
+        }
+        return fallback;
+    }
+
+    @Override
+    public void onStateMachineInitialized(Map<?, ?> initializer, StateMachineDriver<EventType> containingMachine,
+            State<EventType> fromState) throws BadStateMachineSpecification {
+        if (guardList.isEmpty()) {
+            throw new BadStateMachineSpecification("GuardedTransition requires at least one guard");
+        }
+        TransitionGuard<EventType>[] newGuards = guardList.toArray(new TransitionGuard[guardList.size()]);
+        FSMNode<EventType>[] newTargets = new FSMNode[newGuards.length];
+        for (int i = 0; i < newTargets.length; ++i) {
+            newTargets[i] = resolve(targetNames.get(i), containingMachine);
+        }
+        String fallbackName = initializer == null ? null : (String) initializer.get(TARGET_STATE);
+        fallback = fallbackName == null ? BasicNode.REJECTED : resolve(fallbackName, containingMachine);
+        guards = newGuards;
+        targets = newTargets;
+        fsm = containingMachine;
+    }
+
+    private static <EventType extends Enum<EventType>> FSMNode<EventType> resolve(String name,
+            StateMachineDriver<EventType> containingMachine) throws BadStateMachineSpecification {
+        FSMNode<EventType> retVal = containingMachine.getNodeByName(name);
+        if (retVal == null) {
+            throw new BadStateMachineSpecification("Can't find state " + name);
+        }
+        return retVal;
+    }
+}
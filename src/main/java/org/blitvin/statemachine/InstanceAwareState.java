@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * State shared by instances of StateMachineDefinition can't keep per-instance
+ * data in its fields. State implementing this interface gets instance-aware
+ * versions of transition callbacks, so the data can be kept in instance
+ * properties. If state implements this interface, instance-aware callbacks
+ * are invoked by StateMachineInstance instead of regular State callbacks.
+ * @author blitvin
+ * @param <EventType>
+ */
+public interface InstanceAwareState<EventType extends Enum<EventType>> extends State<EventType> {
+
+    /**
+     * callback invoked upon state becoming current in particular instance
+     * @param instance instance which current state is changed
+     * @param theEvent event upon which state becomes current
+     * @param prevState previous current state
+     */
+    void onStateBecomesCurrent(StateMachineInstance<EventType> instance,
+            StateMachineEvent<EventType> theEvent, State<EventType> prevState);
+
+    /**
+     * callback invoked upon other state becoming current in particular instance
+     * @param instance instance which current state is changed
+     * @param theEvent event upon which state becomes current
+     * @param nextState state which becomes current
+     */
+    void onStateIsNoLongerCurrent(StateMachineInstance<EventType> instance,
+            StateMachineEvent<EventType> theEvent, State<EventType> nextState);
+}
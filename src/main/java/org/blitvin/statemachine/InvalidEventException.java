@@ -24,6 +24,24 @@ package org.blitvin.statemachine;
 public class InvalidEventException extends Exception {
 
 	private static final long serialVersionUID = -6589959736381224582L;
+
+        /**
+         * Preallocated exception thrown if current state doesn't accept the event.
+         * It carries no stack trace and is shared, so invalid events, which
+         * may be normal traffic, don't cost creation of exception object.
+         * Use StateMachine.tryTransit() to avoid exception altogether
+         */
+        public static final InvalidEventException NOT_ACCEPTED
+                = new InvalidEventException("event is not accepted by current state", false);
+
+        /**
+         * creates exception without stack trace, cause and suppressed exceptions
+         * @param msg message
+         * @param writableStackTrace false to create stackless exception
+         */
+        protected InvalidEventException(String msg, boolean writableStackTrace) {
+            super(msg, null, false, writableStackTrace);
+        }
         public InvalidEventException(){
             super();
         }
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of build time minimization of FSM (see 
+ * StateMachineBuilder.setMinimization()). Contains sizes of FSM before and 
+ * after minimization and names of merged states. Table size is number of 
+ * (state, event class) cells of transition table, event classes are used by 
+ * table driven FSMs only (COMPILED FSM and StateMachineDefinition), other FSM
+ * types keep transition per event type in each state.
+ * @author blitvin
+ */
+public final class MinimizationReport {
+
+    private final int statesBefore;
+    private final int statesAfter;
+    private final int eventTypes;
+    private final int eventClasses;
+    private final Map<String, String> mergedStates;
+
+    MinimizationReport(int statesBefore, int statesAfter, int eventTypes, int eventClasses,
+            Map<String, String> mergedStates) {
+        this.statesBefore = statesBefore;
+        this.statesAfter = statesAfter;
+        this.eventTypes = eventTypes;
+        this.eventClasses = eventClasses;
+        this.mergedStates = Collections.unmodifiableMap(mergedStates);
+    }
+
+    public int getStatesBefore() {
+        return statesBefore;
+    }
+
+    public int getStatesAfter() {
+        return statesAfter;
+    }
+
+    public int getEventTypes() {
+        return eventTypes;
+    }
+
+    /**
+     * @return number of groups of event types behaving identically in every state
+     */
+    public int getEventClasses() {
+        return eventClasses;
+    }
+
+    public int getTableSizeBefore() {
+        return statesBefore * eventTypes;
+    }
+
+    public int getTableSizeAfter() {
+        return statesAfter * eventClasses;
+    }
+
+    /**
+     * @return map of name of merged state to name of state it is merged to
+     */
+    public Map<String, String> getMergedStates() {
+        return mergedStates;
+    }
+
+    @Override
+    public String toString() {
+        return "states " + statesBefore + " -> " + statesAfter + ", event classes " + eventTypes + " -> " 
+                + eventClasses + ", table size " + getTableSizeBefore() + " -> " + getTableSizeAfter();
+    }
+}
@@ -18,23 +18,36 @@
 package org.blitvin.statemachine;
 
 import java.util.HashMap;
-import java.util.LinkedList;
+import org.blitvin.statemachine.StateMachineBuilder.OVERFLOW_POLICY;
 
 /**
  * MultiInternalEventsStateMachine allows generation multiple internal events
  * during execution of business logic. The events are stored in a queue and 
  * processed sequentially. Handling of original event is finished when all internal
  * events (if any) are processed.
+ * The queue is preallocated ring buffer, its capacity and the behavior upon
+ * overflow (throw exception, drop event or grow the queue) are set by 
+ * StateMachineBuilder.setInternalEventsQueue(). Default is queue of
+ * DEFAULT_QUEUE_CAPACITY events growing if needed.
  * @author blitvin
  * @param <EventType>
  */
-class MultiInternalEventsStateMachine<EventType extends Enum<EventType>> 
+public class MultiInternalEventsStateMachine<EventType extends Enum<EventType>> 
     extends BasicStateMachine<EventType> implements FSMSupportingInternalEvents<EventType>  {
-    LinkedList<StateMachineEvent<EventType>> events2process;
 
-    public MultiInternalEventsStateMachine(HashMap<String,FSMNode<EventType>>nodes, FSMNode<EventType> initial){
-         super(nodes,initial);
-         events2process = new LinkedList<>();
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    final EventRingQueue<EventType> events2process;
+
+    MultiInternalEventsStateMachine(HashMap<String,FSMNode<EventType>>nodes, FSMNode<EventType> initial,
+            Class<EventType> eventTypeClass){
+         this(nodes, initial, eventTypeClass, DEFAULT_QUEUE_CAPACITY, OVERFLOW_POLICY.GROW);
+    }
+
+    MultiInternalEventsStateMachine(HashMap<String,FSMNode<EventType>>nodes, FSMNode<EventType> initial,
+            Class<EventType> eventTypeClass, int queueCapacity, OVERFLOW_POLICY policy){
+         super(nodes,initial,eventTypeClass);
+         events2process = new EventRingQueue<>(queueCapacity, policy);
     }
     
     @Override
@@ -44,16 +57,73 @@ class MultiInternalEventsStateMachine<EventType extends Enum<EventType>>
     
     @Override
     public void transit(StateMachineEvent<EventType> event) throws InvalidEventException {
-        events2process.add(event);
-        do {
-            StateMachineEvent<EventType> nextEvent = events2process.poll();
-            FSMNode<EventType> next = current.nodeToTransitTo(nextEvent);
-            if (next != null) {
-                current.eventOut(event, next);
-                next.eventIn(event, current);
-                setCurrentNode(next);
+        StateMachineEvent<EventType> nextEvent = event;
+        try {
+            do {
+                FSMNode<EventType> next = current.nodeToTransitTo(nextEvent);
+                if (next != null) {
+                    current.eventOut(event, next);
+                    next.eventIn(event, current);
+                    setCurrentNode(next);
+                }
+                nextEvent = events2process.poll();
+            } while (nextEvent != null);
+        } catch (InvalidEventException | RuntimeException e) {
+            events2process.clear(); // rest of the cascade is abandoned
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc} 
+     * Result of the event is returned unless internal event generated during
+     * the processing is rejected, in such case REJECTED is returned and rest of
+     * internal events is discarded
+     */
+    @Override
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        try {
+            TransitStatus retVal = step(event, event);
+            StateMachineEvent<EventType> nextEvent;
+            while ((nextEvent = events2process.poll()) != null) {
+                if (step(nextEvent, event) == TransitStatus.REJECTED) {
+                    events2process.clear();
+                    return TransitStatus.REJECTED;
+                }
             }
-        } while (!events2process.isEmpty());
+            return retVal;
+        } catch (RuntimeException e) {
+            events2process.clear();
+            throw e;
+        }
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * @return number of internal events waiting for processing
+     */
+    public int getInternalQueueSize() {
+        return events2process.size();
+    }
+
+    /**
+     * @return current capacity of internal events queue
+     */
+    public int getInternalQueueCapacity() {
+        return events2process.capacity();
+    }
+
+    /**
+     * @return maximal number of internal events waited in the queue at the same time
+     */
+    public int getInternalQueueHighWaterMark() {
+        return events2process.highWaterMark();
+    }
+
+    /**
+     * @return number of internal events dropped because of queue overflow
+     * (DROP overflow policy)
+     */
+    public long getDroppedInternalEvents() {
+        return events2process.dropped();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * OrthogonalStateMachine is product of independent FSMs (regions) consuming
+ * the same events, e.g. payment and shipping regions of an order. Each event
+ * is dispatched to every region; a region not accepting the event ignores it,
+ * the event is invalid only if none of the regions accepts it. Every region
+ * has its own current state and generation (number of events it processed,
+ * incl. null transitions), combined state is available as StateTuple.
+ * If callbacks of the regions are independent of each other, the machine can
+ * be created with ForkJoinPool: regions then process the event in parallel on
+ * the pool and transit returns once all of them are done, so callbacks must
+ * not share mutable data without synchronization. Otherwise regions process
+ * the event one by one in order of definition, on the caller thread.
+ * Like regular FSMs the machine is not thread safe.
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class OrthogonalStateMachine<EventType extends Enum<EventType>> {
+
+    private final String[] names;
+    private final StateMachine<EventType>[] regions;
+    private final int[] generations;
+    private final TransitStatus[] statuses;
+    private final ForkJoinPool pool;
+    private final RegionTask<EventType>[] tasks;
+    private final DispatchTask<EventType> dispatch;
+    private final Class<EventType> eventTypeClass;
+
+    /**
+     * task processing event in single region, tasks (as well as dispatch 
+     * task) are reinitialized and reused for each event
+     */
+    private static final class RegionTask<EventType extends Enum<EventType>> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final OrthogonalStateMachine<EventType> owner;
+        private final int region;
+        StateMachineEvent<EventType> event;
+
+        RegionTask(OrthogonalStateMachine<EventType> owner, int region) {
+            this.owner = owner;
+            this.region = region;
+        }
+
+        @Override
+        protected void compute() {
+            owner.step(region, event);
+        }
+    }
+
+    private static final class DispatchTask<EventType extends Enum<EventType>> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final RegionTask<EventType>[] tasks;
+
+        DispatchTask(RegionTask<EventType>[] tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            ForkJoinTask.invokeAll(tasks);
+        }
+    }
+
+    /**
+     * creates machine processing regions sequentially
+     * @param regions regions by name, iteration order of the map defines order of regions
+     * @throws BadStateMachineSpecification if there are no regions or regions
+     * have different event types
+     */
+    public OrthogonalStateMachine(Map<String, ? extends StateMachine<EventType>> regions) throws BadStateMachineSpecification {
+        this(regions, null);
+    }
+
+    /**
+     * @param regions regions by name, iteration order of the map defines order of regions
+     * @param pool pool processing regions in parallel, null if regions are 
+     * processed sequentially
+     * @throws BadStateMachineSpecification if there are no regions or regions
+     * have different event types
+     */
+    @SuppressWarnings("unchecked")
+    public OrthogonalStateMachine(Map<String, ? extends StateMachine<EventType>> regions, ForkJoinPool pool)
+            throws BadStateMachineSpecification {
+        if (regions.isEmpty()) {
+            throw new BadStateMachineSpecification("orthogonal FSM requires at least one region");
+        }
+        int size = regions.size();
+        names = new String[size];
+        this.regions = new StateMachine[size];
+        int i = 0;
+        for (Map.Entry<String, ? extends StateMachine<EventType>> entry : regions.entrySet()) {
+            names[i] = entry.getKey();
+            this.regions[i++] = entry.getValue();
+        }
+        eventTypeClass = this.regions[0].getEventTypeClass();
+        for (StateMachine<EventType> region : this.regions) {
+            if (region.getEventTypeClass() != eventTypeClass) {
+                throw new BadStateMachineSpecification("regions of orthogonal FSM must have the same event type");
+            }
+        }
+        generations = new int[size];
+        statuses = new TransitStatus[size];
+        this.pool = size > 1 ? pool : null;
+        if (this.pool != null) {
+            tasks = new RegionTask[size];
+            for (i = 0; i < size; ++i) {
+                tasks[i] = new RegionTask<>(this, i);
+            }
+            dispatch = new DispatchTask<>(tasks);
+        } else {
+            tasks = null;
+            dispatch = null;
+        }
+    }
+
+    void step(int region, StateMachineEvent<EventType> event) {
+        TransitStatus status = regions[region].tryTransit(event);
+        statuses[region] = status;
+        if (status != TransitStatus.REJECTED) {
+            ++generations[region];
+        }
+    }
+
+    /**
+     * dispatches the event to all regions
+     * @param event event to process
+     * @return APPLIED if at least one region changed state, REJECTED if none
+     * of the regions accepted the event, otherwise NULL_TRANSITION or
+     * VETOED_BY_ASPECT (status of the first region not rejecting the event).
+     * Status of particular region is returned by getLastStatus()
+     */
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        if (pool == null) {
+            for (int i = 0; i < regions.length; ++i) {
+                step(i, event);
+            }
+        } else {
+            for (RegionTask<EventType> task : tasks) {
+                task.reinitialize();
+                task.event = event;
+            }
+            dispatch.reinitialize();
+            pool.invoke(dispatch);
+        }
+        TransitStatus retVal = TransitStatus.REJECTED;
+        for (TransitStatus status : statuses) {
+            if (status == TransitStatus.APPLIED) {
+                return status;
+            }
+            if (retVal == TransitStatus.REJECTED) {
+                retVal = status;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * dispatches the event to all regions
+     * @param event event to process
+     * @throws InvalidEventException if none of the regions accepted the event
+     */
+    public void transit(StateMachineEvent<EventType> event) throws InvalidEventException {
+        if (tryTransit(event) == TransitStatus.REJECTED) {
+            throw InvalidEventException.NOT_ACCEPTED;
+        }
+    }
+
+    public void transit(EventType event) throws InvalidEventException {
+        transit(EnumEvent.of(event));
+    }
+
+    /**
+     * @return true if at least one region accepts event of this type in its current state
+     */
+    public boolean canAccept(EventType eventType) {
+        for (StateMachine<EventType> region : regions) {
+            if (region.canAccept(eventType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if all regions are in final state
+     */
+    public boolean isInFinalState() {
+        for (StateMachine<EventType> region : regions) {
+            if (!region.isInFinalState()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return snapshot of current states and generations of all regions
+     */
+    public StateTuple getCurrentStates() {
+        String[] states = new String[regions.length];
+        for (int i = 0; i < regions.length; ++i) {
+            states[i] = regions[i].getNameOfCurrentState();
+        }
+        return new StateTuple(names, states, generations.clone());
+    }
+
+    public int getRegionCount() {
+        return regions.length;
+    }
+
+    public String getRegionName(int region) {
+        return names[region];
+    }
+
+    public StateMachine<EventType> getRegion(int region) {
+        return regions[region];
+    }
+
+    /**
+     * @return region with given name, null if there is no such region
+     */
+    public StateMachine<EventType> getRegion(String name) {
+        for (int i = 0; i < names.length; ++i) {
+            if (names[i].equals(name)) {
+                return regions[i];
+            }
+        }
+        return null;
+    }
+
+    public int getGeneration(int region) {
+        return generations[region];
+    }
+
+    /**
+     * @return status of last event processed by the region, null if there was no event yet
+     */
+    public TransitStatus getLastStatus(int region) {
+        return statuses[region];
+    }
+
+    public Class<EventType> getEventTypeClass() {
+        return eventTypeClass;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * Typed key of FSM property. Keys are defined on StateMachineBuilder and each
+ * key is mapped to slot of property array in FSMs built by the builder, so 
+ * access to the property by key is plain array access. The property remains
+ * accessible via untyped getProperty()/setProperty() by its name
+ * @author blitvin
+ * @param <T> type of the property value
+ */
+public final class PropertyKey<T> {
+
+    private final Object name;
+    private final Class<T> type;
+    final int slot;
+
+    PropertyKey(Object name, Class<T> type, int slot) {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * @return name of the property used by untyped property API
+     */
+    public Object getName() {
+        return name;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + type.getSimpleName();
+    }
+}
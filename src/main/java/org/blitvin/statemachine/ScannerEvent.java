@@ -0,0 +1,60 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * Event passed by StateMachineScanner to state callbacks. Scanner reuses
+ * single event object, so callbacks must not keep reference to the event 
+ * after returning, copy character and position instead.
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class ScannerEvent<EventType extends Enum<EventType>> implements StateMachineEvent<EventType> {
+
+    private EventType eventType;
+    private char value;
+    private long position;
+
+    ScannerEvent() {
+    }
+
+    void set(EventType eventType, char value, long position) {
+        this.eventType = eventType;
+        this.value = value;
+        this.position = position;
+    }
+
+    @Override
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return character (or unsigned byte value if scanner is fed by bytes)
+     */
+    public char value() {
+        return value;
+    }
+
+    /**
+     * @return position of the character in the input fed to the scanner
+     */
+    public long getPosition() {
+        return position;
+    }
+}
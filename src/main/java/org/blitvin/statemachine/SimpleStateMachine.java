@@ -36,8 +36,9 @@ import java.util.HashMap;
     extends BasicStateMachine<EventType> implements FSMSupportingInternalEvents<EventType> {
     StateMachineEvent<EventType> event2process;
      
-    public SimpleStateMachine(HashMap<String,FSMNode<EventType>>nodes, FSMNode<EventType> initial){
-         super(nodes,initial);
+    public SimpleStateMachine(HashMap<String,FSMNode<EventType>>nodes, FSMNode<EventType> initial,
+            Class<EventType> eventTypeClass){
+         super(nodes,initial,eventTypeClass);
          event2process = null;
      }
 
@@ -63,4 +64,24 @@ import java.util.HashMap;
             }
         } while (event2process != null);
     }
+
+    /**
+     * {@inheritDoc} 
+     * Result of the event is returned unless internal event generated during
+     * the processing is rejected, in such case REJECTED is returned
+     */
+    @Override
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        event2process = null;
+        TransitStatus retVal = step(event, event);
+        while (event2process != null) {
+            StateMachineEvent<EventType> nextEvent = event2process;
+            event2process = null;
+            if (step(nextEvent, event) == TransitStatus.REJECTED) {
+                event2process = null;
+                return TransitStatus.REJECTED;
+            }
+        }
+        return retVal;
+    }
 }
\ No newline at end of file
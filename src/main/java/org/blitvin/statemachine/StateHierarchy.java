@@ -0,0 +1,145 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Resolves hierarchy of states defined by property "parent" of states (see
+ * StateMachineBuilder.setParentState()). State inherits transitions of its
+ * parent for events it doesn't handle itself; inherited transitions are copied
+ * into the state's transitions map, so the FSM (and TransitionTable compiled
+ * from it) processes events exactly as flat FSM does.
+ * Transition from state S to state T leaves S and its ancestors up to, but not
+ * including, least common proper ancestor of S and T, then enters ancestors of
+ * T below that ancestor (outermost first) and T itself. Those sequences are
+ * computed here for every pair of states, so transition doesn't walk the
+ * hierarchy.
+ * @author blitvin
+ */
+final class StateHierarchy {
+
+    private StateHierarchy() {
+    }
+
+    static <EventType extends Enum<EventType>> void resolve(BasicStateMachine<EventType> fsm,
+            Map<?, ? extends Map<?, ?>> initializer) throws BadStateMachineSpecification {
+        HashMap<FSMNode<EventType>, FSMNode<EventType>> parents = new HashMap<>();
+        int size = 0;
+        for (FSMNode<EventType> node : fsm.nodes.values()) {
+            node.clearInheritedTransitions();
+            size = Math.max(size, node.getOrdinal() + 1);
+            Map<?, ?> attributes = initializer.get(node);
+            Object parentName = attributes == null ? null : attributes.get(StateMachineBuilder.PARENT_STATE);
+            if (parentName != null) {
+                FSMNode<EventType> parent = fsm.getNodeByName(parentName.toString());
+                if (parent == null) {
+                    throw new BadStateMachineSpecification("Can't find parent state " + parentName
+                            + " of state " + node.getName());
+                }
+                parents.put(node, parent);
+            }
+        }
+        if (parents.isEmpty()) {
+            for (FSMNode<EventType> node : fsm.nodes.values()) {
+                node.setHierarchy(null, null, null);
+            }
+            return;
+        }
+
+        final HashMap<FSMNode<EventType>, FSMNode<EventType>[]> ancestors = new HashMap<>();
+        for (FSMNode<EventType> node : fsm.nodes.values()) {
+            ancestors.put(node, ancestorsOf(node, parents));
+        }
+        // parents are processed before their children, so inherited transitions propagate down
+        ArrayList<FSMNode<EventType>> ordered = new ArrayList<>(fsm.nodes.values());
+        Collections.sort(ordered, new Comparator<FSMNode<EventType>>() {
+            @Override
+            public int compare(FSMNode<EventType> first, FSMNode<EventType> second) {
+                return Integer.compare(ancestors.get(first).length, ancestors.get(second).length);
+            }
+        });
+        EventType[] events = fsm.eventTypeClass.getEnumConstants();
+        for (FSMNode<EventType> node : ordered) {
+            FSMNode<EventType> parent = parents.get(node);
+            if (parent != null) {
+                node.inheritTransitions(parent, events);
+            }
+        }
+
+        HashMap<FSMNode<EventType>, HashSet<FSMNode<EventType>>> ancestorSets = new HashMap<>();
+        for (Map.Entry<FSMNode<EventType>, FSMNode<EventType>[]> entry : ancestors.entrySet()) {
+            ancestorSets.put(entry.getKey(), new HashSet<>(Arrays.asList(entry.getValue())));
+        }
+        for (FSMNode<EventType> node : fsm.nodes.values()) {
+            FSMNode<EventType>[] chain = ancestors.get(node);
+            if (chain.length == 0) {
+                node.setHierarchy(null, null, null);
+                continue;
+            }
+            // paths to/from different states share arrays, only length differs
+            FSMNode<EventType>[][] exits = new FSMNode[chain.length + 1][];
+            FSMNode<EventType>[][] entries = new FSMNode[chain.length + 1][];
+            for (int i = 0; i <= chain.length; ++i) {
+                exits[i] = Arrays.copyOf(chain, i);
+                entries[i] = reverse(exits[i]);
+            }
+            FSMNode<EventType>[][] exitPaths = new FSMNode[size][];
+            FSMNode<EventType>[][] entryPaths = new FSMNode[size][];
+            Arrays.fill(exitPaths, exits[chain.length]);
+            Arrays.fill(entryPaths, entries[chain.length]);
+            for (FSMNode<EventType> other : fsm.nodes.values()) {
+                HashSet<FSMNode<EventType>> otherAncestors = ancestorSets.get(other);
+                int below = 0;
+                while (below < chain.length && !otherAncestors.contains(chain[below])) {
+                    ++below;
+                }
+                exitPaths[other.getOrdinal()] = exits[below];
+                entryPaths[other.getOrdinal()] = entries[below];
+            }
+            node.setHierarchy(parents.get(node), exitPaths, entryPaths);
+        }
+    }
+
+    /**
+     * @return proper ancestors of the node, nearest first
+     */
+    private static <EventType extends Enum<EventType>> FSMNode<EventType>[] ancestorsOf(FSMNode<EventType> node,
+            Map<FSMNode<EventType>, FSMNode<EventType>> parents) throws BadStateMachineSpecification {
+        ArrayList<FSMNode<EventType>> retVal = new ArrayList<>();
+        for (FSMNode<EventType> cur = parents.get(node); cur != null; cur = parents.get(cur)) {
+            if (cur == node || retVal.size() > parents.size()) {
+                throw new BadStateMachineSpecification("cycle in hierarchy of states involving state " + node.getName());
+            }
+            retVal.add(cur);
+        }
+        return retVal.toArray(new FSMNode[retVal.size()]);
+    }
+
+    private static <EventType extends Enum<EventType>> FSMNode<EventType>[] reverse(FSMNode<EventType>[] path) {
+        FSMNode<EventType>[] retVal = Arrays.copyOf(path, path.length);
+        Collections.reverse(Arrays.asList(retVal));
+        return retVal;
+    }
+}
@@ -36,6 +36,58 @@ public interface StateMachine<EventType extends Enum<EventType>> extends FSMComm
      */
     void transit(StateMachineEvent<EventType> event) throws InvalidEventException;
 
+    /**
+     * transit to new state according to event without payload. Unlike 
+     * transit(StateMachineEvent) caller doesn't need to create event object,
+     * cached EnumEvent object is passed to the state callbacks
+     *
+     * @param event type of the event
+     * @throws InvalidEventException thrown if state machine doesn't define
+     * transition for this type of event
+     */
+    void transit(EventType event) throws InvalidEventException;
+
+    /**
+     * same as transit(EventType) with event type given by ordinal of the enum
+     * constant
+     *
+     * @param eventOrdinal ordinal of event type
+     * @throws InvalidEventException thrown if ordinal doesn't correspond to 
+     * any event type or state machine doesn't define transition for the event type
+     */
+    void transit(int eventOrdinal) throws InvalidEventException;
+
+    /**
+     * transit to new state according to event, reporting invalid event by
+     * return value instead of exception. Meant for applications where 
+     * events not accepted by current state are normal traffic.
+     *
+     * @param event new event
+     * @return outcome of the transition
+     */
+    TransitStatus tryTransit(StateMachineEvent<EventType> event);
+
+    /**
+     * transit sequentially on events events[off] ... events[off + len - 1].
+     * Processing stops on first event yielding exception, result reports
+     * number of applied events and index of failed one. For wrappers
+     * dispatching events to other thread (e.g. ConcurrentStateMachine)
+     * the batch is passed as single unit, so cost of hand off is paid once
+     * per batch
+     *
+     * @param events array of events
+     * @param off index of first event to process
+     * @param len number of events to process
+     * @return result of the batch processing
+     */
+    BatchTransitResult transitAll(StateMachineEvent<EventType>[] events, int off, int len);
+
+    /**
+     *
+     * @return enum class of event types accepted by the state machine
+     */
+    Class<EventType> getEventTypeClass();
+
     /**
      *
      * @return true if state machine is in final state i.e. current state marked
@@ -21,6 +21,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is a main way to obtain FSM object. Factories internally use this class
@@ -41,12 +43,22 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
      */
     public static enum FSM_TYPES {
 
-        BASIC, SIMPLE, MULTI_INTERNAL_EVENTS, ASPECT
+        BASIC, SIMPLE, MULTI_INTERNAL_EVENTS, ASPECT, COMPILED
     };
 
     public static enum TRANSITION_TYPE {
 
-        BASIC, NULL, CUSTOMIZED
+        BASIC, NULL, CUSTOMIZED, GUARDED
+    }
+
+    /**
+     * behavior of internal events queue of MULTI_INTERNAL_EVENTS FSM when
+     * the queue is full: THROW - generateInternalEvent throws InvalidEventException,
+     * DROP - the event is discarded, GROW - capacity of the queue is doubled
+     */
+    public static enum OVERFLOW_POLICY {
+
+        THROW, DROP, GROW
     }
 
     static class CopyStatesFactory<EventType extends Enum<EventType>> implements FSMStateFactory<EventType> {
@@ -87,6 +99,24 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
      * factory set in FSM global properties
      */
     public static final String TARGET_STATE = "toState";
+    /**
+     * property of state holding name of its parent state
+     */
+    public static final String PARENT_STATE = "parent";
+    /**
+     * FSM property holding StateTimeouts of the FSM, set only if at least one
+     * state has timeout
+     */
+    public static final String STATE_TIMEOUTS_PROPERTY = "stateTimeouts";
+    /**
+     * state property naming event sent upon state timeout, used along with
+     * STATE_TIMEOUT by XML and annotation based definitions
+     */
+    public static final String STATE_TIMEOUT_EVENT = "timeoutEvent";
+    /**
+     * state property holding state timeout in milliseconds
+     */
+    public static final String STATE_TIMEOUT = "timeout";
 
     private static enum CURRENTLY_CONSTRUCTED_TRANSITION {
 
@@ -104,14 +134,29 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
     private FSMNode<EventType> initialNode;
     private CURRENTLY_CONSTRUCTED_TRANSITION curConstructedTransition = CURRENTLY_CONSTRUCTED_TRANSITION.NONE;
     private FSM_TYPES retValType;
+    private int internalQueueCapacity = MultiInternalEventsStateMachine.DEFAULT_QUEUE_CAPACITY;
+    private OVERFLOW_POLICY internalQueuePolicy = OVERFLOW_POLICY.GROW;
+    private boolean minimize = false;
+    private boolean lazyStates = false;
+    private MinimizationReport minimizationReport = null;
+    private final LinkedHashMap<Object, PropertyKey<?>> propertyKeys = new LinkedHashMap<>();
+    private final LinkedHashMap<String, StateTimeouts.Timeout<EventType>> stateTimeouts = new LinkedHashMap<>();
 
     private void setAttributes() {
+        storeAttributes();
+        curAttributes = new HashMap<>();
+    }
+
+    /**
+     * stores attributes of currently constructed node or transition, those 
+     * still can be amended, so builder can build FSM several times
+     */
+    private void storeAttributes() {
         if (curConstructedTransition == CURRENTLY_CONSTRUCTED_TRANSITION.NONE) {
             attributes.put(curNode, curAttributes);
         } else {
             attributes.put(curTransition, curAttributes);
         }
-        curAttributes = new HashMap<>();
     }
 
     public static final String STATE_FACTORY_IN_GLOBAL_PROPERTIES = "globalFactory";
@@ -123,7 +168,7 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
             throw new BadStateMachineSpecification("provided class is not an enum");
         }
         this.eventTypeClass = eventTypeClass;
-        nodes = new HashMap<>();
+        nodes = new LinkedHashMap<>();
         curAttributes = new HashMap<>();
         attributes = new HashMap<>();
         if (type == FSM_TYPES.ASPECT) {
@@ -155,6 +200,48 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
         return this;
     }
 
+    /**
+     * makes current state child of another state: the state inherits transitions
+     * of the parent for events it has no transitions for (state with default 
+     * transition inherits nothing), and callbacks of the parent's State object 
+     * are invoked when control enters or leaves the parent's subtree
+     * @param parentName name of the parent state, it can be defined later
+     * @return this builder
+     * @throws BadStateMachineSpecification if no state is defined yet
+     */
+    public StateMachineBuilder<EventType> setParentState(String parentName) throws BadStateMachineSpecification {
+        if (curNode == null) {
+            throw new BadStateMachineSpecification("add node before setting its parent");
+        }
+        HashMap<Object, Object> nodeAttributes = curConstructedTransition == CURRENTLY_CONSTRUCTED_TRANSITION.NONE
+                ? curAttributes : attributes.get(curNode);
+        nodeAttributes.put(PARENT_STATE, parentName);
+        return this;
+    }
+
+    /**
+     * defines timeout of current state: if concurrent FSM (ConcurrentStateMachine,
+     * pooled FSM) stays in the state for the delay, the event is sent to it. The
+     * timer starts when FSM enters the state and is cancelled when FSM moves to
+     * other state
+     * @param event event sent upon timeout
+     * @param delay timeout
+     * @param unit unit of the delay
+     * @return this builder
+     * @throws BadStateMachineSpecification if no state is defined yet or delay
+     * is not positive
+     */
+    public StateMachineBuilder<EventType> setStateTimeout(EventType event, long delay, TimeUnit unit) throws BadStateMachineSpecification {
+        if (curNode == null) {
+            throw new BadStateMachineSpecification("add node before setting its timeout");
+        }
+        if (event == null || delay <= 0) {
+            throw new BadStateMachineSpecification("timeout of state " + curNode.getName() + " requires event and positive delay");
+        }
+        stateTimeouts.put(curNode.getName(), new StateTimeouts.Timeout<>(event, delay, unit));
+        return this;
+    }
+
     public StateMachineBuilder<EventType> addState(String name)
             throws BadStateMachineSpecification {
         addState(name, defaultProperties);
@@ -197,6 +284,8 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
         if ((properties & STATE_PROPERTIES_ASPECT) != 0) {
             curNode = new AspectNode<>(curNode);
         }
+        FSMNode<EventType> replaced = nodes.get(name);
+        curNode.setOrdinal(replaced == null ? nodes.size() : replaced.getOrdinal());
         nodes.put(name, curNode);
         return this;
     }
@@ -253,6 +342,9 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
             case CUSTOMIZED:
                 curTransition = new CustomizedLogicTransition<>();
                 break;
+            case GUARDED:
+                curTransition = new GuardedTransition<>();
+                break;
         }
     }
 
@@ -274,6 +366,37 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
         return addDefaultTransition(TRANSITION_TYPE.BASIC).addProperty(TARGET_STATE, transitionTarget);
     }
 
+    /**
+     * adds (guard, target) pair to currently constructed transition, which must be
+     * of type GUARDED. Guards are evaluated in order they are added, property toState
+     * of the transition (if set) is target used when none of the guards accepts the event
+     * @param guard predicate over event and FSM
+     * @param transitionTarget name of the state to transit to if the guard accepts the event
+     * @return this builder
+     * @throws BadStateMachineSpecification if current transition is not guarded one
+     */
+    public StateMachineBuilder<EventType> addGuard(TransitionGuard<EventType> guard, String transitionTarget) throws BadStateMachineSpecification {
+        if (!(curTransition instanceof GuardedTransition)) {
+            throw new BadStateMachineSpecification("guards can be added only to transition of type GUARDED");
+        }
+        if (guard == null || transitionTarget == null) {
+            throw new BadStateMachineSpecification("guard and its target state must be provided");
+        }
+        ((GuardedTransition<EventType>) curTransition).addGuard(guard, transitionTarget);
+        return this;
+    }
+
+    /**
+     * same as addGuard(TransitionGuard,String), guard object is created by default constructor of the class
+     */
+    public StateMachineBuilder<EventType> addGuard(Class<? extends TransitionGuard> guardClass, String transitionTarget) throws BadStateMachineSpecification {
+        try {
+            return addGuard((TransitionGuard<EventType>) guardClass.newInstance(), transitionTarget);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new BadStateMachineSpecification("can't instantiate guard " + guardClass.getName(), e);
+        }
+    }
+
     public StateMachineBuilder<EventType> addProperty(Object name, Object value) {
         curAttributes.put(name, value);
         return this;
@@ -299,87 +422,252 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
         // TBD refactor this
         switch (retValType) {
             case BASIC:
-                retVal = new BasicStateMachine(nodes, initialNode);
+                retVal = new BasicStateMachine(nodes, initialNode, eventTypeClass);
                 break;
             case SIMPLE:
-                retVal = new SimpleStateMachine(nodes, initialNode);
+                retVal = new SimpleStateMachine(nodes, initialNode, eventTypeClass);
                 break;
             case MULTI_INTERNAL_EVENTS:
-                retVal = new MultiInternalEventsStateMachine(nodes, initialNode);
+                retVal = new MultiInternalEventsStateMachine(nodes, initialNode, eventTypeClass,
+                        internalQueueCapacity, internalQueuePolicy);
                 break;
             case ASPECT:
-                retVal = new AspectEnabledStateMachine(nodes, initialNode);
+                retVal = new AspectEnabledStateMachine(nodes, initialNode, eventTypeClass);
+                break;
+            case COMPILED:
+                retVal = new CompiledStateMachine(nodes, initialNode, eventTypeClass);
                 break;
             default:
                 throw new BadStateMachineSpecification("This fsm type is not yet implemented");
 
         }
-        setAttributes();
-        HashMap<Object, Object> fsmAttributes = attributes.get(null);
-        boolean useGlobalFactory = false;
-        FSMStateFactory<EventType> globalFactory = null;
-        if (fsmAttributes.containsKey(STATE_FACTORY_IN_GLOBAL_PROPERTIES)) {
-            try {
-                globalFactory = (FSMStateFactory<EventType>) fsmAttributes.get(STATE_FACTORY_IN_GLOBAL_PROPERTIES);
-                useGlobalFactory = true;
-            } catch (ClassCastException e) {
-                // for now ignore attribute - no way to output warning
+        initializeMachine(retVal, factory, overrideDefinedStates, lazyStates);
+        if (minimize) {
+            minimizationReport = StateMinimizer.minimize((BasicStateMachine<EventType>) retVal);
+            if (retVal instanceof CompiledStateMachine) {
+                ((CompiledStateMachine<EventType>) retVal).compile(true);
             }
         }
+        return retVal;
+    }
+
+    private void initializeMachine(StateMachineDriver retVal, FSMStateFactory<EventType> factory,
+            boolean overrideDefinedStates, boolean lazy) throws BadStateMachineSpecification {
+        storeAttributes();
+        HashMap<Object, Object> fsmAttributes = attributes.get(null);
+        LinkedHashMap<String, StateTimeouts.Timeout<EventType>> timeouts = collectStateTimeouts();
+        if (timeouts.isEmpty()) {
+            fsmAttributes.remove(STATE_TIMEOUTS_PROPERTY);
+        } else {
+            fsmAttributes.put(STATE_TIMEOUTS_PROPERTY, new StateTimeouts<>(timeouts));
+        }
 
         //populate state objects
         for (HashMap.Entry<String, FSMNode<EventType>> entry : nodes.entrySet()) {
             FSMNode<EventType> theNode = entry.getValue();
-            HashMap<Object, Object> nodeAttributes = attributes.get(entry.getValue());
+            if (theNode.hasState() && !overrideDefinedStates) {
+                continue;
+            }
+            if (lazy && !theNode.hasState() && theNode != initialNode && !needsStateAtInitialization(theNode)) {
+                theNode.setStateFactory(new DeferredStateFactory<>(factory, new HashMap<>(fsmAttributes)));
+                continue;
+            }
+            State<EventType> state = createState(entry.getKey(), attributes.get(theNode), factory,
+                    overrideDefinedStates, fsmAttributes, theNode.hasState());
+            if (state != null) {
+                theNode.setState(state);
+            }
+        }
 
-            String stateName = entry.getKey();
+        retVal.definePropertyKeys(propertyKeys.values().toArray(new PropertyKey<?>[propertyKeys.size()]));
+        retVal.completeInitialization(attributes);
+    }
 
-            if (factory != null
-                    && (theNode.getState() == null || overrideDefinedStates)) {
-                trySetStateFromFactory(factory, theNode, stateName, nodeAttributes);
+    /**
+     * merges timeouts set by setStateTimeout() with ones defined by
+     * STATE_TIMEOUT_EVENT and STATE_TIMEOUT state properties
+     */
+    private LinkedHashMap<String, StateTimeouts.Timeout<EventType>> collectStateTimeouts()
+            throws BadStateMachineSpecification {
+        LinkedHashMap<String, StateTimeouts.Timeout<EventType>> retVal = new LinkedHashMap<>(stateTimeouts);
+        for (HashMap.Entry<String, FSMNode<EventType>> entry : nodes.entrySet()) {
+            HashMap<Object, Object> nodeAttributes = attributes.get(entry.getValue());
+            if (nodeAttributes == null || retVal.containsKey(entry.getKey())) {
+                continue;
             }
-
-            // try retreive state from fsm attributes
-            if (theNode.getState() == null || overrideDefinedStates) {
-                if (fsmAttributes.containsKey(stateName + STATE_IN_GLOBAL_PROPERTIES_SUFFIX)) {
-                    try {
-                        theNode.setState((State) fsmAttributes.get(stateName + STATE_FACTORY_IN_GLOBAL_PROPERTIES));
-                        continue;
-                    } catch (ClassCastException e) {
-                        throw new BadStateMachineSpecification("Attempt to get state from FSM properties failed: object doesn't implement State interface");
-                    }
-                }
-                if (useGlobalFactory) {
-                    trySetStateFromFactory(globalFactory, theNode, stateName, nodeAttributes);
+            Object event = nodeAttributes.get(STATE_TIMEOUT_EVENT);
+            Object timeout = nodeAttributes.get(STATE_TIMEOUT);
+            if (event == null && timeout == null) {
+                continue;
+            }
+            try {
+                EventType eventType = eventTypeClass.isInstance(event) ? (EventType) event
+                        : (EventType) Enum.valueOf(eventTypeClass, event.toString());
+                long millis = timeout instanceof Number ? ((Number) timeout).longValue()
+                        : Long.parseLong(timeout.toString().trim());
+                if (millis <= 0) {
+                    throw new BadStateMachineSpecification("timeout of state " + entry.getKey() + " must be positive");
                 }
+                retVal.put(entry.getKey(), new StateTimeouts.Timeout<>(eventType, millis, TimeUnit.MILLISECONDS));
+            } catch (NullPointerException | IllegalArgumentException e) {
+                throw new BadStateMachineSpecification("state " + entry.getKey() + " requires both "
+                        + STATE_TIMEOUT_EVENT + " and " + STATE_TIMEOUT + " properties with valid values", e);
             }
+        }
+        return retVal;
+    }
 
-            // fallback to try to get state from class attribute
-            if (theNode.getState() == null) {
-                Class<? extends State> cl = null;
-                try {
-                    if ((cl = (Class<? extends State>) nodeAttributes.get(STATE_CLASS_PROPERTY)) == null) {
-                        throw new BadStateMachineSpecification("Can't figure out how to construct State " + stateName);
-                    }
-                } catch (ClassCastException e) {
-                    throw new BadStateMachineSpecification("bad class in attribute " + STATE_CLASS_PROPERTY + " for state " + stateName);
+    /**
+     * creates State object for the state, looking in order at factory passed
+     * to build(), FSM global properties and class attribute of the state
+     * @return State object or null if the state has State object already and
+     * none of the sources provided new one
+     */
+    private static <EventType extends Enum<EventType>> State<EventType> createState(String stateName,
+            HashMap<Object, Object> nodeAttributes, FSMStateFactory<EventType> factory, boolean overrideDefinedStates,
+            HashMap<Object, Object> fsmAttributes, boolean hasDefinedState) throws BadStateMachineSpecification {
+        State<EventType> retVal = null;
+        if (factory != null) {
+            retVal = factory.get(stateName, nodeAttributes);
+        }
+
+        // try retreive state from fsm attributes
+        if (retVal == null || overrideDefinedStates) {
+            if (fsmAttributes.containsKey(stateName + STATE_IN_GLOBAL_PROPERTIES_SUFFIX)) {
+                Object candidate = fsmAttributes.get(stateName + STATE_IN_GLOBAL_PROPERTIES_SUFFIX);
+                if (!(candidate instanceof State)) {
+                    throw new BadStateMachineSpecification("Attempt to get state from FSM properties failed: object doesn't implement State interface");
                 }
-                final Class[] noArgsCls = new Class[0];
-                try {
-                    Constructor<? extends State> ctr = cl.getConstructor(noArgsCls);
-                    theNode.setState(ctr.newInstance(new Object[0]));
-                } catch (NoSuchMethodException | SecurityException ex) {
-                    throw new BadStateMachineSpecification("Problem getting no-args constructor for state " + stateName + ":" + cl.getSimpleName() + ":" + ex.toString());
-                } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                    throw new BadStateMachineSpecification("Problem creating instance of state for " + stateName + ":" + ex.toString());
+                return (State<EventType>) candidate;
+            }
+            Object globalFactory = fsmAttributes.get(STATE_FACTORY_IN_GLOBAL_PROPERTIES);
+            if (globalFactory instanceof FSMStateFactory) { // otherwise ignore attribute - no way to output warning
+                State<EventType> candidate = ((FSMStateFactory<EventType>) globalFactory).get(stateName, nodeAttributes);
+                if (candidate != null) {
+                    retVal = candidate;
                 }
             }
         }
 
-        retVal.completeInitialization(attributes);
+        // fallback to try to get state from class attribute
+        if (retVal == null && !hasDefinedState) {
+            Class<? extends State> cl = null;
+            try {
+                if ((cl = (Class<? extends State>) nodeAttributes.get(STATE_CLASS_PROPERTY)) == null) {
+                    throw new BadStateMachineSpecification("Can't figure out how to construct State " + stateName);
+                }
+            } catch (ClassCastException e) {
+                throw new BadStateMachineSpecification("bad class in attribute " + STATE_CLASS_PROPERTY + " for state " + stateName);
+            }
+            final Class[] noArgsCls = new Class[0];
+            try {
+                Constructor<? extends State> ctr = cl.getConstructor(noArgsCls);
+                retVal = ctr.newInstance(new Object[0]);
+            } catch (NoSuchMethodException | SecurityException ex) {
+                throw new BadStateMachineSpecification("Problem getting no-args constructor for state " + stateName + ":" + cl.getSimpleName() + ":" + ex.toString());
+            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+                throw new BadStateMachineSpecification("Problem creating instance of state for " + stateName + ":" + ex.toString());
+            }
+        }
         return retVal;
     }
 
+    /**
+     * customized transitions are bound to State object of their state upon
+     * initialization, so State object of such state can't be created lazily
+     */
+    private boolean needsStateAtInitialization(FSMNode<EventType> node) {
+        if (node.getDefaultTransition() instanceof CustomizedLogicTransition) {
+            return true;
+        }
+        for (Object event : eventTypeClass.getEnumConstants()) {
+            if (node.getTransition((EventType) event) instanceof CustomizedLogicTransition) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * creates State object when lazily instantiated state is used first time
+     */
+    static class DeferredStateFactory<EventType extends Enum<EventType>> implements FSMStateFactory<EventType> {
+
+        private final FSMStateFactory<EventType> factory;
+        private final HashMap<Object, Object> fsmAttributes;
+
+        DeferredStateFactory(FSMStateFactory<EventType> factory, HashMap<Object, Object> fsmAttributes) {
+            this.factory = factory;
+            this.fsmAttributes = fsmAttributes;
+        }
+
+        @Override
+        public State<EventType> get(String state, HashMap<Object, Object> initializers) {
+            try {
+                return createState(state, initializers, factory, false, fsmAttributes, false);
+            } catch (BadStateMachineSpecification e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * sets capacity and overflow policy of internal events queue, relevant
+     * for MULTI_INTERNAL_EVENTS FSM only
+     * @param capacity initial capacity of the queue
+     * @param policy what to do if internal event is generated and the queue is full
+     * @return this builder
+     * @throws BadStateMachineSpecification if capacity is not positive
+     */
+    public StateMachineBuilder<EventType> setInternalEventsQueue(int capacity, OVERFLOW_POLICY policy)
+            throws BadStateMachineSpecification {
+        if (capacity < 1) {
+            throw new BadStateMachineSpecification("internal events queue capacity must be positive");
+        }
+        internalQueueCapacity = capacity;
+        internalQueuePolicy = policy;
+        return this;
+    }
+
+    /**
+     * turns on build time minimization: equivalent states which don't implement
+     * transition callbacks are merged into single state (names of merged states
+     * remain valid and refer to the remaining state), and table driven FSMs
+     * (COMPILED, definitions) share table column among event types behaving
+     * identically in every state. See getMinimizationReport() for results
+     * @param enabled true to minimize FSMs built by this builder
+     * @return this builder
+     */
+    public StateMachineBuilder<EventType> setMinimization(boolean enabled) {
+        minimize = enabled;
+        return this;
+    }
+
+    /**
+     * turns on/off lazy creation of State objects. If it is on, State objects 
+     * which builder creates itself (by factory, from FSM properties or by
+     * class attribute) are created and attached to the FSM when the state is
+     * entered or queried first time instead of at build time. Initial state
+     * and states with customized transitions are created at build time 
+     * regardless. Failure to create lazily instantiated State is reported by
+     * IllegalStateException. Definitions (buildDefinition()) always create 
+     * State objects at build time
+     * @param lazy true to defer creation of State objects
+     * @return this builder
+     */
+    public StateMachineBuilder<EventType> setLazyStates(boolean lazy) {
+        lazyStates = lazy;
+        return this;
+    }
+
+    /**
+     * @return report of minimization performed by last build, null if 
+     * minimization is not turned on or nothing is built yet
+     */
+    public MinimizationReport getMinimizationReport() {
+        return minimizationReport;
+    }
+
     public StateMachineBuilder<EventType> addFSMProperties(HashMap<Object, Object> fsmProperties) {
         attributes.get(null).putAll(fsmProperties);
         return this;
@@ -401,6 +689,43 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
         attributes.put(null, fsmProperties);
     }
 
+    /**
+     * defines typed key for FSM property. FSMs built by this builder keep 
+     * value of the property in array slot, states access it by 
+     * FSMStateView.get()/set() without map lookup. Initial value can be set by
+     * addFSMProperty(name, value). Defining the same name again returns 
+     * existing key
+     * @param name name of the property, used by untyped property API
+     * @param type type of the property value
+     * @return key of the property
+     * @throws BadStateMachineSpecification if name is null or property is
+     * already defined with different type
+     */
+    public <T> PropertyKey<T> definePropertyKey(Object name, Class<T> type) throws BadStateMachineSpecification {
+        if (name == null) {
+            throw new BadStateMachineSpecification("property key name can't be null");
+        }
+        PropertyKey<?> existing = propertyKeys.get(name);
+        if (existing != null) {
+            if (existing.getType() != type) {
+                throw new BadStateMachineSpecification("property " + name + " is already defined with type "
+                        + existing.getType().getName());
+            }
+            return (PropertyKey<T>) existing;
+        }
+        PropertyKey<T> retVal = new PropertyKey<>(name, type, propertyKeys.size());
+        propertyKeys.put(name, retVal);
+        return retVal;
+    }
+
+    /**
+     * @param name name of the property
+     * @return key defined by definePropertyKey(), null if there is no such key
+     */
+    public PropertyKey<?> getPropertyKey(Object name) {
+        return propertyKeys.get(name);
+    }
+
     public StateMachineBuilder<EventType> addFSMProperty(Object name, Object value) {
         attributes.get(null).put(name, value);
         return this;
@@ -437,6 +762,30 @@ public class StateMachineBuilder<EventType extends Enum<EventType>> {
             throws BadStateMachineSpecification {
         return buildImpl(factory, overrideDefinedStates);
     }
+    /**
+     * creates immutable FSM definition, which produces lightweight FSM instances
+     * sharing states and transitions of the definition. Regardless of FSM type
+     * specified for the builder, instances behave as BASIC FSM; ASPECT type 
+     * and customized transitions are not supported. Guards of guarded 
+     * transitions are passed the instance processing the event
+     * @return FSM definition
+     * @throws BadStateMachineSpecification 
+     */
+    public StateMachineDefinition<EventType> buildDefinition() throws BadStateMachineSpecification {
+        if (retValType == FSM_TYPES.ASPECT) {
+            throw new BadStateMachineSpecification("State machine definition doesn't support aspects");
+        }
+        if (initialNode == null) {
+            throw new BadStateMachineSpecification("Initial state is not defined");
+        }
+        BasicStateMachine<EventType> prototype = new BasicStateMachine<>(nodes, initialNode, eventTypeClass);
+        initializeMachine(prototype, null, true, false);
+        if (minimize) {
+            minimizationReport = StateMinimizer.minimize(prototype);
+        }
+        return new StateMachineDefinition<>(prototype, eventTypeClass, minimize);
+    }
+
     /**
      * creates new FSM
      * @return fully formed FSM
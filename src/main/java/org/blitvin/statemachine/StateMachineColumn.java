@@ -0,0 +1,293 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Arrays;
+
+/**
+ * StateMachineColumn holds current states of many instances of the same
+ * StateMachineDefinition in single int array (instance is identified by index
+ * in the array). step() applies column of events to the instances in a tight
+ * loop over compiled transition table of the definition. State callbacks are
+ * not invoked from the loop, instead transitions and rejected events are
+ * recorded to preallocated arrays, and callbacks are dispatched after all
+ * events are applied: transition callbacks in order of the events, then
+ * onInvalidTransition() of rejected ones. The records are available until
+ * next step() call.
+ * Callbacks get EnumEvent objects, InstanceAwareState callbacks are not used
+ * as there are no StateMachineInstance objects. The column is not thread safe.
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class StateMachineColumn<EventType extends Enum<EventType>> {
+
+    private final StateMachineDefinition<EventType> definition;
+    private final TransitionTable<EventType> table;
+    private final EventType[] eventTypes;
+    private int[] states;
+    private boolean dispatchCallbacks = true;
+    /**
+     * instance passed to guards of guarded transitions, it is positioned to
+     * state of the processed row and has no instance properties of its own
+     */
+    private StateMachineInstance<EventType> guardView;
+
+    private int changeCount;
+    private int[] changedIds;
+    private int[] changedFrom;
+    private int[] changedTo;
+    private int[] changedEvents;
+
+    private int rejectedCount;
+    private int[] rejectedIds;
+    private int[] rejectedEvents;
+    private int[] rejectedStates;
+
+    StateMachineColumn(StateMachineDefinition<EventType> definition, int size) {
+        this.definition = definition;
+        table = definition.getTable();
+        eventTypes = definition.getEventTypeClass().getEnumConstants();
+        states = new int[size];
+        Arrays.fill(states, definition.getInitialIndex());
+        changedIds = new int[16];
+        changedFrom = new int[16];
+        changedTo = new int[16];
+        changedEvents = new int[16];
+        rejectedIds = new int[16];
+        rejectedEvents = new int[16];
+        rejectedStates = new int[16];
+    }
+
+    public StateMachineDefinition<EventType> getDefinition() {
+        return definition;
+    }
+
+    public int size() {
+        return states.length;
+    }
+
+    /**
+     * adds instances in initial state
+     * @param count number of instances to add
+     * @return id of first added instance
+     */
+    public int add(int count) {
+        int first = states.length;
+        states = Arrays.copyOf(states, first + count);
+        Arrays.fill(states, first, states.length, definition.getInitialIndex());
+        return first;
+    }
+
+    public int getStateIndex(int id) {
+        return states[id];
+    }
+
+    public String getStateName(int id) {
+        return definition.getStateName(states[id]);
+    }
+
+    public boolean isInFinalState(int id) {
+        return definition.isFinal(states[id]);
+    }
+
+    /**
+     * sets current state of the instance without invoking callbacks, e.g. for
+     * restoring instances from storage
+     * @param id instance id
+     * @param stateIndex index of state in the definition
+     */
+    public void setStateIndex(int id, int stateIndex) {
+        if (stateIndex < 0 || stateIndex >= definition.getStateCount()) {
+            throw new IllegalArgumentException("bad state index " + stateIndex);
+        }
+        states[id] = stateIndex;
+    }
+
+    /**
+     * @param dispatchCallbacks if false step() only records transitions, and
+     * state callbacks are not invoked at all
+     */
+    public void setDispatchCallbacks(boolean dispatchCallbacks) {
+        this.dispatchCallbacks = dispatchCallbacks;
+    }
+
+    /**
+     * applies eventOrdinals[i] to instance ids[i] for all i
+     * @param ids instance ids
+     * @param eventOrdinals ordinals of event types
+     * @return number of rejected events
+     */
+    public int step(int[] ids, int[] eventOrdinals) {
+        if (ids.length != eventOrdinals.length) {
+            throw new IllegalArgumentException("ids and events arrays must be of the same length");
+        }
+        return step(ids, eventOrdinals, 0, ids.length);
+    }
+
+    /**
+     * applies eventOrdinals[i] to instance ids[i] for i in [off, off + len).
+     * Event with no transition defined for current state of the instance is
+     * rejected, instance state remains unchanged and onInvalidTransition()
+     * callback is invoked in dispatch phase. Events out of range of event type
+     * ordinals are rejected too.
+     * @param ids instance ids
+     * @param eventOrdinals ordinals of event types
+     * @param off index of first element to process
+     * @param len number of elements to process
+     * @return number of rejected events
+     */
+    public int step(int[] ids, int[] eventOrdinals, int off, int len) {
+        changeCount = 0;
+        rejectedCount = 0;
+        final int[] targets = table.targets;
+        final int[] eventClasses = table.eventClasses;
+        final int eventCount = table.eventCount;
+        final int classCount = table.classCount;
+        final int[] cur = states;
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            int id = ids[i];
+            int event = eventOrdinals[i];
+            int from = cur[id];
+            int to;
+            if (event < 0 || event >= eventCount) {
+                to = TransitionTable.INVALID_EVENT;
+            } else {
+                to = targets[from * classCount + eventClasses[event]];
+            }
+            if (to >= 0) {
+                cur[id] = to;
+                recordChange(id, from, to, event);
+            } else if (to != TransitionTable.NULL_TRANSITION) {
+                if (to == TransitionTable.DYNAMIC) {
+                    to = resolveDynamic(from, event);
+                    if (to >= 0) {
+                        cur[id] = to;
+                        recordChange(id, from, to, event);
+                        continue;
+                    } else if (to == TransitionTable.NULL_TRANSITION) {
+                        continue;
+                    }
+                }
+                recordRejection(id, from, event);
+            }
+        }
+        if (dispatchCallbacks) {
+            dispatch();
+        }
+        return rejectedCount;
+    }
+
+    private int resolveDynamic(int from, int event) {
+        // only guarded transitions are DYNAMIC in definitions, those don't invoke callbacks
+        if (guardView == null) {
+            guardView = definition.newInstance();
+        }
+        guardView.current = from;
+        try {
+            return definition.resolve(guardView, from, EnumEvent.of(eventTypes[event]));
+        } catch (InvalidEventException e) {
+            return TransitionTable.INVALID_EVENT;
+        }
+    }
+
+    private void recordChange(int id, int from, int to, int event) {
+        if (changeCount == changedIds.length) {
+            int newSize = changeCount * 2;
+            changedIds = Arrays.copyOf(changedIds, newSize);
+            changedFrom = Arrays.copyOf(changedFrom, newSize);
+            changedTo = Arrays.copyOf(changedTo, newSize);
+            changedEvents = Arrays.copyOf(changedEvents, newSize);
+        }
+        changedIds[changeCount] = id;
+        changedFrom[changeCount] = from;
+        changedTo[changeCount] = to;
+        changedEvents[changeCount] = event;
+        ++changeCount;
+    }
+
+    private void recordRejection(int id, int state, int event) {
+        if (rejectedCount == rejectedIds.length) {
+            int newSize = rejectedCount * 2;
+            rejectedIds = Arrays.copyOf(rejectedIds, newSize);
+            rejectedEvents = Arrays.copyOf(rejectedEvents, newSize);
+            rejectedStates = Arrays.copyOf(rejectedStates, newSize);
+        }
+        rejectedIds[rejectedCount] = id;
+        rejectedEvents[rejectedCount] = event;
+        rejectedStates[rejectedCount] = state;
+        ++rejectedCount;
+    }
+
+    private void dispatch() {
+        for (int i = 0; i < changeCount; ++i) {
+            State<EventType> fromState = definition.getState(changedFrom[i]);
+            State<EventType> toState = definition.getState(changedTo[i]);
+            StateMachineEvent<EventType> event = EnumEvent.of(eventTypes[changedEvents[i]]);
+            if ((definition.getCallbacks(changedFrom[i]) & CallbackCapabilities.NO_LONGER_CURRENT) != 0)
+                fromState.onStateIsNoLongerCurrent(event, toState);
+            if ((definition.getCallbacks(changedTo[i]) & CallbackCapabilities.BECOMES_CURRENT) != 0)
+                toState.onStateBecomesCurrent(event, fromState);
+        }
+        for (int i = 0; i < rejectedCount; ++i) {
+            int event = rejectedEvents[i];
+            if (event >= 0 && event < table.eventCount
+                    && (definition.getCallbacks(rejectedStates[i]) & CallbackCapabilities.INVALID_TRANSITION) != 0) {
+                definition.getState(rejectedStates[i]).onInvalidTransition(EnumEvent.of(eventTypes[event]));
+            }
+        }
+    }
+
+    /**
+     * @return number of transitions recorded by last step()
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    public int getChangedId(int i) {
+        return changedIds[i];
+    }
+
+    public int getChangedFrom(int i) {
+        return changedFrom[i];
+    }
+
+    public int getChangedTo(int i) {
+        return changedTo[i];
+    }
+
+    public int getChangedEvent(int i) {
+        return changedEvents[i];
+    }
+
+    /**
+     * @return number of events rejected by last step()
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public int getRejectedId(int i) {
+        return rejectedIds[i];
+    }
+
+    public int getRejectedEvent(int i) {
+        return rejectedEvents[i];
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * StateMachineDefinition is immutable description of FSM (states, transitions
+ * and FSM properties) shared by any number of StateMachineInstance objects.
+ * While regular FSM owns its nodes, transitions and properties, instance keeps
+ * only index of current state, generation and (optionally) its own properties,
+ * so it is suitable for cases where large number of machines with the same
+ * definition are alive at the same time.
+ * State objects are shared by all instances, so they should not keep 
+ * per-instance data, see InstanceAwareState. Definition itself is thread
+ * safe, while particular instance is not.
+ * Definitions don't support aspects, customized transitions, internal events
+ * and callbacks of parent states (see StateHierarchy). Guards of guarded 
+ * transitions get the instance processing the event as FSM view.
+ * Definition is created by StateMachineBuilder.buildDefinition()
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class StateMachineDefinition<EventType extends Enum<EventType>> {
+
+    private final TransitionTable<EventType> table;
+    private final String[] names;
+    private final State<EventType>[] states;
+    private final boolean[] instanceAware;
+    private final int[] callbacks;
+    private final boolean[] finals;
+    private final HashMap<String, Integer> indices;
+    private final Set<String> stateNames;
+    private final Map<Object, Object> properties;
+    private final HashMap<Object, PropertyKey<?>> propertyKeys;
+    private final int initialIndex;
+    private final Class<EventType> eventTypeClass;
+
+    @SuppressWarnings("unchecked")
+    StateMachineDefinition(BasicStateMachine<EventType> prototype, Class<EventType> eventTypeClass)
+            throws BadStateMachineSpecification {
+        this(prototype, eventTypeClass, false);
+    }
+
+    StateMachineDefinition(BasicStateMachine<EventType> prototype, Class<EventType> eventTypeClass,
+            boolean compressEvents) throws BadStateMachineSpecification {
+        for (FSMNode<EventType> node : prototype.nodes.values()) {
+            if (node instanceof AspectNode) {
+                throw new BadStateMachineSpecification("State machine definition doesn't support aspects");
+            }
+            // customized logic state decides target without access to the instance
+            if (node.getDefaultTransition() instanceof CustomizedLogicTransition) {
+                throw new BadStateMachineSpecification("State machine definition doesn't support customized transitions");
+            }
+            for (EventType event : eventTypeClass.getEnumConstants()) {
+                if (node.getTransition(event) instanceof CustomizedLogicTransition) {
+                    throw new BadStateMachineSpecification("State machine definition doesn't support customized transitions");
+                }
+            }
+            // instances invoke callbacks of current states only, so parent states serve just for grouping
+            for (FSMNode<EventType> parent = node.getParent(); parent != null; parent = parent.getParent()) {
+                if ((CallbackMasks.of(parent.getState()) & (CallbackCapabilities.BECOMES_CURRENT
+                        | CallbackCapabilities.NO_LONGER_CURRENT)) != 0) {
+                    throw new BadStateMachineSpecification("State machine definition doesn't support callbacks of parent states");
+                }
+            }
+        }
+        this.eventTypeClass = eventTypeClass;
+        table = new TransitionTable<>(prototype.nodes.values(), eventTypeClass, compressEvents);
+        int size = table.nodes.length;
+        names = new String[size];
+        states = new State[size];
+        instanceAware = new boolean[size];
+        callbacks = new int[size];
+        finals = new boolean[size];
+        indices = new HashMap<>(size * 2);
+        LinkedHashSet<String> namesSet = new LinkedHashSet<>();
+        for (int i = 0; i < size; ++i) {
+            FSMNode<EventType> node = table.nodes[i];
+            names[i] = node.getName();
+            states[i] = node.getState();
+            instanceAware[i] = states[i] instanceof InstanceAwareState;
+            callbacks[i] = CallbackMasks.of(states[i]);
+            finals[i] = node.holdsFinalState();
+            indices.put(names[i], i);
+            namesSet.add(names[i]);
+        }
+        if (prototype.aliases != null) {
+            for (Map.Entry<String, String> alias : prototype.aliases.entrySet()) {
+                indices.put(alias.getKey(), indices.get(alias.getValue()));
+            }
+        }
+        stateNames = Collections.unmodifiableSet(namesSet);
+        properties = Collections.unmodifiableMap(new HashMap<>(prototype.getFSMProperties()));
+        propertyKeys = new HashMap<>(prototype.propertyKeysByName);
+        initialIndex = table.indexOf(prototype.current);
+    }
+
+    /**
+     * @return new instance of the FSM in initial state
+     */
+    public StateMachineInstance<EventType> newInstance() {
+        return new StateMachineInstance<>(this, initialIndex);
+    }
+
+    /**
+     * @param size number of instances
+     * @return column of size instances of the FSM, all in initial state
+     */
+    public StateMachineColumn<EventType> newColumn(int size) {
+        return new StateMachineColumn<>(this, size);
+    }
+
+    public Class<EventType> getEventTypeClass() {
+        return eventTypeClass;
+    }
+
+    /**
+     * @return number of states in the FSM, state indices are in range [0, getStateCount())
+     */
+    public int getStateCount() {
+        return names.length;
+    }
+
+    /**
+     * @param stateName name of the state
+     * @return index of the state, -1 if there is no such state
+     */
+    public int getStateIndex(String stateName) {
+        Integer retVal = indices.get(stateName);
+        return retVal == null ? -1 : retVal;
+    }
+
+    public String getStateName(int index) {
+        return names[index];
+    }
+
+    public State<EventType> getState(int index) {
+        return states[index];
+    }
+
+    public boolean isFinal(int index) {
+        return finals[index];
+    }
+
+    public Set<String> getStateNames() {
+        return stateNames;
+    }
+
+    /**
+     * @return unmodifiable map of FSM properties, shared by all instances
+     */
+    public Map<Object, Object> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return property key defined on the builder, null if there is no such key
+     */
+    PropertyKey<?> getPropertyKey(Object name) {
+        return propertyKeys.get(name);
+    }
+
+    void transit(StateMachineInstance<EventType> instance, StateMachineEvent<EventType> event)
+            throws InvalidEventException {
+        int from = instance.current;
+        int to = table.target(from, event.getEventType().ordinal());
+        if (to < 0) {
+            to = resolve(instance, from, event);
+            if (to < 0) {
+                ++instance.generation;
+                return;
+            }
+        }
+        fireCallbacks(instance, from, to, event);
+        instance.current = to;
+        ++instance.generation;
+    }
+
+    TransitStatus tryTransit(StateMachineInstance<EventType> instance, StateMachineEvent<EventType> event) {
+        int from = instance.current;
+        int to = table.target(from, event.getEventType().ordinal());
+        if (to < 0) {
+            if (to == TransitionTable.NULL_TRANSITION) {
+                ++instance.generation;
+                return TransitStatus.NULL_TRANSITION;
+            }
+            FSMNode<EventType> next = node(from).tryNodeToTransitTo(event, instance);
+            if (next == BasicNode.REJECTED) {
+                return TransitStatus.REJECTED;
+            }
+            if (next == null || next == BasicNode.VETOED) {
+                ++instance.generation;
+                return next == null ? TransitStatus.NULL_TRANSITION : TransitStatus.VETOED_BY_ASPECT;
+            }
+            to = table.indexOf(next);
+        }
+        fireCallbacks(instance, from, to, event);
+        instance.current = to;
+        ++instance.generation;
+        return TransitStatus.APPLIED;
+    }
+
+    boolean canAccept(int state, int eventOrdinal) {
+        return table.target(state, eventOrdinal) != TransitionTable.INVALID_EVENT;
+    }
+
+    /**
+     * resolves transitions which are not compiled into the table (guarded
+     * transitions and invalid events), node does the job incl. error handling
+     * @param instance instance passed to guards of guarded transition
+     * @return index of target state or TransitionTable.NULL_TRANSITION
+     */
+    int resolve(StateMachineInstance<EventType> instance, int from, StateMachineEvent<EventType> event)
+            throws InvalidEventException {
+        FSMNode<EventType> next = node(from).tryNodeToTransitTo(event, instance);
+        if (next == BasicNode.REJECTED) {
+            throw InvalidEventException.NOT_ACCEPTED;
+        }
+        return next == null ? TransitionTable.NULL_TRANSITION : table.indexOf(next);
+    }
+
+    /**
+     * definition doesn't accept aspects, so all nodes are basic ones
+     */
+    private BasicNode<EventType> node(int index) {
+        return (BasicNode<EventType>) table.nodes[index];
+    }
+
+    void fireCallbacks(StateMachineInstance<EventType> instance, int from, int to, StateMachineEvent<EventType> event) {
+        State<EventType> fromState = states[from];
+        State<EventType> toState = states[to];
+        if ((callbacks[from] & CallbackCapabilities.NO_LONGER_CURRENT) != 0) {
+            if (instanceAware[from]) {
+                ((InstanceAwareState<EventType>) fromState).onStateIsNoLongerCurrent(instance, event, toState);
+            } else {
+                fromState.onStateIsNoLongerCurrent(event, toState);
+            }
+        }
+        if ((callbacks[to] & CallbackCapabilities.BECOMES_CURRENT) != 0) {
+            if (instanceAware[to]) {
+                ((InstanceAwareState<EventType>) toState).onStateBecomesCurrent(instance, event, fromState);
+            } else {
+                toState.onStateBecomesCurrent(event, fromState);
+            }
+        }
+    }
+
+    /**
+     * @return mask of callbacks state with index i implements, see
+     * CallbackCapabilities
+     */
+    int getCallbacks(int i) {
+        return callbacks[i];
+    }
+
+    TransitionTable<EventType> getTable() {
+        return table;
+    }
+
+    int getInitialIndex() {
+        return initialIndex;
+    }
+}
@@ -49,6 +49,12 @@ interface StateMachineDriver<EventType extends Enum<EventType>> extends StateMac
      * @return true if FSM is fully initialized, that is in most cases completeInitializaiton was called
      */
     boolean initializationCompleted();
+
+    /**
+     * sets typed property keys, should be called before completeInitialization()
+     * @param keys keys indexed by slot
+     */
+    void definePropertyKeys(PropertyKey<?>[] keys);
 	
     HashMap<Object,Object> getFSMProperties();
 }
\ No newline at end of file
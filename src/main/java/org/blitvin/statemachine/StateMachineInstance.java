@@ -0,0 +1,241 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * StateMachineInstance is lightweight FSM created by StateMachineDefinition.
+ * The instance holds only index of current state, generation (number of 
+ * processed events) and optional instance properties, everything else is
+ * shared with the definition. Instance properties shadow definition properties
+ * with the same name, the map is allocated upon first setProperty() call.
+ * Instance is the FSM view passed to guards of guarded transitions; typed
+ * properties are stored as instance properties by name of the key, so
+ * listeners registered via key and via name of the key are notified alike.
+ * Listeners are notified on changes of instance properties only.
+ * Like regular FSMs instance is not thread safe.
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class StateMachineInstance<EventType extends Enum<EventType>> implements FSMStateView<EventType> {
+
+    private final StateMachineDefinition<EventType> definition;
+    int current;
+    int generation;
+    private HashMap<Object, Object> properties;
+    private HashMap<Object, PropertyChangeListener[]> listeners;
+    private PropertyChangeListener[] catchAllListeners;
+
+    StateMachineInstance(StateMachineDefinition<EventType> definition, int initial) {
+        this.definition = definition;
+        current = initial;
+    }
+
+    /**
+     * transit to new state according to event
+     * @param event new event
+     * @throws InvalidEventException thrown if definition doesn't define
+     * transition for this type of event in current state
+     */
+    public void transit(StateMachineEvent<EventType> event) throws InvalidEventException {
+        definition.transit(this, event);
+    }
+
+    /**
+     * transit to new state according to event without payload, see 
+     * StateMachine.transit(EventType)
+     * @param event type of the event
+     * @throws InvalidEventException thrown if definition doesn't define
+     * transition for this type of event in current state
+     */
+    public void transit(EventType event) throws InvalidEventException {
+        definition.transit(this, EnumEvent.of(event));
+    }
+
+    /**
+     * transit to new state according to event, see StateMachine.tryTransit()
+     * @param event new event
+     * @return outcome of the transition
+     */
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        return definition.tryTransit(this, event);
+    }
+
+    public StateMachineDefinition<EventType> getDefinition() {
+        return definition;
+    }
+
+    @Override
+    public boolean canAccept(EventType eventType) {
+        return definition.canAccept(current, eventType.ordinal());
+    }
+
+    /**
+     * @return index of current state in the definition
+     */
+    @Override
+    public int getCurrentStateIndex() {
+        return current;
+    }
+
+    @Override
+    public String getStateName(int index) {
+        return index < 0 || index >= definition.getStateCount() ? null : definition.getStateName(index);
+    }
+
+    @Override
+    public int getStateIndex(String stateName) {
+        return definition.getStateIndex(stateName);
+    }
+
+    /**
+     * @return number of events processed by the instance
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public boolean isInFinalState() {
+        return definition.isFinal(current);
+    }
+
+    public State<EventType> getCurrentState() {
+        return definition.getState(current);
+    }
+
+    @Override
+    public Set<String> getStateNames() {
+        return definition.getStateNames();
+    }
+
+    @Override
+    public String getNameOfCurrentState() {
+        return definition.getStateName(current);
+    }
+
+    @Override
+    public State<EventType> getStateByName(String stateName) {
+        int index = definition.getStateIndex(stateName);
+        return index < 0 ? null : definition.getState(index);
+    }
+
+    @Override
+    public boolean setProperty(Object name, Object value) {
+        if (properties == null) {
+            properties = new HashMap<>(4);
+        }
+        if (listeners == null && catchAllListeners == null) {
+            properties.put(name, value);
+            return true;
+        }
+        Object prev = getProperty(name);
+        properties.put(name, value);
+        if (listeners != null) {
+            notifySubscribers(listeners.get(name), name, value, prev);
+        }
+        notifySubscribers(catchAllListeners, name, value, prev);
+        return true;
+    }
+
+    private static void notifySubscribers(PropertyChangeListener[] subscribers,
+            Object name, Object value, Object prev) {
+        if (subscribers != null) {
+            for (PropertyChangeListener cur : subscribers) {
+                cur.onPropertyChange(name, value, prev);
+            }
+        }
+    }
+
+    @Override
+    public Object getProperty(Object name) {
+        if (properties != null && properties.containsKey(name)) {
+            return properties.get(name);
+        }
+        return definition.getProperties().get(name);
+    }
+
+    @Override
+    public <T> PropertyKey<T> getPropertyKey(Object name, Class<T> type) {
+        PropertyKey<?> key = definition.getPropertyKey(name);
+        if (key == null) {
+            return null;
+        }
+        if (key.getType() != type) {
+            throw new IllegalArgumentException("property key " + key + " doesn't have type " + type.getSimpleName());
+        }
+        return (PropertyKey<T>) key;
+    }
+
+    @Override
+    public <T> T get(PropertyKey<T> key) {
+        return (T) getProperty(checked(key).getName());
+    }
+
+    @Override
+    public <T> void set(PropertyKey<T> key, T value) {
+        setProperty(checked(key).getName(), value);
+    }
+
+    private PropertyKey<?> checked(PropertyKey<?> key) {
+        if (definition.getPropertyKey(key.getName()) != key) {
+            throw new IllegalArgumentException("property key " + key + " is not defined for this FSM");
+        }
+        return key;
+    }
+
+    @Override
+    public void registerPropertyChangeListener(PropertyChangeListener listener, Object propertyName) {
+        if (propertyName == null) {
+            catchAllListeners = BasicStateMachine.add(
+                    catchAllListeners == null ? new PropertyChangeListener[0] : catchAllListeners, listener);
+            return;
+        }
+        if (listeners == null) {
+            listeners = new HashMap<>(4);
+        }
+        PropertyChangeListener[] subscribers = listeners.get(propertyName);
+        listeners.put(propertyName, BasicStateMachine.add(
+                subscribers == null ? new PropertyChangeListener[0] : subscribers, listener));
+    }
+
+    @Override
+    public void deregisterPropertyChangeListener(PropertyChangeListener listener, Object propertyName) {
+        if (propertyName == null) {
+            if (catchAllListeners != null) {
+                catchAllListeners = BasicStateMachine.remove(catchAllListeners, listener);
+            }
+            return;
+        }
+        PropertyChangeListener[] subscribers = listeners == null ? null : listeners.get(propertyName);
+        if (subscribers != null) {
+            listeners.put(propertyName, BasicStateMachine.remove(subscribers, listener));
+        }
+    }
+
+    @Override
+    public void registerKeyListener(PropertyChangeListener listener, PropertyKey<?> key) {
+        registerPropertyChangeListener(listener, checked(key).getName());
+    }
+
+    @Override
+    public void deregisterKeyListener(PropertyChangeListener listener, PropertyKey<?> key) {
+        deregisterPropertyChangeListener(listener, checked(key).getName());
+    }
+}
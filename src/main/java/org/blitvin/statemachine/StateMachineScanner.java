@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * StateMachineScanner drives FSM instance by stream of characters or bytes,
+ * e.g. for lexing. Each character is mapped to event type by CharClassTable
+ * and transition is looked up in compiled transition table of the definition,
+ * the loop allocates nothing per character. Unlike regular transit, callbacks
+ * are invoked only if current state changes, so self transitions (e.g. next
+ * letter of a word) cost a couple of array lookups. Callbacks get reusable
+ * ScannerEvent object carrying character and its position.
+ * If character is not accepted by current state (there is no transition for its
+ * event type) feed stops, position of the buffer is set to the character and
+ * InvalidEventException is thrown. 
+ * Scanner is not thread safe.
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class StateMachineScanner<EventType extends Enum<EventType>> {
+
+    private final StateMachineInstance<EventType> instance;
+    private final StateMachineDefinition<EventType> definition;
+    private final TransitionTable<EventType> table;
+    private final int[] classes;
+    private final int defaultClass;
+    private final int[] columns;
+    private final int defaultColumn;
+    private final EventType[] eventTypes;
+    private final ScannerEvent<EventType> event;
+    private long position;
+
+    public StateMachineScanner(StateMachineDefinition<EventType> definition, CharClassTable<EventType> charClasses)
+            throws BadStateMachineSpecification {
+        this(definition.newInstance(), charClasses);
+    }
+
+    public StateMachineScanner(StateMachineInstance<EventType> instance, CharClassTable<EventType> charClasses)
+            throws BadStateMachineSpecification {
+        this.instance = instance;
+        definition = instance.getDefinition();
+        if (charClasses.getEventTypeClass() != definition.getEventTypeClass()) {
+            throw new BadStateMachineSpecification("event type of char classes table doesn't match state machine event type");
+        }
+        table = definition.getTable();
+        classes = charClasses.classes.clone();
+        defaultClass = charClasses.getDefaultClass().ordinal();
+        columns = new int[classes.length];
+        for (int i = 0; i < classes.length; ++i) {
+            columns[i] = table.eventClasses[classes[i]];
+        }
+        defaultColumn = table.eventClasses[defaultClass];
+        eventTypes = definition.getEventTypeClass().getEnumConstants();
+        event = new ScannerEvent<>();
+    }
+
+    public StateMachineInstance<EventType> getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return number of characters fed to the scanner so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * feeds all remaining characters of the buffer to the FSM
+     * @param buffer input
+     * @throws InvalidEventException if character is not accepted by current state,
+     * buffer position is set to the character
+     */
+    public void feed(CharBuffer buffer) throws InvalidEventException {
+        final int[] targets = table.targets;
+        final int classCount = table.classCount;
+        int cur = instance.current;
+        int pos = buffer.position();
+        final int limit = buffer.limit();
+        try {
+            for (; pos < limit; ++pos) {
+                char c = buffer.get(pos);
+                int to = targets[cur * classCount + (c < CharClassTable.TABLE_SIZE ? columns[c] : defaultColumn)];
+                if (to != cur && to != TransitionTable.NULL_TRANSITION) {
+                    int cls = c < CharClassTable.TABLE_SIZE ? classes[c] : defaultClass;
+                    cur = step(cur, to, cls, c, pos - buffer.position());
+                }
+            }
+        } finally {
+            instance.generation += pos - buffer.position();
+            position += pos - buffer.position();
+            buffer.position(pos);
+        }
+    }
+
+    /**
+     * feeds all remaining bytes of the buffer to the FSM, byte is treated as 
+     * unsigned value i.e. character in range 0 - 255
+     * @param buffer input
+     * @throws InvalidEventException if byte is not accepted by current state,
+     * buffer position is set to the byte
+     */
+    public void feed(ByteBuffer buffer) throws InvalidEventException {
+        final int[] targets = table.targets;
+        final int classCount = table.classCount;
+        int cur = instance.current;
+        int pos = buffer.position();
+        final int limit = buffer.limit();
+        try {
+            for (; pos < limit; ++pos) {
+                int b = buffer.get(pos) & 0xFF;
+                int to = targets[cur * classCount + columns[b]];
+                if (to != cur && to != TransitionTable.NULL_TRANSITION) {
+                    cur = step(cur, to, classes[b], (char) b, pos - buffer.position());
+                }
+            }
+        } finally {
+            instance.generation += pos - buffer.position();
+            position += pos - buffer.position();
+            buffer.position(pos);
+        }
+    }
+
+    private int step(int cur, int to, int cls, char c, int offset) throws InvalidEventException {
+        event.set(eventTypes[cls], c, position + offset);
+        if (to < 0) {
+            to = definition.resolve(instance, cur, event);
+            if (to < 0 || to == cur) {
+                return cur;
+            }
+        }
+        definition.fireCallbacks(instance, cur, to, event);
+        instance.current = to;
+        return to;
+    }
+}
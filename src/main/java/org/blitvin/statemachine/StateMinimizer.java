@@ -0,0 +1,329 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Merges equivalent states of initialized FSM using Hopcroft's partition 
+ * refinement. Only states which don't implement transition callbacks (see 
+ * CallbackCapabilities) and which transitions are fully known at build time
+ * (no customized transitions, no aspects) are candidates for merging, so 
+ * merging doesn't change observable behavior of the FSM. Invalid events are
+ * treated as transitions to implicit sink state, null transitions as 
+ * transitions to another implicit state, so state ignoring an event is never
+ * merged with state having transition to itself upon the event (the latter
+ * reports APPLIED and advances generation).
+ * States having parent or child states are not merged. States with declared
+ * timeouts (see StateMachineBuilder.setStateTimeout()) are merged only with
+ * states having the same timeout event and delay, since concurrent FSMs look
+ * timeouts up by state index and merged state inherits timeout of the group.
+ * Merged nodes are removed from nodes map of the FSM, basic transitions to
+ * those nodes are redirected to the node representing the group, names and
+ * ordinals of merged nodes become aliases of the representing node.
+ * @author blitvin
+ */
+final class StateMinimizer {
+
+    private StateMinimizer() {
+    }
+
+    static <EventType extends Enum<EventType>> MinimizationReport minimize(BasicStateMachine<EventType> fsm) {
+        TransitionTable<EventType> table = new TransitionTable<>(fsm.nodes.values(), fsm.eventTypeClass);
+        int n = table.nodes.length;
+        int k = table.eventCount;
+        Object timeouts = fsm.getProperty(StateMachineBuilder.STATE_TIMEOUTS_PROPERTY);
+        int[][] blocks = initialPartition(table,
+                timeouts instanceof StateTimeouts ? (StateTimeouts<EventType>) timeouts : null);
+        int[] groups = refine(table, blocks);
+
+        // pick representative of each group: initial node if present, otherwise first name
+        FSMNode<EventType>[] representatives = new FSMNode[n + 2];
+        for (int i = 0; i < n; ++i) {
+            FSMNode<EventType> cur = representatives[groups[i]];
+            if (cur == null || table.nodes[i] == fsm.current
+                    || (cur != fsm.current && table.nodes[i].getName().compareTo(cur.getName()) < 0)) {
+                representatives[groups[i]] = table.nodes[i];
+            }
+        }
+        HashMap<FSMNode<EventType>, FSMNode<EventType>> replacement = new HashMap<>();
+        HashMap<String, String> merged = new HashMap<>();
+        for (int i = 0; i < n; ++i) {
+            FSMNode<EventType> representative = representatives[groups[i]];
+            if (representative != table.nodes[i]) {
+                replacement.put(table.nodes[i], representative);
+                merged.put(table.nodes[i].getName(), representative.getName());
+            }
+        }
+        if (!replacement.isEmpty()) {
+            for (FSMNode<EventType> node : table.nodes) {
+                for (EventType event : fsm.eventTypeClass.getEnumConstants()) {
+                    redirect(node.getTransition(event), replacement);
+                }
+                redirect(node.getDefaultTransition(), replacement);
+            }
+            HashMap<String, FSMNode<EventType>> nodes = new LinkedHashMap<>(fsm.nodes);
+            Iterator<FSMNode<EventType>> it = nodes.values().iterator();
+            while (it.hasNext()) {
+                if (replacement.containsKey(it.next())) {
+                    it.remove();
+                }
+            }
+            fsm.nodes = nodes;
+            for (Map.Entry<FSMNode<EventType>, FSMNode<EventType>> cur : replacement.entrySet()) {
+                fsm.nodesByOrdinal[cur.getKey().getOrdinal()] = cur.getValue();
+            }
+            HashMap<String, String> aliases = fsm.aliases == null ? new HashMap<String, String>() : fsm.aliases;
+            aliases.putAll(merged);
+            fsm.aliases = aliases;
+        }
+        TransitionTable<EventType> minimized = new TransitionTable<>(fsm.nodes.values(), fsm.eventTypeClass, true);
+        return new MinimizationReport(n, minimized.nodes.length, k, minimized.classCount, merged);
+    }
+
+    private static <EventType extends Enum<EventType>> void redirect(Transition<EventType> transition,
+            Map<FSMNode<EventType>, FSMNode<EventType>> replacement) {
+        if (transition instanceof BasicTransition) {
+            BasicTransition<EventType> basic = (BasicTransition<EventType>) transition;
+            FSMNode<EventType> target = replacement.get(basic.target);
+            if (target != null) {
+                basic.target = target;
+            }
+        } else if (transition instanceof GuardedTransition) {
+            GuardedTransition<EventType> guarded = (GuardedTransition<EventType>) transition;
+            for (int i = 0; i < guarded.targets.length; ++i) {
+                FSMNode<EventType> target = replacement.get(guarded.targets[i]);
+                if (target != null) {
+                    guarded.targets[i] = target;
+                }
+            }
+            FSMNode<EventType> target = replacement.get(guarded.fallback);
+            if (target != null) {
+                guarded.fallback = target;
+            }
+        }
+    }
+
+    private static boolean mergeable(TransitionTable<?> table, int state, boolean[] parents) {
+        FSMNode<?> node = table.nodes[state];
+        if (node instanceof AspectNode || !node.hasState() || CallbackMasks.of(node.getState()) != 0
+                || node.getParent() != null || parents[state]) {
+            return false;
+        }
+        for (int event = 0; event < table.eventCount; ++event) {
+            if (table.target(state, event) == TransitionTable.DYNAMIC) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * mergeable states are split into blocks by being final and by timeout,
+     * each of other states (and both implicit states) gets its own block
+     */
+    private static <EventType extends Enum<EventType>> int[][] initialPartition(TransitionTable<EventType> table,
+            StateTimeouts<EventType> timeouts) {
+        int n = table.nodes.length;
+        ArrayList<int[]> retVal = new ArrayList<>();
+        LinkedHashMap<String, int[]> blocks = new LinkedHashMap<>();
+        LinkedHashMap<String, Integer> blockSizes = new LinkedHashMap<>();
+        // states of hierarchy are kept, merging would change entry/exit callbacks of ancestors
+        boolean[] parents = new boolean[n];
+        for (int i = 0; i < n; ++i) {
+            FSMNode<?> parent = table.nodes[i].getParent();
+            if (parent != null) {
+                parents[table.indexOf((FSMNode) parent)] = true;
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            if (!mergeable(table, i, parents)) {
+                retVal.add(new int[]{i});
+                continue;
+            }
+            StateTimeouts.Timeout<EventType> timeout = timeouts == null ? null
+                    : timeouts.get(table.nodes[i].getName());
+            String key = table.nodes[i].holdsFinalState() + (timeout == null ? ""
+                    : "/" + timeout.getEvent().name() + "/" + timeout.getDelayNanos());
+            int[] block = blocks.get(key);
+            if (block == null) {
+                block = new int[n];
+                blocks.put(key, block);
+                blockSizes.put(key, 0);
+            }
+            int size = blockSizes.get(key);
+            block[size] = i;
+            blockSizes.put(key, size + 1);
+        }
+        for (Map.Entry<String, int[]> entry : blocks.entrySet()) {
+            retVal.add(Arrays.copyOf(entry.getValue(), blockSizes.get(entry.getKey())));
+        }
+        retVal.add(new int[]{n});
+        retVal.add(new int[]{n + 1});
+        return retVal.toArray(new int[retVal.size()][]);
+    }
+
+    /**
+     * Hopcroft's algorithm
+     * @return group number of each state
+     */
+    private static int[] refine(TransitionTable<?> table, int[][] initial) {
+        final int n = table.nodes.length + 2; // incl. sink and null transition target
+        final int k = table.eventCount;
+        // predecessors[target * k + event] lists states moving to target upon event
+        int[][] predecessors = new int[n * k][];
+        int[] predecessorCount = new int[n * k];
+        for (int state = 0; state < n - 2; ++state) {
+            for (int event = 0; event < k; ++event) {
+                int target = delta(table, state, event);
+                if (target >= 0) {
+                    int cell = target * k + event;
+                    if (predecessors[cell] == null) {
+                        predecessors[cell] = new int[2];
+                    } else if (predecessors[cell].length == predecessorCount[cell]) {
+                        predecessors[cell] = Arrays.copyOf(predecessors[cell], predecessorCount[cell] * 2);
+                    }
+                    predecessors[cell][predecessorCount[cell]++] = state;
+                }
+            }
+        }
+
+        int[] blockOf = new int[n];
+        ArrayList<int[]> members = new ArrayList<>(n);
+        ArrayList<Integer> sizes = new ArrayList<>(n);
+        for (int[] block : initial) {
+            for (int state : block) {
+                blockOf[state] = members.size();
+            }
+            members.add(block.clone());
+            sizes.add(block.length);
+        }
+        boolean[] waiting = new boolean[n * k];
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        int largest = 0;
+        for (int i = 1; i < members.size(); ++i) {
+            if (sizes.get(i) > sizes.get(largest)) {
+                largest = i;
+            }
+        }
+        for (int i = 0; i < members.size(); ++i) {
+            if (i != largest) {
+                for (int event = 0; event < k; ++event) {
+                    waiting[i * k + event] = true;
+                    worklist.add(i * k + event);
+                }
+            }
+        }
+
+        int[] marked = new int[n];
+        int[] markedCount = new int[n];
+        int[] touched = new int[n];
+        while (!worklist.isEmpty()) {
+            int splitter = worklist.poll();
+            waiting[splitter] = false;
+            int splitterBlock = splitter / k;
+            int event = splitter % k;
+            int[] splitterMembers = Arrays.copyOf(members.get(splitterBlock), sizes.get(splitterBlock));
+            int touchedCount = 0;
+            for (int target : splitterMembers) {
+                int cell = target * k + event;
+                for (int i = 0; i < predecessorCount[cell]; ++i) {
+                    int state = predecessors[cell][i];
+                    int block = blockOf[state];
+                    if (markedCount[block] == 0) {
+                        touched[touchedCount++] = block;
+                    }
+                    ++markedCount[block];
+                    marked[state] = 1;
+                }
+            }
+            for (int t = 0; t < touchedCount; ++t) {
+                int block = touched[t];
+                int size = sizes.get(block);
+                if (markedCount[block] < size) {
+                    int[] old = members.get(block);
+                    int[] in = new int[markedCount[block]];
+                    int[] out = new int[size - markedCount[block]];
+                    int inCount = 0;
+                    int outCount = 0;
+                    for (int i = 0; i < size; ++i) {
+                        if (marked[old[i]] != 0) {
+                            in[inCount++] = old[i];
+                        } else {
+                            out[outCount++] = old[i];
+                        }
+                    }
+                    int newBlock = members.size();
+                    members.set(block, out);
+                    sizes.set(block, out.length);
+                    members.add(in);
+                    sizes.add(in.length);
+                    for (int state : in) {
+                        blockOf[state] = newBlock;
+                    }
+                    if (waiting.length < members.size() * k) {
+                        waiting = Arrays.copyOf(waiting, members.size() * k * 2);
+                    }
+                    for (int e = 0; e < k; ++e) {
+                        if (waiting[block * k + e] || in.length <= out.length) {
+                            waiting[newBlock * k + e] = true;
+                            worklist.add(newBlock * k + e);
+                        } else {
+                            waiting[block * k + e] = true;
+                            worklist.add(block * k + e);
+                        }
+                    }
+                }
+                markedCount[block] = 0;
+            }
+            for (int target : splitterMembers) {
+                int cell = target * k + event;
+                for (int i = 0; i < predecessorCount[cell]; ++i) {
+                    marked[predecessors[cell][i]] = 0;
+                }
+            }
+        }
+        return blockOf;
+    }
+
+    /**
+     * @return target state of the transition, sink for invalid event, implicit
+     * state following the sink for null transition, -1
+     * for dynamic transitions (source state is never merged in this case)
+     */
+    private static int delta(TransitionTable<?> table, int state, int event) {
+        int target = table.target(state, event);
+        if (target >= 0) {
+            return target;
+        }
+        switch (target) {
+            case TransitionTable.NULL_TRANSITION:
+                return table.nodes.length + 1;
+            case TransitionTable.INVALID_EVENT:
+                return table.nodes.length;
+            default:
+                return -1;
+        }
+    }
+}
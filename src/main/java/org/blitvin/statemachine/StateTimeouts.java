@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StateTimeouts describes declarative state timeouts: if FSM stays in the state
+ * for specified time, it receives specified event. Timeouts are defined by
+ * StateMachineBuilder.setStateTimeout() and stored as FSM property
+ * StateMachineBuilder.STATE_TIMEOUTS_PROPERTY. Plain FSMs don't measure time,
+ * timeouts are fired by concurrent FSMs (see ConcurrentStateMachine and
+ * FSMThreadPoolFacade) using HashedTimingWheel.
+ * @author blitvin
+ * @param <EventType>
+ */
+public final class StateTimeouts<EventType extends Enum<EventType>> {
+
+    /**
+     * timeout of single state
+     */
+    public static final class Timeout<EventType extends Enum<EventType>> {
+
+        private final EventType event;
+        private final long delayNanos;
+
+        Timeout(EventType event, long delay, TimeUnit unit) {
+            this.event = event;
+            this.delayNanos = unit.toNanos(delay);
+        }
+
+        public EventType getEvent() {
+            return event;
+        }
+
+        public long getDelayNanos() {
+            return delayNanos;
+        }
+    }
+
+    private final Map<String, Timeout<EventType>> timeouts;
+
+    StateTimeouts(Map<String, Timeout<EventType>> timeouts) {
+        this.timeouts = Collections.unmodifiableMap(new LinkedHashMap<>(timeouts));
+    }
+
+    /**
+     * @return timeout of the state, null if the state has no timeout
+     */
+    public Timeout<EventType> get(String stateName) {
+        return timeouts.get(stateName);
+    }
+
+    /**
+     * @return timeouts by state name
+     */
+    public Map<String, Timeout<EventType>> getTimeouts() {
+        return timeouts;
+    }
+}
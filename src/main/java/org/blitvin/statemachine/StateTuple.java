@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Arrays;
+
+/**
+ * StateTuple is immutable snapshot of current states of regions of
+ * OrthogonalStateMachine. Tuples are equal if states of all regions are equal,
+ * generations are not compared.
+ * @author blitvin
+ */
+public final class StateTuple {
+
+    private final String[] regions;
+    private final String[] states;
+    private final int[] generations;
+
+    StateTuple(String[] regions, String[] states, int[] generations) {
+        this.regions = regions;
+        this.states = states;
+        this.generations = generations;
+    }
+
+    public int size() {
+        return states.length;
+    }
+
+    public String getRegionName(int i) {
+        return regions[i];
+    }
+
+    public String getStateName(int i) {
+        return states[i];
+    }
+
+    /**
+     * @return name of current state of the region, null if there is no such region
+     */
+    public String getStateName(String region) {
+        for (int i = 0; i < regions.length; ++i) {
+            if (regions[i].equals(region)) {
+                return states[i];
+            }
+        }
+        return null;
+    }
+
+    public int getGeneration(int i) {
+        return generations[i];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof StateTuple)) {
+            return false;
+        }
+        StateTuple other = (StateTuple) obj;
+        return Arrays.equals(regions, other.regions) && Arrays.equals(states, other.states);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(regions) + Arrays.hashCode(states);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder retVal = new StringBuilder("(");
+        for (int i = 0; i < states.length; ++i) {
+            if (i > 0) {
+                retVal.append(", ");
+            }
+            retVal.append(regions[i]).append('=').append(states[i]);
+        }
+        return retVal.append(')').toString();
+    }
+}
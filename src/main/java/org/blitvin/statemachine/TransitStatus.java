@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * Outcome of StateMachine.tryTransit()
+ * @author blitvin
+ */
+public enum TransitStatus {
+    /**
+     * transition is performed, callbacks are invoked
+     */
+    APPLIED,
+    /**
+     * event is accepted by null transition, current state remains the same
+     * and no callbacks are invoked
+     */
+    NULL_TRANSITION,
+    /**
+     * current state doesn't accept the event (no explicit nor default transition),
+     * onInvalidTransition() callback of the state is invoked
+     */
+    REJECTED,
+    /**
+     * aspect (see AspectEnabledStateMachine) stopped processing of the
+     * transition in onTransitionStart() or onControlLeavesState()
+     */
+    VETOED_BY_ASPECT
+}
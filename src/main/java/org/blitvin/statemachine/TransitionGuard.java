@@ -0,0 +1,36 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+/**
+ * Predicate of guarded transition. Guards of the transition are evaluated in
+ * order of definition, first one accepting the event selects the target state.
+ * Guards are called on every event handled by the transition, so implementations
+ * are expected to be cheap and free of side effects; FSM properties are best
+ * read via PropertyKey (FSMStateView.get(key)) rather than by name.
+ * @author blitvin
+ * @param <EventType>
+ */
+public interface TransitionGuard<EventType extends Enum<EventType>> {
+    /**
+     * @param event event being processed
+     * @param fsm FSM the transition belongs to
+     * @return true if transition to target state of the guard should be taken
+     */
+    boolean accept(StateMachineEvent<EventType> event, FSMStateView<EventType> fsm);
+}
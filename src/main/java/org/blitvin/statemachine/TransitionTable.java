@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine;
+
+import java.util.Collection;
+
+/**
+ * TransitionTable is flat representation of FSM transitions graph. Each node
+ * gets an index, and the table contains index of target node for every
+ * (state, event type) pair, that is table[stateIndex * classCount + eventClasses[eventOrdinal]].
+ * Event types behaving identically in every state may share single column
+ * of the table (event class), if table is compiled with event compression,
+ * otherwise each event type has its own column.
+ * Basic, null and default transitions are resolved when the table is compiled,
+ * transitions which target can't be known in advance (e.g. customized ones)
+ * and nodes intercepting transitions (aspect nodes) are marked as DYNAMIC and
+ * should be resolved by the node itself.
+ * The table must be compiled after all transitions are initialized, that is
+ * after targets of the transitions are known.
+ * @author blitvin
+ */
+final class TransitionTable<EventType extends Enum<EventType>> {
+
+    /**
+     * event is swallowed, no callbacks are invoked
+     */
+    static final int NULL_TRANSITION = -1;
+    /**
+     * no transition (including default one) defined for the event
+     */
+    static final int INVALID_EVENT = -2;
+    /**
+     * target must be obtained from node by nodeToTransitTo()
+     */
+    static final int DYNAMIC = -3;
+
+    final int eventCount;
+    final int classCount;
+    final int[] eventClasses;
+    final FSMNode<EventType>[] nodes;
+    final int[] targets;
+    private final int[] indexByOrdinal;
+
+    TransitionTable(Collection<FSMNode<EventType>> nodeCollection, Class<EventType> eventTypeClass) {
+        this(nodeCollection, eventTypeClass, false);
+    }
+
+    /**
+     * @param nodeCollection nodes of the FSM
+     * @param eventTypeClass event type
+     * @param compressEvents if true, event types with identical columns share
+     * the column
+     */
+    @SuppressWarnings("unchecked")
+    TransitionTable(Collection<FSMNode<EventType>> nodeCollection, Class<EventType> eventTypeClass,
+            boolean compressEvents) {
+        EventType[] events = eventTypeClass.getEnumConstants();
+        eventCount = events.length;
+        nodes = nodeCollection.toArray(new FSMNode[nodeCollection.size()]);
+        int ordinals = 0;
+        for (FSMNode<EventType> node : nodes) {
+            ordinals = Math.max(ordinals, node.getOrdinal() + 1);
+        }
+        indexByOrdinal = new int[ordinals];
+        for (int i = 0; i < nodes.length; ++i) {
+            indexByOrdinal[nodes[i].getOrdinal()] = i;
+        }
+        int[] full = new int[nodes.length * eventCount];
+        for (int i = 0; i < nodes.length; ++i) {
+            for (EventType event : events) {
+                full[i * eventCount + event.ordinal()] = compile(nodes[i], event);
+            }
+        }
+        eventClasses = new int[eventCount];
+        if (!compressEvents) {
+            for (int i = 0; i < eventCount; ++i) {
+                eventClasses[i] = i;
+            }
+            classCount = eventCount;
+            targets = full;
+            return;
+        }
+        int[] firstOfClass = new int[eventCount];
+        int classes = 0;
+        for (int event = 0; event < eventCount; ++event) {
+            int cls = 0;
+            while (cls < classes && !sameColumn(full, firstOfClass[cls], event)) {
+                ++cls;
+            }
+            if (cls == classes) {
+                firstOfClass[classes++] = event;
+            }
+            eventClasses[event] = cls;
+        }
+        classCount = classes;
+        targets = new int[nodes.length * classCount];
+        for (int i = 0; i < nodes.length; ++i) {
+            for (int cls = 0; cls < classCount; ++cls) {
+                targets[i * classCount + cls] = full[i * eventCount + firstOfClass[cls]];
+            }
+        }
+    }
+
+    private boolean sameColumn(int[] full, int first, int second) {
+        for (int i = 0; i < nodes.length; ++i) {
+            if (full[i * eventCount + first] != full[i * eventCount + second]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int compile(FSMNode<EventType> node, EventType event) {
+        if (node instanceof AspectNode) {
+            return DYNAMIC; // aspects must see every event
+        }
+        Transition<EventType> transition = node.getTransition(event);
+        if (transition == null) {
+            transition = node.getDefaultTransition();
+            if (transition == null) {
+                return INVALID_EVENT;
+            }
+        }
+        if (transition == NullTransition.NULL_TRANSITION) {
+            return NULL_TRANSITION;
+        }
+        if (transition instanceof BasicTransition) {
+            int target = indexOf(((BasicTransition<EventType>) transition).target);
+            return target < 0 ? DYNAMIC : target;
+        }
+        return DYNAMIC;
+    }
+
+    /**
+     * @param node node of the FSM
+     * @return index of the node, -1 if the node is not part of the table
+     */
+    int indexOf(FSMNode<EventType> node) {
+        int ordinal = node.getOrdinal();
+        if (ordinal < 0 || ordinal >= indexByOrdinal.length) {
+            return -1;
+        }
+        int retVal = indexByOrdinal[ordinal];
+        return nodes[retVal] == node ? retVal : -1;
+    }
+
+    int target(int stateIndex, int eventOrdinal) {
+        return targets[stateIndex * classCount + eventClasses[eventOrdinal]];
+    }
+}
@@ -43,6 +43,12 @@ class AnnotationParser {
                 retVal.markStateAsFinal();
             if (curStateSpec.isInitial())
                 retVal.markStateAsInitial();
+            if (!curStateSpec.parent().isEmpty())
+                retVal.setParentState(curStateSpec.parent());
+            if (!curStateSpec.timeoutEvent().isEmpty()) {
+                retVal.addProperty(StateMachineBuilder.STATE_TIMEOUT_EVENT, curStateSpec.timeoutEvent());
+                retVal.addProperty(StateMachineBuilder.STATE_TIMEOUT, curStateSpec.timeoutMillis());
+            }
             for(Param param: curStateSpec.params())
                 retVal.addProperty(param.name(), param.value());
             if (curStateSpec.implClass() != null)
@@ -63,6 +69,8 @@ class AnnotationParser {
                 }
                 for(Param param: transition.params())
                     retVal.addProperty(param.name(), param.value());
+                for(GuardSpec guard: transition.guards())
+                    retVal.addGuard(guard.guard(), guard.toState());
             }
         }
         return retVal;
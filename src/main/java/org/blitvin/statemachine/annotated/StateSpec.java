@@ -32,5 +32,8 @@ public @interface StateSpec {
         boolean setAspectRelated() default false;
         boolean applyAspectOnState() default true;
 	Param[] params() default {};
+	String parent() default "";
+	String timeoutEvent() default "";
+	long timeoutMillis() default 0;
 	TransitionSpec[] transitions();
 }
\ No newline at end of file
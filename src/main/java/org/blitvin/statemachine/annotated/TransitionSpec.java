@@ -31,4 +31,5 @@ public @interface TransitionSpec {
 	boolean isDefaultTransition() default false;
         StateMachineBuilder.TRANSITION_TYPE type() default BASIC;
 	Param[] params() default {};
+	GuardSpec[] guards() default {};
 }
\ No newline at end of file
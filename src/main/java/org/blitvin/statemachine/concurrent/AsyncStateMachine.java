@@ -17,7 +17,11 @@
  */
 package org.blitvin.statemachine.concurrent;
 
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.BatchTransitResult;
 import org.blitvin.statemachine.InvalidEventException;
 import org.blitvin.statemachine.StateMachine;
 import org.blitvin.statemachine.StateMachineEvent;
@@ -59,12 +63,130 @@ public interface AsyncStateMachine<EventType extends Enum<EventType>> extends St
      */
     Future<StampedState<EventType>> asyncTransit(StateMachineEvent<EventType> event);
 
+    /**
+     * send event to FSM and get notified when it is processed, without
+     * blocking any thread waiting for the result. The callback is invoked by
+     * thread completing the event or submitted to the executor if one is
+     * given. Events sent this way are never coalesced
+     * @param event event to process
+     * @param callback receives resulting state or failure of the event
+     * @param executor executor running the callback, null to run it in
+     * thread completing the event
+     * @return true if event accepted for processing, callback isn't invoked
+     * otherwise
+     */
+    boolean asyncTransit(StateMachineEvent<EventType> event, TransitCallback<EventType> callback, Executor executor);
+
+    /**
+     * send batch of events events[off] ... events[off + len - 1] to FSM as 
+     * single unit and get Future object for obtaining result of the batch
+     * processing. The slice of the array is copied, so caller may reuse the array
+     * @param events array of events
+     * @param off index of first event to process
+     * @param len number of events to process
+     * @return Future returning result of the batch processing, failed index
+     * refers to the events array passed to this method
+     */
+    Future<BatchTransitResult> asyncTransitAll(StateMachineEvent<EventType>[] events, int off, int len);
+
     /**
      * send event to the state machine , don't wait for processing completion
      * @param event event to process in state machine
      * @return true if event accepted for processing e.g. there is no problem with room to accommodate it
      */
     boolean fireAndForgetTransit(StateMachineEvent<EventType> event);
+
+    /**
+     * send event to the state machine after the delay, the event is processed
+     * as if it is sent by fireAndForgetTransit() when the delay elapses. Delays
+     * are measured by timing wheel of the FSM, HashedTimingWheel.getDefault()
+     * unless set otherwise, so precision is limited by tick of the wheel
+     * @param event event to process in state machine
+     * @param delay delay
+     * @param unit unit of the delay
+     * @return handle allowing to cancel the event before the delay elapses
+     */
+    HashedTimingWheel.Timeout transitAfter(StateMachineEvent<EventType> event, long delay, TimeUnit unit);
+
+    /**
+     * sets timing wheel measuring delays of transitAfter() and state timeouts
+     * (see StateMachineBuilder.setStateTimeout()), affects events and timeouts
+     * scheduled afterwards. Timeout of initial state of pooled FSM is scheduled
+     * when FSMThreadPoolFacade is created, so pass the wheel to its constructor
+     * instead. Timeout of initial state of ConcurrentStateMachine is scheduled
+     * by completeInitialization()
+     * @param wheel timing wheel, null to use HashedTimingWheel.getDefault()
+     */
+    void setTimingWheel(HashedTimingWheel wheel);
+
+    /**
+     * Turns on/off early rejection. If it is on and no other events are waiting
+     * for processing, transit(), tryTransit(), fireAndForgetTransit() and 
+     * CAStransit() with generation 0 check the event against current state 
+     * before queueing it. The event not accepted by current state is refused 
+     * immediately without occupying room in the queue, onInvalidTransition() 
+     * and aspects aren't invoked for such event. Asynchronous and batch 
+     * methods always queue the events. Off by default
+     * @param earlyRejection true to reject events not accepted by current state
+     * in the sending thread
+     */
+    void setEarlyRejection(boolean earlyRejection);
+
+    /**
+     * @return true if early rejection is on, see setEarlyRejection()
+     */
+    boolean isEarlyRejection();
     
     StampedState<EventType> getCurrentStampedState();
+
+    /**
+     * declares event types as coalescable: event of such type sent while
+     * another event of the same type is queued and not started yet is absorbed
+     * by the queued one instead of being queued. Caller of the absorbed event
+     * observes result of the queued one (transit() and Future returned by
+     * asyncTransit() complete when it is processed, so cancellation of such
+     * Future cancels the queued event as well). Events of the same coalescable
+     * type must be interchangeable, payload of absorbed event is ignored, and
+     * absorbed event is effectively moved before events queued in between.
+     * Applies to transit(), transitAndGetResultingState(), asyncTransit(),
+     * fireAndForgetTransit() and CAStransit() with generation 0
+     * @param eventTypes coalescable event types, empty set turns coalescing off
+     */
+    void setCoalescableEvents(Set<EventType> eventTypes);
+
+    /**
+     * @return number of events absorbed by queued events of the same type
+     */
+    long getCoalescedEventsCount();
+
+    /**
+     * default number of high priority events processed in a row while normal
+     * lane is not empty, see setMaxConsecutiveHighPriority()
+     */
+    int DEFAULT_MAX_CONSECUTIVE_HIGH_PRIORITY = 32;
+
+    /**
+     * declares event types as high priority (e.g. cancellation, shutdown):
+     * such events are queued in separate lane drained before the lane of other
+     * events, so they don't wait behind queued data events. Events are processed
+     * in order of sending within each lane. High priority lane is not bounded
+     * by queue capacity of the FSM
+     * @param eventTypes high priority event types, empty set puts all events
+     * to single lane
+     */
+    void setHighPriorityEvents(Set<EventType> eventTypes);
+
+    /**
+     * limits number of high priority events processed in a row while normal
+     * lane is not empty, so flood of high priority events doesn't starve
+     * other events
+     * @param limit maximal number of consecutive high priority events
+     */
+    void setMaxConsecutiveHighPriority(int limit);
+
+    /**
+     * @param lane priority lane
+     * @return number of events and requests waiting in the lane
+     */
+    int getQueueDepth(EventPriority lane);
 }
\ No newline at end of file
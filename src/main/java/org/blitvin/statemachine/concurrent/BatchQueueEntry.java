@@ -0,0 +1,170 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.blitvin.statemachine.BatchTransitResult;
+import org.blitvin.statemachine.FSMWrapperTransport;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineEvent;
+import org.blitvin.statemachine.StateMachineWrapperAcceptor;
+
+/**
+ * Transport to propagate batch of events to FSM wrapped in dedicated thread.
+ * Whole batch is processed by the dedicated thread as single queue entry, 
+ * generation is advanced per processed event
+ *
+ * @author blitvin
+ */
+final class BatchQueueEntry<EventType extends Enum<EventType>> implements Future<BatchTransitResult>, FSMWrapperTransport<EventType> {
+
+    private final StateMachineEvent<EventType>[] events;
+    private final int off;
+    private final int len;
+    private final int indexOffset;
+    private final CountDownLatch latch;
+    private volatile BatchTransitResult result;
+    private static final AtomicIntegerFieldUpdater<BatchQueueEntry> PROCESSING_STATE
+            = AtomicIntegerFieldUpdater.newUpdater(BatchQueueEntry.class, "processingState");
+    private volatile int processingState = EventQueueEntry.BEFORE_RUN;
+
+    /**
+     * @param events events to process
+     * @param off index of first event to process
+     * @param len number of events
+     * @param indexOffset added to failed index of the result, used if events
+     * are copy of the caller's array slice
+     */
+    BatchQueueEntry(StateMachineEvent<EventType>[] events, int off, int len, int indexOffset) {
+        this.events = events;
+        this.off = off;
+        this.len = len;
+        this.indexOffset = indexOffset;
+        latch = new CountDownLatch(1);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (PROCESSING_STATE.compareAndSet(this, EventQueueEntry.BEFORE_RUN, EventQueueEntry.CANCELLED)) {
+            latch.countDown();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return processingState == EventQueueEntry.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return processingState == EventQueueEntry.FINISHED;
+    }
+
+    /**
+     * @return result of the batch, null if the batch is not processed yet
+     */
+    BatchTransitResult getResult() {
+        return result;
+    }
+
+    @Override
+    public BatchTransitResult get() throws InterruptedException, ExecutionException {
+        latch.await();
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+        return result;
+    }
+
+    @Override
+    public BatchTransitResult get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (latch.await(timeout, unit)) {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return result;
+        } else {
+            throw new TimeoutException();
+        }
+    }
+
+    /**
+     * waits for processing completion ignoring interrupts, interrupted status
+     * of the thread is restored on return
+     */
+    void awaitResultsUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void apply(StateMachineWrapperAcceptor<EventType> machine,
+            StateMachineWrapperAcceptor<EventType> wrapped) {
+        ConcurrentStateMachine.ProcessingThread<EventType> wrapper = (ConcurrentStateMachine.ProcessingThread<EventType>) machine;
+        StateMachine<EventType> fsm = (StateMachine<EventType>) wrapped;
+        if (!PROCESSING_STATE.compareAndSet(this, EventQueueEntry.BEFORE_RUN, EventQueueEntry.RUNNING)) {
+            return;
+        }
+        BatchTransitResult batchResult;
+        try {
+            // transitAll reports exception of an event in the result, so
+            // this catches only failures not attributable to particular event
+            batchResult = fsm.transitAll(events, off, len);
+        } catch (Exception e) {
+            batchResult = new BatchTransitResult(0, off,
+                    new InvalidEventException("exception happened during transition processing", e));
+        }
+        try {
+            // failed event advances generation as EventQueueEntry does
+            int processed = batchResult.getApplied() + (batchResult.isCompleted() ? 0 : 1);
+            if (processed > 0) {
+                wrapper.setCurState(new StampedState<>(fsm.getCurrentState(), wrapper.advanceGeneration(processed)));
+            }
+        } finally {
+            if (indexOffset != 0 && !batchResult.isCompleted()) {
+                batchResult = new BatchTransitResult(batchResult.getApplied(),
+                        batchResult.getFailedIndex() + indexOffset, batchResult.getFailure());
+            }
+            result = batchResult;
+            wrapper.releasePending();
+            PROCESSING_STATE.compareAndSet(this, EventQueueEntry.RUNNING, EventQueueEntry.FINISHED);
+            latch.countDown();
+        }
+    }
+}
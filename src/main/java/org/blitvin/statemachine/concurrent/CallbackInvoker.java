@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * delivers outcome of the event to TransitCallback, directly or via executor
+ * @author blitvin
+ */
+final class CallbackInvoker<EventType extends Enum<EventType>> implements Runnable {
+
+    private final TransitCallback<EventType> callback;
+    private final StampedState<EventType> state;
+    private final Exception failure;
+
+    private CallbackInvoker(TransitCallback<EventType> callback, StampedState<EventType> state, Exception failure) {
+        this.callback = callback;
+        this.state = state;
+        this.failure = failure;
+    }
+
+    /**
+     * @param executor executor to run callback in, null to run it in current
+     * thread. Callback rejected by the executor runs in current thread
+     * @param failure null if the event is processed successfully
+     */
+    static <EventType extends Enum<EventType>> void invoke(TransitCallback<EventType> callback, Executor executor,
+            StampedState<EventType> state, Exception failure) {
+        CallbackInvoker<EventType> invoker = new CallbackInvoker<>(callback, state, failure);
+        if (executor != null) {
+            try {
+                executor.execute(invoker);
+                return;
+            } catch (RejectedExecutionException e) {
+                // fall through
+            }
+        }
+        invoker.run();
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (failure == null) {
+                callback.onTransit(state);
+            } else {
+                callback.onFailure(failure);
+            }
+        } catch (RuntimeException e) {
+            // callback must not break thread completing the event
+        }
+    }
+}
@@ -17,12 +17,19 @@
  */
 package org.blitvin.statemachine.concurrent;
 
+import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.blitvin.statemachine.BatchTransitResult;
 import org.blitvin.statemachine.FSMWrapper;
 import org.blitvin.statemachine.FSMWrapperException;
 import org.blitvin.statemachine.FSMWrapperTransport;
@@ -32,6 +39,8 @@ import org.blitvin.statemachine.State;
 import org.blitvin.statemachine.StateMachine;
 import org.blitvin.statemachine.StateMachineEvent;
 import org.blitvin.statemachine.StateMachineWrapperAcceptor;
+import org.blitvin.statemachine.StateTimeouts;
+import org.blitvin.statemachine.TransitStatus;
 
 /**
  * ConcurrentStateMachine provides thread safe implementation of state machine.
@@ -49,47 +58,303 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
 
     private boolean initialized = false;
     private volatile ProcessingThread<EventType> wrapper;
+    private volatile ThreadFactory threadFactory;
+    /**
+     * thread running processing loop, wrapper itself or thread created by
+     * threadFactory
+     */
+    private volatile Thread processingThread;
+    private volatile boolean earlyRejection = false;
+    private volatile HashedTimingWheel timingWheel;
+    private volatile EventCoalescer<EventQueueEntry<EventType>> coalescer;
+    private final AtomicLong coalescedEvents = new AtomicLong();
+    private volatile boolean[] highPriorityEvents;
+    private volatile WaitStrategy replyWaitStrategy = WaitStrategy.BLOCKING;
+
+    protected final InterThreadCom<FSMWrapperTransport<EventType>> interThreadCom;
+
+    /**
+     * implementation of queue passing events to processing thread
+     */
+    public static enum QUEUE_TYPE {
+
+        /**
+         * LinkedBlockingQueue, allocates node per event and locks on every
+         * send and take
+         */
+        LINKED_BLOCKING_QUEUE,
+        /**
+         * preallocated lock free ring of slots, processing thread drains all
+         * available events per wakeup
+         */
+        RING_BUFFER
+    }
+
+    /**
+     * size of the ring of unbounded RING_BUFFER queue, events not fitting the
+     * ring are kept in overflow queue
+     */
+    public static final int DEFAULT_RING_CAPACITY = 1024;
+
+    static <T> InterThreadCom<T> createInterThreadCom(
+            QUEUE_TYPE queueType, int queueCapacity, long timeout, TimeUnit timeUnit) {
+        if (queueType == QUEUE_TYPE.RING_BUFFER) {
+            if (queueCapacity <= 0) {
+                return new RingBufferInterThreadCom<>(DEFAULT_RING_CAPACITY, true, 0);
+            }
+            return new RingBufferInterThreadCom<>(queueCapacity, false, timeout < 0 ? -1 : timeUnit.toNanos(timeout));
+        }
+        if (queueCapacity <= 0) {
+            return new UnboundQueueCom<>();
+        } else if (timeout < 0) {
+            return new BoundedQueueCom<>(queueCapacity);
+        } else if (timeout > 0) {
+            return new BoundedQueueWithTimeoutCom<>(queueCapacity, timeout, timeUnit);
+        }
+        return new BoundedQueueNoWaitCom<>(queueCapacity);
+    }
+
+    /**
+     * channel passing entries to processing thread
+     * @param <T> type of transported entries
+     */
+    protected static abstract class InterThreadCom<T> {
+
+        /**
+         * number of transports sent but not applied yet
+         */
+        final AtomicInteger pending = new AtomicInteger();
+
+        abstract boolean send(T transport);
+
+        /**
+         * waits until transport is available, called by processing thread only
+         * @return next transport of normal lane, null or WAKE_UP if woken up by
+         * wakeUp()
+         */
+        abstract T take() throws InterruptedException;
+
+        /**
+         * @return next transport of normal lane or null if the lane is empty,
+         * called by processing thread only
+         */
+        abstract T poll();
+
+        /**
+         * wakes up processing thread waiting in take()
+         */
+        abstract void wakeUp();
+
+        /**
+         * @return number of transports waiting in normal lane
+         */
+        abstract int size();
+
+        final boolean post(T transport) {
+            pending.incrementAndGet();
+            if (send(transport)) {
+                return true;
+            }
+            pending.decrementAndGet();
+            return false;
+        }
+
+        /**
+         * lane of high priority transports, null if FSM has no high priority
+         * events
+         */
+        private volatile ConcurrentLinkedQueue<T> highPriorityLane;
+        final AtomicInteger highPriorityDepth = new AtomicInteger();
+        volatile int maxConsecutiveHighPriority = DEFAULT_MAX_CONSECUTIVE_HIGH_PRIORITY;
+        /**
+         * high priority transports taken in a row, accessed by processing thread
+         */
+        private int highPriorityStreak = 0;
+
+        final boolean post(T transport, boolean highPriority) {
+            ConcurrentLinkedQueue<T> lane = highPriorityLane;
+            if (!highPriority || lane == null) {
+                return post(transport);
+            }
+            pending.incrementAndGet();
+            highPriorityDepth.incrementAndGet();
+            lane.add(transport);
+            wakeUp();
+            return true;
+        }
+
+        void enableHighPriorityLane() {
+            if (highPriorityLane == null) {
+                highPriorityLane = new ConcurrentLinkedQueue<>();
+            }
+        }
+
+        /**
+         * strategy of processing thread waiting for next transport
+         */
+        volatile WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
 
-    protected final InterThreadCom<EventType> interThreadCom;
+        T get() throws InterruptedException {
+            int idleIterations = 0;
+            while (true) {
+                ConcurrentLinkedQueue<T> lane = highPriorityLane;
+                WaitStrategy strategy = waitStrategy;
+                T retVal;
+                if (lane == null) {
+                    if (strategy == WaitStrategy.BLOCKING) {
+                        retVal = take();
+                    } else {
+                        retVal = poll();
+                        if (retVal == null) {
+                            retVal = idleOrTake(strategy, idleIterations++);
+                        }
+                    }
+                } else {
+                    if (highPriorityStreak < maxConsecutiveHighPriority && (retVal = pollHighPriority(lane)) != null) {
+                        return retVal;
+                    }
+                    retVal = poll();
+                    if (retVal == null) {
+                        retVal = pollHighPriority(lane);
+                        if (retVal != null) {
+                            return retVal;
+                        }
+                        retVal = idleOrTake(strategy, idleIterations++);
+                    }
+                }
+                if (retVal != null && retVal != WAKE_UP) {
+                    highPriorityStreak = 0;
+                    return retVal;
+                }
+            }
+        }
 
-    protected static abstract class InterThreadCom<EventType extends Enum<EventType>> {
+        /**
+         * @return null if strategy allows another check, otherwise transport
+         * taken by blocking take()
+         */
+        private T idleOrTake(WaitStrategy strategy, int iteration) throws InterruptedException {
+            if (strategy.idle(iteration)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                return null;
+            }
+            return take();
+        }
 
-        protected final LinkedBlockingQueue<FSMWrapperTransport<EventType>> queue;
+        private T pollHighPriority(ConcurrentLinkedQueue<T> lane) {
+            T retVal = lane.poll();
+            if (retVal != null) {
+                highPriorityDepth.decrementAndGet();
+                ++highPriorityStreak;
+            }
+            return retVal;
+        }
 
-        public InterThreadCom(LinkedBlockingQueue<FSMWrapperTransport<EventType>> queue) {
+        int getDepth(EventPriority lane) {
+            if (lane == EventPriority.HIGH) {
+                return highPriorityDepth.get();
+            }
+            return size();
+        }
+    }
+
+    /**
+     * token waking up processing thread when high priority transport is queued
+     */
+    static final Object WAKE_UP = new Object();
+
+    private static abstract class BlockingQueueCom<T>
+            extends InterThreadCom<T> {
+
+        protected final LinkedBlockingQueue<T> queue;
+        /**
+         * WAKE_UP tokens in the queue
+         */
+        private final AtomicInteger wakeUps = new AtomicInteger();
+        /**
+         * true while processing thread is (about to be) blocked in take() of
+         * the queue, WAKE_UP token is queued only in this case
+         */
+        private volatile boolean waitingConsumer;
+        private volatile boolean wakeUpRequested;
+
+        public BlockingQueueCom(LinkedBlockingQueue<T> queue) {
             this.queue = queue;
         }
 
-        abstract boolean send(FSMWrapperTransport<EventType> transport);
+        @Override
+        T take() throws InterruptedException {
+            T retVal = poll();
+            if (retVal != null) {
+                return retVal;
+            }
+            waitingConsumer = true;
+            try {
+                // wakeUp() checks waitingConsumer after setting wakeUpRequested,
+                // so re-check after setting it to avoid missed wakeup
+                if (wakeUpRequested) {
+                    return null;
+                }
+                return taken(queue.take());
+            } finally {
+                waitingConsumer = false;
+                wakeUpRequested = false;
+            }
+        }
+
+        @Override
+        T poll() {
+            return taken(queue.poll());
+        }
 
-        FSMWrapperTransport<EventType> get() throws InterruptedException {
-            return queue.take();
+        private T taken(T transport) {
+            if (transport == WAKE_UP) {
+                wakeUps.decrementAndGet();
+            }
+            return transport;
+        }
+
+        @Override
+        void wakeUp() {
+            wakeUpRequested = true;
+            // single token is enough, if the queue is full processing thread
+            // isn't waiting anyway
+            if (waitingConsumer && wakeUps.compareAndSet(0, 1) && !queue.offer((T) WAKE_UP)) {
+                wakeUps.decrementAndGet();
+            }
+        }
+
+        @Override
+        int size() {
+            return Math.max(queue.size() - wakeUps.get(), 0);
         }
     }
 
-    private static class UnboundQueueCom<EventType extends Enum<EventType>>
-            extends InterThreadCom<EventType> {
+    private static class UnboundQueueCom<T>
+            extends BlockingQueueCom<T> {
 
         public UnboundQueueCom() {
-            super(new LinkedBlockingQueue<FSMWrapperTransport<EventType>>());
+            super(new LinkedBlockingQueue<T>());
         }
 
         @Override
-        public boolean send(FSMWrapperTransport<EventType> transport) {
+        public boolean send(T transport) {
             return queue.offer(transport);
         }
 
     }
 
-    private class BoundedQueueCom<EventType extends Enum<EventType>> extends
-            InterThreadCom<EventType> {
+    private static class BoundedQueueCom<T> extends
+            BlockingQueueCom<T> {
 
         public BoundedQueueCom(int queueCapacity) {
-            super(new LinkedBlockingQueue<FSMWrapperTransport<EventType>>(queueCapacity));
+            super(new LinkedBlockingQueue<T>(queueCapacity));
         }
 
         @Override
-        public boolean send(FSMWrapperTransport<EventType> transport) {
+        public boolean send(T transport) {
             try {
                 queue.put(transport);
                 return true;
@@ -99,20 +364,20 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
         }
     }
 
-    private class BoundedQueueWithTimeoutCom<EventType extends Enum<EventType>> extends
-            InterThreadCom<EventType> {
+    private static class BoundedQueueWithTimeoutCom<T> extends
+            BlockingQueueCom<T> {
 
         private final long timeout;
         private final TimeUnit timeUnit;
 
         public BoundedQueueWithTimeoutCom(int queueCapacity, long timeout, TimeUnit timeUnit) {
-            super(new LinkedBlockingQueue<FSMWrapperTransport<EventType>>(queueCapacity));
+            super(new LinkedBlockingQueue<T>(queueCapacity));
             this.timeout = timeout;
             this.timeUnit = timeUnit;
         }
 
         @Override
-        boolean send(FSMWrapperTransport<EventType> transport) {
+        boolean send(T transport) {
             try {
                 return queue.offer(transport, timeout, timeUnit);
             } catch (InterruptedException ex) {
@@ -122,15 +387,15 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
 
     }
 
-    private class BoundedQueueNoWaitCom<EventType extends Enum<EventType>> extends
-            InterThreadCom<EventType> {
+    private static class BoundedQueueNoWaitCom<T> extends
+            BlockingQueueCom<T> {
 
         public BoundedQueueNoWaitCom(int queueCapacity) {
-            super(new LinkedBlockingQueue<FSMWrapperTransport<EventType>>(queueCapacity));
+            super(new LinkedBlockingQueue<T>(queueCapacity));
         }
 
         @Override
-        boolean send(FSMWrapperTransport<EventType> transport) {
+        boolean send(T transport) {
             return queue.offer(transport);
 
         }
@@ -239,6 +504,45 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
         this(machine, "Async FSM", queueCapacity, timeout, timeUnit);
     }
 
+    /**
+     * The constructor accepts (possible not concurrent state safe)state machine
+     * and wraps it in ConcurrentStateMachine using specified queue
+     * implementation. Note that one must call completeInitialization so that
+     * the state machine thread start running
+     *
+     * @param machine wrapped FSM
+     * @param threadName name of dedicated thread
+     * @param queueType implementation of the queue
+     * @param queueCapacity maximal number of events awaiting processing, zero
+     * or negative for unbounded queue (RING_BUFFER keeps events not fitting the
+     * ring of DEFAULT_RING_CAPACITY slots in overflow queue)
+     * @param timeout how long thread sending event to full bounded queue waits
+     * for room: negative - until room is available, zero - doesn't wait,
+     * sending fails
+     * @param timeUnit unit of timeout
+     */
+    public ConcurrentStateMachine(StateMachine<EventType> machine, String threadName,
+            QUEUE_TYPE queueType, int queueCapacity, long timeout, TimeUnit timeUnit) {
+        super(machine);
+        interThreadCom = createInterThreadCom(queueType, queueCapacity, timeout, timeUnit);
+        this.wrapper = new ProcessingThread<>(interThreadCom, machine);
+        wrapper.setName(threadName);
+        wrapper.setDaemon(true);
+    }
+
+    /**
+     * creates FSM with bounded queue of specified implementation, thread sending
+     * event to full queue waits until room is available
+     *
+     * @param machine wrapped FSM
+     * @param queueType implementation of the queue
+     * @param queueCapacity maximal number of events awaiting processing, zero
+     * or negative for unbounded queue
+     */
+    public ConcurrentStateMachine(StateMachine<EventType> machine, QUEUE_TYPE queueType, int queueCapacity) {
+        this(machine, "Async FSM", queueType, queueCapacity, -1, TimeUnit.MILLISECONDS);
+    }
+
     final static class SetPropertyEntry<EventType extends Enum<EventType>> implements FSMWrapperTransport<EventType> {
 
         private final Object name;
@@ -272,7 +576,7 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
     @Override
     public boolean setProperty(Object name, Object value) {
         SetPropertyEntry<EventType> transport = new SetPropertyEntry<>(name, value);
-        interThreadCom.send(transport);
+        interThreadCom.post(transport);
         return transport.getResult();
     }
 
@@ -286,6 +590,45 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
         return wrapper.getMachine().getNameOfCurrentState();
     }
 
+    @Override
+    public boolean canAccept(EventType eventType) {
+        return wrapper.getMachine().canAccept(eventType);
+    }
+
+    @Override
+    public void setEarlyRejection(boolean earlyRejection) {
+        this.earlyRejection = earlyRejection;
+    }
+
+    @Override
+    public boolean isEarlyRejection() {
+        return earlyRejection;
+    }
+
+    /**
+     * checks event against current state if nothing is pending in the queue,
+     * so the state observed is the state the event would be applied to
+     */
+    private boolean rejectedEarly(StateMachineEvent<EventType> event) {
+        return earlyRejection && interThreadCom.pending.get() == 0
+                && !wrapper.getMachine().canAccept(event.getEventType());
+    }
+
+    @Override
+    public int getCurrentStateIndex() {
+        return wrapper.getMachine().getCurrentStateIndex();
+    }
+
+    @Override
+    public String getStateName(int index) {
+        return wrapper.getMachine().getStateName(index);
+    }
+
+    @Override
+    public int getStateIndex(String stateName) {
+        return wrapper.getMachine().getStateIndex(stateName);
+    }
+
     @Override
     public Set<String> getStateNames() {
         return wrapper.getMachine().getStateNames();
@@ -323,7 +666,7 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
     @Override
     public boolean replaceWrappedWith(StateMachine<EventType> newRef) {
         ReplaceWrappedFSMEntry<EventType> transport = new ReplaceWrappedFSMEntry<>(newRef);
-        if (interThreadCom.send(transport)) {
+        if (interThreadCom.post(transport)) {
             return transport.checkIsSuccessfull();
         }
         return false; // couldn't propagate to dedicated thread
@@ -333,19 +676,38 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
             implements org.blitvin.statemachine.StateMachineWrapper<EventType> {
 
         //private final BlockingQueue<FSMWrapperTransport<EventType>> queue;
-        private final InterThreadCom<EventType> interThreadCom;
+        private final InterThreadCom<FSMWrapperTransport<EventType>> interThreadCom;
         private StampedState<EventType> curState;
 
         private int generation;
+        private boolean pendingReleased;
+        StateTimeoutTracker<EventType> timeoutTracker;
 
         int advanceGeneration() {
             return ++generation;
         }
 
+        int advanceGeneration(int delta) {
+            generation += delta;
+            return generation;
+        }
+
         int getGeneration() {
             return generation;
         }
 
+        /**
+         * marks currently applied transport as no longer pending, transports
+         * waking up waiting sender call it before the sender is released, so
+         * the sender observes idle queue
+         */
+        void releasePending() {
+            if (!pendingReleased) {
+                pendingReleased = true;
+                interThreadCom.pending.decrementAndGet();
+            }
+        }
+
         void setCurState(StampedState<EventType> newCurState) {
             curState = newCurState;
         }
@@ -357,7 +719,7 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
             return machine;
         }
 
-        public ProcessingThread(InterThreadCom<EventType> interThreadCom,
+        public ProcessingThread(InterThreadCom<FSMWrapperTransport<EventType>> interThreadCom,
                 StateMachine<EventType> machine) {
             this.interThreadCom = interThreadCom;
             this.machine = machine;
@@ -370,9 +732,21 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
          }*/
         @Override
         public void run() {
+            if (timeoutTracker != null) {
+                timeoutTracker.onCurrentState(machine.getCurrentStateIndex());
+            }
             while (true) {
                 try {
-                    interThreadCom.get().apply(this, machine);
+                    FSMWrapperTransport<EventType> transport = interThreadCom.get();
+                    pendingReleased = false;
+                    try {
+                        transport.apply(this, machine);
+                    } finally {
+                        releasePending();
+                        if (timeoutTracker != null) {
+                            timeoutTracker.onCurrentState(machine.getCurrentStateIndex());
+                        }
+                    }
                 } catch (InterruptedException e) {
                     return;
                 } catch (FSMWrapperException ex) { //TBD what to do with this?
@@ -405,6 +779,50 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
         CAStransit(event, 0);
     }
 
+    /**
+     * send an event for synchronous processing and report its outcome. Failure 
+     * to pass the event to processing thread is reported as REJECTED. If the
+     * caller is interrupted while waiting, the event is cancelled and REJECTED
+     * is returned unless processing thread already started the transition,
+     * in which case the method waits for the real outcome and keeps interrupted
+     * status of the thread
+     *
+     * @param event event to process in state machine
+     * @return outcome of the transition
+     */
+    @Override
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        if (rejectedEarly(event)) {
+            return TransitStatus.REJECTED;
+        }
+        EventQueueEntry<EventType> entry = new EventQueueEntry<>(event, 0, new CountDownLatch(1), true);
+        if (!postEvent(event, (FSMWrapperTransport< EventType>) entry)) {
+            return TransitStatus.REJECTED;
+        }
+        try {
+            entry.get(replyWaitStrategy);
+        } catch (InterruptedException | ExecutionException ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // REJECTED only if the event is guaranteed not to be applied,
+            // otherwise the processing thread already took it and the caller
+            // gets the real outcome
+            if (entry.cancel(false)) {
+                return TransitStatus.REJECTED;
+            }
+            entry.awaitResultsUninterruptibly();
+        }
+        Exception e = entry.getException();
+        if (e != null) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IllegalStateException("exception happened during transition processing", e);
+        }
+        return entry.getStatus();
+    }
+
     /**
      * send event to the state machine , don't wait for processing completion
      *
@@ -412,7 +830,161 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
      */
     @Override
     public boolean fireAndForgetTransit(StateMachineEvent<EventType> event) {
-        return interThreadCom.send(new EventQueueEntry<>(event, 0, null));
+        if (rejectedEarly(event)) {
+            return false;
+        }
+        EventCoalescer<EventQueueEntry<EventType>> curCoalescer = coalescer;
+        if (curCoalescer != null && curCoalescer.isCoalescable(event.getEventType())) {
+            return postCoalesced(curCoalescer, event) != null;
+        }
+        return postEvent(event, new EventQueueEntry<>(event, 0, null));
+    }
+
+    @Override
+    public void setCoalescableEvents(Set<EventType> eventTypes) {
+        coalescer = eventTypes.isEmpty() ? null : new EventCoalescer<EventQueueEntry<EventType>>(eventTypes,
+                getEventTypeClass().getEnumConstants().length, coalescedEvents) {
+            @Override
+            boolean isNotStarted(EventQueueEntry<EventType> submission) {
+                return submission.getProcessingState() == EventQueueEntry.BEFORE_RUN;
+            }
+        };
+    }
+
+    @Override
+    public long getCoalescedEventsCount() {
+        return coalescedEvents.get();
+    }
+
+    @Override
+    public void setHighPriorityEvents(Set<EventType> eventTypes) {
+        if (eventTypes.isEmpty()) {
+            highPriorityEvents = null;
+            return;
+        }
+        boolean[] mask = new boolean[getEventTypeClass().getEnumConstants().length];
+        for (EventType eventType : eventTypes) {
+            mask[eventType.ordinal()] = true;
+        }
+        interThreadCom.enableHighPriorityLane();
+        highPriorityEvents = mask;
+    }
+
+    @Override
+    public void setMaxConsecutiveHighPriority(int limit) {
+        interThreadCom.maxConsecutiveHighPriority = Math.max(limit, 1);
+    }
+
+    @Override
+    public int getQueueDepth(EventPriority lane) {
+        return interThreadCom.getDepth(lane);
+    }
+
+    /**
+     * sets strategy of processing thread waiting for next event, BLOCKING by
+     * default. Spinning strategies keep the processing thread busy while the
+     * FSM is idle
+     * @param strategy wait strategy
+     */
+    public void setProcessingWaitStrategy(WaitStrategy strategy) {
+        interThreadCom.waitStrategy = strategy;
+    }
+
+    /**
+     * sets strategy of threads waiting for results of transit(), tryTransit(),
+     * CAStransit() and transitAndGetResultingState(), BLOCKING by default
+     * @param strategy wait strategy
+     */
+    public void setReplyWaitStrategy(WaitStrategy strategy) {
+        replyWaitStrategy = strategy;
+    }
+
+    /**
+     * queues transport carrying the event in the lane of its priority
+     */
+    private boolean postEvent(StateMachineEvent<EventType> event, FSMWrapperTransport<EventType> transport) {
+        boolean[] mask = highPriorityEvents;
+        return interThreadCom.post(transport, mask != null && mask[event.getEventType().ordinal()]);
+    }
+
+    /**
+     * @return queued entry of the event type absorbing the event or new entry
+     * queued for the event, null if the event can't be queued
+     */
+    private EventQueueEntry<EventType> postCoalesced(EventCoalescer<EventQueueEntry<EventType>> curCoalescer,
+            StateMachineEvent<EventType> event) {
+        EventQueueEntry<EventType> retVal = curCoalescer.absorb(event.getEventType());
+        if (retVal != null) {
+            return retVal;
+        }
+        // coalescable entry always has latch, since absorbed callers may wait on it
+        retVal = new EventQueueEntry<>(event, 0, new CountDownLatch(1));
+        if (!postEvent(event, (FSMWrapperTransport<EventType>) retVal)) {
+            return null;
+        }
+        curCoalescer.setPending(event.getEventType(), retVal);
+        return retVal;
+    }
+
+    /**
+     * Expired timeout of the state, it is applied only if FSM didn't leave the
+     * state since the timeout was scheduled
+     */
+    static final class StateTimeoutEntry<EventType extends Enum<EventType>> implements FSMWrapperTransport<EventType> {
+
+        private final StateTimeoutTracker<EventType> tracker;
+        private final int epoch;
+        private final StateMachineEvent<EventType> event;
+
+        StateTimeoutEntry(StateTimeoutTracker<EventType> tracker, int epoch, StateMachineEvent<EventType> event) {
+            this.tracker = tracker;
+            this.epoch = epoch;
+            this.event = event;
+        }
+
+        @Override
+        public void apply(StateMachineWrapperAcceptor<EventType> machine,
+                StateMachineWrapperAcceptor<EventType> wrapped) throws FSMWrapperException {
+            if (tracker.isCurrent(epoch)) {
+                new EventQueueEntry<>(event, 0, null).apply(machine, wrapped);
+            }
+        }
+    }
+
+    @Override
+    public void setTimingWheel(HashedTimingWheel wheel) {
+        timingWheel = wheel;
+        StateTimeoutTracker<EventType> tracker = wrapper.timeoutTracker;
+        if (tracker != null) {
+            tracker.setWheel(getTimingWheel());
+        }
+    }
+
+    /**
+     * @return timing wheel measuring delays of the FSM
+     */
+    public HashedTimingWheel getTimingWheel() {
+        HashedTimingWheel retVal = timingWheel;
+        return retVal == null ? HashedTimingWheel.getDefault() : retVal;
+    }
+
+    /**
+     * send event to the state machine after the delay, don't wait for
+     * processing completion
+     *
+     * @param event event to process in state machine
+     * @param delay delay
+     * @param unit unit of the delay
+     * @return handle allowing to cancel the event
+     */
+    @Override
+    public HashedTimingWheel.Timeout transitAfter(final StateMachineEvent<EventType> event, long delay, TimeUnit unit) {
+        return getTimingWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                fireAndForgetTransit(event);
+            }
+        }, delay, unit);
     }
 
     /**
@@ -424,14 +996,75 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
      */
     @Override
     public Future<StampedState<EventType>> asyncTransit(StateMachineEvent<EventType> event) {
+        EventCoalescer<EventQueueEntry<EventType>> curCoalescer = coalescer;
+        if (curCoalescer != null && curCoalescer.isCoalescable(event.getEventType())) {
+            return postCoalesced(curCoalescer, event);
+        }
         EventQueueEntry<EventType> retVal = new EventQueueEntry<>(event, 0, new CountDownLatch(1));
-        if (!interThreadCom.send((FSMWrapperTransport< EventType>) retVal)) {
+        if (!postEvent(event, (FSMWrapperTransport< EventType>) retVal)) {
             return null;
         } else {
             return retVal;
         }
     }
 
+    /**
+     * send event to FSM, the callback is notified by processing thread or via
+     * the executor when the event is processed
+     *
+     * @param event event to process
+     * @param callback receives resulting state or failure of the event
+     * @param executor executor running the callback, null to run it in
+     * processing thread
+     * @return true if event accepted for processing
+     */
+    @Override
+    public boolean asyncTransit(StateMachineEvent<EventType> event, TransitCallback<EventType> callback,
+            Executor executor) {
+        EventQueueEntry<EventType> entry = new EventQueueEntry<>(event, 0, new CountDownLatch(1));
+        entry.setCallback(callback, executor);
+        return postEvent(event, entry);
+    }
+
+    /**
+     * send batch of events for synchronous processing. The batch is passed to 
+     * processing thread as single queue entry
+     *
+     * @param events array of events
+     * @param off index of first event to process
+     * @param len number of events to process
+     * @return result of batch processing
+     */
+    @Override
+    public BatchTransitResult transitAll(StateMachineEvent<EventType>[] events, int off, int len) {
+        BatchQueueEntry<EventType> entry = new BatchQueueEntry<>(events, off, len, 0);
+        if (!interThreadCom.post(entry)) {
+            return new BatchTransitResult(0, off, new InvalidEventException("failed to send events to processing thread"));
+        }
+        try {
+            return entry.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (entry.cancel(false)) {
+                return new BatchTransitResult(0, off, new InvalidEventException("failed to send events to processing thread", e));
+            }
+            // processing thread already took the batch, report the real outcome
+            entry.awaitResultsUninterruptibly();
+            return entry.getResult();
+        }
+    }
+
+    @Override
+    public Future<BatchTransitResult> asyncTransitAll(StateMachineEvent<EventType>[] events, int off, int len) {
+        BatchQueueEntry<EventType> entry = new BatchQueueEntry<>(Arrays.copyOfRange(events, off, off + len), 0, len, off);
+        if (!interThreadCom.post(entry)) {
+            return null;
+        }
+        return entry;
+    }
+
     /**
      * send event to the state and pause until processing is completed. Return
      * StampedState object representing new state of the machine
@@ -463,12 +1096,18 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
      */
     @Override
     public StampedState<EventType> CAStransit(StateMachineEvent<EventType> event, int generation) throws InvalidEventException {
-        EventQueueEntry<EventType> entry = new EventQueueEntry<>(event, generation, new CountDownLatch(1));
+        if (generation == 0 && rejectedEarly(event)) {
+            throw InvalidEventException.NOT_ACCEPTED;
+        }
+        EventCoalescer<EventQueueEntry<EventType>> curCoalescer = coalescer;
+        boolean coalesced = generation == 0 && curCoalescer != null && curCoalescer.isCoalescable(event.getEventType());
+        EventQueueEntry<EventType> entry = coalesced ? postCoalesced(curCoalescer, event)
+                : new EventQueueEntry<>(event, generation, new CountDownLatch(1));
         try {
-            if (!interThreadCom.send((FSMWrapperTransport< EventType>) entry)) {
+            if (entry == null || (!coalesced && !postEvent(event, (FSMWrapperTransport< EventType>) entry))) {
                 throw new InvalidEventException("failed to send event to processing thread");
             }
-            StampedState<EventType> retVal = entry.get();
+            StampedState<EventType> retVal = entry.get(replyWaitStrategy);
             Exception e = entry.getException();
             if (e != null) {
                 if (e instanceof InvalidEventException) {
@@ -540,8 +1179,23 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
 //	@Override
     public void completeInitialization() {
         if (!initialized) {
-            wrapper.setDaemon(true);
-            wrapper.start();
+            StateTimeouts<EventType> timeouts = StateTimeoutTracker.getTimeouts(wrapper.getMachine());
+            if (timeouts != null) {
+                wrapper.timeoutTracker = new StateTimeoutTracker<EventType>(wrapper.getMachine(), timeouts, getTimingWheel()) {
+                    @Override
+                    void post(int epoch, StateMachineEvent<EventType> event) {
+                        postEvent(event, new StateTimeoutEntry<>(this, epoch, event));
+                    }
+                };
+            }
+            ThreadFactory factory = threadFactory;
+            if (factory == null) {
+                wrapper.setDaemon(true);
+                processingThread = wrapper;
+            } else {
+                processingThread = factory.newThread(wrapper);
+            }
+            processingThread.start();
             initialized = true;
         }
 
@@ -561,16 +1215,38 @@ public class ConcurrentStateMachine<EventType extends Enum<EventType>> extends F
         completeInitialization();
     }
 
+    /**
+     * sets factory of thread running processing loop of the FSM instead of
+     * dedicated daemon thread, must be called before start(). Passing
+     * VirtualThreads.newFactory() runs the loop on virtual thread (Java 21+),
+     * so idle FSM costs only parked virtual thread and huge number of
+     * FSMs doesn't require the same number of platform threads. Processing
+     * semantics don't depend on the thread, but spinning wait strategies (see
+     * setProcessingWaitStrategy()) occupy carrier thread of virtual thread
+     * @param factory thread factory, null for dedicated daemon thread
+     */
+    public void setThreadFactory(ThreadFactory factory) {
+        if (initialized) {
+            throw new IllegalStateException("processing thread is already started");
+        }
+        threadFactory = factory;
+    }
+
     /**
      * stop internal FSM and exit its dedicated thread
      */
     public void shutDown() {
-        wrapper.interrupt();
+        Thread thread = processingThread;
+        if (thread != null) {
+            thread.interrupt();
+        } else {
+            wrapper.interrupt();
+        }
     }
 
     @Override
     public void acceptWrapperTransport(FSMWrapperTransport<EventType> transport) throws FSMWrapperException {
-        if (!interThreadCom.send(transport)) {
+        if (!interThreadCom.post(transport)) {
             throw new FSMWrapperException("can't propagate transport to processing thread");
         }
         // processing thread decides what to do with this transport
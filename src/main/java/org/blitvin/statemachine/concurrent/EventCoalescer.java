@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * EventCoalescer keeps the latest queued submission of every coalescable event
+ * type, so new submission of the same event type can be absorbed by it while
+ * it is not started. Entries are never removed, entry which started processing
+ * is simply not absorbing anymore, and is replaced by next submission of its
+ * event type.
+ * @author blitvin
+ * @param <T> type of queued submissions
+ */
+abstract class EventCoalescer<T> {
+
+    private final boolean[] coalescable;
+    private final AtomicReferenceArray<T> pending;
+    private final AtomicLong coalesced;
+
+    EventCoalescer(Set<? extends Enum<?>> eventTypes, int eventTypesCount, AtomicLong coalesced) {
+        coalescable = new boolean[eventTypesCount];
+        for (Enum<?> eventType : eventTypes) {
+            coalescable[eventType.ordinal()] = true;
+        }
+        pending = new AtomicReferenceArray<>(eventTypesCount);
+        this.coalesced = coalesced;
+    }
+
+    boolean isCoalescable(Enum<?> eventType) {
+        return coalescable[eventType.ordinal()];
+    }
+
+    /**
+     * @return queued not started submission of the event type, null if there
+     * is no such submission, so caller must queue new one and register it by
+     * setPending()
+     */
+    T absorb(Enum<?> eventType) {
+        T retVal = pending.get(eventType.ordinal());
+        if (retVal != null && isNotStarted(retVal)) {
+            coalesced.incrementAndGet();
+            return retVal;
+        }
+        return null;
+    }
+
+    void setPending(Enum<?> eventType, T submission) {
+        pending.set(eventType.ordinal(), submission);
+    }
+
+    /**
+     * @return true if the submission is neither started nor cancelled. The
+     * submission absorbing new one must start processing after the check, so
+     * that the absorbed event is applied after it is sent
+     */
+    abstract boolean isNotStarted(T submission);
+}
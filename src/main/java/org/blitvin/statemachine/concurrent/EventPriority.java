@@ -0,0 +1,29 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+/**
+ * Priority lanes of asynchronous FSM queue. Events of types declared as high
+ * priority (see AsyncStateMachine.setHighPriorityEvents()) are queued in HIGH
+ * lane, which is drained before NORMAL lane, all other events and requests are
+ * queued in NORMAL lane. Order of events is kept within each lane
+ * @author blitvin
+ */
+public enum EventPriority {
+    HIGH, NORMAL
+}
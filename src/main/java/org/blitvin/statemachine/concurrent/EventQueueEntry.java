@@ -20,14 +20,16 @@ package org.blitvin.statemachine.concurrent;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import org.blitvin.statemachine.FSMWrapperTransport;
 import org.blitvin.statemachine.StateMachine;
 import org.blitvin.statemachine.StateMachineEvent;
 import org.blitvin.statemachine.StateMachineWrapperAcceptor;
+import org.blitvin.statemachine.TransitStatus;
 
 /**
  * Transport to propagate events to FSM wrapped in dedicated thread
@@ -47,16 +49,44 @@ final class EventQueueEntry<EventType extends Enum<EventType>> implements Future
     private volatile StampedState<EventType> resultingState;
     private final boolean replyExpected;
     private volatile Exception exception;
-    final AtomicInteger processingState;
+    private final boolean tryTransit;
+    private volatile TransitStatus status;
+    private static final AtomicIntegerFieldUpdater<EventQueueEntry> PROCESSING_STATE
+            = AtomicIntegerFieldUpdater.newUpdater(EventQueueEntry.class, "processingState");
+    private volatile int processingState = BEFORE_RUN;
+    private TransitCallback<EventType> callback;
+    private Executor callbackExecutor;
 
     public EventQueueEntry(StateMachineEvent<EventType> event, int generation, CountDownLatch latch) {
+        this(event, generation, latch, false);
+    }
+
+    /**
+     * @param tryTransit if true the event is processed by tryTransit() and
+     * outcome is available via getStatus()
+     */
+    public EventQueueEntry(StateMachineEvent<EventType> event, int generation, CountDownLatch latch,
+            boolean tryTransit) {
+        this.tryTransit = tryTransit;
         this.event = event;
         this.stamp = generation;
         this.latch = latch;
         this.replyExpected = (latch != null);
         resultingState = null;
         exception = null;
-        processingState = new AtomicInteger(BEFORE_RUN);
+    }
+
+    /**
+     * sets callback notified on completion, must be called before the entry
+     * is posted
+     */
+    void setCallback(TransitCallback<EventType> callback, Executor executor) {
+        this.callback = callback;
+        this.callbackExecutor = executor;
+    }
+
+    int getProcessingState() {
+        return processingState;
     }
 
     public StampedState<EventType> getResultingState() {
@@ -67,6 +97,14 @@ final class EventQueueEntry<EventType extends Enum<EventType>> implements Future
         this.resultingState = resultingState;
     }
 
+    /**
+     * @return outcome of tryTransit, null if entry is not processed yet or 
+     * created for regular transit
+     */
+    public TransitStatus getStatus() {
+        return status;
+    }
+
     public Exception getException() {
         return exception;
     }
@@ -90,7 +128,7 @@ final class EventQueueEntry<EventType extends Enum<EventType>> implements Future
     }*/
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-        if (processingState.compareAndSet(BEFORE_RUN, CANCELLED)) {
+        if (PROCESSING_STATE.compareAndSet(this, BEFORE_RUN, CANCELLED)) {
             latch.countDown();
             return true;
         } else {
@@ -100,12 +138,12 @@ final class EventQueueEntry<EventType extends Enum<EventType>> implements Future
 
     @Override
     public boolean isCancelled() {
-        return processingState.get() == CANCELLED;
+        return processingState == CANCELLED;
     }
 
     @Override
     public boolean isDone() {
-        return processingState.get() == FINISHED;
+        return processingState == FINISHED;
 
     }
 
@@ -139,6 +177,37 @@ final class EventQueueEntry<EventType extends Enum<EventType>> implements Future
         latch.await();
     }
 
+    /**
+     * waits for processing completion ignoring interrupts, interrupted status
+     * of the thread is restored on return
+     */
+    void awaitResultsUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * waits for processing completion according to the strategy
+     */
+    StampedState<EventType> get(WaitStrategy strategy) throws InterruptedException, ExecutionException {
+        for (int i = 0; latch.getCount() != 0 && strategy.idle(i); ++i) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return get();
+    }
+
     @Override
     public void apply(StateMachineWrapperAcceptor<EventType> machine,
             StateMachineWrapperAcceptor<EventType> wrapped) {
@@ -146,13 +215,17 @@ final class EventQueueEntry<EventType extends Enum<EventType>> implements Future
         //ConcurrentStateMachine.Generation gen = wrapper.getCurrentGeneration();
         StateMachine<EventType> fsm = (StateMachine<EventType>) wrapped;
         try {
-            if (!processingState.compareAndSet(EventQueueEntry.BEFORE_RUN, EventQueueEntry.RUNNING)) {
+            if (!PROCESSING_STATE.compareAndSet(this, EventQueueEntry.BEFORE_RUN, EventQueueEntry.RUNNING)) {
                 return;
             }
             if (getGeneration() != 0 && wrapper.getGeneration() != getGeneration()) {
                 setResultingState(null);
             } else {
-                fsm.transit(getEvent());
+                if (tryTransit) {
+                    status = fsm.tryTransit(getEvent());
+                } else {
+                    fsm.transit(getEvent());
+                }
                 StampedState<EventType> result = new StampedState<>(fsm.getCurrentState(), wrapper.advanceGeneration());
                 if (replyExpected) {
                     setResultingState(result);
@@ -164,9 +237,13 @@ final class EventQueueEntry<EventType extends Enum<EventType>> implements Future
             setResultingState(new StampedState<>(fsm.getCurrentState(), wrapper.advanceGeneration()));
             wrapper.setCurState(resultingState);
         } finally {
+            wrapper.releasePending();
             if (replyExpected) {
-                processingState.compareAndSet(EventQueueEntry.RUNNING,EventQueueEntry.FINISHED);
+                boolean finished = PROCESSING_STATE.compareAndSet(this, EventQueueEntry.RUNNING,EventQueueEntry.FINISHED);
                 latch.countDown();
+                if (finished && callback != null) {
+                    CallbackInvoker.invoke(callback, callbackExecutor, resultingState, exception);
+                }
             }
         }
     }
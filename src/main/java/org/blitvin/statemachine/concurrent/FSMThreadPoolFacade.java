@@ -18,15 +18,20 @@
  */
 package org.blitvin.statemachine.concurrent;
 
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineEvent;
+import org.blitvin.statemachine.StateTimeouts;
 
 /**
  * This class provides abstraction over ExecutorService (thread pool) for
@@ -45,11 +50,13 @@ public class FSMThreadPoolFacade<EventType extends Enum<EventType>> {
         final StateMachine<EventType> fsm; // <-- because of this the class is not immutable, carefull
         final StampedState<EventType> stampedState;
         final String currentStateName;
+        final int currentStateIndex;
         final boolean isInFinalState;
 
         public QuerryData(StateMachine<EventType> fsm, int generation) {
             this.stampedState = new StampedState<>(fsm.getCurrentState(), generation);
             this.currentStateName = fsm.getNameOfCurrentState();
+            this.currentStateIndex = fsm.getCurrentStateIndex();
             this.isInFinalState = fsm.isInFinalState();
             this.fsm = fsm;
         }
@@ -83,20 +90,115 @@ public class FSMThreadPoolFacade<EventType extends Enum<EventType>> {
         
     };
     
+    /**
+     * interval of checking for failed offers while waiting for queued entry
+     */
+    private static final long FAILED_OFFER_CHECK_MICROS = 100;
+
     StateMachine<EventType> fsm;
     final private ExecutorService pool;
-    final private AtomicInteger pending;
+    final AtomicInteger pending;
     final private BlockingQueue<FSMQueueSubmittable> queue;
     volatile int generation = 1; // need to be volatile?
     volatile QuerryData<EventType> querry;
+    private volatile HashedTimingWheel timingWheel;
+    volatile EventCoalescer coalescer;
+    final AtomicLong coalescedEvents = new AtomicLong();
+    private final StateTimeoutTracker<EventType> timeoutTracker;
+    private volatile ConcurrentLinkedQueue<FSMQueueSubmittable> highPriorityLane;
+    private volatile boolean[] highPriorityEvents;
+    private final AtomicInteger highPriorityDepth = new AtomicInteger();
+    /**
+     * entries counted in pending but not queued because the queue was full,
+     * thread completing current entry skips them instead of waiting
+     */
+    private final AtomicInteger failedOffers = new AtomicInteger();
+    private volatile int maxConsecutiveHighPriority = AsyncStateMachine.DEFAULT_MAX_CONSECUTIVE_HIGH_PRIORITY;
+    /**
+     * high priority entries taken in a row, accessed by thread completing
+     * current entry only
+     */
+    private int highPriorityStreak = 0;
 
     public FSMThreadPoolFacade(StateMachine<EventType> fsm,
             ExecutorService pool, BlockingQueue<FSMQueueSubmittable> queue) {
+        this(fsm, pool, queue, null);
+    }
+
+    /**
+     * @param timingWheel wheel measuring state timeouts and delays of
+     * transitAfter(), null to use HashedTimingWheel.getDefault()
+     */
+    public FSMThreadPoolFacade(StateMachine<EventType> fsm,
+            ExecutorService pool, BlockingQueue<FSMQueueSubmittable> queue,
+            HashedTimingWheel timingWheel) {
         this.pool = pool;
         this.queue = queue;
         pending = new AtomicInteger();
         this.fsm = fsm;
+        this.timingWheel = timingWheel;
         querry = new QuerryData<>(fsm, generation);
+        StateTimeouts<EventType> timeouts = StateTimeoutTracker.getTimeouts(fsm);
+        if (timeouts != null) {
+            timeoutTracker = new StateTimeoutTracker<EventType>(fsm, timeouts, getTimingWheel()) {
+                @Override
+                void post(int epoch, StateMachineEvent<EventType> event) {
+                    process(new StateTimeoutTask(epoch, event), isHighPriority(event));
+                }
+            };
+            timeoutTracker.onCurrentState(querry.currentStateIndex);
+        } else {
+            timeoutTracker = null;
+        }
+    }
+
+    /**
+     * Expired timeout of the state, it is applied only if FSM didn't leave the
+     * state since the timeout was scheduled
+     */
+    final class StateTimeoutTask implements Runnable {
+
+        private final int epoch;
+        private final StateMachineEvent<EventType> event;
+
+        StateTimeoutTask(int epoch, StateMachineEvent<EventType> event) {
+            this.epoch = epoch;
+            this.event = event;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (timeoutTracker.isCurrent(epoch)) {
+                    fsm.tryTransit(event);
+                    notifyFSMChange();
+                }
+            } finally {
+                setNextThingToProcess();
+            }
+        }
+    }
+
+    void setTimingWheel(HashedTimingWheel wheel) {
+        timingWheel = wheel;
+        if (timeoutTracker != null) {
+            timeoutTracker.setWheel(getTimingWheel());
+        }
+    }
+
+    void setCoalescableEvents(Set<EventType> eventTypes) {
+        coalescer = eventTypes.isEmpty() ? null : new EventCoalescer<PooledStateMachineProxy.FSMTransitionCallable>(eventTypes,
+                fsm.getEventTypeClass().getEnumConstants().length, coalescedEvents) {
+            @Override
+            boolean isNotStarted(PooledStateMachineProxy.FSMTransitionCallable submission) {
+                return !submission.started && !submission.future.isCancelled();
+            }
+        };
+    }
+
+    HashedTimingWheel getTimingWheel() {
+        HashedTimingWheel retVal = timingWheel;
+        return retVal == null ? HashedTimingWheel.getDefault() : retVal;
     }
 
     public AsyncStateMachine<EventType> getProxy() {
@@ -105,15 +207,22 @@ public class FSMThreadPoolFacade<EventType extends Enum<EventType>> {
 
     StampedState<EventType> notifyFSMChange() {
         querry = new QuerryData<>(fsm, ++generation);
+        if (timeoutTracker != null) {
+            timeoutTracker.onCurrentState(querry.currentStateIndex);
+        }
         return querry.stampedState;
     }
 
     <T> Future<T> process(Callable<T> entry, CallableQueueEntryProducer<T> producer) {
+        return process(entry, producer, false);
+    }
+
+    <T> Future<T> process(Callable<T> entry, CallableQueueEntryProducer<T> producer, boolean highPriority) {
         if (pending.incrementAndGet() == 1) {
             return pool.submit(entry);
         } else {
             QueuePair<T> pair = producer.get(entry);
-            if (queue.add(pair.submittable))
+            if (enqueue(pair.submittable, highPriority))
                 return pair.future;
             else
                 return queueingFailed;
@@ -121,17 +230,96 @@ public class FSMThreadPoolFacade<EventType extends Enum<EventType>> {
     }
 
     Future<?> process(Runnable entry, RunnableQueueEntryProducer<?> producer) {
+        return process(entry, producer, false);
+    }
+
+    Future<?> process(Runnable entry, RunnableQueueEntryProducer<?> producer, boolean highPriority) {
         if (pending.incrementAndGet() == 1) {
             return pool.submit(entry);
         } else {
             QueuePair<?> pair = producer.get(entry);
-            if (queue.add(pair.submittable))
+            if (enqueue(pair.submittable, highPriority))
                 return pair.future;
             else
                 return queueingFailed;
         }
     }
 
+    private boolean enqueue(FSMQueueSubmittable entry, boolean highPriority) {
+        ConcurrentLinkedQueue<FSMQueueSubmittable> lane = highPriorityLane;
+        if (highPriority && lane != null) {
+            highPriorityDepth.incrementAndGet();
+            return lane.add(entry);
+        }
+        if (queue.offer(entry)) {
+            return true;
+        }
+        // pending can't be simply decremented back, thread completing current
+        // entry may already wait for this one, so the slot is marked as failed
+        failedOffers.incrementAndGet();
+        return false;
+    }
+
+    private boolean takeFailedOffer() {
+        int failed;
+        while ((failed = failedOffers.get()) > 0) {
+            if (failedOffers.compareAndSet(failed, failed - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * takes next entry from the queue when high priority lane is not used
+     *
+     * @return null if failed offer is consumed instead of entry
+     */
+    private FSMQueueSubmittable takeNext() throws InterruptedException {
+        while (true) {
+            FSMQueueSubmittable retVal = queue.poll(FAILED_OFFER_CHECK_MICROS, TimeUnit.MICROSECONDS);
+            if (retVal != null) {
+                return retVal;
+            }
+            if (takeFailedOffer()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return true if the event is queued in high priority lane
+     */
+    boolean isHighPriority(StateMachineEvent<EventType> event) {
+        boolean[] mask = highPriorityEvents;
+        return mask != null && mask[event.getEventType().ordinal()];
+    }
+
+    void setHighPriorityEvents(Set<EventType> eventTypes) {
+        if (eventTypes.isEmpty()) {
+            highPriorityEvents = null;
+            return;
+        }
+        boolean[] mask = new boolean[fsm.getEventTypeClass().getEnumConstants().length];
+        for (EventType eventType : eventTypes) {
+            mask[eventType.ordinal()] = true;
+        }
+        synchronized (this) {
+            if (highPriorityLane == null) {
+                highPriorityLane = new ConcurrentLinkedQueue<>();
+            }
+        }
+        highPriorityEvents = mask;
+    }
+
+    void setMaxConsecutiveHighPriority(int limit) {
+        maxConsecutiveHighPriority = Math.max(limit, 1);
+    }
+
+    int getQueueDepth(EventPriority lane) {
+        return lane == EventPriority.HIGH ? highPriorityDepth.get() : queue.size();
+    }
+
     final static class FSMRunnableQueueEntry implements FSMQueueSubmittable {
 
         private final Runnable task;
@@ -153,23 +341,60 @@ public class FSMThreadPoolFacade<EventType extends Enum<EventType>> {
     
     // fire and forget
     boolean process(Runnable entry){
+        return process(entry, false);
+    }
+
+    boolean process(Runnable entry, boolean highPriority) {
         if (pending.incrementAndGet() == 1) {
             pool.submit(entry);
             return true;
         } else {
-           return queue.add(new FSMRunnableQueueEntry(entry));
+           return enqueue(new FSMRunnableQueueEntry(entry), highPriority);
         }
     }
-    
+
+    /**
+     * takes next entry, high priority lane first unless maximal number of
+     * consecutive high priority entries reached. Pending counter is incremented
+     * before the entry is queued, so the entry may be not available yet
+     *
+     * @return null if failed offer is consumed instead of entry
+     */
+    private FSMQueueSubmittable takeNext(ConcurrentLinkedQueue<FSMQueueSubmittable> lane) {
+        while (true) {
+            FSMQueueSubmittable retVal;
+            if (highPriorityStreak < maxConsecutiveHighPriority && (retVal = lane.poll()) != null) {
+                highPriorityDepth.decrementAndGet();
+                ++highPriorityStreak;
+                return retVal;
+            }
+            retVal = queue.poll();
+            if (retVal != null) {
+                highPriorityStreak = 0;
+                return retVal;
+            }
+            retVal = lane.poll();
+            if (retVal != null) {
+                highPriorityDepth.decrementAndGet();
+                ++highPriorityStreak;
+                return retVal;
+            }
+            if (takeFailedOffer()) {
+                return null;
+            }
+            Thread.yield();
+        }
+    }
+
     void setNextThingToProcess() {
         int queueLen;
         do {
             queueLen = pending.decrementAndGet();
             if (queueLen > 0) {
                 try {
-                    FSMQueueSubmittable entry = queue.take();
-                    assert (entry != null);
-                    if (entry.isCacnelled()) {
+                    ConcurrentLinkedQueue<FSMQueueSubmittable> lane = highPriorityLane;
+                    FSMQueueSubmittable entry = lane == null ? takeNext() : takeNext(lane);
+                    if (entry == null || entry.isCacnelled()) {
                         continue; // don't process this
                     }
                     entry.submit(pool);
@@ -0,0 +1,325 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * HashedTimingWheel schedules large number of timeouts (delayed events, state
+ * timeouts of FSMs) with O(1) scheduling and cancellation. Time is divided to
+ * ticks, timeout is placed to bucket (tick modulo wheel size) with number of
+ * full wheel rotations remaining, so delays longer than one rotation don't need
+ * additional wheel levels. Scheduling and cancellation only enqueue the timeout,
+ * the thread advancing the wheel moves it in/out of buckets. Expired timeout's
+ * task runs on the thread advancing the wheel, so it must be short - typically
+ * it just posts event to FSM queue.
+ * The wheel is advanced by its own daemon thread (see start()), or explicitly
+ * by advance(), e.g. in tests driving time by custom Clock.
+ * @author blitvin
+ */
+public final class HashedTimingWheel {
+
+    /**
+     * source of time of the wheel, nanoseconds
+     */
+    public interface Clock {
+
+        long nanoTime();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final class DefaultHolder {
+
+        static final HashedTimingWheel DEFAULT = new HashedTimingWheel(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        static {
+            DEFAULT.start("FSM timing wheel");
+        }
+    }
+
+    /**
+     * @return wheel shared by all FSMs which timing wheel is not set explicitly,
+     * the wheel is started upon first call
+     */
+    public static HashedTimingWheel getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * handle of scheduled task
+     */
+    public static final class Timeout {
+
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE
+                = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedTimingWheel wheel;
+        private final Runnable task;
+        final long deadline;
+        private volatile int state = INIT;
+        long remainingRounds;
+        Timeout next;
+        Timeout prev;
+        Bucket bucket;
+
+        Timeout(HashedTimingWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the task is cancelled by this call, false if it already
+         * expired or was cancelled before
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        void expire() {
+            if (STATE.compareAndSet(this, INIT, EXPIRED)) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // task failure must not stop the wheel
+                }
+            }
+        }
+    }
+
+    /**
+     * doubly linked list of timeouts, accessed only by thread advancing the wheel
+     */
+    static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        /**
+         * @return number of expired timeouts
+         */
+        int expire() {
+            int retVal = 0;
+            Timeout timeout = head;
+            while (timeout != null) {
+                if (timeout.remainingRounds <= 0) {
+                    Timeout next = remove(timeout);
+                    timeout.expire();
+                    ++retVal;
+                    timeout = next;
+                } else {
+                    --timeout.remainingRounds;
+                    timeout = timeout.next;
+                }
+            }
+            return retVal;
+        }
+    }
+
+    private final Clock clock;
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long startTime;
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private long tick = 0;
+    private Thread worker;
+
+    public HashedTimingWheel(long tickDuration, TimeUnit unit) {
+        this(tickDuration, unit, DEFAULT_WHEEL_SIZE, SYSTEM_CLOCK);
+    }
+
+    /**
+     * @param tickDuration resolution of the wheel
+     * @param unit unit of tickDuration
+     * @param wheelSize number of buckets, rounded up to power of 2
+     * @param clock source of time
+     */
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int wheelSize, Clock clock) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tick duration and wheel size must be positive");
+        }
+        tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        buckets = new Bucket[size];
+        for (int i = 0; i < size; ++i) {
+            buckets[i] = new Bucket();
+        }
+        mask = size - 1;
+        this.clock = clock;
+        startTime = clock.nanoTime();
+    }
+
+    /**
+     * schedules the task, it runs on first tick after the delay elapsed
+     * @param task task to run
+     * @param delay delay
+     * @param unit unit of the delay
+     * @return handle allowing cancellation of the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout retVal = new Timeout(this, task, clock.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0)));
+        scheduled.add(retVal);
+        return retVal;
+    }
+
+    /**
+     * processes all ticks elapsed by now according to the clock, expired tasks
+     * run on calling thread
+     * @return number of expired timeouts
+     */
+    public synchronized int advance() {
+        long elapsed = clock.nanoTime() - startTime;
+        int retVal = 0;
+        while ((tick + 1) * tickNanos <= elapsed) {
+            transferScheduled();
+            removeCancelled();
+            retVal += buckets[(int) (tick & mask)].expire();
+            ++tick;
+        }
+        return retVal;
+    }
+
+    private void transferScheduled() {
+        for (Timeout timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long expiresAt = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (expiresAt - tick) / buckets.length;
+            buckets[(int) (expiresAt & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        for (Timeout timeout = cancelled.poll(); timeout != null; timeout = cancelled.poll()) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * starts daemon thread advancing the wheel every tick
+     * @param threadName name of the thread
+     */
+    public synchronized void start(String threadName) {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(threadName) {
+            @Override
+            public void run() {
+                while (!isInterrupted()) {
+                    long sleep;
+                    synchronized (HashedTimingWheel.this) {
+                        sleep = startTime + (tick + 1) * tickNanos - clock.nanoTime();
+                    }
+                    try {
+                        if (sleep > 0) {
+                            TimeUnit.NANOSECONDS.sleep(sleep);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    advance();
+                }
+            }
+        };
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * stops thread advancing the wheel, pending timeouts don't expire anymore
+     */
+    public synchronized void shutDown() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    /**
+     * @return number of ticks processed so far
+     */
+    public synchronized long getTick() {
+        return tick;
+    }
+}
@@ -18,11 +18,16 @@
  */
 package org.blitvin.statemachine.concurrent;
 
+import java.util.Arrays;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.BatchTransitResult;
+import org.blitvin.statemachine.EnumEvent;
 import org.blitvin.statemachine.FSMWrapperException;
 import org.blitvin.statemachine.FSMWrapperTransport;
 import org.blitvin.statemachine.InvalidEventException;
@@ -30,6 +35,7 @@ import org.blitvin.statemachine.State;
 import org.blitvin.statemachine.StateMachine;
 import org.blitvin.statemachine.StateMachineEvent;
 import org.blitvin.statemachine.StateMachineWrapper;
+import org.blitvin.statemachine.TransitStatus;
 
 /**
  *
@@ -41,7 +47,11 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
     private final FSMThreadPoolFacade<EventType> threadPoolFacade;
     private static final FSMSynchronousRunnableQueueEntry.Producer syncRunnableProducer
             = new FSMSynchronousRunnableQueueEntry.Producer();
-    private final StampedTransitEntry.Producer<EventType> stampedProducer
+    private final StampedTransitEntry.Producer<StampedState<EventType>> stampedProducer
+            = new StampedTransitEntry.Producer<>();
+    private final StampedTransitEntry.Producer<BatchTransitResult> batchProducer
+            = new StampedTransitEntry.Producer<>();
+    private final StampedTransitEntry.Producer<TransitStatus> tryProducer
             = new StampedTransitEntry.Producer<>();
 
     
@@ -51,6 +61,11 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
         private final FSMThreadPoolFacade<EventType> threadPoolFacade;
         private final int generation;
         private final StateMachineEvent<EventType> event;
+        /**
+         * set for coalesced submissions only, see coalescedTransit()
+         */
+        volatile boolean started;
+        Future<StampedState<EventType>> future;
 
         public FSMTransitionCallable(FSMThreadPoolFacade<EventType> threadPoolFacade,
                 int generation,
@@ -62,6 +77,7 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
 
         @Override
         public StampedState<EventType> call() throws Exception {
+            started = true;
             try {
                 if (generation == 0 || generation == threadPoolFacade.generation) {
                     threadPoolFacade.fsm.transit(event);
@@ -76,6 +92,62 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
 
     }
 
+    final class FSMTryTransitionCallable<EventType extends Enum<EventType>> implements Callable<TransitStatus> {
+
+        private final FSMThreadPoolFacade<EventType> threadPoolFacade;
+        private final StateMachineEvent<EventType> event;
+
+        public FSMTryTransitionCallable(FSMThreadPoolFacade<EventType> threadPoolFacade,
+                StateMachineEvent<EventType> event) {
+            this.threadPoolFacade = threadPoolFacade;
+            this.event = event;
+        }
+
+        @Override
+        public TransitStatus call() throws Exception {
+            try {
+                TransitStatus retVal = threadPoolFacade.fsm.tryTransit(event);
+                threadPoolFacade.notifyFSMChange();
+                return retVal;
+            } finally {
+                threadPoolFacade.setNextThingToProcess();
+            }
+        }
+    }
+
+    final class FSMBatchTransitionCallable<EventType extends Enum<EventType>> implements Callable<BatchTransitResult> {
+
+        private final FSMThreadPoolFacade<EventType> threadPoolFacade;
+        private final StateMachineEvent<EventType>[] events;
+        private final int off;
+        private final int len;
+        private final int indexOffset;
+
+        public FSMBatchTransitionCallable(FSMThreadPoolFacade<EventType> threadPoolFacade,
+                StateMachineEvent<EventType>[] events, int off, int len, int indexOffset) {
+            this.threadPoolFacade = threadPoolFacade;
+            this.events = events;
+            this.off = off;
+            this.len = len;
+            this.indexOffset = indexOffset;
+        }
+
+        @Override
+        public BatchTransitResult call() throws Exception {
+            try {
+                BatchTransitResult result = threadPoolFacade.fsm.transitAll(events, off, len);
+                threadPoolFacade.notifyFSMChange();
+                if (indexOffset != 0 && !result.isCompleted()) {
+                    result = new BatchTransitResult(result.getApplied(), result.getFailedIndex() + indexOffset,
+                            result.getFailure());
+                }
+                return result;
+            } finally {
+                threadPoolFacade.setNextThingToProcess();
+            }
+        }
+    }
+
     final class FSMTransitionTask<EventType extends Enum<EventType>> implements Runnable {
 
         private final FSMThreadPoolFacade<EventType> threadPoolFacade;
@@ -106,17 +178,51 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
 
     }
 
+    final class FSMCallbackTransitionTask<EventType extends Enum<EventType>> implements Runnable {
+
+        private final FSMThreadPoolFacade<EventType> threadPoolFacade;
+        private final StateMachineEvent<EventType> event;
+        private final TransitCallback<EventType> callback;
+        private final Executor executor;
+
+        public FSMCallbackTransitionTask(FSMThreadPoolFacade<EventType> threadPoolFacade,
+                StateMachineEvent<EventType> event, TransitCallback<EventType> callback, Executor executor) {
+            this.threadPoolFacade = threadPoolFacade;
+            this.event = event;
+            this.callback = callback;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            StampedState<EventType> state = null;
+            Exception failure = null;
+            try {
+                threadPoolFacade.fsm.transit(event);
+                state = threadPoolFacade.notifyFSMChange();
+            } catch (Exception ex) {
+                failure = ex;
+            } finally {
+                threadPoolFacade.setNextThingToProcess();
+            }
+            // next event may be processed meanwhile, so callback waiting for FSM doesn't deadlock
+            CallbackInvoker.invoke(callback, executor, state, failure);
+        }
+    }
+
+    private volatile boolean earlyRejection = false;
+
     PooledStateMachineProxy(FSMThreadPoolFacade threadPoolFacade) {
         this.threadPoolFacade = threadPoolFacade;
     }
 
-    static final class StampedTransitEntry<EventType extends Enum<EventType>> implements FSMQueueSubmittable {
+    static final class StampedTransitEntry<T> implements FSMQueueSubmittable {
 
-        final Callable<StampedState<EventType>> callable;
-        final QueuedCallableFuture<StampedState<EventType>> queuedFuture;
+        final Callable<T> callable;
+        final QueuedCallableFuture<T> queuedFuture;
 
-        public StampedTransitEntry(Callable<StampedState<EventType>> callable,
-                QueuedCallableFuture<StampedState<EventType>> queuedFuture) {
+        public StampedTransitEntry(Callable<T> callable,
+                QueuedCallableFuture<T> queuedFuture) {
             this.callable = callable;
             this.queuedFuture = queuedFuture;
         }
@@ -131,14 +237,14 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
             queuedFuture.setFuture(pool.submit(callable));
         }
 
-        final static class Producer<EventType extends Enum<EventType>>
-                implements CallableQueueEntryProducer<StampedState<EventType>> {
+        final static class Producer<T>
+                implements CallableQueueEntryProducer<T> {
 
             @Override
-            public QueuePair<StampedState<EventType>> get(Callable<StampedState<EventType>> callable) {
-                QueuePair<StampedState<EventType>> pair;
-                QueuedCallableFuture<StampedState<EventType>> queuedFuture = new QueuedCallableFuture<>();
-                pair = new QueuePair<>(new StampedTransitEntry(callable, queuedFuture),
+            public QueuePair<T> get(Callable<T> callable) {
+                QueuePair<T> pair;
+                QueuedCallableFuture<T> queuedFuture = new QueuedCallableFuture<>();
+                pair = new QueuePair<>(new StampedTransitEntry<>(callable, queuedFuture),
                         queuedFuture);
                 return pair;
             }
@@ -149,16 +255,24 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
 
     @Override
     public StampedState<EventType> CAStransit(StateMachineEvent<EventType> event, int generation) throws InvalidEventException {
+        if (generation == 0 && rejectedEarly(event)) {
+            throw InvalidEventException.NOT_ACCEPTED;
+        }
+        EventCoalescer<FSMTransitionCallable<EventType>> coalescer = threadPoolFacade.coalescer;
         try {
-            return threadPoolFacade.process(new FSMTransitionCallable<>(threadPoolFacade, generation, event), stampedProducer).get();
+            if (generation == 0 && coalescer != null && coalescer.isCoalescable(event.getEventType())) {
+                return coalescedTransit(coalescer, event).get();
+            }
+            return threadPoolFacade.process(new FSMTransitionCallable<>(threadPoolFacade, generation, event), stampedProducer,
+                    threadPoolFacade.isHighPriority(event)).get();
         } catch (InterruptedException ex) {
             threadPoolFacade.setNextThingToProcess();
             throw new InvalidEventException("transition processing has been interrupted", ex);
         } catch (ExecutionException ex) {
-            if (ex.getCause() instanceof InvalidEventException) {
-                throw (InvalidEventException) ex.getCause();
-            } else if (ex == FSMThreadPoolFacade.queueingFailed){
+            if (ex.getCause() == null) { // see FSMThreadPoolFacade.queueingFailed
                 throw new InvalidEventException("events queue is full");
+            } else if (ex.getCause() instanceof InvalidEventException) {
+                throw (InvalidEventException) ex.getCause();
             } else {
                 throw new InvalidEventException("exception during executing transition", ex.getCause());
             }
@@ -172,12 +286,121 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
     
     @Override
     public Future<StampedState<EventType>> asyncTransit(StateMachineEvent<EventType> event) {
-        return threadPoolFacade.process(new FSMTransitionCallable<>(threadPoolFacade, 0, event), stampedProducer);
+        EventCoalescer<FSMTransitionCallable<EventType>> coalescer = threadPoolFacade.coalescer;
+        if (coalescer != null && coalescer.isCoalescable(event.getEventType())) {
+            return coalescedTransit(coalescer, event);
+        }
+        return threadPoolFacade.process(new FSMTransitionCallable<>(threadPoolFacade, 0, event), stampedProducer,
+                threadPoolFacade.isHighPriority(event));
+    }
+
+    @Override
+    public boolean asyncTransit(StateMachineEvent<EventType> event, TransitCallback<EventType> callback,
+            Executor executor) {
+        return threadPoolFacade.process(new FSMCallbackTransitionTask<>(threadPoolFacade, event, callback, executor),
+                threadPoolFacade.isHighPriority(event));
+    }
+
+    @Override
+    public Future<BatchTransitResult> asyncTransitAll(StateMachineEvent<EventType>[] events, int off, int len) {
+        return threadPoolFacade.process(new FSMBatchTransitionCallable<>(threadPoolFacade,
+                Arrays.copyOfRange(events, off, off + len), 0, len, off), batchProducer);
+    }
+
+    @Override
+    public BatchTransitResult transitAll(StateMachineEvent<EventType>[] events, int off, int len) {
+        Future<BatchTransitResult> future = threadPoolFacade.process(
+                new FSMBatchTransitionCallable<>(threadPoolFacade, events, off, len, 0), batchProducer);
+        // see tryTransit, interrupt doesn't abort waiting for the outcome
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() == null) { // see FSMThreadPoolFacade.queueingFailed
+                return new BatchTransitResult(0, off, new InvalidEventException("events queue is full"));
+            }
+            return new BatchTransitResult(0, off, new InvalidEventException("exception during executing transition", ex.getCause()));
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
     public boolean fireAndForgetTransit(StateMachineEvent<EventType> event) {
-        return threadPoolFacade.process(new FSMTransitionTask(threadPoolFacade, event,false));
+        if (rejectedEarly(event)) {
+            return false;
+        }
+        EventCoalescer<FSMTransitionCallable<EventType>> coalescer = threadPoolFacade.coalescer;
+        if (coalescer != null && coalescer.isCoalescable(event.getEventType())) {
+            return coalescedTransit(coalescer, event) != FSMThreadPoolFacade.queueingFailed;
+        }
+        return threadPoolFacade.process(new FSMTransitionTask(threadPoolFacade, event,false), threadPoolFacade.isHighPriority(event));
+    }
+
+    /**
+     * @return Future of queued not started submission of the event type
+     * absorbing the event, or of new submission of the event
+     */
+    private Future<StampedState<EventType>> coalescedTransit(EventCoalescer<FSMTransitionCallable<EventType>> coalescer,
+            StateMachineEvent<EventType> event) {
+        FSMTransitionCallable<EventType> callable = coalescer.absorb(event.getEventType());
+        if (callable != null) {
+            return callable.future;
+        }
+        callable = new FSMTransitionCallable<>(threadPoolFacade, 0, event);
+        callable.future = threadPoolFacade.process(callable, stampedProducer, threadPoolFacade.isHighPriority(event));
+        if (callable.future != FSMThreadPoolFacade.queueingFailed) {
+            coalescer.setPending(event.getEventType(), callable);
+        }
+        return callable.future;
+    }
+
+    @Override
+    public void setCoalescableEvents(Set<EventType> eventTypes) {
+        threadPoolFacade.setCoalescableEvents(eventTypes);
+    }
+
+    @Override
+    public long getCoalescedEventsCount() {
+        return threadPoolFacade.coalescedEvents.get();
+    }
+
+    @Override
+    public void setHighPriorityEvents(Set<EventType> eventTypes) {
+        threadPoolFacade.setHighPriorityEvents(eventTypes);
+    }
+
+    @Override
+    public void setMaxConsecutiveHighPriority(int limit) {
+        threadPoolFacade.setMaxConsecutiveHighPriority(limit);
+    }
+
+    @Override
+    public int getQueueDepth(EventPriority lane) {
+        return threadPoolFacade.getQueueDepth(lane);
+    }
+
+    @Override
+    public HashedTimingWheel.Timeout transitAfter(final StateMachineEvent<EventType> event, long delay, TimeUnit unit) {
+        return threadPoolFacade.getTimingWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                fireAndForgetTransit(event);
+            }
+        }, delay, unit);
+    }
+
+    @Override
+    public void setTimingWheel(HashedTimingWheel wheel) {
+        threadPoolFacade.setTimingWheel(wheel);
     }
 
     @Override
@@ -221,18 +444,26 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
 
     @Override
     public void transit(StateMachineEvent<EventType> event) throws InvalidEventException {
-        Future<?> future = threadPoolFacade.process(new FSMTransitionTask(threadPoolFacade, event,true), syncRunnableProducer);
+        EventCoalescer<FSMTransitionCallable<EventType>> coalescer = threadPoolFacade.coalescer;
+        if (coalescer != null && coalescer.isCoalescable(event.getEventType())) {
+            CAStransit(event, 0);
+            return;
+        }
+        if (rejectedEarly(event)) {
+            throw InvalidEventException.NOT_ACCEPTED;
+        }
+        Future<?> future = threadPoolFacade.process(new FSMTransitionTask(threadPoolFacade, event,true), syncRunnableProducer,
+                threadPoolFacade.isHighPriority(event));
         try {
             future.get();
         } catch (InterruptedException ex) {
             threadPoolFacade.setNextThingToProcess();
             throw new InvalidEventException("transition processing has been interrupted", ex);
         } catch (ExecutionException ex) {
-            ex.getCause().printStackTrace();
-            if (ex.getCause() instanceof InvalidEventException) {
-                throw (InvalidEventException) ex.getCause();
-            } if (ex == FSMThreadPoolFacade.queueingFailed){
+            if (ex.getCause() == null) { // see FSMThreadPoolFacade.queueingFailed
                 throw new InvalidEventException("events queue is full");
+            } else if (ex.getCause() instanceof InvalidEventException) {
+                throw (InvalidEventException) ex.getCause();
             } else if ((ex.getCause() instanceof RuntimeException)
                     && (ex.getCause().getCause() != null) && ex.getCause().getCause() instanceof InvalidEventException) {
                 // FSMWrapperException is wrapped into RuntimeException and ExecutionException
@@ -245,6 +476,54 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
         }
     }
 
+    @Override
+    public TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        if (rejectedEarly(event)) {
+            return TransitStatus.REJECTED;
+        }
+        Future<TransitStatus> future = threadPoolFacade.process(new FSMTryTransitionCallable<>(threadPoolFacade, event),
+                tryProducer, threadPoolFacade.isHighPriority(event));
+        // the event may be already taken by pool thread, so interrupt doesn't
+        // abort waiting, caller gets the real outcome with interrupted status kept
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() == null) { // see FSMThreadPoolFacade.queueingFailed
+                return TransitStatus.REJECTED;
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("exception during executing transition", ex.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void transit(EventType event) throws InvalidEventException {
+        transit(EnumEvent.of(event));
+    }
+
+    @Override
+    public void transit(int eventOrdinal) throws InvalidEventException {
+        transit(EnumEvent.of(getEventTypeClass(), eventOrdinal));
+    }
+
+    @Override
+    public Class<EventType> getEventTypeClass() {
+        return threadPoolFacade.fsm.getEventTypeClass();
+    }
+
     @Override
     public boolean isInFinalState() {
         return threadPoolFacade.querry.isInFinalState;
@@ -265,6 +544,45 @@ class PooledStateMachineProxy<EventType extends Enum<EventType>> implements Asyn
         return threadPoolFacade.querry.currentStateName;
     }
 
+    @Override
+    public boolean canAccept(EventType eventType) {
+        return threadPoolFacade.querry.fsm.canAccept(eventType);
+    }
+
+    @Override
+    public void setEarlyRejection(boolean earlyRejection) {
+        this.earlyRejection = earlyRejection;
+    }
+
+    @Override
+    public boolean isEarlyRejection() {
+        return earlyRejection;
+    }
+
+    /**
+     * checks event against current state if the FSM is idle, so the state
+     * observed is the state the event would be applied to
+     */
+    private boolean rejectedEarly(StateMachineEvent<EventType> event) {
+        return earlyRejection && threadPoolFacade.pending.get() == 0
+                && !threadPoolFacade.querry.fsm.canAccept(event.getEventType());
+    }
+
+    @Override
+    public int getCurrentStateIndex() {
+        return threadPoolFacade.querry.currentStateIndex;
+    }
+
+    @Override
+    public String getStateName(int index) {
+        return threadPoolFacade.querry.fsm.getStateName(index);
+    }
+
+    @Override
+    public int getStateIndex(String stateName) {
+        return threadPoolFacade.querry.fsm.getStateIndex(stateName);
+    }
+
     @Override
     public State<EventType> getStateByName(String stateName) {
         return threadPoolFacade.querry.fsm.getStateByName(stateName);
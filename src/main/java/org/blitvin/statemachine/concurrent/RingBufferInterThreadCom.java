@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * InterThreadCom backed by preallocated ring of slots with sequence counters
+ * (multi producer, single consumer). Producer claims slot by CAS on tail
+ * counter, stores transport and publishes it by setting sequence of the slot,
+ * so sending neither locks nor allocates. Processing thread takes published
+ * slots without locking and parks only when the ring is empty, all transports
+ * published meanwhile are taken without additional wakeups.
+ * If the ring is full, sender either waits for room (possibly limited by
+ * timeout), fails immediately or, for unbounded variant, spills transport to
+ * overflow queue. Once overflow queue is not empty, all senders use it until
+ * the processing thread drains it, so order of every sender's transports is
+ * kept.
+ * @author blitvin
+ * @param <T> type of transported entries
+ */
+final class RingBufferInterThreadCom<T> extends ConcurrentStateMachine.InterThreadCom<T> {
+
+    /**
+     * initial delay of sender waiting for room in the ring
+     */
+    private static final long MIN_BACKOFF_NANOS = 1000;
+    private static final long MAX_BACKOFF_NANOS = 1000000;
+
+    private final Object[] slots;
+    /**
+     * sequence of slot i is position + 1 when transport of the position is
+     * published, position + ring size when the slot is free for position
+     */
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * next position to take, written by processing thread only
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final ConcurrentLinkedQueue<T> overflow;
+    /**
+     * timeout of waiting for room, negative - wait forever, zero - don't wait
+     */
+    private final long sendTimeoutNanos;
+    private volatile Thread waitingConsumer;
+    private volatile boolean wakeUpRequested;
+
+    /**
+     * @param capacity size of the ring, rounded up to power of 2 (at least 2)
+     * @param unbounded if true transports not fitting the ring are kept in
+     * overflow queue, sendTimeoutNanos is ignored
+     * @param sendTimeoutNanos how long sender waits for room in the ring,
+     * negative - until room is available, zero - sending to full ring fails
+     */
+    RingBufferInterThreadCom(int capacity, boolean unbounded, long sendTimeoutNanos) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        // single slot ring can't distinguish published slot from free one
+        int size = Math.max(Integer.highestOneBit(capacity), 2);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        overflow = unbounded ? new ConcurrentLinkedQueue<T>() : null;
+        this.sendTimeoutNanos = sendTimeoutNanos;
+    }
+
+    /**
+     * @return true if the transport is published, false if the ring is full
+     */
+    private boolean tryPublish(T transport) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index] = transport;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private void signal() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    @Override
+    boolean send(T transport) {
+        if (overflow != null) {
+            if (!overflow.isEmpty() || !tryPublish(transport)) {
+                overflow.add(transport);
+            }
+            signal();
+            return true;
+        }
+        if (tryPublish(transport)) {
+            signal();
+            return true;
+        }
+        if (sendTimeoutNanos == 0) {
+            return false;
+        }
+        long deadline = System.nanoTime() + sendTimeoutNanos;
+        long backoff = MIN_BACKOFF_NANOS;
+        while (true) {
+            long sleep = backoff;
+            if (sendTimeoutNanos > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                sleep = Math.min(sleep, left);
+            }
+            LockSupport.parkNanos(this, sleep);
+            if (Thread.interrupted()) {
+                return false;
+            }
+            if (tryPublish(transport)) {
+                signal();
+                return true;
+            }
+            backoff = Math.min(backoff << 1, MAX_BACKOFF_NANOS);
+        }
+    }
+
+    @Override
+    T poll() {
+        long pos = head.get();
+        int index = (int) (pos & mask);
+        if (sequences.get(index) == pos + 1) {
+            T retVal = (T) slots[index];
+            slots[index] = null;
+            sequences.lazySet(index, pos + slots.length);
+            head.lazySet(pos + 1);
+            return retVal;
+        }
+        return overflow == null ? null : overflow.poll();
+    }
+
+    @Override
+    T take() throws InterruptedException {
+        T retVal = poll();
+        if (retVal != null) {
+            return retVal;
+        }
+        waitingConsumer = Thread.currentThread();
+        try {
+            // senders check waitingConsumer after publishing, so re-check
+            // after setting it to avoid missed wakeup
+            retVal = poll();
+            if (retVal != null || wakeUpRequested) {
+                wakeUpRequested = false;
+                return retVal;
+            }
+            LockSupport.park(this);
+        } finally {
+            waitingConsumer = null;
+        }
+        wakeUpRequested = false;
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return null;
+    }
+
+    @Override
+    void wakeUp() {
+        wakeUpRequested = true;
+        signal();
+    }
+
+    @Override
+    int size() {
+        long retVal = tail.get() - head.get();
+        if (overflow != null) {
+            retVal += overflow.size();
+        }
+        return (int) Math.max(retVal, 0);
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineEvent;
+
+/**
+ * Runtime hosting many independent FSMs on fixed number of shards. Each shard
+ * is single thread with its own multi-producer single-consumer inbox, owning
+ * FSMs whose keys hash to it. Events are routed by key of the FSM, so the FSMs
+ * need no locking, events sent to the same FSM by the same thread are
+ * processed in order of sending, and idle FSM costs no thread. The shard
+ * processes entries its inbox accumulated meanwhile without waking up for
+ * each of them (see ConcurrentStateMachine.QUEUE_TYPE.RING_BUFFER). Slow
+ * transition delays all FSMs of the shard.
+ * @author blitvin
+ * @param <K> type of FSM keys, must have consistent hashCode() and equals()
+ * @param <EventType>
+ */
+public class ShardedStateMachineRuntime<K, EventType extends Enum<EventType>> {
+
+    /**
+     * FSM hosted by shard, accessed by the shard thread only
+     */
+    static final class Slot<EventType extends Enum<EventType>> {
+
+        final StateMachine<EventType> fsm;
+        int generation = 1;
+
+        Slot(StateMachine<EventType> fsm) {
+            this.fsm = fsm;
+        }
+    }
+
+    /**
+     * entry of shard inbox
+     */
+    static abstract class Entry<K, EventType extends Enum<EventType>> {
+
+        final K key;
+
+        Entry(K key) {
+            this.key = key;
+        }
+
+        abstract void process(HashMap<K, Slot<EventType>> slots);
+
+        /**
+         * reports exception escaped process() to the sender
+         */
+        abstract void fail(RuntimeException e);
+    }
+
+    static final class RegisterEntry<K, EventType extends Enum<EventType>> extends Entry<K, EventType> {
+
+        private final StateMachine<EventType> fsm;
+
+        RegisterEntry(K key, StateMachine<EventType> fsm) {
+            super(key);
+            this.fsm = fsm;
+        }
+
+        @Override
+        void process(HashMap<K, Slot<EventType>> slots) {
+            if (fsm == null) {
+                slots.remove(key);
+            } else {
+                slots.put(key, new Slot<>(fsm));
+            }
+        }
+
+        @Override
+        void fail(RuntimeException e) {
+            // registration has no one to report to
+        }
+    }
+
+    static final class TransitEntry<K, EventType extends Enum<EventType>> extends Entry<K, EventType> {
+
+        private final StateMachineEvent<EventType> event;
+        private final TransitCallback<EventType> callback;
+        private final Executor executor;
+
+        TransitEntry(K key, StateMachineEvent<EventType> event, TransitCallback<EventType> callback, Executor executor) {
+            super(key);
+            this.event = event;
+            this.callback = callback;
+            this.executor = executor;
+        }
+
+        @Override
+        void process(HashMap<K, Slot<EventType>> slots) {
+            Slot<EventType> slot = slots.get(key);
+            StampedState<EventType> state = null;
+            Exception failure = null;
+            if (slot == null) {
+                failure = new InvalidEventException("no FSM is registered for key " + key);
+            } else {
+                try {
+                    slot.fsm.transit(event);
+                    state = new StampedState<>(slot.fsm.getCurrentState(), ++slot.generation);
+                } catch (Exception e) {
+                    ++slot.generation;
+                    failure = e;
+                }
+            }
+            if (callback != null) {
+                CallbackInvoker.invoke(callback, executor, state, failure);
+            }
+        }
+
+        @Override
+        void fail(RuntimeException e) {
+            // the executor may be the failure cause, so callback runs in shard thread
+            if (callback != null) {
+                CallbackInvoker.invoke(callback, null, null, e);
+            }
+        }
+    }
+
+    /**
+     * callback releasing thread waiting in transit()
+     */
+    static final class SyncCallback<EventType extends Enum<EventType>> implements TransitCallback<EventType> {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile StampedState<EventType> state;
+        volatile Exception failure;
+
+        @Override
+        public void onTransit(StampedState<EventType> state) {
+            this.state = state;
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Exception failure) {
+            this.failure = failure;
+            latch.countDown();
+        }
+    }
+
+    static final class Shard<K, EventType extends Enum<EventType>> extends Thread {
+
+        final ConcurrentStateMachine.InterThreadCom<Entry<K, EventType>> inbox;
+        private final HashMap<K, Slot<EventType>> slots = new HashMap<>();
+
+        Shard(ConcurrentStateMachine.InterThreadCom<Entry<K, EventType>> inbox) {
+            this.inbox = inbox;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Entry<K, EventType> entry = inbox.get();
+                    try {
+                        entry.process(slots);
+                    } catch (RuntimeException e) {
+                        // failure of single entry must not stop the shard
+                        entry.fail(e);
+                    } finally {
+                        inbox.pending.decrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private final Shard<K, EventType>[] shards;
+
+    /**
+     * creates runtime with ring buffer inboxes of DEFAULT_RING_CAPACITY slots,
+     * thread sending event to full inbox waits until room is available
+     * @param shardsCount number of shards
+     */
+    public ShardedStateMachineRuntime(int shardsCount) {
+        this(shardsCount, "FSM shard", ConcurrentStateMachine.QUEUE_TYPE.RING_BUFFER,
+                ConcurrentStateMachine.DEFAULT_RING_CAPACITY, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param shardsCount number of shards
+     * @param threadName name of shard threads, followed by shard index
+     * @param queueType implementation of shard inboxes
+     * @param queueCapacity capacity of each inbox, zero or negative for
+     * unbounded inbox
+     * @param timeout how long thread sending event to full inbox waits for
+     * room: negative - until room is available, zero - doesn't wait, sending
+     * fails
+     * @param timeUnit unit of timeout
+     */
+    public ShardedStateMachineRuntime(int shardsCount, String threadName, ConcurrentStateMachine.QUEUE_TYPE queueType,
+            int queueCapacity, long timeout, TimeUnit timeUnit) {
+        if (shardsCount <= 0) {
+            throw new IllegalArgumentException("number of shards must be positive");
+        }
+        shards = new Shard[shardsCount];
+        for (int i = 0; i < shardsCount; ++i) {
+            shards[i] = new Shard<>(ConcurrentStateMachine.<Entry<K, EventType>>createInterThreadCom(queueType,
+                    queueCapacity, timeout, timeUnit));
+            shards[i].setName(threadName + " " + i);
+            shards[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * starts shard threads
+     */
+    public void start() {
+        for (Shard<K, EventType> shard : shards) {
+            shard.start();
+        }
+    }
+
+    /**
+     * stops shard threads, events waiting in inboxes are not processed
+     */
+    public void shutDown() {
+        for (Shard<K, EventType> shard : shards) {
+            shard.interrupt();
+        }
+    }
+
+    /**
+     * sets strategy of shard threads waiting for next entry, see
+     * ConcurrentStateMachine.setProcessingWaitStrategy()
+     * @param strategy wait strategy
+     */
+    public void setWaitStrategy(WaitStrategy strategy) {
+        for (Shard<K, EventType> shard : shards) {
+            shard.inbox.waitStrategy = strategy;
+        }
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int getShardsCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param key key of FSM
+     * @return index of shard owning FSM with the key
+     */
+    public int getShard(K key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * @param shard index of shard
+     * @return number of entries waiting in the shard inbox
+     */
+    public int getQueueDepth(int shard) {
+        return shards[shard].inbox.size();
+    }
+
+    private boolean post(Entry<K, EventType> entry) {
+        return shards[getShard(entry.key)].inbox.post(entry);
+    }
+
+    /**
+     * hands FSM over to shard owning the key, replacing FSM registered with
+     * the same key. The FSM must not be accessed by other threads afterwards.
+     * Events sent by the same thread after registration are processed by the
+     * registered FSM
+     * @param key key of FSM
+     * @param fsm FSM to host
+     * @return true if registration is accepted
+     */
+    public boolean register(K key, StateMachine<EventType> fsm) {
+        if (fsm == null) {
+            throw new IllegalArgumentException("FSM can't be null");
+        }
+        return post(new RegisterEntry<>(key, fsm));
+    }
+
+    /**
+     * removes FSM with the key after events queued before are processed
+     * @param key key of FSM
+     * @return true if request is accepted
+     */
+    public boolean unregister(K key) {
+        return post(new RegisterEntry<K, EventType>(key, null));
+    }
+
+    /**
+     * send event to FSM with the key, don't wait for processing completion
+     * @param key key of FSM
+     * @param event event to process
+     * @return true if event accepted for processing
+     */
+    public boolean fireAndForgetTransit(K key, StateMachineEvent<EventType> event) {
+        return post(new TransitEntry<K, EventType>(key, event, null, null));
+    }
+
+    /**
+     * send event to FSM with the key and get notified when it is processed,
+     * see AsyncStateMachine.asyncTransit(event, callback, executor). Callback
+     * running without executor delays all FSMs of the shard. Event sent to key
+     * without registered FSM fails with InvalidEventException
+     * @param key key of FSM
+     * @param event event to process
+     * @param callback receives resulting state or failure of the event
+     * @param executor executor running the callback, null to run it in shard
+     * thread
+     * @return true if event accepted for processing, callback isn't invoked
+     * otherwise
+     */
+    public boolean asyncTransit(K key, StateMachineEvent<EventType> event, TransitCallback<EventType> callback,
+            Executor executor) {
+        return post(new TransitEntry<>(key, event, callback, executor));
+    }
+
+    /**
+     * send event to FSM with the key and wait until it is processed. Must not
+     * be called from shard thread
+     * @param key key of FSM
+     * @param event event to process
+     * @return state of the FSM after the transition and its generation
+     * @throws InvalidEventException if the event is not accepted by current
+     * state of the FSM, there is no FSM with the key, or the event can't be
+     * queued
+     */
+    public StampedState<EventType> transit(K key, StateMachineEvent<EventType> event) throws InvalidEventException {
+        SyncCallback<EventType> callback = new SyncCallback<>();
+        if (!asyncTransit(key, event, callback, null)) {
+            throw new InvalidEventException("events queue is full");
+        }
+        try {
+            callback.latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidEventException("transition processing has been interrupted", e);
+        }
+        Exception failure = callback.failure;
+        if (failure == null) {
+            return callback.state;
+        }
+        if (failure instanceof InvalidEventException) {
+            throw (InvalidEventException) failure;
+        }
+        throw new InvalidEventException("exception during executing transition", failure);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.EnumEvent;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.StateMachineEvent;
+import org.blitvin.statemachine.StateTimeouts;
+
+/**
+ * StateTimeoutTracker implements declarative state timeouts (see
+ * StateMachineBuilder.setStateTimeout()) for concurrent FSMs. It is notified
+ * about current state after each event processed, and when FSM moves to other
+ * state the timeout of previous state is cancelled and timeout of new state is
+ * scheduled on the timing wheel. Timeout which fired concurrently with leaving
+ * the state is recognized by epoch and ignored. All methods except wheel
+ * setter are called by the thread processing FSM events.
+ * @author blitvin
+ * @param <EventType>
+ */
+abstract class StateTimeoutTracker<EventType extends Enum<EventType>> {
+
+    private final StateMachineEvent<EventType>[] events;
+    private final long[] delays;
+    private volatile HashedTimingWheel wheel;
+    private int curStateIndex = -1;
+    private int epoch = 0;
+    private HashedTimingWheel.Timeout pending;
+
+    StateTimeoutTracker(StateMachine<EventType> fsm, StateTimeouts<EventType> timeouts, HashedTimingWheel wheel) {
+        int size = 0;
+        for (String stateName : fsm.getStateNames()) {
+            size = Math.max(size, fsm.getStateIndex(stateName) + 1);
+        }
+        events = new StateMachineEvent[size];
+        delays = new long[size];
+        for (Map.Entry<String, StateTimeouts.Timeout<EventType>> entry : timeouts.getTimeouts().entrySet()) {
+            int index = fsm.getStateIndex(entry.getKey());
+            if (index >= 0) {
+                events[index] = EnumEvent.of(entry.getValue().getEvent());
+                delays[index] = entry.getValue().getDelayNanos();
+            }
+        }
+        this.wheel = wheel;
+    }
+
+    /**
+     * @return timeouts defined for the FSM, null if there is no timeouts
+     */
+    static <EventType extends Enum<EventType>> StateTimeouts<EventType> getTimeouts(StateMachine<EventType> fsm) {
+        Object retVal = fsm.getProperty(StateMachineBuilder.STATE_TIMEOUTS_PROPERTY);
+        return retVal instanceof StateTimeouts ? (StateTimeouts<EventType>) retVal : null;
+    }
+
+    void setWheel(HashedTimingWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    /**
+     * called after FSM processed event, restarts timer if current state changed
+     * @param stateIndex index of current state
+     */
+    void onCurrentState(int stateIndex) {
+        if (stateIndex == curStateIndex) {
+            return;
+        }
+        curStateIndex = stateIndex;
+        final int expectedEpoch = ++epoch;
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+        if (stateIndex >= 0 && stateIndex < delays.length && events[stateIndex] != null) {
+            final StateMachineEvent<EventType> event = events[stateIndex];
+            pending = wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    post(expectedEpoch, event);
+                }
+            }, delays[stateIndex], TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return true if FSM is still in the state which timeout was scheduled in
+     * the epoch
+     */
+    boolean isCurrent(int expectedEpoch) {
+        return epoch == expectedEpoch;
+    }
+
+    /**
+     * passes expired timeout to FSM queue, called by the wheel thread. The
+     * entry must check isCurrent(epoch) before applying the event
+     */
+    abstract void post(int epoch, StateMachineEvent<EventType> event);
+}
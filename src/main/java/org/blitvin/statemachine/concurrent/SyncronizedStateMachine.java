@@ -18,6 +18,7 @@
 package org.blitvin.statemachine.concurrent;
 
 import java.util.Set;
+import org.blitvin.statemachine.BatchTransitResult;
 import org.blitvin.statemachine.FSMWrapper;
 import org.blitvin.statemachine.FSMWrapperException;
 import org.blitvin.statemachine.FSMWrapperTransport;
@@ -25,6 +26,7 @@ import org.blitvin.statemachine.InvalidEventException;
 import org.blitvin.statemachine.State;
 import org.blitvin.statemachine.StateMachine;
 import org.blitvin.statemachine.StateMachineEvent;
+import org.blitvin.statemachine.TransitStatus;
 
 /**
  * This class wraps regular (not thread safe) FSM. It enforces thread safety by
@@ -53,6 +55,16 @@ public class SyncronizedStateMachine<EventType extends Enum<EventType>> extends
         wrapped.transit(event);
     }
 
+    @Override
+    public synchronized TransitStatus tryTransit(StateMachineEvent<EventType> event) {
+        return wrapped.tryTransit(event);
+    }
+
+    @Override
+    public synchronized BatchTransitResult transitAll(StateMachineEvent<EventType>[] events, int off, int len) {
+        return wrapped.transitAll(events, off, len);
+    }
+
     /*@Override
      public boolean isValidState(State<EventType> state) {
      return wrapped.isValidState(state);
@@ -119,6 +131,21 @@ public class SyncronizedStateMachine<EventType extends Enum<EventType>> extends
         return wrapped.getNameOfCurrentState();
     }
 
+    @Override
+    public int getCurrentStateIndex() {
+        return wrapped.getCurrentStateIndex();
+    }
+
+    @Override
+    public String getStateName(int index) {
+        return wrapped.getStateName(index);
+    }
+
+    @Override
+    public int getStateIndex(String stateName) {
+        return wrapped.getStateIndex(stateName);
+    }
+
     @Override
     public Set<String> getStateNames() {
         return wrapped.getStateNames();
@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+/**
+ * Receives outcome of event sent by AsyncStateMachine.asyncTransit(event,
+ * callback, executor). Exactly one of the methods is invoked once, by thread
+ * completing the event (processing thread of ConcurrentStateMachine or pool
+ * thread of pooled FSM) or by the executor passed to asyncTransit(). Callback
+ * invoked without executor runs while FSM waits for it, so it should be short
+ * and must not wait for results of events sent to the same FSM. Exceptions
+ * thrown by the callback are ignored
+ * @author blitvin
+ * @param <EventType>
+ */
+public interface TransitCallback<EventType extends Enum<EventType>> {
+
+    /**
+     * called when the event is processed
+     * @param state state of FSM after processing of the event and its generation
+     */
+    void onTransit(StampedState<EventType> state);
+
+    /**
+     * called when processing of the event failed
+     * @param failure InvalidEventException if the event is not accepted by
+     * current state, otherwise exception thrown during the transition
+     */
+    void onFailure(Exception failure);
+}
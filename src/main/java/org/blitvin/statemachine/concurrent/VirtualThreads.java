@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Access to virtual threads (Java 21+) for ConcurrentStateMachine.setThreadFactory().
+ * The library targets Java 7, so Thread.ofVirtual() is looked up reflectively
+ * when the class is initialized; on runtimes without virtual threads (including
+ * Java 19 and 20 without preview features enabled) isSupported() returns false.
+ * @author blitvin
+ */
+public final class VirtualThreads {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    /**
+     * Thread.ofVirtual(), null if virtual threads aren't supported
+     */
+    private static final MethodHandle OF_VIRTUAL;
+    /**
+     * Thread.Builder.OfVirtual.name(String)
+     */
+    private static final MethodHandle NAME;
+    /**
+     * Thread.Builder.unstarted(Runnable)
+     */
+    private static final MethodHandle UNSTARTED;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle unstarted = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builderClass));
+            name = lookup.findVirtual(builderClass, "name", MethodType.methodType(builderClass, String.class));
+            unstarted = lookup.findVirtual(builderClass, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+            // preview versions of the API throw unless preview features are enabled
+            ofVirtual.invoke();
+        } catch (Throwable e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if current runtime supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix prefix of names of created threads, followed by
+     * sequence number unique within JVM
+     * @return factory of virtual threads
+     * @throws UnsupportedOperationException if virtual threads aren't supported
+     */
+    public static ThreadFactory newFactory(final String namePrefix) {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or newer");
+        }
+        // each machine typically gets its own factory, so the sequence is global
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                try {
+                    Object builder = NAME.invoke(OF_VIRTUAL.invoke(), namePrefix + SEQUENCE.getAndIncrement());
+                    return (Thread) UNSTARTED.invoke(builder, r);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException("failed to create virtual thread", e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright Boris Litvin 2014 - 2016
+ * This file is part of FSM4Java library.
+ *
+ *  FSM4Java is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   FSM4Java is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with FSM4Java  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * WaitStrategy defines what thread does while waiting for another thread
+ * before it blocks: processing thread of ConcurrentStateMachine waiting for
+ * next event, and sender of synchronous transit() waiting for result of the
+ * event. Waiting thread repeatedly checks the condition and calls idle()
+ * between checks; once idle() returns false the thread blocks until woken up
+ * (park/unpark). Spinning strategies avoid the cost of park/unpark on handoff
+ * at expense of CPU time burnt while waiting, so they pay off only if every
+ * spinning thread has its own core.
+ * @author blitvin
+ */
+public abstract class WaitStrategy {
+
+    /**
+     * called between unsuccessful checks of the condition
+     * @param iteration number of unsuccessful checks so far, starting from 0
+     * @return true to check the condition again, false to block
+     */
+    public abstract boolean idle(int iteration);
+
+    /**
+     * blocks immediately
+     */
+    public static final WaitStrategy BLOCKING = new WaitStrategy() {
+        @Override
+        public boolean idle(int iteration) {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "blocking";
+        }
+    };
+
+    /**
+     * checks condition in tight loop, never blocks
+     */
+    public static final WaitStrategy BUSY_SPIN = new WaitStrategy() {
+        @Override
+        public boolean idle(int iteration) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "busy spin";
+        }
+    };
+
+    /**
+     * yields processor between checks, never blocks
+     */
+    public static final WaitStrategy YIELDING = new WaitStrategy() {
+        @Override
+        public boolean idle(int iteration) {
+            Thread.yield();
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "yielding";
+        }
+    };
+
+    /**
+     * @param sleepNanos sleep between checks
+     * @return strategy sleeping between checks, never blocks
+     */
+    public static WaitStrategy sleeping(final long sleepNanos) {
+        return new WaitStrategy() {
+            @Override
+            public boolean idle(int iteration) {
+                LockSupport.parkNanos(sleepNanos);
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "sleeping " + sleepNanos + "ns";
+            }
+        };
+    }
+
+    /**
+     * @param spins number of checks in tight loop before blocking
+     * @return strategy spinning at most spins times before blocking
+     */
+    public static WaitStrategy spinThenPark(final int spins) {
+        return new WaitStrategy() {
+            @Override
+            public boolean idle(int iteration) {
+                return iteration < spins;
+            }
+
+            @Override
+            public String toString() {
+                return "spin " + spins + " then park";
+            }
+        };
+    }
+}
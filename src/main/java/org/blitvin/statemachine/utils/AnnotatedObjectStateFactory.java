@@ -22,6 +22,7 @@ import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.CallbackCapabilities;
 import org.blitvin.statemachine.FSMStateFactory;
 import org.blitvin.statemachine.FSMStateView;
 import org.blitvin.statemachine.State;
@@ -49,7 +50,7 @@ public class AnnotatedObjectStateFactory<EventType extends Enum<EventType>> impl
     private static final int ON_STATE_DETACHED_FROM_FSM = 4;
     private static final int CALLBACKS = 5;
 
-    private static class WrappedAnnotatedState<EventType extends Enum<EventType>> implements State<EventType> {
+    private static class WrappedAnnotatedState<EventType extends Enum<EventType>> implements State<EventType>, CallbackCapabilities {
 
         private final Object obj;
         private final Method[] callbacks;
@@ -59,6 +60,18 @@ public class AnnotatedObjectStateFactory<EventType extends Enum<EventType>> impl
             this.callbacks = callbacks;
         }
 
+        @Override
+        public int getCallbackCapabilities() {
+            int retVal = 0;
+            if (callbacks[ON_STATE_BECOMES_CURRENT] != null)
+                retVal |= BECOMES_CURRENT;
+            if (callbacks[ON_STATE_IS_NO_LONGER_CURRENT] != null)
+                retVal |= NO_LONGER_CURRENT;
+            if (callbacks[ON_INVALID_TRANSITION] != null)
+                retVal |= INVALID_TRANSITION;
+            return retVal;
+        }
+
         @Override
         public void onStateBecomesCurrent(StateMachineEvent<EventType> theEvent, State<EventType> prevState) {
             if (callbacks[ON_STATE_BECOMES_CURRENT] != null) {
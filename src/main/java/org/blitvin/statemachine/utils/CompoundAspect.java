@@ -18,6 +18,7 @@
 package org.blitvin.statemachine.utils;
 
 import java.util.ArrayList;
+import org.blitvin.statemachine.CallbackCapabilities;
 import org.blitvin.statemachine.State;
 import org.blitvin.statemachine.StateMachine;
 import org.blitvin.statemachine.StateMachineAspects;
@@ -25,10 +26,12 @@ import org.blitvin.statemachine.StateMachineEvent;
 
 /**
  * helper class allowing to invoke multiple aspect objects on the same point-cuts
- * in FSM
+ * in FSM. Point-cuts are reported as implemented if any of contained aspects
+ * implements them, note that capabilities are read by FSM when compound aspect
+ * is set, so aspects should be added before that
  * @author blitvin
  */
-public class CompoundAspect<EventType extends Enum<EventType>> implements StateMachineAspects<EventType>{
+public class CompoundAspect<EventType extends Enum<EventType>> implements StateMachineAspects<EventType>, CallbackCapabilities{
 
     ArrayList<StateMachineAspects<EventType>> aspects = new ArrayList<>();
     StateMachine<EventType> containing = null;
@@ -38,6 +41,16 @@ public class CompoundAspect<EventType extends Enum<EventType>> implements StateM
         if (containing != null)
             aspect.setContainingMachine(containing);
     }
+    @Override
+    public int getCallbackCapabilities() {
+        int retVal = 0;
+        for(StateMachineAspects<EventType> cur:aspects){
+            retVal |= cur instanceof CallbackCapabilities ? 
+                    ((CallbackCapabilities)cur).getCallbackCapabilities() : ASPECT_CALLBACKS;
+        }
+        return retVal & ASPECT_CALLBACKS;
+    }
+
     @Override
     public boolean onTransitionStart(StateMachineEvent<EventType> event) {
         boolean cont = true;
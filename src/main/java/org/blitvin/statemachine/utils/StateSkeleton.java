@@ -19,7 +19,9 @@ package org.blitvin.statemachine.utils;
 
 import java.util.Map;
 import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.CallbackCapabilities;
 import org.blitvin.statemachine.FSMStateView;
+import org.blitvin.statemachine.InstanceAwareState;
 import org.blitvin.statemachine.State;
 import org.blitvin.statemachine.StateMachineEvent;
 
@@ -27,10 +29,46 @@ import org.blitvin.statemachine.StateMachineEvent;
  * This is just an utility class to save developer time from writing empty 
  * call backs. One can extend this one or directly implement State<EventType>
  * Also see AnnotatedObjectStateFactory, perhaps this class suits your purpose too
+ * Transition callbacks not overridden by subclass are reported absent via
+ * CallbackCapabilities, so FSM doesn't invoke them at all
  * @author blitvin
  * @param <EventType>
  */
-public class StateSkeleton<EventType extends Enum<EventType>> implements State<EventType> {
+public class StateSkeleton<EventType extends Enum<EventType>> implements State<EventType>, CallbackCapabilities {
+
+    private static final ClassValue<Integer> CAPABILITIES = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            if (InstanceAwareState.class.isAssignableFrom(type))
+                return overridden(type, "onInvalidTransition", StateMachineEvent.class) ? STATE_CALLBACKS
+                        : BECOMES_CURRENT | NO_LONGER_CURRENT;
+            int retVal = 0;
+            if (overridden(type, "onStateBecomesCurrent", StateMachineEvent.class, State.class))
+                retVal |= BECOMES_CURRENT;
+            if (overridden(type, "onStateIsNoLongerCurrent", StateMachineEvent.class, State.class))
+                retVal |= NO_LONGER_CURRENT;
+            if (overridden(type, "onInvalidTransition", StateMachineEvent.class))
+                retVal |= INVALID_TRANSITION;
+            return retVal;
+        }
+    };
+
+    private static boolean overridden(Class<?> type, String name, Class<?>... parameters) {
+        for (Class<?> cur = type; cur != StateSkeleton.class; cur = cur.getSuperclass()) {
+            try {
+                cur.getDeclaredMethod(name, parameters);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not declared at this level
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getCallbackCapabilities() {
+        return CAPABILITIES.get(getClass());
+    }
 
     @Override
     public void onStateBecomesCurrent(StateMachineEvent<EventType> theEvent, State<EventType> prevState) {
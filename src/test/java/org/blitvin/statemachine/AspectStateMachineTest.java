@@ -107,6 +107,77 @@ public class AspectStateMachineTest {
         assertEquals(1, aspect.getNullCount());
     }
 
+    private static class NullOnlyAspect extends CountAspect implements CallbackCapabilities {
+
+        @Override
+        public int getCallbackCapabilities() {
+            return NULL_TRANSITION;
+        }
+    }
+
+    @Test
+    public void testAspectCapabilities() throws BadStateMachineSpecification, InvalidEventException {
+        NullOnlyAspect aspect = new NullOnlyAspect();
+        StateMachineBuilder<TestEnum> builder = new StateMachineBuilder(ASPECT, TestEnum.class);
+        AspectEnabledStateMachine<TestEnum> aspectFSM = (AspectEnabledStateMachine<TestEnum>) builder
+                .addState("first", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "second")
+                .addTransition(TestEnum.C, StateMachineBuilder.TRANSITION_TYPE.NULL)
+                .addState("second", new BuilderTestState())
+                .addDefaultTransition().addProperty(TARGET_STATE, "first")
+                .addFSMProperty(StateMachineBuilder.ASPECTS_PROPERTY, aspect)
+                .build();
+
+        aspectFSM.transit(new TestEvent<>(TestEnum.C));
+        aspectFSM.transit(new TestEvent<>(TestEnum.A));
+        assertEquals("second", aspectFSM.getNameOfCurrentState());
+        assertEquals(0, aspect.getEntriesCount());
+        assertEquals(1, aspect.getNullCount());
+
+        CountAspect counting = new CountAspect();
+        aspectFSM.setAspects(counting);
+        aspectFSM.transit(new TestEvent<>(TestEnum.B));
+        assertEquals(1, counting.getEntriesCount());
+    }
+
+    private static class VetoAspect extends CountAspect {
+
+        @Override
+        public boolean onControlLeavesState(StateMachineEvent event, State currentState, State newState) {
+            return event.getEventType() != TestEnum.B;
+        }
+    }
+
+    @Test
+    public void testTryTransit() throws BadStateMachineSpecification {
+        VetoAspect aspect = new VetoAspect();
+        StateMachineBuilder<TestEnum> builder = new StateMachineBuilder(ASPECT, TestEnum.class);
+        AspectEnabledStateMachine<TestEnum> aspectFSM = (AspectEnabledStateMachine<TestEnum>) builder
+                .addState("first", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "second")
+                .addTransition(TestEnum.B).addProperty(TARGET_STATE, "second")
+                .addTransition(TestEnum.C, StateMachineBuilder.TRANSITION_TYPE.NULL)
+                .addState("second", new BuilderTestState())
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "first")
+                .addFSMProperty(StateMachineBuilder.ASPECTS_PROPERTY, aspect)
+                .build();
+
+        assertEquals(TransitStatus.NULL_TRANSITION, aspectFSM.tryTransit(new TestEvent<>(TestEnum.C)));
+        assertEquals(TransitStatus.VETOED_BY_ASPECT, aspectFSM.tryTransit(new TestEvent<>(TestEnum.B)));
+        assertEquals("first", aspectFSM.getNameOfCurrentState());
+        assertEquals(TransitStatus.APPLIED, aspectFSM.tryTransit(new TestEvent<>(TestEnum.A)));
+        assertEquals(TransitStatus.REJECTED, aspectFSM.tryTransit(new TestEvent<>(TestEnum.C)));
+        assertEquals("second", aspectFSM.getNameOfCurrentState());
+        assertEquals(1, aspect.getEntriesCount());
+        assertEquals(1, aspect.getNullCount());
+        try {
+            aspectFSM.transit(new TestEvent<>(TestEnum.C));
+            fail("InvalidEventException is expected");
+        } catch (InvalidEventException e) {
+            assertEquals(0, e.getStackTrace().length);
+        }
+    }
+
     @Test
     public void testNoAspectSpecified() throws BadStateMachineSpecification {
         StateMachineBuilder<TestEnum> builder = new StateMachineBuilder(ASPECT, TestEnum.class);
@@ -0,0 +1,89 @@
+package org.blitvin.statemachine;
+
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class CallbackCapabilitiesTest {
+
+	static class EnteringState extends StateSkeleton<STM_EVENTS> {
+		int entered = 0;
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			++entered;
+		}
+	}
+
+	static class DerivedState extends EnteringState {
+		@Override
+		public void onInvalidTransition(StateMachineEvent<STM_EVENTS> theEvent) {
+		}
+	}
+
+	/**
+	 * counts all callbacks, but declares only onStateIsNoLongerCurrent
+	 */
+	static class DeclaringState implements State<STM_EVENTS>, CallbackCapabilities {
+		int calls = 0;
+
+		@Override
+		public int getCallbackCapabilities() {
+			return NO_LONGER_CURRENT;
+		}
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			calls += 100;
+		}
+
+		@Override
+		public void onStateIsNoLongerCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> nextState) {
+			++calls;
+		}
+
+		@Override
+		public void onInvalidTransition(StateMachineEvent<STM_EVENTS> theEvent) {
+			calls += 100;
+		}
+
+		@Override
+		public void onStateAttachedToFSM(java.util.Map<?, ?> initializer, FSMStateView containingMachine) {
+		}
+
+		@Override
+		public void onStateDetachedFromFSM() {
+		}
+	}
+
+	@Test
+	public void testSkeletonDetection() {
+		assertEquals(0, new StateSkeleton<STM_EVENTS>().getCallbackCapabilities());
+		assertEquals(CallbackCapabilities.BECOMES_CURRENT, new EnteringState().getCallbackCapabilities());
+		assertEquals(CallbackCapabilities.BECOMES_CURRENT | CallbackCapabilities.INVALID_TRANSITION,
+				new DerivedState().getCallbackCapabilities());
+	}
+
+	@Test
+	public void testElision() throws BadStateMachineSpecification {
+		for (StateMachineBuilder.FSM_TYPES type : new StateMachineBuilder.FSM_TYPES[]{
+				StateMachineBuilder.FSM_TYPES.BASIC, StateMachineBuilder.FSM_TYPES.COMPILED}) {
+			DeclaringState declaring = new DeclaringState();
+			EnteringState entering = new EnteringState();
+			StateMachine<STM_EVENTS> fsm = new StateMachineBuilder<STM_EVENTS>(type, STM_EVENTS.class)
+				.addState("state1", declaring).markStateAsInitial().addTransition(STM_EVENTS.STM_A, "state2")
+				.addState("state2", entering).addTransition(STM_EVENTS.STM_A, "state1").build();
+			try {
+				fsm.transit(STM_EVENTS.STM_A);
+				fsm.transit(STM_EVENTS.STM_A);
+				fsm.transit(STM_EVENTS.STM_B);
+				fail("STM_B is not accepted");
+			} catch (InvalidEventException e) {
+				// expected
+			}
+			assertEquals(1, declaring.calls);
+			assertEquals(1, entering.entered);
+		}
+	}
+}
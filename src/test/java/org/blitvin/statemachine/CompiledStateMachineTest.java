@@ -0,0 +1,103 @@
+package org.blitvin.statemachine;
+
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class CompiledStateMachineTest {
+
+	static class RecordingState extends StateSkeleton<STM_EVENTS> {
+		final ArrayList<String> log;
+		final String name;
+
+		RecordingState(String name, ArrayList<String> log) {
+			this.name = name;
+			this.log = log;
+		}
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			log.add("in:" + name);
+		}
+
+		@Override
+		public void onStateIsNoLongerCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> nextState) {
+			log.add("out:" + name);
+		}
+
+		@Override
+		public void onInvalidTransition(StateMachineEvent<STM_EVENTS> theEvent) {
+			log.add("invalid:" + name);
+		}
+	}
+
+	static class ChoosingState extends RecordingState implements CustomizedTransitionsLogicState<STM_EVENTS> {
+		String target = "state1";
+
+		ChoosingState(String name, ArrayList<String> log) {
+			super(name, log);
+		}
+
+		@Override
+		public String stateToTransitTo(Object event) {
+			return target;
+		}
+	}
+
+	@Test
+	public void testCompiledTransitions() throws BadStateMachineSpecification, InvalidEventException {
+		ArrayList<String> log = new ArrayList<>();
+		ChoosingState chooser = new ChoosingState("state4", log);
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.COMPILED, STM_EVENTS.class);
+		builder.addState("state1", new RecordingState("state1", log)).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state2")
+			.addTransition(STM_EVENTS.STM_B, StateMachineBuilder.TRANSITION_TYPE.NULL);
+		builder.addState("state2", new RecordingState("state2", log))
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state3")
+			.addDefaultTransition().addProperty("toState", "state4");
+		builder.addState("state3", new RecordingState("state3", log)).markStateAsFinal()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state1");
+		builder.addState("state4", chooser)
+			.addTransition(STM_EVENTS.STM_C, StateMachineBuilder.TRANSITION_TYPE.CUSTOMIZED);
+		StateMachine<STM_EVENTS> machine = builder.build();
+
+		SimpleEvent event = new SimpleEvent(STM_EVENTS.STM_B);
+		machine.transit(event);
+		assertEquals("state1", machine.getNameOfCurrentState());
+		assertTrue("null transition must not trigger callbacks", log.isEmpty());
+
+		event.setEventType(STM_EVENTS.STM_A);
+		machine.transit(event);
+		machine.transit(event);
+		assertEquals("state3", machine.getNameOfCurrentState());
+		assertTrue(machine.isInFinalState());
+		assertEquals("[out:state1, in:state2, out:state2, in:state3]", log.toString());
+
+		log.clear();
+		event.setEventType(STM_EVENTS.STM_C);
+		try {
+			machine.transit(event);
+			fail("STM_C is not defined in state3");
+		} catch (InvalidEventException e) {
+			// expected
+		}
+		assertEquals("state3", machine.getNameOfCurrentState());
+		assertEquals("[invalid:state3]", log.toString());
+
+		event.setEventType(STM_EVENTS.STM_A);
+		machine.transit(event);
+		machine.transit(event);
+		event.setEventType(STM_EVENTS.STM_C); // default transition of state2
+		machine.transit(event);
+		assertEquals("state4", machine.getNameOfCurrentState());
+
+		chooser.target = "state2";
+		machine.transit(event); // customized transition
+		assertEquals("state2", machine.getNameOfCurrentState());
+		event.setEventType(STM_EVENTS.STM_A);
+		machine.transit(event);
+		assertEquals("state3", machine.getNameOfCurrentState());
+	}
+}
@@ -20,6 +20,7 @@ package org.blitvin.statemachine;
 import static org.junit.Assert.*;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -110,6 +111,19 @@ public class DomFactoryTest {
 		}
 	}
 	
+	@Test
+	public void testGuarded() throws BadStateMachineSpecification, InvalidEventException {
+		HashMap<Object, Object> properties = new HashMap<>();
+		properties.put("open", "true");
+		StateMachine<TestEnum> machine = (StateMachine<TestEnum>)DOMStateMachineFactory.getDefaultFactory().getStateMachine("guardedMachine", properties);
+		machine.transit(new TestMachineEvent<TestEnum>(TestEnum.enum1));
+		assertEquals("state2", machine.getNameOfCurrentState());
+		machine.transit(new TestMachineEvent<TestEnum>(TestEnum.enum2));
+		machine.setProperty("open", "false");
+		machine.transit(new TestMachineEvent<TestEnum>(TestEnum.enum1));
+		assertEquals("state3", machine.getNameOfCurrentState());
+	}
+
 	@Test
 	public void testUnknownMachineName(){
 		try {
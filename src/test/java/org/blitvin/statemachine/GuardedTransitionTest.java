@@ -0,0 +1,162 @@
+package org.blitvin.statemachine;
+
+import java.util.Map;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class GuardedTransitionTest {
+
+	static class AmountEvent implements StateMachineEvent<STM_EVENTS> {
+		final int amount;
+
+		AmountEvent(int amount) {
+			this.amount = amount;
+		}
+
+		@Override
+		public STM_EVENTS getEventType() {
+			return STM_EVENTS.STM_A;
+		}
+	}
+
+	static class AboveGuard implements TransitionGuard<STM_EVENTS> {
+		final int limit;
+
+		AboveGuard(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean accept(StateMachineEvent<STM_EVENTS> event, FSMStateView<STM_EVENTS> fsm) {
+			return ((AmountEvent) event).amount > limit;
+		}
+	}
+
+	/**
+	 * accepts event while FSM property "open" is true
+	 */
+	public static class OpenGuard implements TransitionGuard<STM_EVENTS> {
+		PropertyKey<Boolean> open;
+
+		@Override
+		public boolean accept(StateMachineEvent<STM_EVENTS> event, FSMStateView<STM_EVENTS> fsm) {
+			if (open == null) {
+				open = fsm.getPropertyKey("open", Boolean.class);
+			}
+			return fsm.get(open);
+		}
+	}
+
+	static class InvalidCountingState extends StateSkeleton<STM_EVENTS> {
+		int invalid = 0;
+
+		@Override
+		public void onInvalidTransition(StateMachineEvent<STM_EVENTS> theEvent) {
+			++invalid;
+		}
+	}
+
+	@Test
+	public void testOrderAndRejection() throws BadStateMachineSpecification, InvalidEventException {
+		InvalidCountingState start = new InvalidCountingState();
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.SIMPLE, STM_EVENTS.class);
+		builder.addState("start", start).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A, StateMachineBuilder.TRANSITION_TYPE.GUARDED)
+			.addGuard(new AboveGuard(100), "big").addGuard(new AboveGuard(0), "small");
+		builder.addState("big", new StateSkeleton<STM_EVENTS>()).addDefaultTransition("start");
+		builder.addState("small", new StateSkeleton<STM_EVENTS>()).addDefaultTransition("start");
+		StateMachine<STM_EVENTS> machine = builder.build();
+
+		machine.transit(new AmountEvent(500));
+		assertEquals("big", machine.getNameOfCurrentState());
+		machine.transit(STM_EVENTS.STM_B);
+		machine.transit(new AmountEvent(5));
+		assertEquals("small", machine.getNameOfCurrentState());
+		machine.transit(STM_EVENTS.STM_B);
+		try {
+			machine.transit(new AmountEvent(-1));
+			fail("no guard accepts the event");
+		} catch (InvalidEventException e) {
+			// expected
+		}
+		assertEquals(TransitStatus.REJECTED, machine.tryTransit(new AmountEvent(0)));
+		assertEquals("start", machine.getNameOfCurrentState());
+		assertEquals(2, start.invalid);
+	}
+
+	@Test
+	public void testFallback() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.COMPILED, STM_EVENTS.class);
+		builder.addState("closed", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+			.addDefaultTransition(StateMachineBuilder.TRANSITION_TYPE.GUARDED)
+			.addGuard(OpenGuard.class, "opened").addProperty("toState", "closed");
+		builder.addState("opened", new StateSkeleton<STM_EVENTS>()).markStateAsFinal()
+			.addDefaultTransition("closed");
+		builder.definePropertyKey("open", Boolean.class);
+		builder.addFSMProperty("open", false);
+
+		StateMachine<STM_EVENTS> machine = builder.build();
+		machine.transit(STM_EVENTS.STM_C);
+		assertEquals("closed", machine.getNameOfCurrentState());
+		machine.setProperty("open", true);
+		machine.transit(STM_EVENTS.STM_C);
+		assertEquals("opened", machine.getNameOfCurrentState());
+
+		try {
+			new StateMachineBuilder<STM_EVENTS>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class)
+				.addState("state1", new StateSkeleton<STM_EVENTS>()).addTransition(STM_EVENTS.STM_A, "state1")
+				.addGuard(new AboveGuard(0), "state1");
+			fail("guards are allowed only on guarded transitions");
+		} catch (BadStateMachineSpecification e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDefinition() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.addState("start", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A, StateMachineBuilder.TRANSITION_TYPE.GUARDED)
+			.addGuard(new AboveGuard(10), "big").addProperty("toState", "small");
+		builder.addState("big", new StateSkeleton<STM_EVENTS>());
+		builder.addState("small", new StateSkeleton<STM_EVENTS>());
+		StateMachineDefinition<STM_EVENTS> definition = builder.buildDefinition();
+		StateMachineInstance<STM_EVENTS> first = definition.newInstance();
+		StateMachineInstance<STM_EVENTS> second = definition.newInstance();
+		first.transit(new AmountEvent(11));
+		second.transit(new AmountEvent(10));
+		assertEquals("big", first.getNameOfCurrentState());
+		assertEquals("small", second.getNameOfCurrentState());
+	}
+
+	@Test
+	public void testDefinitionGuardSeesInstance() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.addState("closed", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+			.addDefaultTransition(StateMachineBuilder.TRANSITION_TYPE.GUARDED)
+			.addGuard(new OpenGuard(), "opened").addProperty("toState", "closed");
+		builder.addState("opened", new StateSkeleton<STM_EVENTS>()).addDefaultTransition("closed");
+		builder.definePropertyKey("open", Boolean.class);
+		builder.addFSMProperty("open", false);
+		StateMachineDefinition<STM_EVENTS> definition = builder.buildDefinition();
+
+		StateMachineInstance<STM_EVENTS> first = definition.newInstance();
+		StateMachineInstance<STM_EVENTS> second = definition.newInstance();
+		first.setProperty("open", true);
+		first.transit(STM_EVENTS.STM_C);
+		second.transit(STM_EVENTS.STM_C);
+		assertEquals("opened", first.getNameOfCurrentState());
+		assertEquals("closed", second.getNameOfCurrentState());
+
+		first.transit(STM_EVENTS.STM_C);
+		first.set(first.getPropertyKey("open", Boolean.class), false);
+		second.set(second.getPropertyKey("open", Boolean.class), true);
+		first.transit(STM_EVENTS.STM_C);
+		second.transit(STM_EVENTS.STM_C);
+		assertEquals("closed", first.getNameOfCurrentState());
+		assertEquals("opened", second.getNameOfCurrentState());
+		assertEquals(Boolean.FALSE, definition.getProperties().get("open"));
+	}
+}
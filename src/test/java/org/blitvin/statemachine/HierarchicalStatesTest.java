@@ -0,0 +1,131 @@
+package org.blitvin.statemachine;
+
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class HierarchicalStatesTest {
+
+	static class LoggingState extends StateSkeleton<STM_EVENTS> {
+		final String name;
+		final ArrayList<String> log;
+
+		LoggingState(String name, ArrayList<String> log) {
+			this.name = name;
+			this.log = log;
+		}
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			log.add("in:" + name);
+		}
+
+		@Override
+		public void onStateIsNoLongerCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> nextState) {
+			log.add("out:" + name);
+		}
+	}
+
+	/**
+	 * operational contains idle and running, running contains fast
+	 */
+	private static StateMachine<STM_EVENTS> build(StateMachineBuilder.FSM_TYPES type, ArrayList<String> log)
+			throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(type, STM_EVENTS.class);
+		builder.addState("idle", new LoggingState("idle", log)).markStateAsInitial().setParentState("operational")
+			.addTransition(STM_EVENTS.STM_A, "running");
+		builder.addState("operational", new LoggingState("operational", log))
+			.addTransition(STM_EVENTS.STM_C, "off");
+		builder.addState("running", new LoggingState("running", log))
+			.addTransition(STM_EVENTS.STM_A, "idle").addTransition(STM_EVENTS.STM_B, "fast")
+			.setParentState("operational");
+		builder.addState("fast", new LoggingState("fast", log)).setParentState("running")
+			.addTransition(STM_EVENTS.STM_B, StateMachineBuilder.TRANSITION_TYPE.NULL);
+		builder.addState("off", new LoggingState("off", log)).markStateAsFinal()
+			.addTransition(STM_EVENTS.STM_A, "fast");
+		return builder.build();
+	}
+
+	private static void checkMachine(StateMachineBuilder.FSM_TYPES type) throws BadStateMachineSpecification, InvalidEventException {
+		ArrayList<String> log = new ArrayList<>();
+		StateMachine<STM_EVENTS> machine = build(type, log);
+
+		machine.transit(STM_EVENTS.STM_A);
+		assertEquals("[out:idle, in:running]", log.toString());
+		log.clear();
+		machine.transit(STM_EVENTS.STM_B);
+		assertEquals("fast", machine.getNameOfCurrentState());
+		assertEquals("[out:running, in:running, in:fast]", log.toString());
+		log.clear();
+		machine.transit(STM_EVENTS.STM_B); // own null transition overrides parent's one
+		assertTrue(log.isEmpty());
+		machine.transit(STM_EVENTS.STM_C); // inherited from grandparent
+		assertEquals("off", machine.getNameOfCurrentState());
+		assertEquals("[out:fast, out:running, out:operational, in:off]", log.toString());
+		log.clear();
+		machine.transit(STM_EVENTS.STM_A);
+		assertEquals("[out:off, in:operational, in:running, in:fast]", log.toString());
+		log.clear();
+		machine.transit(STM_EVENTS.STM_A); // inherited from parent
+		assertEquals("idle", machine.getNameOfCurrentState());
+		assertEquals("[out:fast, out:running, in:idle]", log.toString());
+		try {
+			machine.transit(STM_EVENTS.STM_B);
+			fail("idle doesn't accept STM_B");
+		} catch (InvalidEventException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBasic() throws BadStateMachineSpecification, InvalidEventException {
+		checkMachine(StateMachineBuilder.FSM_TYPES.BASIC);
+	}
+
+	@Test
+	public void testCompiled() throws BadStateMachineSpecification, InvalidEventException {
+		checkMachine(StateMachineBuilder.FSM_TYPES.COMPILED);
+	}
+
+	@Test
+	public void testBadHierarchy() {
+		try {
+			new StateMachineBuilder<STM_EVENTS>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class)
+				.addState("state1", new StateSkeleton<STM_EVENTS>()).markStateAsInitial().setParentState("state2")
+				.addState("state2", new StateSkeleton<STM_EVENTS>()).setParentState("state1").build();
+			fail("cycle must be detected");
+		} catch (BadStateMachineSpecification e) {
+			// expected
+		}
+		try {
+			new StateMachineBuilder<STM_EVENTS>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class)
+				.addState("state1", new StateSkeleton<STM_EVENTS>()).markStateAsInitial().setParentState("state3").build();
+			fail("parent must exist");
+		} catch (BadStateMachineSpecification e) {
+			assertEquals("Can't find parent state state3 of state state1", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testDefinition() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.addState("group", new StateSkeleton<STM_EVENTS>()).addTransition(STM_EVENTS.STM_C, "state1");
+		builder.addState("state1", new StateSkeleton<STM_EVENTS>()).markStateAsInitial().setParentState("group")
+			.addTransition(STM_EVENTS.STM_A, "state2");
+		builder.addState("state2", new StateSkeleton<STM_EVENTS>()).setParentState("group");
+		StateMachineInstance<STM_EVENTS> instance = builder.buildDefinition().newInstance();
+		instance.transit(STM_EVENTS.STM_A);
+		instance.transit(STM_EVENTS.STM_C);
+		assertEquals("state1", instance.getNameOfCurrentState());
+
+		builder.revisitState("group").specifyStateObject(new LoggingState("group", new ArrayList<String>()));
+		try {
+			builder.buildDefinition();
+			fail("callbacks of parent states are not supported by definitions");
+		} catch (BadStateMachineSpecification e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package org.blitvin.statemachine;
+
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.concurrent.ConcurrentStateMachine;
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class LazyStatesTest {
+
+	public static class CountedState extends StateSkeleton<STM_EVENTS> {
+		static int created = 0;
+		static int attached = 0;
+		int entered = 0;
+
+		public CountedState() {
+			++created;
+		}
+
+		@Override
+		public void onStateAttachedToFSM(Map<?, ?> initializer, FSMStateView containingMachine) {
+			assertEquals("yes", initializer.get("myAttribute"));
+			++attached;
+		}
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			++entered;
+		}
+	}
+
+	@Test
+	public void testLazyStates() throws BadStateMachineSpecification, InvalidEventException {
+		CountedState.created = 0;
+		CountedState.attached = 0;
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.setLazyStates(true);
+		builder.addState("state1").markStateAsInitial()
+			.addProperty(StateMachineBuilder.STATE_CLASS_PROPERTY, CountedState.class).addProperty("myAttribute", "yes")
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state2")
+			.addTransition(STM_EVENTS.STM_B).addProperty("toState", "state3");
+		builder.addState("state2")
+			.addProperty(StateMachineBuilder.STATE_CLASS_PROPERTY, CountedState.class).addProperty("myAttribute", "yes")
+			.addDefaultTransition().addProperty("toState", "state1");
+		builder.addState("state3")
+			.addProperty(StateMachineBuilder.STATE_CLASS_PROPERTY, CountedState.class).addProperty("myAttribute", "yes")
+			.addDefaultTransition().addProperty("toState", "state1");
+		StateMachine<STM_EVENTS> fsm = builder.build();
+		assertEquals(1, CountedState.created);
+		assertEquals(1, CountedState.attached);
+
+		fsm.transit(STM_EVENTS.STM_A);
+		assertEquals(2, CountedState.created);
+		assertEquals(2, CountedState.attached);
+		assertEquals(1, ((CountedState) fsm.getCurrentState()).entered);
+		fsm.transit(STM_EVENTS.STM_A);
+		fsm.transit(STM_EVENTS.STM_A);
+		assertEquals(2, CountedState.created);
+		assertEquals(2, ((CountedState) fsm.getCurrentState()).entered);
+
+		assertNotNull(fsm.getStateByName("state3"));
+		assertEquals(3, CountedState.created);
+		assertEquals(3, CountedState.attached);
+	}
+
+	public static class SlowState extends StateSkeleton<STM_EVENTS> {
+		static final AtomicInteger created = new AtomicInteger();
+		static final AtomicInteger attached = new AtomicInteger();
+
+		public SlowState() {
+			created.incrementAndGet();
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void onStateAttachedToFSM(Map<?, ?> initializer, FSMStateView containingMachine) {
+			attached.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testConcurrentCreation() throws Exception {
+		SlowState.created.set(0);
+		SlowState.attached.set(0);
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.setLazyStates(true);
+		builder.addState("state1", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state2");
+		builder.addState("state2").addProperty(StateMachineBuilder.STATE_CLASS_PROPERTY, SlowState.class)
+			.addDefaultTransition().addProperty("toState", "state1");
+		final ConcurrentStateMachine<STM_EVENTS> fsm = new ConcurrentStateMachine<>(builder.build());
+		fsm.start();
+		final int threads = 8;
+		final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+		final AtomicReferenceArray<State<STM_EVENTS>> seen = new AtomicReferenceArray<>(threads);
+		Thread[] queries = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			final int index = i;
+			queries[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						return;
+					}
+					seen.set(index, fsm.getStateByName("state2"));
+				}
+			};
+			queries[i].start();
+		}
+		barrier.await();
+		fsm.transit(EnumEvent.of(STM_EVENTS.STM_A));
+		for (Thread query : queries) {
+			query.join();
+		}
+		assertEquals(1, SlowState.created.get());
+		assertEquals(1, SlowState.attached.get());
+		State<STM_EVENTS> state = fsm.getCurrentState();
+		for (int i = 0; i < threads; ++i) {
+			assertSame(state, seen.get(i));
+		}
+		fsm.shutDown();
+	}
+}
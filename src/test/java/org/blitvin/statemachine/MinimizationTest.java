@@ -0,0 +1,123 @@
+package org.blitvin.statemachine;
+
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES;
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class MinimizationTest {
+
+	static class CountingState extends StateSkeleton<STM_EVENTS> {
+		int entered = 0;
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			++entered;
+		}
+	}
+
+	/**
+	 * "second" and "third" are equivalent, STM_A and STM_C behave identically
+	 */
+	private static StateMachineBuilder<STM_EVENTS> createBuilder(FSM_TYPES type, CountingState last)
+			throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(type, STM_EVENTS.class);
+		builder.addState("first", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A, "second").addTransition(STM_EVENTS.STM_C, "second")
+			.addTransition(STM_EVENTS.STM_B, "third");
+		builder.addState("second", new StateSkeleton<STM_EVENTS>())
+			.addTransition(STM_EVENTS.STM_A, "last").addTransition(STM_EVENTS.STM_C, "last")
+			.addDefaultTransition("first");
+		builder.addState("third", new StateSkeleton<STM_EVENTS>())
+			.addTransition(STM_EVENTS.STM_A, "last").addTransition(STM_EVENTS.STM_C, "last")
+			.addTransition(STM_EVENTS.STM_B, "first");
+		builder.addState("last", last).markStateAsFinal().addDefaultTransition("first");
+		return builder.setMinimization(true);
+	}
+
+	@Test
+	public void testMachines() throws BadStateMachineSpecification, InvalidEventException {
+		for (FSM_TYPES type : new FSM_TYPES[]{FSM_TYPES.BASIC, FSM_TYPES.SIMPLE, FSM_TYPES.COMPILED}) {
+			CountingState last = new CountingState();
+			StateMachineBuilder<STM_EVENTS> builder = createBuilder(type, last);
+			StateMachine<STM_EVENTS> fsm = builder.build();
+			MinimizationReport report = builder.getMinimizationReport();
+			assertEquals(4, report.getStatesBefore());
+			assertEquals(3, report.getStatesAfter());
+			assertEquals(2, report.getEventClasses());
+			assertEquals(6, report.getTableSizeAfter());
+			assertEquals("second", report.getMergedStates().get("third"));
+			assertEquals(3, fsm.getStateNames().size());
+			assertSame(fsm.getStateByName("second"), fsm.getStateByName("third"));
+
+			fsm.transit(STM_EVENTS.STM_B);
+			assertEquals("second", fsm.getNameOfCurrentState());
+			fsm.transit(STM_EVENTS.STM_C);
+			assertTrue(fsm.isInFinalState());
+			fsm.transit(STM_EVENTS.STM_B);
+			assertEquals("first", fsm.getNameOfCurrentState());
+			assertEquals(1, last.entered);
+		}
+	}
+
+	@Test
+	public void testCallbacksPreventMerge() throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = createBuilder(FSM_TYPES.BASIC, new CountingState());
+		builder.revisitState("third").specifyStateObject(new CountingState());
+		builder.build();
+		assertEquals(4, builder.getMinimizationReport().getStatesAfter());
+		assertTrue(builder.getMinimizationReport().getMergedStates().isEmpty());
+	}
+
+	@Test
+	public void testTimeoutsPreventMerge() throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = createBuilder(FSM_TYPES.BASIC, new CountingState());
+		builder.revisitState("third").setStateTimeout(STM_EVENTS.STM_A, 50, TimeUnit.MILLISECONDS);
+		StateMachine<STM_EVENTS> fsm = builder.build();
+		assertTrue(builder.getMinimizationReport().getMergedStates().isEmpty());
+		assertNotEquals(fsm.getStateIndex("second"), fsm.getStateIndex("third"));
+
+		// states with the same timeout remain equivalent
+		builder = createBuilder(FSM_TYPES.BASIC, new CountingState());
+		builder.revisitState("second").setStateTimeout(STM_EVENTS.STM_A, 50, TimeUnit.MILLISECONDS);
+		builder.revisitState("third").setStateTimeout(STM_EVENTS.STM_A, 50, TimeUnit.MILLISECONDS);
+		fsm = builder.build();
+		assertEquals("second", builder.getMinimizationReport().getMergedStates().get("third"));
+	}
+
+	@Test
+	public void testNullTransitionsPreventMerge() throws BadStateMachineSpecification, InvalidEventException {
+		for (FSM_TYPES type : new FSM_TYPES[]{FSM_TYPES.BASIC, FSM_TYPES.COMPILED}) {
+			StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(type, STM_EVENTS.class);
+			builder.addState("first", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+				.addTransition(STM_EVENTS.STM_A, "second").addTransition(STM_EVENTS.STM_B, "third");
+			builder.addState("second", new StateSkeleton<STM_EVENTS>())
+				.addTransition(STM_EVENTS.STM_A, "first")
+				.addTransition(STM_EVENTS.STM_C, StateMachineBuilder.TRANSITION_TYPE.NULL);
+			builder.addState("third", new StateSkeleton<STM_EVENTS>())
+				.addTransition(STM_EVENTS.STM_A, "first").addTransition(STM_EVENTS.STM_C, "third");
+			StateMachine<STM_EVENTS> fsm = builder.setMinimization(true).build();
+			assertTrue(builder.getMinimizationReport().getMergedStates().isEmpty());
+
+			assertEquals(TransitStatus.APPLIED, fsm.tryTransit(new SimpleEvent(STM_EVENTS.STM_A)));
+			assertEquals(TransitStatus.NULL_TRANSITION, fsm.tryTransit(new SimpleEvent(STM_EVENTS.STM_C)));
+			fsm.tryTransit(new SimpleEvent(STM_EVENTS.STM_A));
+			assertEquals(TransitStatus.APPLIED, fsm.tryTransit(new SimpleEvent(STM_EVENTS.STM_B)));
+			assertEquals(TransitStatus.APPLIED, fsm.tryTransit(new SimpleEvent(STM_EVENTS.STM_C)));
+		}
+	}
+
+	@Test
+	public void testDefinition() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineDefinition<STM_EVENTS> definition = createBuilder(FSM_TYPES.BASIC, new CountingState())
+			.buildDefinition();
+		assertEquals(3, definition.getStateCount());
+		assertEquals(definition.getStateIndex("second"), definition.getStateIndex("third"));
+		StateMachineInstance<STM_EVENTS> instance = definition.newInstance();
+		instance.transit(STM_EVENTS.STM_B);
+		instance.transit(STM_EVENTS.STM_A);
+		assertTrue(instance.isInFinalState());
+	}
+}
@@ -0,0 +1,81 @@
+package org.blitvin.statemachine;
+
+import java.util.Map;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.StateMachineBuilder.OVERFLOW_POLICY;
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class MultiInternalEventsStateMachineTest {
+
+	/**
+	 * emits three STM_B internal events upon STM_A
+	 */
+	static class EmittingState extends StateSkeleton<STM_EVENTS> {
+		FSMSupportingInternalEvents<STM_EVENTS> fsm;
+		int received = 0;
+
+		@Override
+		public void onStateAttachedToFSM(Map<?, ?> initializer, FSMStateView containingMachine) {
+			fsm = (FSMSupportingInternalEvents<STM_EVENTS>) containingMachine;
+		}
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			++received;
+			if (received == 1) {
+				try {
+					for (int i = 0; i < 3; ++i) {
+						fsm.generateInternalEvent(EnumEvent.of(STM_EVENTS.STM_B));
+					}
+				} catch (InvalidEventException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+
+	private static MultiInternalEventsStateMachine<STM_EVENTS> build(EmittingState state, OVERFLOW_POLICY policy)
+			throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.MULTI_INTERNAL_EVENTS, STM_EVENTS.class);
+		builder.setInternalEventsQueue(2, policy);
+		builder.addState("state1", state).markStateAsInitial()
+			.addDefaultTransition().addProperty("toState", "state1");
+		return (MultiInternalEventsStateMachine<STM_EVENTS>) builder.build();
+	}
+
+	@Test
+	public void testGrow() throws BadStateMachineSpecification, InvalidEventException {
+		EmittingState state = new EmittingState();
+		MultiInternalEventsStateMachine<STM_EVENTS> fsm = build(state, OVERFLOW_POLICY.GROW);
+		fsm.transit(STM_EVENTS.STM_A);
+		assertEquals(4, state.received);
+		assertEquals(0, fsm.getInternalQueueSize());
+		assertEquals(4, fsm.getInternalQueueCapacity());
+		assertEquals(3, fsm.getInternalQueueHighWaterMark());
+	}
+
+	@Test
+	public void testDrop() throws BadStateMachineSpecification, InvalidEventException {
+		EmittingState state = new EmittingState();
+		MultiInternalEventsStateMachine<STM_EVENTS> fsm = build(state, OVERFLOW_POLICY.DROP);
+		fsm.transit(STM_EVENTS.STM_A);
+		assertEquals(3, state.received);
+		assertEquals(1, fsm.getDroppedInternalEvents());
+		assertEquals(2, fsm.getInternalQueueCapacity());
+	}
+
+	@Test
+	public void testThrow() throws BadStateMachineSpecification, InvalidEventException {
+		EmittingState state = new EmittingState();
+		MultiInternalEventsStateMachine<STM_EVENTS> fsm = build(state, OVERFLOW_POLICY.THROW);
+		try {
+			fsm.transit(STM_EVENTS.STM_A);
+			fail("queue overflow should be reported");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof InvalidEventException);
+		}
+		assertEquals(0, fsm.getInternalQueueSize());
+	}
+}
@@ -0,0 +1,80 @@
+package org.blitvin.statemachine;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class OrthogonalStateMachineTest {
+
+	static class CountingState extends StateSkeleton<STM_EVENTS> {
+		volatile int entered = 0;
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			++entered;
+		}
+	}
+
+	/**
+	 * payment: STM_A pays, shipping: STM_B ships, STM_C is null transition in shipping
+	 */
+	private static LinkedHashMap<String, StateMachine<STM_EVENTS>> createRegions(CountingState paid)
+			throws BadStateMachineSpecification {
+		LinkedHashMap<String, StateMachine<STM_EVENTS>> retVal = new LinkedHashMap<>();
+		retVal.put("payment", new StateMachineBuilder<STM_EVENTS>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class)
+			.addState("unpaid", new StateSkeleton<STM_EVENTS>()).markStateAsInitial().addTransition(STM_EVENTS.STM_A, "paid")
+			.addState("paid", paid).markStateAsFinal().build());
+		retVal.put("shipping", new StateMachineBuilder<STM_EVENTS>(StateMachineBuilder.FSM_TYPES.COMPILED, STM_EVENTS.class)
+			.addState("pending", new StateSkeleton<STM_EVENTS>()).markStateAsInitial().addTransition(STM_EVENTS.STM_B, "shipped")
+			.addTransition(STM_EVENTS.STM_C, StateMachineBuilder.TRANSITION_TYPE.NULL)
+			.addState("shipped", new StateSkeleton<STM_EVENTS>()).markStateAsFinal().build());
+		return retVal;
+	}
+
+	private static void check(OrthogonalStateMachine<STM_EVENTS> machine, CountingState paid) throws InvalidEventException {
+		assertEquals(2, machine.getRegionCount());
+		assertEquals("(payment=unpaid, shipping=pending)", machine.getCurrentStates().toString());
+
+		assertEquals(TransitStatus.APPLIED, machine.tryTransit(EnumEvent.of(STM_EVENTS.STM_A)));
+		assertEquals(TransitStatus.REJECTED, machine.getLastStatus(1));
+		assertEquals(TransitStatus.NULL_TRANSITION, machine.tryTransit(EnumEvent.of(STM_EVENTS.STM_C)));
+		assertEquals(1, paid.entered);
+		assertFalse(machine.isInFinalState());
+
+		machine.transit(STM_EVENTS.STM_B);
+		StateTuple states = machine.getCurrentStates();
+		assertEquals("paid", states.getStateName("payment"));
+		assertEquals("shipped", states.getStateName(1));
+		assertEquals(1, states.getGeneration(0));
+		assertEquals(2, states.getGeneration(1));
+		assertTrue(machine.isInFinalState());
+		assertFalse(machine.canAccept(STM_EVENTS.STM_A));
+		try {
+			machine.transit(STM_EVENTS.STM_A);
+			fail("no region accepts the event");
+		} catch (InvalidEventException e) {
+			// expected
+		}
+		assertEquals(states, machine.getCurrentStates());
+	}
+
+	@Test
+	public void testSequential() throws BadStateMachineSpecification, InvalidEventException {
+		CountingState paid = new CountingState();
+		check(new OrthogonalStateMachine<>(createRegions(paid)), paid);
+	}
+
+	@Test
+	public void testParallel() throws BadStateMachineSpecification, InvalidEventException {
+		CountingState paid = new CountingState();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			check(new OrthogonalStateMachine<>(createRegions(paid), pool), paid);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.blitvin.statemachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class PropertyKeyTest {
+
+	/**
+	 * counts entries in FSM property via typed key
+	 */
+	static class CountingState extends StateSkeleton<STM_EVENTS> {
+		FSMStateView<STM_EVENTS> fsm;
+		PropertyKey<Integer> counter;
+
+		@Override
+		public void onStateAttachedToFSM(Map<?, ?> initializer, FSMStateView containingMachine) {
+			fsm = containingMachine;
+			counter = fsm.getPropertyKey("counter", Integer.class);
+		}
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			fsm.set(counter, fsm.get(counter) + 1);
+		}
+	}
+
+	static class LoggingListener implements PropertyChangeListener {
+		final ArrayList<String> log = new ArrayList<>();
+
+		@Override
+		public void onPropertyChange(Object property, Object newVale, Object oldValue) {
+			log.add(property + ":" + oldValue + "->" + newVale);
+		}
+	}
+
+	@Test
+	public void testTypedProperty() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		PropertyKey<Integer> counter = builder.definePropertyKey("counter", Integer.class);
+		assertSame(counter, builder.definePropertyKey("counter", Integer.class));
+		try {
+			builder.definePropertyKey("counter", String.class);
+			fail("redefinition with different type should be rejected");
+		} catch (BadStateMachineSpecification e) {
+			// expected
+		}
+		builder.addState("state1", new CountingState()).markStateAsInitial()
+			.addDefaultTransition().addProperty("toState", "state2");
+		builder.addState("state2", new CountingState())
+			.addDefaultTransition().addProperty("toState", "state1");
+		builder.addFSMProperty("counter", 10).addFSMProperty("untyped", "x");
+		StateMachineDriver<STM_EVENTS> fsm = (StateMachineDriver<STM_EVENTS>) builder.build();
+
+		LoggingListener listener = new LoggingListener();
+		fsm.registerPropertyChangeListener(listener, "counter");
+		LoggingListener catchAll = new LoggingListener();
+		fsm.registerPropertyChangeListener(catchAll, null);
+
+		fsm.transit(STM_EVENTS.STM_A);
+		fsm.transit(STM_EVENTS.STM_B);
+		assertEquals(Integer.valueOf(12), fsm.get(counter));
+		assertEquals(12, fsm.getProperty("counter"));
+		assertEquals("x", fsm.getProperty("untyped"));
+		assertEquals("[counter:10->11, counter:11->12]", listener.log.toString());
+
+		fsm.setProperty("counter", 0);
+		fsm.setProperty("untyped", "y");
+		assertEquals(Integer.valueOf(0), fsm.get(counter));
+		assertEquals("[counter:11->12, counter:12->0, untyped:x->y]", catchAll.log.subList(1, 4).toString());
+		assertEquals(0, fsm.getFSMProperties().get("counter"));
+
+		fsm.deregisterKeyListener(listener, counter);
+		fsm.set(counter, 5);
+		assertEquals(3, listener.log.size());
+		try {
+			fsm.setProperty("counter", "five");
+			fail("value of wrong type should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			fsm.get(new StateMachineBuilder<STM_EVENTS>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class)
+				.definePropertyKey("counter", Integer.class));
+			fail("key of other builder should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testListenerArgumentOrder() throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.addState("state1", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+			.addDefaultTransition().addProperty("toState", "state1");
+		builder.addFSMProperty("prop", "old");
+		StateMachineDriver<STM_EVENTS> fsm = (StateMachineDriver<STM_EVENTS>) builder.build();
+
+		final ArrayList<Object> args = new ArrayList<>();
+		PropertyChangeListener listener = new PropertyChangeListener() {
+			@Override
+			public void onPropertyChange(Object property, Object newVale, Object oldValue) {
+				args.add(property);
+				args.add(newVale);
+				args.add(oldValue);
+			}
+		};
+		fsm.registerPropertyChangeListener(listener, "prop");
+		fsm.setProperty("prop", "new");
+		assertEquals(Arrays.asList("prop", "new", "old"), args);
+
+		fsm.deregisterPropertyChangeListener(listener, "prop");
+		fsm.registerPropertyChangeListener(listener, null);
+		args.clear();
+		fsm.setProperty("prop", "newer");
+		assertEquals(Arrays.asList("prop", "newer", "new"), args);
+	}
+}
@@ -92,4 +92,78 @@ public class StateMachineBuilderTest {
 		
 		
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testEnumTransit() throws BadStateMachineSpecification,InvalidEventException{
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC,STM_EVENTS.class);
+		builder.addState("state1", new BuilderTestState<STM_EVENTS>()).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state2");
+		builder.addState("state2", new BuilderTestState<STM_EVENTS>())
+			.addTransition(STM_EVENTS.STM_B).addProperty("toState", "state1");
+		StateMachine<STM_EVENTS> machine = new FSMWrapper<>(builder.build());
+		assertEquals(STM_EVENTS.class, machine.getEventTypeClass());
+		assertSame(EnumEvent.of(STM_EVENTS.STM_A), EnumEvent.of(STM_EVENTS.class, STM_EVENTS.STM_A.ordinal()));
+		machine.transit(STM_EVENTS.STM_A);
+		assertEquals("state2", machine.getNameOfCurrentState());
+		machine.transit(STM_EVENTS.STM_B.ordinal());
+		assertEquals("state1", machine.getNameOfCurrentState());
+		try {
+			machine.transit(STM_EVENTS.values().length);
+			fail("ordinal out of range should be rejected");
+		}
+		catch(InvalidEventException e){
+			// expected
+		}
+	}
+
+	@Test
+	public void testStateIndices() throws BadStateMachineSpecification,InvalidEventException{
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.COMPILED,STM_EVENTS.class);
+		builder.addState("state1", new BuilderTestState<STM_EVENTS>()).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state3");
+		builder.addState("state2", new BuilderTestState<STM_EVENTS>())
+			.addTransition(STM_EVENTS.STM_B).addProperty("toState", "state1");
+		builder.addState("state3", new BuilderTestState<STM_EVENTS>())
+			.addTransition(STM_EVENTS.STM_B).addProperty("toState", "state2");
+		StateMachine<STM_EVENTS> machine = new FSMWrapper<>(builder.build());
+		assertEquals(0, machine.getCurrentStateIndex());
+		assertEquals(2, machine.getStateIndex("state3"));
+		assertEquals(-1, machine.getStateIndex("state4"));
+		assertEquals("state2", machine.getStateName(1));
+		assertNull(machine.getStateName(3));
+		machine.transit(STM_EVENTS.STM_A);
+		assertEquals(2, machine.getCurrentStateIndex());
+		machine.transit(STM_EVENTS.STM_B);
+		assertEquals("state2", machine.getStateName(machine.getCurrentStateIndex()));
+
+		StateMachineInstance<STM_EVENTS> instance = builder.buildDefinition().newInstance();
+		assertEquals(2, instance.getStateIndex("state3"));
+		assertEquals("state1", instance.getStateName(instance.getCurrentStateIndex()));
+	}
+
+	@Test
+	public void testCanAccept() throws BadStateMachineSpecification,InvalidEventException{
+		StateMachineBuilder<STM_EVENTS> builder = null;
+		for (StateMachineBuilder.FSM_TYPES type : new StateMachineBuilder.FSM_TYPES[]{StateMachineBuilder.FSM_TYPES.BASIC,
+				StateMachineBuilder.FSM_TYPES.COMPILED}) {
+			builder = new StateMachineBuilder<>(type,STM_EVENTS.class);
+			builder.addState("state1", new BuilderTestState<STM_EVENTS>()).markStateAsInitial()
+				.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state2")
+				.addTransition(STM_EVENTS.STM_B, StateMachineBuilder.TRANSITION_TYPE.NULL);
+			builder.addState("state2", new BuilderTestState<STM_EVENTS>())
+				.addDefaultTransition("state1");
+			StateMachine<STM_EVENTS> machine = builder.build();
+			assertTrue(machine.canAccept(STM_EVENTS.STM_A));
+			assertTrue(machine.canAccept(STM_EVENTS.STM_B));
+			assertFalse(machine.canAccept(STM_EVENTS.STM_C));
+			machine.transit(STM_EVENTS.STM_A);
+			assertTrue(machine.canAccept(STM_EVENTS.STM_C));
+			machine.transit(STM_EVENTS.STM_C);
+			assertFalse(machine.canAccept(STM_EVENTS.STM_C));
+		}
+
+		StateMachineInstance<STM_EVENTS> instance = builder.buildDefinition().newInstance();
+		assertTrue(instance.canAccept(STM_EVENTS.STM_B));
+		assertFalse(instance.canAccept(STM_EVENTS.STM_C));
+	}
+}
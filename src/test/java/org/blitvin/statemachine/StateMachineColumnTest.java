@@ -0,0 +1,68 @@
+package org.blitvin.statemachine;
+
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class StateMachineColumnTest {
+
+	static class LoggingState extends StateSkeleton<STM_EVENTS> {
+		final String name;
+		final ArrayList<String> log;
+
+		LoggingState(String name, ArrayList<String> log) {
+			this.name = name;
+			this.log = log;
+		}
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			log.add("in:" + name);
+		}
+
+		@Override
+		public void onInvalidTransition(StateMachineEvent<STM_EVENTS> theEvent) {
+			log.add("invalid:" + name + ":" + theEvent.getEventType());
+		}
+	}
+
+	@Test
+	public void testStep() throws BadStateMachineSpecification {
+		ArrayList<String> log = new ArrayList<>();
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.addState("state1", new LoggingState("state1", log)).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state2")
+			.addTransition(STM_EVENTS.STM_B, StateMachineBuilder.TRANSITION_TYPE.NULL);
+		builder.addState("state2", new LoggingState("state2", log)).markStateAsFinal()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state1");
+		StateMachineColumn<STM_EVENTS> column = builder.buildDefinition().newColumn(3);
+		assertEquals(3, column.size());
+
+		int a = STM_EVENTS.STM_A.ordinal();
+		int b = STM_EVENTS.STM_B.ordinal();
+		int c = STM_EVENTS.STM_C.ordinal();
+		int rejected = column.step(new int[]{0, 1, 2, 0, 1}, new int[]{a, b, a, a, c});
+		assertEquals(1, rejected);
+		assertEquals("state1", column.getStateName(0));
+		assertEquals("state1", column.getStateName(1));
+		assertEquals("state2", column.getStateName(2));
+		assertTrue(column.isInFinalState(2));
+
+		assertEquals(3, column.getChangeCount());
+		assertEquals(0, column.getChangedId(0));
+		assertEquals(2, column.getChangedId(1));
+		assertEquals(1, column.getRejectedId(0));
+		assertEquals(c, column.getRejectedEvent(0));
+		assertEquals("[in:state2, in:state2, in:state1, invalid:state1:STM_C]", log.toString());
+
+		log.clear();
+		column.setDispatchCallbacks(false);
+		int id = column.add(1);
+		assertEquals(3, id);
+		assertEquals(1, column.step(new int[]{3, 2}, new int[]{a, 7}));
+		assertEquals("state2", column.getStateName(3));
+		assertTrue(log.isEmpty());
+	}
+}
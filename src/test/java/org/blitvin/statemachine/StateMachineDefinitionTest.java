@@ -0,0 +1,112 @@
+package org.blitvin.statemachine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class StateMachineDefinitionTest {
+
+	static class CountingState extends StateSkeleton<STM_EVENTS> implements InstanceAwareState<STM_EVENTS> {
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineInstance<STM_EVENTS> instance,
+				StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> prevState) {
+			Integer visits = (Integer) instance.getProperty("visits");
+			instance.setProperty("visits", visits + 1);
+		}
+
+		@Override
+		public void onStateIsNoLongerCurrent(StateMachineInstance<STM_EVENTS> instance,
+				StateMachineEvent<STM_EVENTS> theEvent, State<STM_EVENTS> nextState) {
+		}
+	}
+
+	private static StateMachineBuilder<STM_EVENTS> createBuilder(StateMachineBuilder.FSM_TYPES type)
+			throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(type, STM_EVENTS.class);
+		builder.addState("state1", new StateSkeleton<STM_EVENTS>()).markStateAsInitial()
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state2")
+			.addTransition(STM_EVENTS.STM_B, StateMachineBuilder.TRANSITION_TYPE.NULL);
+		builder.addState("state2", new CountingState())
+			.addTransition(STM_EVENTS.STM_A).addProperty("toState", "state1")
+			.addDefaultTransition().addProperty("toState", "state2").markStateAsFinal();
+		builder.addFSMProperty("visits", 0);
+		return builder;
+	}
+
+	@Test
+	public void testInstances() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineDefinition<STM_EVENTS> definition = createBuilder(StateMachineBuilder.FSM_TYPES.BASIC).buildDefinition();
+		StateMachineInstance<STM_EVENTS> first = definition.newInstance();
+		StateMachineInstance<STM_EVENTS> second = definition.newInstance();
+		assertEquals("state1", first.getNameOfCurrentState());
+		assertEquals(2, first.getStateNames().size());
+
+		SimpleEvent event = new SimpleEvent(STM_EVENTS.STM_A);
+		first.transit(event);
+		assertEquals("state2", first.getNameOfCurrentState());
+		assertTrue(first.isInFinalState());
+		assertEquals("state1", second.getNameOfCurrentState());
+		assertEquals(definition.getStateIndex("state2"), first.getCurrentStateIndex());
+
+		event.setEventType(STM_EVENTS.STM_C); // default transition
+		first.transit(event);
+		assertEquals(2, first.getProperty("visits"));
+		assertEquals(0, second.getProperty("visits"));
+		assertEquals(0, definition.getProperties().get("visits"));
+		assertEquals(2, first.getGeneration());
+
+		event.setEventType(STM_EVENTS.STM_B);
+		second.transit(event);
+		assertEquals("state1", second.getNameOfCurrentState());
+		assertEquals(1, second.getGeneration());
+		event.setEventType(STM_EVENTS.STM_C);
+		try {
+			second.transit(event);
+			fail("STM_C is not defined for state1");
+		} catch (InvalidEventException e) {
+			// expected
+		}
+		assertEquals("state1", second.getNameOfCurrentState());
+	}
+
+	@Test(expected = BadStateMachineSpecification.class)
+	public void testAspectsAreRejected() throws BadStateMachineSpecification {
+		createBuilder(StateMachineBuilder.FSM_TYPES.ASPECT).buildDefinition();
+	}
+
+	@Test(expected = BadStateMachineSpecification.class)
+	public void testCustomizedTransitionsAreRejected() throws BadStateMachineSpecification {
+		StateMachineBuilder<STM_EVENTS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.BASIC, STM_EVENTS.class);
+		builder.addState("state1", new CompiledStateMachineTest.ChoosingState("state1", new ArrayList<String>()))
+			.markStateAsInitial().addTransition(STM_EVENTS.STM_A, StateMachineBuilder.TRANSITION_TYPE.CUSTOMIZED);
+		builder.buildDefinition();
+	}
+
+	@Test
+	public void testInstanceListeners() throws BadStateMachineSpecification, InvalidEventException {
+		StateMachineBuilder<STM_EVENTS> builder = createBuilder(StateMachineBuilder.FSM_TYPES.BASIC);
+		PropertyKey<Integer> visits = builder.definePropertyKey("visits", Integer.class);
+		StateMachineInstance<STM_EVENTS> instance = builder.buildDefinition().newInstance();
+		PropertyKeyTest.LoggingListener keyListener = new PropertyKeyTest.LoggingListener();
+		PropertyKeyTest.LoggingListener catchAll = new PropertyKeyTest.LoggingListener();
+		instance.registerKeyListener(keyListener, visits);
+		instance.registerPropertyChangeListener(catchAll, null);
+
+		instance.transit(STM_EVENTS.STM_A);
+		instance.set(visits, 5);
+		instance.setProperty("other", "x");
+		assertEquals("[visits:0->1, visits:1->5]", keyListener.log.toString());
+		assertEquals("[visits:0->1, visits:1->5, other:null->x]", catchAll.log.toString());
+
+		instance.deregisterKeyListener(keyListener, visits);
+		instance.deregisterPropertyChangeListener(catchAll, null);
+		instance.transit(STM_EVENTS.STM_C);
+		assertEquals(6, instance.getProperty("visits"));
+		assertEquals(2, keyListener.log.size());
+		assertEquals(3, catchAll.log.size());
+	}
+}
@@ -0,0 +1,74 @@
+package org.blitvin.statemachine;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.*;
+
+import org.blitvin.statemachine.utils.StateSkeleton;
+import org.junit.Test;
+
+public class StateMachineScannerTest {
+
+	enum CHARS {
+		LETTER, SPACE, OTHER
+	}
+
+	static class WordState extends StateSkeleton<CHARS> {
+		int words = 0;
+		long lastStart = -1;
+
+		@Override
+		public void onStateBecomesCurrent(StateMachineEvent<CHARS> theEvent, State<CHARS> prevState) {
+			++words;
+			lastStart = ((ScannerEvent<CHARS>) theEvent).getPosition();
+		}
+	}
+
+	private static StateMachineDefinition<CHARS> createDefinition(WordState word) throws BadStateMachineSpecification {
+		StateMachineBuilder<CHARS> builder = new StateMachineBuilder<>(StateMachineBuilder.FSM_TYPES.COMPILED, CHARS.class);
+		builder.addState("space", new StateSkeleton<CHARS>()).markStateAsInitial()
+			.addTransition(CHARS.LETTER).addProperty("toState", "word")
+			.addTransition(CHARS.SPACE).addProperty("toState", "space");
+		builder.addState("word", word)
+			.addTransition(CHARS.LETTER).addProperty("toState", "word")
+			.addTransition(CHARS.SPACE).addProperty("toState", "space");
+		return builder.buildDefinition();
+	}
+
+	private static CharClassTable<CHARS> createTable() {
+		return new CharClassTable<>(CHARS.class, CHARS.OTHER)
+			.set('a', 'z', CHARS.LETTER).set('A', 'Z', CHARS.LETTER).set(" \t\n", CHARS.SPACE);
+	}
+
+	@Test
+	public void testCharBuffer() throws BadStateMachineSpecification, InvalidEventException {
+		WordState word = new WordState();
+		StateMachineScanner<CHARS> scanner = new StateMachineScanner<>(createDefinition(word), createTable());
+		scanner.feed(CharBuffer.wrap("the quick  brown"));
+		assertEquals(3, word.words);
+		assertEquals(11, word.lastStart);
+		scanner.feed(CharBuffer.wrap("fox jumps"));
+		assertEquals(4, word.words); // "brownfox" is single word
+		assertEquals(25, scanner.getPosition());
+		assertEquals("word", scanner.getInstance().getNameOfCurrentState());
+		assertEquals(25, scanner.getInstance().getGeneration());
+	}
+
+	@Test
+	public void testInvalidCharacter() throws BadStateMachineSpecification {
+		WordState word = new WordState();
+		StateMachineScanner<CHARS> scanner = new StateMachineScanner<>(createDefinition(word), createTable());
+		ByteBuffer buffer = ByteBuffer.wrap("one two, three".getBytes(StandardCharsets.US_ASCII));
+		try {
+			scanner.feed(buffer);
+			fail("',' is not accepted by any state");
+		} catch (InvalidEventException e) {
+			// expected
+		}
+		assertEquals(7, buffer.position());
+		assertEquals(7, scanner.getPosition());
+		assertEquals(2, word.words);
+		assertEquals("word", scanner.getInstance().getNameOfCurrentState());
+	}
+}
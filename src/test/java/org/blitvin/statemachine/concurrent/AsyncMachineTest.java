@@ -21,19 +21,30 @@ package org.blitvin.statemachine.concurrent;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.BatchTransitResult;
 import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.State;
+import org.blitvin.statemachine.StateMachine;
 import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.StateMachineEvent;
+import org.blitvin.statemachine.TransitStatus;
 import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
 import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
 import org.blitvin.statemachine.buildertest.BuilderTestState;
+import org.blitvin.statemachine.utils.StateSkeleton;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -50,6 +61,7 @@ public class AsyncMachineTest {
 
     public enum AsyncTypes {
         CONCURRENT_FSM,
+        RING_BUFFER_FSM,
         POOLED_FSM
     };
     private static final ExecutorService pool = Executors.newFixedThreadPool(4);
@@ -59,6 +71,7 @@ public class AsyncMachineTest {
     public static Collection asyncMachineBuilders() {
         Object[][] builders = {
             {AsyncTypes.CONCURRENT_FSM},
+            {AsyncTypes.RING_BUFFER_FSM},
             {AsyncTypes.POOLED_FSM}
         };
         return Arrays.asList(builders);
@@ -82,13 +95,22 @@ public class AsyncMachineTest {
                 .addTransition(TestEnum.A).addProperty(TARGET_STATE, "first")
                 .addTransition(TestEnum.B).addProperty(TARGET_STATE, "second")
                 .addTransition(TestEnum.C).addProperty(TARGET_STATE, "third");
+        return wrap(b.build());
+    }
+
+    private AsyncStateMachine<TestEnum> wrap(StateMachine<TestEnum> fsm) {
         switch (fsmType) {
             case  CONCURRENT_FSM: 
-                ConcurrentStateMachine<TestEnum> retVal = new ConcurrentStateMachine<>(b.build());
+                ConcurrentStateMachine<TestEnum> retVal = new ConcurrentStateMachine<>(fsm);
                     retVal.start();
                     return retVal;
+            case RING_BUFFER_FSM:
+                ConcurrentStateMachine<TestEnum> ring = new ConcurrentStateMachine<>(fsm,
+                        ConcurrentStateMachine.QUEUE_TYPE.RING_BUFFER, 0);
+                ring.start();
+                return ring;
             case POOLED_FSM:
-                          return new FSMThreadPoolFacade<>(b.build(), pool,
+                          return new FSMThreadPoolFacade<>(fsm, pool,
                             new LinkedBlockingQueue<FSMQueueSubmittable>()).getProxy();
           
         }
@@ -97,7 +119,7 @@ public class AsyncMachineTest {
 
 
     private void shutdownConcurrent(AsyncStateMachine<TestEnum> fsm){
-        if (fsmType == AsyncTypes.CONCURRENT_FSM){
+        if (fsmType != AsyncTypes.POOLED_FSM){
             ((ConcurrentStateMachine<TestEnum>)fsm).shutDown();
         }
     }
@@ -127,6 +149,151 @@ public class AsyncMachineTest {
         shutdownConcurrent(machine);
     }
 
+    @Test
+    public void testBatchTransit() throws Exception {
+        AsyncStateMachine<TestEnum> machine = buildMachine();
+        StateMachineEvent<TestEnum>[] events = new StateMachineEvent[]{
+            new TestEvent<>(TestEnum.C), new TestEvent<>(TestEnum.A),
+            new TestEvent<>(TestEnum.C), new TestEvent<>(TestEnum.B)};
+        BatchTransitResult result = machine.transitAll(events, 1, 3);
+        assertEquals(1, result.getApplied());
+        assertEquals(2, result.getFailedIndex());
+        assertTrue(result.getFailure() instanceof InvalidEventException);
+        assertEquals("second", machine.getNameOfCurrentState());
+
+        result = machine.asyncTransitAll(events, 3, 1).get();
+        assertTrue(result.isCompleted());
+        assertEquals(1, result.getApplied());
+        assertEquals("first", machine.getNameOfCurrentState());
+
+        result = machine.asyncTransitAll(events, 1, 3).get();
+        assertEquals(1, result.getApplied());
+        assertEquals(2, result.getFailedIndex());
+        assertEquals("second", machine.getNameOfCurrentState());
+        shutdownConcurrent(machine);
+    }
+
+    static class ThrowingState extends StateSkeleton<TestEnum> {
+
+        @Override
+        public void onStateBecomesCurrent(StateMachineEvent<TestEnum> theEvent, State<TestEnum> prevState) {
+            throw new IllegalStateException("failing state");
+        }
+    }
+
+    @Test
+    public void testBatchTransitRuntimeException() throws Exception {
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("first", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "second")
+                .addState("second", new BuilderTestState())
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "first")
+                .addTransition(TestEnum.B).addProperty(TARGET_STATE, "failing")
+                .addState("failing", new ThrowingState())
+                .addDefaultTransition().addProperty(TARGET_STATE, "first");
+        AsyncStateMachine<TestEnum> machine = wrap(b.build());
+        StateMachineEvent<TestEnum>[] events = new StateMachineEvent[]{
+            new TestEvent<>(TestEnum.C), new TestEvent<>(TestEnum.A), new TestEvent<>(TestEnum.A),
+            new TestEvent<>(TestEnum.A), new TestEvent<>(TestEnum.B), new TestEvent<>(TestEnum.A)};
+        int stamp = machine.getCurrentStampedState().getStamp();
+        BatchTransitResult result = machine.transitAll(events, 1, 5);
+        assertEquals(3, result.getApplied());
+        assertEquals(4, result.getFailedIndex());
+        assertTrue(result.getFailure().getCause() instanceof IllegalStateException);
+        if (machine instanceof ConcurrentStateMachine) {
+            // failed event advances generation as well
+            assertEquals(stamp + 4, machine.getCurrentStampedState().getStamp());
+        }
+
+        result = machine.asyncTransitAll(events, 1, 5).get();
+        assertEquals(3, result.getApplied());
+        assertEquals(4, result.getFailedIndex());
+        shutdownConcurrent(machine);
+    }
+
+    static class RecordingCallback implements TransitCallback<TestEnum> {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile StampedState<TestEnum> state;
+        volatile Exception failure;
+        volatile Thread thread;
+
+        @Override
+        public void onTransit(StampedState<TestEnum> state) {
+            this.state = state;
+            thread = Thread.currentThread();
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(Exception failure) {
+            this.failure = failure;
+            thread = Thread.currentThread();
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void testAsyncTransitCallback() throws BadStateMachineSpecification, InterruptedException {
+        AsyncStateMachine<TestEnum> machine = buildMachine();
+        RecordingCallback callback = new RecordingCallback();
+        assertTrue(machine.asyncTransit(new TestEvent<>(TestEnum.A), callback, null));
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals(machine.getStateByName("second"), callback.state.getState());
+        assertNull(callback.failure);
+        assertFalse(Thread.currentThread() == callback.thread);
+
+        final AtomicInteger executed = new AtomicInteger();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                command.run();
+            }
+        };
+        callback = new RecordingCallback();
+        assertTrue(machine.asyncTransit(new TestEvent<>(TestEnum.C), callback, executor));
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.failure instanceof InvalidEventException);
+        assertEquals(1, executed.get());
+        assertEquals("second", machine.getNameOfCurrentState());
+        shutdownConcurrent(machine);
+    }
+
+    @Test
+    public void testTryTransit() throws BadStateMachineSpecification {
+        AsyncStateMachine<TestEnum> machine = buildMachine();
+        TestEvent<TestEnum> event = new TestEvent<>(TestEnum.A);
+        assertEquals(TransitStatus.APPLIED, machine.tryTransit(event));
+        assertEquals(TransitStatus.REJECTED, machine.tryTransit(event.setEvent(TestEnum.C)));
+        assertEquals("second", machine.getNameOfCurrentState());
+        assertEquals(TransitStatus.APPLIED, machine.tryTransit(event.setEvent(TestEnum.B)));
+        assertEquals("first", machine.getNameOfCurrentState());
+        shutdownConcurrent(machine);
+    }
+
+    @Test
+    public void testEarlyRejection() throws BadStateMachineSpecification, InvalidEventException {
+        AsyncStateMachine<TestEnum> machine = buildMachine();
+        TestEvent<TestEnum> event = new TestEvent<>(TestEnum.A);
+        machine.transit(event);
+        assertTrue(machine.canAccept(TestEnum.B));
+        assertFalse(machine.canAccept(TestEnum.C));
+        assertFalse(machine.isEarlyRejection());
+        machine.setEarlyRejection(true);
+        assertEquals(TransitStatus.REJECTED, machine.tryTransit(event.setEvent(TestEnum.C)));
+        assertFalse(machine.fireAndForgetTransit(event));
+        try {
+            machine.transit(event);
+            fail("Expecting to get InvalidEventType exception");
+        } catch (InvalidEventException e) {
+            assertSame(InvalidEventException.NOT_ACCEPTED, e);
+        }
+        machine.transit(event.setEvent(TestEnum.B));
+        assertEquals("first", machine.getNameOfCurrentState());
+        shutdownConcurrent(machine);
+    }
+
     private static abstract class CASTester extends Thread {
 
         protected final CyclicBarrier barrier;
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.State;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.StateMachineEvent;
+import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
+import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
+import org.blitvin.statemachine.buildertest.BuilderTestState;
+import org.blitvin.statemachine.utils.StateSkeleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ *
+ * @author blitvin
+ */
+@RunWith(Parameterized.class)
+public class CoalescingTest {
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(2);
+    private final AsyncMachineTest.AsyncTypes fsmType;
+
+    @Parameterized.Parameters
+    public static Collection fsmTypes() {
+        Object[][] types = {
+            {AsyncMachineTest.AsyncTypes.CONCURRENT_FSM},
+            {AsyncMachineTest.AsyncTypes.POOLED_FSM}
+        };
+        return Arrays.asList(types);
+    }
+
+    public CoalescingTest(AsyncMachineTest.AsyncTypes fsmType) {
+        this.fsmType = fsmType;
+    }
+
+    /**
+     * blocks the processing thread on first entering the state
+     */
+    static class BlockingState extends StateSkeleton<TestEnum> {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile int refreshes = 0;
+
+        @Override
+        public void onStateBecomesCurrent(StateMachineEvent<TestEnum> theEvent, State<TestEnum> prevState) {
+            if (theEvent.getEventType() == TestEnum.B) {
+                ++refreshes;
+            }
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private AsyncStateMachine<TestEnum> buildMachine(BlockingState blocking) throws BadStateMachineSpecification {
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("first", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "second")
+                .addState("second", blocking)
+                .addTransition(TestEnum.B).addProperty(TARGET_STATE, "second")
+                .addTransition(TestEnum.C).addProperty(TARGET_STATE, "first");
+        StateMachine<TestEnum> fsm = b.build();
+        if (fsmType == AsyncMachineTest.AsyncTypes.CONCURRENT_FSM) {
+            ConcurrentStateMachine<TestEnum> retVal = new ConcurrentStateMachine<>(fsm);
+            retVal.start();
+            return retVal;
+        }
+        return new FSMThreadPoolFacade<>(fsm, pool, new LinkedBlockingQueue<FSMQueueSubmittable>()).getProxy();
+    }
+
+    @Test
+    public void testCoalescing() throws BadStateMachineSpecification, InterruptedException,
+            ExecutionException, InvalidEventException {
+        BlockingState blocking = new BlockingState();
+        AsyncStateMachine<TestEnum> fsm = buildMachine(blocking);
+        fsm.setCoalescableEvents(EnumSet.of(TestEnum.B));
+        Future<StampedState<TestEnum>> enter = fsm.asyncTransit(new TestEvent<>(TestEnum.A));
+        blocking.entered.await();
+
+        Future<StampedState<TestEnum>> first = fsm.asyncTransit(new TestEvent<>(TestEnum.B));
+        Future<StampedState<TestEnum>> second = fsm.asyncTransit(new TestEvent<>(TestEnum.B));
+        assertTrue(fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.B)));
+        assertSame(first, second);
+        assertEquals(2, fsm.getCoalescedEventsCount());
+
+        blocking.release.countDown();
+        enter.get();
+        StampedState<TestEnum> result = second.get();
+        assertEquals(blocking, result.getState());
+        assertEquals(1, blocking.refreshes);
+
+        // processed entry doesn't absorb new events
+        Future<StampedState<TestEnum>> third = fsm.asyncTransit(new TestEvent<>(TestEnum.B));
+        assertNotSame(first, third);
+        third.get();
+        fsm.transit(new TestEvent<>(TestEnum.C));
+        assertEquals(2, blocking.refreshes);
+        assertEquals(2, fsm.getCoalescedEventsCount());
+        if (fsm instanceof ConcurrentStateMachine) {
+            ((ConcurrentStateMachine<TestEnum>) fsm).shutDown();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author blitvin
+ */
+public class HashedTimingWheelTest {
+
+    private static Runnable record(final ArrayList<String> log, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testExpiration() {
+        ManualClock clock = new ManualClock();
+        HashedTimingWheel wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 6, clock);
+        ArrayList<String> log = new ArrayList<>();
+        wheel.schedule(record(log, "25ms"), 25, TimeUnit.MILLISECONDS);
+        wheel.schedule(record(log, "5ms"), 5, TimeUnit.MILLISECONDS);
+        // wheel size is rounded to 8, so 175ms needs two full rotations
+        wheel.schedule(record(log, "175ms"), 175, TimeUnit.MILLISECONDS);
+
+        clock.setMillis(9);
+        assertEquals(0, wheel.advance());
+        clock.setMillis(10);
+        assertEquals(1, wheel.advance());
+        assertEquals("[5ms]", log.toString());
+        clock.setMillis(100);
+        assertEquals(1, wheel.advance());
+        assertEquals(10, wheel.getTick());
+        clock.setMillis(179);
+        assertEquals(0, wheel.advance());
+        clock.setMillis(180);
+        assertEquals(1, wheel.advance());
+        assertEquals("[5ms, 25ms, 175ms]", log.toString());
+    }
+
+    @Test
+    public void testCancel() {
+        ManualClock clock = new ManualClock();
+        HashedTimingWheel wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 8, clock);
+        ArrayList<String> log = new ArrayList<>();
+        HashedTimingWheel.Timeout beforeTransfer = wheel.schedule(record(log, "first"), 30, TimeUnit.MILLISECONDS);
+        HashedTimingWheel.Timeout inBucket = wheel.schedule(record(log, "second"), 30, TimeUnit.MILLISECONDS);
+        HashedTimingWheel.Timeout expired = wheel.schedule(record(log, "third"), 30, TimeUnit.MILLISECONDS);
+        assertTrue(beforeTransfer.cancel());
+        assertFalse(beforeTransfer.cancel());
+        clock.setMillis(10);
+        wheel.advance();
+        assertTrue(inBucket.cancel());
+        clock.setMillis(40);
+        assertEquals(1, wheel.advance());
+        assertEquals("[third]", log.toString());
+        assertTrue(expired.isExpired());
+        assertFalse(expired.cancel());
+        assertTrue(inBucket.isCancelled());
+    }
+
+    @Test
+    public void testFailingTask() {
+        ManualClock clock = new ManualClock();
+        HashedTimingWheel wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 8, clock);
+        ArrayList<String> log = new ArrayList<>();
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+        wheel.schedule(record(log, "next"), 0, TimeUnit.MILLISECONDS);
+        clock.setMillis(10);
+        assertEquals(2, wheel.advance());
+        assertEquals("[next]", log.toString());
+    }
+}
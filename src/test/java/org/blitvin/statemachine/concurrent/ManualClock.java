@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * clock of timing wheel moved by tests
+ * @author blitvin
+ */
+public class ManualClock implements HashedTimingWheel.Clock {
+
+    private volatile long now = 0;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    public void setMillis(long millis) {
+        now = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
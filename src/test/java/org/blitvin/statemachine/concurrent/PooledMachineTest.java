@@ -18,12 +18,15 @@
  */
 package org.blitvin.statemachine.concurrent;
 
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.blitvin.statemachine.BadStateMachineSpecification;
 import org.blitvin.statemachine.InvalidEventException;
 import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.TransitStatus;
 import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
 import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
 import org.blitvin.statemachine.buildertest.BuilderTestState;
@@ -83,4 +86,29 @@ private AsyncStateMachine<TestEnum> buildMachine(ExecutorService pool) throws Ba
         machine.transit(event);
         assertEquals("third", machine.getNameOfCurrentState());
     }
+
+    @Test
+    public void testFullQueue() throws BadStateMachineSpecification, InvalidEventException, InterruptedException {
+        PriorityLanesTest.LoggingState busy = new PriorityLanesTest.LoggingState();
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("idle", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "busy")
+                .addState("busy", busy)
+                .addDefaultTransition().addProperty(TARGET_STATE, "busy");
+        AsyncStateMachine<TestEnum> machine = new FSMThreadPoolFacade<>(b.build(), pool,
+                new ArrayBlockingQueue<FSMQueueSubmittable>(1)).getProxy();
+        machine.fireAndForgetTransit(new TestEvent<>(TestEnum.A));
+        busy.entered.await();
+        assertTrue(machine.fireAndForgetTransit(new TestEvent<>(TestEnum.B)));
+        assertEquals(TransitStatus.REJECTED, machine.tryTransit(new TestEvent<>(TestEnum.C)));
+        assertFalse(machine.fireAndForgetTransit(new TestEvent<>(TestEnum.C)));
+
+        busy.release.countDown();
+        while (machine.getQueueDepth(EventPriority.NORMAL) > 0) {
+            Thread.sleep(1);
+        }
+        machine.transit(new TestEvent<>(TestEnum.A));
+        assertEquals(TransitStatus.APPLIED, machine.tryTransit(new TestEvent<>(TestEnum.B)));
+        assertEquals(Arrays.asList(TestEnum.A, TestEnum.B, TestEnum.A, TestEnum.B), busy.log);
+    }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.State;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.StateMachineEvent;
+import org.blitvin.statemachine.TransitStatus;
+import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
+import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
+import org.blitvin.statemachine.buildertest.BuilderTestState;
+import org.blitvin.statemachine.utils.StateSkeleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ *
+ * @author blitvin
+ */
+@RunWith(Parameterized.class)
+public class PriorityLanesTest {
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(2);
+    private final AsyncMachineTest.AsyncTypes fsmType;
+
+    @Parameterized.Parameters
+    public static Collection fsmTypes() {
+        Object[][] types = {
+            {AsyncMachineTest.AsyncTypes.CONCURRENT_FSM},
+            {AsyncMachineTest.AsyncTypes.RING_BUFFER_FSM},
+            {AsyncMachineTest.AsyncTypes.POOLED_FSM}
+        };
+        return Arrays.asList(types);
+    }
+
+    public PriorityLanesTest(AsyncMachineTest.AsyncTypes fsmType) {
+        this.fsmType = fsmType;
+    }
+
+    /**
+     * logs events and blocks processing on first entering the state
+     */
+    static class LoggingState extends StateSkeleton<TestEnum> {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<TestEnum> log = Collections.synchronizedList(new ArrayList<TestEnum>());
+
+        @Override
+        public void onStateBecomesCurrent(StateMachineEvent<TestEnum> theEvent, State<TestEnum> prevState) {
+            log.add(theEvent.getEventType());
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private AsyncStateMachine<TestEnum> buildMachine(LoggingState busy) throws BadStateMachineSpecification {
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("idle", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "busy")
+                .addState("busy", busy)
+                .addDefaultTransition().addProperty(TARGET_STATE, "busy");
+        StateMachine<TestEnum> fsm = b.build();
+        if (fsmType == AsyncMachineTest.AsyncTypes.CONCURRENT_FSM) {
+            ConcurrentStateMachine<TestEnum> retVal = new ConcurrentStateMachine<>(fsm, 16);
+            retVal.start();
+            return retVal;
+        }
+        if (fsmType == AsyncMachineTest.AsyncTypes.RING_BUFFER_FSM) {
+            ConcurrentStateMachine<TestEnum> retVal = new ConcurrentStateMachine<>(fsm,
+                    ConcurrentStateMachine.QUEUE_TYPE.RING_BUFFER, 16);
+            retVal.start();
+            return retVal;
+        }
+        return new FSMThreadPoolFacade<>(fsm, pool, new LinkedBlockingQueue<FSMQueueSubmittable>()).getProxy();
+    }
+
+    @Test
+    public void testLanes() throws BadStateMachineSpecification, InterruptedException, InvalidEventException {
+        LoggingState busy = new LoggingState();
+        AsyncStateMachine<TestEnum> fsm = buildMachine(busy);
+        fsm.setHighPriorityEvents(EnumSet.of(TestEnum.C));
+        fsm.setMaxConsecutiveHighPriority(2);
+        fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.A));
+        busy.entered.await();
+
+        for (int i = 0; i < 3; ++i) {
+            fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.B));
+        }
+        for (int i = 0; i < 3; ++i) {
+            fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.C));
+        }
+        assertEquals(3, fsm.getQueueDepth(EventPriority.HIGH));
+        assertEquals(3, fsm.getQueueDepth(EventPriority.NORMAL));
+
+        busy.release.countDown();
+        fsm.transit(new TestEvent<>(TestEnum.B));
+        assertEquals(Arrays.asList(TestEnum.A, TestEnum.C, TestEnum.C, TestEnum.B, TestEnum.C,
+                TestEnum.B, TestEnum.B, TestEnum.B), busy.log);
+        assertEquals(0, fsm.getQueueDepth(EventPriority.HIGH));
+        assertEquals(0, fsm.getQueueDepth(EventPriority.NORMAL));
+        if (fsm instanceof ConcurrentStateMachine) {
+            ((ConcurrentStateMachine<TestEnum>) fsm).shutDown();
+        }
+    }
+
+    /**
+     * interrupted tryTransit() reports REJECTED only if the event is not applied
+     */
+    @Test
+    public void testInterruptedTryTransit() throws BadStateMachineSpecification, InterruptedException, InvalidEventException {
+        LoggingState busy = new LoggingState();
+        final AsyncStateMachine<TestEnum> fsm = buildMachine(busy);
+        fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.A));
+        busy.entered.await();
+
+        final TransitStatus[] status = new TransitStatus[1];
+        final boolean[] interrupted = new boolean[1];
+        Thread caller = new Thread() {
+            @Override
+            public void run() {
+                status[0] = fsm.tryTransit(new TestEvent<>(TestEnum.B));
+                interrupted[0] = Thread.currentThread().isInterrupted();
+            }
+        };
+        caller.start();
+        while (fsm.getQueueDepth(EventPriority.NORMAL) == 0) {
+            Thread.sleep(1);
+        }
+        caller.interrupt();
+        caller.join(100);
+        busy.release.countDown();
+        caller.join();
+
+        fsm.transit(new TestEvent<>(TestEnum.C));
+        assertTrue(interrupted[0]);
+        assertEquals(status[0] == TransitStatus.APPLIED, busy.log.contains(TestEnum.B));
+        assertEquals(TestEnum.C, busy.log.get(busy.log.size() - 1));
+        if (fsm instanceof ConcurrentStateMachine) {
+            ((ConcurrentStateMachine<TestEnum>) fsm).shutDown();
+        }
+    }
+
+    /**
+     * wake up of processing thread doesn't take space of bounded normal lane
+     */
+    @Test
+    public void testWakeUpKeepsNormalLaneCapacity() throws BadStateMachineSpecification, InterruptedException, InvalidEventException {
+        assumeTrue(fsmType == AsyncMachineTest.AsyncTypes.CONCURRENT_FSM);
+        LoggingState busy = new LoggingState();
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("idle", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "busy")
+                .addTransition(TestEnum.C).addProperty(TARGET_STATE, "idle")
+                .addState("busy", busy)
+                .addDefaultTransition().addProperty(TARGET_STATE, "busy");
+        ConcurrentStateMachine<TestEnum> fsm = new ConcurrentStateMachine<>(b.build(), 2, 0, TimeUnit.MILLISECONDS);
+        fsm.start();
+        fsm.setHighPriorityEvents(EnumSet.of(TestEnum.C));
+        // processing thread waits in take(), high priority event must wake it up
+        fsm.transit(new TestEvent<>(TestEnum.C));
+        fsm.transit(new TestEvent<>(TestEnum.C));
+
+        fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.A));
+        busy.entered.await();
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.C)));
+        }
+        assertTrue(fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.B)));
+        assertTrue(fsm.fireAndForgetTransit(new TestEvent<>(TestEnum.B)));
+        assertEquals(2, fsm.getQueueDepth(EventPriority.NORMAL));
+
+        busy.release.countDown();
+        while (fsm.getQueueDepth(EventPriority.NORMAL) > 0) {
+            Thread.sleep(1);
+        }
+        fsm.transit(new TestEvent<>(TestEnum.B));
+        assertEquals(Arrays.asList(TestEnum.A, TestEnum.C, TestEnum.C, TestEnum.C, TestEnum.C,
+                TestEnum.B, TestEnum.B, TestEnum.B), busy.log);
+        fsm.shutDown();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
+import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
+import org.blitvin.statemachine.buildertest.BuilderTestState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author blitvin
+ */
+public class ProcessingThreadFactoryTest {
+
+    private static StateMachine<TestEnum> buildMachine() throws BadStateMachineSpecification {
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("state1", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "state2")
+                .addState("state2", new BuilderTestState())
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "state1");
+        return b.build();
+    }
+
+    private static Thread checkRunsOn(ThreadFactory factory, String threadNamePrefix)
+            throws BadStateMachineSpecification, InvalidEventException, InterruptedException {
+        ConcurrentStateMachine<TestEnum> fsm = new ConcurrentStateMachine<>(buildMachine());
+        fsm.setThreadFactory(factory);
+        fsm.start();
+        try {
+            fsm.setThreadFactory(null);
+            fail("thread factory can't be changed after start");
+        } catch (IllegalStateException e) {
+        }
+        fsm.transit(new TestEvent<>(TestEnum.A));
+        assertEquals("state2", fsm.getNameOfCurrentState());
+        AsyncMachineTest.RecordingCallback callback = new AsyncMachineTest.RecordingCallback();
+        assertTrue(fsm.asyncTransit(new TestEvent<>(TestEnum.A), callback, null));
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertTrue(callback.thread.getName().startsWith(threadNamePrefix));
+        Thread processingThread = callback.thread;
+        fsm.shutDown();
+        processingThread.join(5000);
+        assertTrue(!processingThread.isAlive());
+        return processingThread;
+    }
+
+    @Test
+    public void testThreadFactory() throws BadStateMachineSpecification, InvalidEventException, InterruptedException {
+        final AtomicInteger created = new AtomicInteger();
+        checkRunsOn(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "factoryThread-" + created.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, "factoryThread-");
+        assertEquals(1, created.get());
+    }
+
+    /**
+     * @return true if running JVM has final (non-preview) virtual threads API
+     */
+    private static boolean runtimeHasVirtualThreads() {
+        String version = System.getProperty("java.specification.version");
+        return !version.contains(".") && Integer.parseInt(version) >= 21;
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        assertEquals(runtimeHasVirtualThreads(), VirtualThreads.isSupported());
+        if (VirtualThreads.isSupported()) {
+            assertTrue(isVirtual(checkRunsOn(VirtualThreads.newFactory("virtualFSM-"), "virtualFSM-")));
+        } else {
+            try {
+                VirtualThreads.newFactory("virtualFSM-");
+                fail("virtual threads aren't available");
+            } catch (UnsupportedOperationException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testVirtualThreadNames() throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            return;
+        }
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        ThreadFactory factory = VirtualThreads.newFactory("virtualFSM-");
+        Thread thread = factory.newThread(noop);
+        assertTrue(isVirtual(thread));
+        assertEquals(Thread.State.NEW, thread.getState());
+        String first = VirtualThreads.newFactory("virtualFSM-").newThread(noop).getName();
+        String second = VirtualThreads.newFactory("virtualFSM-").newThread(noop).getName();
+        assertTrue(first.startsWith("virtualFSM-"));
+        assertTrue(!first.equals(second));
+        assertTrue(!factory.newThread(noop).getName().equals(factory.newThread(noop).getName()));
+    }
+}
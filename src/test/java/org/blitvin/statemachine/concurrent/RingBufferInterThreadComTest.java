@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.FSMWrapperTransport;
+import org.blitvin.statemachine.StateMachineWrapperAcceptor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author blitvin
+ */
+public class RingBufferInterThreadComTest {
+
+    static final class NumberedTransport implements FSMWrapperTransport<TestEnum> {
+
+        final int producer;
+        final int number;
+
+        NumberedTransport(int producer, int number) {
+            this.producer = producer;
+            this.number = number;
+        }
+
+        @Override
+        public void apply(StateMachineWrapperAcceptor<TestEnum> machine, StateMachineWrapperAcceptor<TestEnum> wrapped) {
+        }
+    }
+
+    @Test
+    public void testBoundedNoWait() {
+        RingBufferInterThreadCom<FSMWrapperTransport<TestEnum>> com = new RingBufferInterThreadCom<>(3, false, 0);
+        assertEquals(4, com.capacity());
+        ArrayList<NumberedTransport> sent = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            sent.add(new NumberedTransport(0, i));
+            assertTrue(com.post(sent.get(i)));
+        }
+        assertFalse(com.post(new NumberedTransport(0, 4)));
+        assertEquals(4, com.size());
+        assertEquals(4, com.pending.get());
+        assertSame(sent.get(0), com.poll());
+        assertTrue(com.post(new NumberedTransport(0, 4)));
+        for (int i = 1; i < 4; ++i) {
+            assertSame(sent.get(i), com.poll());
+        }
+        assertEquals(4, ((NumberedTransport) com.poll()).number);
+        assertNull(com.poll());
+        assertEquals(0, com.size());
+    }
+
+    @Test
+    public void testTimeout() {
+        RingBufferInterThreadCom<FSMWrapperTransport<TestEnum>> com = new RingBufferInterThreadCom<>(1, false, TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(2, com.capacity());
+        assertTrue(com.post(new NumberedTransport(0, 0)));
+        assertTrue(com.post(new NumberedTransport(0, 1)));
+        long start = System.nanoTime();
+        assertFalse(com.post(new NumberedTransport(0, 1)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testUnboundedOverflow() {
+        RingBufferInterThreadCom<FSMWrapperTransport<TestEnum>> com = new RingBufferInterThreadCom<>(2, true, 0);
+        for (int i = 0; i < 5; ++i) {
+            assertTrue(com.post(new NumberedTransport(0, i)));
+        }
+        assertEquals(5, com.size());
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(i, ((NumberedTransport) com.poll()).number);
+        }
+        assertNull(com.poll());
+    }
+
+    /**
+     * several producers sending to small blocking ring, order of every
+     * producer's transports must be kept
+     */
+    @Test
+    public void testProducersOrder() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        final RingBufferInterThreadCom<FSMWrapperTransport<TestEnum>> com = new RingBufferInterThreadCom<>(16, false, -1);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; ++p) {
+            final int producer = p;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; ++i) {
+                        com.post(new NumberedTransport(producer, i));
+                    }
+                }
+            }.start();
+        }
+        start.countDown();
+        int[] next = new int[producers];
+        for (int i = 0; i < producers * perProducer; ++i) {
+            FSMWrapperTransport<TestEnum> transport = com.get();
+            NumberedTransport numbered = (NumberedTransport) transport;
+            assertEquals(next[numbered.producer]++, numbered.number);
+        }
+        assertNull(com.poll());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
+import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
+import org.blitvin.statemachine.buildertest.BuilderTestState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author blitvin
+ */
+public class ShardedStateMachineRuntimeTest {
+
+    /**
+     * FSM accepting strictly alternating A and B events
+     */
+    private static StateMachine<TestEnum> buildMachine() throws BadStateMachineSpecification {
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("state1", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "state2")
+                .addState("state2", new BuilderTestState())
+                .addTransition(TestEnum.B).addProperty(TARGET_STATE, "state1");
+        return b.build();
+    }
+
+    @Test
+    public void testRouting() throws BadStateMachineSpecification, InvalidEventException {
+        ShardedStateMachineRuntime<String, TestEnum> runtime = new ShardedStateMachineRuntime<>(3);
+        runtime.start();
+        assertEquals(3, runtime.getShardsCount());
+        assertEquals(runtime.getShard("key1"), runtime.getShard(new String("key1")));
+        StateMachine<TestEnum> fsm = buildMachine();
+        assertTrue(runtime.register("key1", fsm));
+        assertTrue(runtime.register("key2", buildMachine()));
+        StampedState<TestEnum> state = runtime.transit("key1", new TestEvent<>(TestEnum.A));
+        assertEquals(fsm.getStateByName("state2"), state.getState());
+        assertEquals(2, state.getStamp());
+        assertEquals(fsm.getStateByName("state1"), runtime.transit("key1", new TestEvent<>(TestEnum.B)).getState());
+        assertEquals(2, runtime.transit("key2", new TestEvent<>(TestEnum.A)).getStamp());
+        try {
+            runtime.transit("key1", new TestEvent<>(TestEnum.B));
+            fail("B is not accepted by state1");
+        } catch (InvalidEventException e) {
+        }
+        try {
+            runtime.transit("key3", new TestEvent<>(TestEnum.A));
+            fail("there is no FSM with key3");
+        } catch (InvalidEventException e) {
+        }
+        assertTrue(runtime.unregister("key2"));
+        try {
+            runtime.transit("key2", new TestEvent<>(TestEnum.B));
+            fail("FSM with key2 is unregistered");
+        } catch (InvalidEventException e) {
+        }
+        runtime.shutDown();
+    }
+
+    @Test
+    public void testPerKeyOrder() throws BadStateMachineSpecification, InterruptedException {
+        final int keys = 8;
+        final int events = 2000;
+        final ShardedStateMachineRuntime<Integer, TestEnum> runtime = new ShardedStateMachineRuntime<>(2,
+                "test shard", ConcurrentStateMachine.QUEUE_TYPE.RING_BUFFER, 16, -1, TimeUnit.MILLISECONDS);
+        runtime.start();
+        for (int i = 0; i < keys; ++i) {
+            runtime.register(i, buildMachine());
+        }
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(keys * events);
+        final TransitCallback<TestEnum> callback = new TransitCallback<TestEnum>() {
+            @Override
+            public void onTransit(StampedState<TestEnum> state) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception failure) {
+                failures.incrementAndGet();
+                done.countDown();
+            }
+        };
+        Thread[] senders = new Thread[keys];
+        for (int i = 0; i < keys; ++i) {
+            final int key = i;
+            senders[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < events; ++j) {
+                        runtime.asyncTransit(key, new TestEvent<>(j % 2 == 0 ? TestEnum.A : TestEnum.B), callback, null);
+                    }
+                }
+            };
+            senders[i].start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        runtime.shutDown();
+    }
+
+    /**
+     * key colliding with every other key and failing comparison
+     */
+    static final class BrokenKey {
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            throw new IllegalStateException("broken key");
+        }
+    }
+
+    @Test
+    public void testEntryFailureKeepsShard() throws BadStateMachineSpecification, InvalidEventException {
+        ShardedStateMachineRuntime<BrokenKey, TestEnum> runtime = new ShardedStateMachineRuntime<>(1);
+        runtime.start();
+        BrokenKey registered = new BrokenKey();
+        runtime.register(registered, buildMachine());
+        try {
+            runtime.transit(new BrokenKey(), new TestEvent<>(TestEnum.A));
+            fail("lookup of the key throws");
+        } catch (InvalidEventException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(2, runtime.transit(registered, new TestEvent<>(TestEnum.A)).getStamp());
+        runtime.shutDown();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.StateTimeouts;
+import org.blitvin.statemachine.TransitStatus;
+import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
+import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
+import org.blitvin.statemachine.buildertest.BuilderTestState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * delayed events and state timeouts driven by manual clock
+ * @author blitvin
+ */
+@RunWith(Parameterized.class)
+public class TimedTransitionsTest {
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(2);
+    private final AsyncMachineTest.AsyncTypes fsmType;
+
+    @Parameterized.Parameters
+    public static Collection fsmTypes() {
+        Object[][] types = {
+            {AsyncMachineTest.AsyncTypes.CONCURRENT_FSM},
+            {AsyncMachineTest.AsyncTypes.POOLED_FSM}
+        };
+        return Arrays.asList(types);
+    }
+
+    public TimedTransitionsTest(AsyncMachineTest.AsyncTypes fsmType) {
+        this.fsmType = fsmType;
+    }
+
+    private static StateMachineBuilder<TestEnum> createBuilder() throws BadStateMachineSpecification {
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("first", new BuilderTestState()).markStateAsInitial()
+                .setStateTimeout(TestEnum.A, 100, TimeUnit.MILLISECONDS)
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "second")
+                .addTransition(TestEnum.B).addProperty(TARGET_STATE, "first")
+                .addState("second", new BuilderTestState())
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "third")
+                .addTransition(TestEnum.B).addProperty(TARGET_STATE, "first")
+                .addState("third", new BuilderTestState()).markStateAsFinal();
+        return b;
+    }
+
+    private AsyncStateMachine<TestEnum> buildMachine(HashedTimingWheel wheel) throws BadStateMachineSpecification {
+        StateMachine<TestEnum> fsm = createBuilder().build();
+        if (fsmType == AsyncMachineTest.AsyncTypes.CONCURRENT_FSM) {
+            ConcurrentStateMachine<TestEnum> retVal = new ConcurrentStateMachine<>(fsm);
+            retVal.setTimingWheel(wheel);
+            retVal.start();
+            return retVal;
+        }
+        return new FSMThreadPoolFacade<>(fsm, pool, new LinkedBlockingQueue<FSMQueueSubmittable>(), wheel).getProxy();
+    }
+
+    /**
+     * rejected event is processed after all previously queued transports and
+     * timeout rescheduling, so it synchronizes test with FSM processing
+     */
+    private static void sync(AsyncStateMachine<TestEnum> fsm) {
+        assertEquals(TransitStatus.REJECTED, fsm.tryTransit(new TestEvent<>(TestEnum.C)));
+    }
+
+    private static void awaitState(AsyncStateMachine<TestEnum> fsm, String stateName) throws InterruptedException {
+        for (int i = 0; i < 5000 && !stateName.equals(fsm.getNameOfCurrentState()); ++i) {
+            Thread.sleep(1);
+        }
+        assertEquals(stateName, fsm.getNameOfCurrentState());
+        sync(fsm);
+    }
+
+    @Test
+    public void testTimeouts() throws BadStateMachineSpecification, InterruptedException {
+        ManualClock clock = new ManualClock();
+        HashedTimingWheel wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 8, clock);
+        AsyncStateMachine<TestEnum> fsm = buildMachine(wheel);
+        sync(fsm);
+
+        clock.setMillis(50);
+        assertEquals(0, wheel.advance());
+        // self transition doesn't restart timer of the state
+        assertEquals(TransitStatus.APPLIED, fsm.tryTransit(new TestEvent<>(TestEnum.B)));
+        clock.setMillis(110);
+        assertEquals(1, wheel.advance());
+        awaitState(fsm, "second");
+
+        HashedTimingWheel.Timeout cancelled = fsm.transitAfter(new TestEvent<>(TestEnum.A), 20, TimeUnit.MILLISECONDS);
+        fsm.transitAfter(new TestEvent<>(TestEnum.B), 30, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel());
+        clock.setMillis(150);
+        assertEquals(1, wheel.advance());
+        awaitState(fsm, "first");
+
+        // timer of "first" restarted on entering the state at 150ms
+        clock.setMillis(250);
+        wheel.advance();
+        assertEquals("first", fsm.getNameOfCurrentState());
+        clock.setMillis(260);
+        assertEquals(1, wheel.advance());
+        awaitState(fsm, "second");
+        if (fsm instanceof ConcurrentStateMachine) {
+            ((ConcurrentStateMachine<TestEnum>) fsm).shutDown();
+        }
+    }
+
+    @Test
+    public void testTimeoutProperties() throws BadStateMachineSpecification {
+        StateMachineBuilder<TestEnum> b = createBuilder();
+        b.addState("fourth", new BuilderTestState())
+                .addProperty(StateMachineBuilder.STATE_TIMEOUT_EVENT, "B")
+                .addProperty(StateMachineBuilder.STATE_TIMEOUT, "250");
+        StateTimeouts<TestEnum> timeouts = (StateTimeouts<TestEnum>) b.build().getProperty(StateMachineBuilder.STATE_TIMEOUTS_PROPERTY);
+        assertEquals(2, timeouts.getTimeouts().size());
+        assertEquals(TestEnum.B, timeouts.get("fourth").getEvent());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), timeouts.get("fourth").getDelayNanos());
+        assertEquals(TestEnum.A, timeouts.get("first").getEvent());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 blitvin.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.blitvin.statemachine.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import static org.blitvin.statemachine.StateMachineBuilder.FSM_TYPES.BASIC;
+import static org.blitvin.statemachine.StateMachineBuilder.TARGET_STATE;
+import org.blitvin.statemachine.buildertest.BuilderTestState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author blitvin
+ */
+public class WaitStrategyTest {
+
+    private static final String THREAD_NAME = "waitStrategyTestFSM";
+
+    private static StateMachine<TestEnum> buildMachine() throws BadStateMachineSpecification {
+        StateMachineBuilder<TestEnum> b = new StateMachineBuilder<>(BASIC, TestEnum.class);
+        b.addState("state1", new BuilderTestState()).markStateAsInitial()
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "state2")
+                .addState("state2", new BuilderTestState())
+                .addTransition(TestEnum.A).addProperty(TARGET_STATE, "state1");
+        return b.build();
+    }
+
+    private static boolean isProcessingThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (THREAD_NAME.equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testSpinThenPark() {
+        WaitStrategy strategy = WaitStrategy.spinThenPark(3);
+        assertTrue(strategy.idle(0));
+        assertTrue(strategy.idle(2));
+        assertFalse(strategy.idle(3));
+        assertFalse(WaitStrategy.BLOCKING.idle(0));
+    }
+
+    @Test
+    public void testStrategies() throws BadStateMachineSpecification, InvalidEventException {
+        WaitStrategy[] strategies = {WaitStrategy.BUSY_SPIN, WaitStrategy.YIELDING,
+            WaitStrategy.sleeping(1000), WaitStrategy.spinThenPark(100)};
+        for (ConcurrentStateMachine.QUEUE_TYPE queueType : ConcurrentStateMachine.QUEUE_TYPE.values()) {
+            for (WaitStrategy strategy : strategies) {
+                ConcurrentStateMachine<TestEnum> fsm = new ConcurrentStateMachine<>(buildMachine(), queueType, 16);
+                fsm.setProcessingWaitStrategy(strategy);
+                fsm.setReplyWaitStrategy(strategy);
+                fsm.start();
+                for (int i = 0; i < 20; ++i) {
+                    fsm.transit(new TestEvent<>(TestEnum.A));
+                }
+                assertEquals(strategy + " " + queueType, fsm.getStateByName("state2"),
+                        fsm.transitAndGetResultingState(new TestEvent<>(TestEnum.A)).getState());
+                fsm.shutDown();
+            }
+        }
+    }
+
+    @Test
+    public void testShutDownWhileSpinning() throws BadStateMachineSpecification, InterruptedException {
+        ConcurrentStateMachine<TestEnum> fsm = new ConcurrentStateMachine<>(buildMachine(), THREAD_NAME,
+                ConcurrentStateMachine.QUEUE_TYPE.RING_BUFFER, 16, 0, TimeUnit.MILLISECONDS);
+        fsm.setProcessingWaitStrategy(WaitStrategy.BUSY_SPIN);
+        fsm.start();
+        assertTrue(isProcessingThreadAlive());
+        fsm.shutDown();
+        for (int i = 0; i < 100 && isProcessingThreadAlive(); ++i) {
+            Thread.sleep(50);
+        }
+        assertFalse(isProcessingThreadAlive());
+    }
+}
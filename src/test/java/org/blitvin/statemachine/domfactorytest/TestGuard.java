@@ -0,0 +1,17 @@
+package org.blitvin.statemachine.domfactorytest;
+
+import org.blitvin.statemachine.FSMStateView;
+import org.blitvin.statemachine.StateMachineEvent;
+import org.blitvin.statemachine.TransitionGuard;
+
+/**
+ * accepts event if FSM property "open" is set to "true"
+ * @author blitvin
+ */
+public class TestGuard implements TransitionGuard<TestEnum> {
+
+    @Override
+    public boolean accept(StateMachineEvent<TestEnum> event, FSMStateView<TestEnum> fsm) {
+        return "true".equals(fsm.getProperty("open"));
+    }
+}
@@ -0,0 +1,59 @@
+package org.blitvin.statemachine.performancetest;
+
+import java.util.Random;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.StateMachineColumn;
+import org.blitvin.statemachine.StateMachineDefinition;
+import org.blitvin.statemachine.StateMachineInstance;
+
+/**
+ * Compares applying a column of events to a million instances of the same
+ * definition by StateMachineInstance.transit per object and by single
+ * StateMachineColumn.step call
+ * @author blitvin
+ */
+public class ColumnStepMeasurement {
+
+    static final int INSTANCES = 1000000;
+    static final int ROUNDS = 20;
+
+    public static void main(String args[]) throws BadStateMachineSpecification, InvalidEventException {
+        StateMachineDefinition<PerformanceEnum> definition
+                = new StateMachineBuilder<PerformanceEnum>(StateMachineBuilder.FSM_TYPES.BASIC, PerformanceEnum.class).
+                addState("first", new EmptyState()).markStateAsInitial().addTransition(PerformanceEnum.A, "second").
+                addTransition(PerformanceEnum.B, "first").
+                addState("second", new EmptyState()).addTransition(PerformanceEnum.A, "first").
+                addTransition(PerformanceEnum.B, "third").
+                addState("third", new EmptyState()).addDefaultTransition("first").buildDefinition();
+
+        Random random = new Random(1);
+        int[] ids = new int[INSTANCES];
+        int[] events = new int[INSTANCES];
+        for (int i = 0; i < INSTANCES; ++i) {
+            ids[i] = random.nextInt(INSTANCES);
+            events[i] = random.nextInt(2);
+        }
+        PerformanceEnum[] eventTypes = PerformanceEnum.values();
+
+        StateMachineInstance<PerformanceEnum>[] instances = new StateMachineInstance[INSTANCES];
+        for (int i = 0; i < INSTANCES; ++i) {
+            instances[i] = definition.newInstance();
+        }
+        StateMachineColumn<PerformanceEnum> column = definition.newColumn(INSTANCES);
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < INSTANCES; ++i) {
+                instances[ids[i]].transit(eventTypes[events[i]]);
+            }
+            long perObject = System.nanoTime() - start;
+            start = System.nanoTime();
+            column.step(ids, events);
+            long columnar = System.nanoTime() - start;
+            System.out.println("round " + round + ": per object " + (perObject / INSTANCES) + " ns/event, column "
+                    + (columnar / INSTANCES) + " ns/event");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.blitvin.statemachine.performancetest;
+
+import java.lang.management.ManagementFactory;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+
+/**
+ * Measures bytes allocated per transition for transit(StateMachineEvent) with
+ * new event per call, transit(EventType) and transit(int). Allocation is read
+ * from the per-thread allocation counter of HotSpot JVM, so run it on HotSpot
+ * (counter isn't available on some other JVMs). Expected result is 0 bytes
+ * per transition for the enum and ordinal variants
+ * @author blitvin
+ */
+public class EnumEventAllocationMeasurement {
+
+    public static final String STATE_FIRST = "first";
+    public static final String STATE_SECOND = "second";
+    static final int ITERATIONS = 10000000;
+
+    interface Transitions {
+
+        void run(StateMachine<PerformanceEnum> fsm, int count) throws InvalidEventException;
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static void measure(String name, StateMachine<PerformanceEnum> fsm, Transitions transitions)
+            throws InvalidEventException {
+        transitions.run(fsm, ITERATIONS); // warm up
+        long before = allocatedBytes();
+        long start = System.nanoTime();
+        transitions.run(fsm, ITERATIONS);
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - before;
+        System.out.println(name + ": " + ((double) allocated / ITERATIONS) + " bytes/transition, "
+                + ((double) elapsed / ITERATIONS) + " ns/transition");
+    }
+
+    public static void main(String args[]) throws BadStateMachineSpecification, InvalidEventException {
+        for (StateMachineBuilder.FSM_TYPES type : new StateMachineBuilder.FSM_TYPES[]{
+            StateMachineBuilder.FSM_TYPES.BASIC, StateMachineBuilder.FSM_TYPES.SIMPLE,
+            StateMachineBuilder.FSM_TYPES.COMPILED}) {
+            StateMachine<PerformanceEnum> fsm
+                    = new StateMachineBuilder<PerformanceEnum>(type, PerformanceEnum.class).
+                    addState(STATE_FIRST, new EmptyState()).markStateAsInitial().addDefaultTransition(STATE_SECOND).
+                    addState(STATE_SECOND, new EmptyState()).addDefaultTransition(STATE_FIRST).build();
+            System.out.println("FSM type " + type);
+            measure("  transit(new PerformanceEvent)", fsm, new Transitions() {
+                @Override
+                public void run(StateMachine<PerformanceEnum> fsm, int count) throws InvalidEventException {
+                    for (int i = 0; i < count; ++i) {
+                        fsm.transit(new PerformanceEvent(PerformanceEnum.A));
+                    }
+                }
+            });
+            measure("  transit(PerformanceEnum)", fsm, new Transitions() {
+                @Override
+                public void run(StateMachine<PerformanceEnum> fsm, int count) throws InvalidEventException {
+                    for (int i = 0; i < count; ++i) {
+                        fsm.transit(PerformanceEnum.A);
+                    }
+                }
+            });
+            measure("  transit(int)", fsm, new Transitions() {
+                @Override
+                public void run(StateMachine<PerformanceEnum> fsm, int count) throws InvalidEventException {
+                    for (int i = 0; i < count; ++i) {
+                        fsm.transit(i & 1);
+                    }
+                }
+            });
+        }
+    }
+}
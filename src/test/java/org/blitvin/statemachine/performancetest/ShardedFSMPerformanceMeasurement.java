@@ -0,0 +1,169 @@
+package org.blitvin.statemachine.performancetest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.concurrent.AsyncStateMachine;
+import org.blitvin.statemachine.concurrent.FSMQueueSubmittable;
+import org.blitvin.statemachine.concurrent.FSMThreadPoolFacade;
+import org.blitvin.statemachine.concurrent.ShardedStateMachineRuntime;
+
+/**
+ * Scenario of MultipleConcurrentFSMPerformanceMeasurement (FSMS machines,
+ * CLIENTS_PER_FSM senders per machine, each sending blocks of BLOCK_SIZE fire
+ * and forget events followed by synchronous transit) run on FSMThreadPoolFacade
+ * and on ShardedStateMachineRuntime with the same number of threads
+ * @author blitvin
+ */
+public class ShardedFSMPerformanceMeasurement {
+
+    public static final int FSMS = 10;
+    public static final int CLIENTS_PER_FSM = 5;
+    public static final int BLOCK_SIZE = 10000;
+    public static final int TRANSACTIONS_PER_FSM = 1000000;
+
+    /**
+     * sends events to single FSM
+     */
+    static abstract class Target {
+
+        abstract void fireAndForget(PerformanceEvent event);
+
+        abstract void transit(PerformanceEvent event) throws InvalidEventException;
+    }
+
+    static class PooledTarget extends Target {
+
+        final AsyncStateMachine<PerformanceEnum> fsm;
+
+        PooledTarget(AsyncStateMachine<PerformanceEnum> fsm) {
+            this.fsm = fsm;
+        }
+
+        @Override
+        void fireAndForget(PerformanceEvent event) {
+            fsm.fireAndForgetTransit(event);
+        }
+
+        @Override
+        void transit(PerformanceEvent event) throws InvalidEventException {
+            fsm.transit(event);
+        }
+    }
+
+    static class ShardedTarget extends Target {
+
+        final ShardedStateMachineRuntime<Integer, PerformanceEnum> runtime;
+        final Integer key;
+
+        ShardedTarget(ShardedStateMachineRuntime<Integer, PerformanceEnum> runtime, Integer key) {
+            this.runtime = runtime;
+            this.key = key;
+        }
+
+        @Override
+        void fireAndForget(PerformanceEvent event) {
+            runtime.fireAndForgetTransit(key, event);
+        }
+
+        @Override
+        void transit(PerformanceEvent event) throws InvalidEventException {
+            runtime.transit(key, event);
+        }
+    }
+
+    public static class SenderThread extends Thread {
+
+        final int blocks;
+        final Target target;
+        final CountDownLatch startLatch;
+
+        SenderThread(int blocks, Target target, CountDownLatch startLatch) {
+            this.blocks = blocks;
+            this.target = target;
+            this.startLatch = startLatch;
+        }
+
+        @Override
+        public void run() {
+            PerformanceEvent event = new PerformanceEvent(PerformanceEnum.A);
+            try {
+                startLatch.await();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            for (int i = 0; i < blocks; ++i) {
+                for (int j = 0; j < BLOCK_SIZE; ++j) {
+                    target.fireAndForget(event);
+                }
+                try {
+                    target.transit(event);
+                } catch (InvalidEventException ex) {
+                    System.err.println("got invalid event");
+                }
+            }
+        }
+    }
+
+    static StateMachine<PerformanceEnum> buildFSM() throws BadStateMachineSpecification {
+        return new StateMachineBuilder<PerformanceEnum>(StateMachineBuilder.FSM_TYPES.BASIC, PerformanceEnum.class).
+                addState("initial", new EmptyState()).markStateAsInitial().addDefaultTransition("middle").
+                addState("middle", new EmptyState()).addTransition(PerformanceEnum.A, "middle").build();
+    }
+
+    /**
+     * @return throughput, transitions per millisecond
+     */
+    static long run(Target[] targets, int transactionsPerFSM) throws InterruptedException {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        int blocks = transactionsPerFSM / (BLOCK_SIZE + 1) / CLIENTS_PER_FSM;
+        SenderThread[] senders = new SenderThread[targets.length * CLIENTS_PER_FSM];
+        for (int i = 0; i < senders.length; ++i) {
+            senders[i] = new SenderThread(blocks, targets[i % targets.length], startLatch);
+            senders[i].start();
+        }
+        long start = System.nanoTime();
+        startLatch.countDown();
+        for (SenderThread sender : senders) {
+            sender.join();
+        }
+        long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+        return (long) blocks * (BLOCK_SIZE + 1) * senders.length / elapsed;
+    }
+
+    /**
+     * @param args optional transactions per FSM and number of threads (pool
+     * size and number of shards), defaults are TRANSACTIONS_PER_FSM and number
+     * of processors
+     */
+    public static void main(String[] args) throws BadStateMachineSpecification, InterruptedException {
+        int transactionsPerFSM = args.length > 0 ? Integer.parseInt(args[0]) : TRANSACTIONS_PER_FSM;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        System.out.println("FSMs=" + FSMS + " senders=" + FSMS * CLIENTS_PER_FSM + " blockSize=" + BLOCK_SIZE
+                + " threads=" + threads);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Target[] pooled = new Target[FSMS];
+        for (int i = 0; i < FSMS; ++i) {
+            pooled[i] = new PooledTarget(new FSMThreadPoolFacade<>(buildFSM(), pool,
+                    new LinkedBlockingQueue<FSMQueueSubmittable>()).getProxy());
+        }
+        System.out.println("pooled  throughput TP/miliSec " + run(pooled, transactionsPerFSM));
+        pool.shutdown();
+
+        ShardedStateMachineRuntime<Integer, PerformanceEnum> runtime = new ShardedStateMachineRuntime<>(threads);
+        runtime.start();
+        Target[] sharded = new Target[FSMS];
+        for (int i = 0; i < FSMS; ++i) {
+            runtime.register(i, buildFSM());
+            sharded[i] = new ShardedTarget(runtime, i);
+        }
+        System.out.println("sharded throughput TP/miliSec " + run(sharded, transactionsPerFSM));
+        runtime.shutDown();
+    }
+}
@@ -0,0 +1,136 @@
+package org.blitvin.statemachine.performancetest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.StateMachine;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.concurrent.AsyncStateMachine;
+import org.blitvin.statemachine.concurrent.ConcurrentStateMachine;
+import org.blitvin.statemachine.concurrent.FSMQueueSubmittable;
+import org.blitvin.statemachine.concurrent.FSMThreadPoolFacade;
+import org.blitvin.statemachine.concurrent.StampedState;
+import org.blitvin.statemachine.concurrent.TransitCallback;
+import org.blitvin.statemachine.concurrent.VirtualThreads;
+
+/**
+ * Compares huge number of independent ConcurrentStateMachines running on
+ * virtual threads with the same number of pooled FSMs sharing fixed thread
+ * pool: time and heap to create the machines and time of round of events sent
+ * to every machine. Requires Java 21+, e.g.
+ * java -Xmx4g -cp target/statemachine-2.0-SNAPSHOT.jar:target/test-classes
+ * org.blitvin.statemachine.performancetest.VirtualThreadFSMMeasurement 10000 100000 1000000
+ * @author blitvin
+ */
+public class VirtualThreadFSMMeasurement {
+
+    static final int EVENTS_PER_MACHINE = 10;
+    static final int ROUNDS = 3;
+
+    static class CountingCallback implements TransitCallback<PerformanceEnum> {
+
+        final CountDownLatch latch;
+
+        CountingCallback(int machines) {
+            latch = new CountDownLatch(machines);
+        }
+
+        @Override
+        public void onTransit(StampedState<PerformanceEnum> state) {
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Exception failure) {
+            latch.countDown();
+        }
+    }
+
+    static StateMachine<PerformanceEnum> buildFSM() throws BadStateMachineSpecification {
+        return new StateMachineBuilder<PerformanceEnum>(StateMachineBuilder.FSM_TYPES.BASIC, PerformanceEnum.class).
+                addState("first", new EmptyState()).markStateAsInitial().addTransition(PerformanceEnum.A, "second").
+                addState("second", new EmptyState()).addTransition(PerformanceEnum.A, "first").build();
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static void measure(String name, AsyncStateMachine<PerformanceEnum>[] machines, long created, long heap)
+            throws InterruptedException {
+        PerformanceEvent event = new PerformanceEvent(PerformanceEnum.A);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            CountingCallback callback = new CountingCallback(machines.length);
+            long start = System.nanoTime();
+            for (AsyncStateMachine<PerformanceEnum> machine : machines) {
+                for (int i = 1; i < EVENTS_PER_MACHINE; ++i) {
+                    machine.fireAndForgetTransit(event);
+                }
+                machine.asyncTransit(event, callback, null);
+            }
+            callback.latch.await();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + "\t" + machines.length + '\t' + TimeUnit.NANOSECONDS.toMillis(created)
+                + '\t' + (heap / machines.length) + '\t' + TimeUnit.NANOSECONDS.toMillis(best)
+                + '\t' + (best / ((long) machines.length * EVENTS_PER_MACHINE)));
+    }
+
+    static void measureVirtual(int count) throws BadStateMachineSpecification, InterruptedException {
+        long heap = usedHeap();
+        long start = System.nanoTime();
+        ConcurrentStateMachine<PerformanceEnum>[] machines = new ConcurrentStateMachine[count];
+        ThreadFactory factory = VirtualThreads.newFactory("fsm-");
+        for (int i = 0; i < count; ++i) {
+            machines[i] = new ConcurrentStateMachine<>(buildFSM());
+            machines[i].setThreadFactory(factory);
+            machines[i].start();
+        }
+        long created = System.nanoTime() - start;
+        heap = usedHeap() - heap;
+        measure("virtual", machines, created, heap);
+        for (ConcurrentStateMachine<PerformanceEnum> machine : machines) {
+            machine.shutDown();
+        }
+    }
+
+    static void measurePooled(int count, ExecutorService pool) throws BadStateMachineSpecification, InterruptedException {
+        long heap = usedHeap();
+        long start = System.nanoTime();
+        AsyncStateMachine<PerformanceEnum>[] machines = new AsyncStateMachine[count];
+        for (int i = 0; i < count; ++i) {
+            machines[i] = new FSMThreadPoolFacade<>(buildFSM(), pool,
+                    new LinkedBlockingQueue<FSMQueueSubmittable>()).getProxy();
+        }
+        long created = System.nanoTime() - start;
+        heap = usedHeap() - heap;
+        measure("pooled", machines, created, heap);
+    }
+
+    /**
+     * @param args numbers of machines, 10000 100000 1000000 by default
+     */
+    public static void main(String args[]) throws BadStateMachineSpecification, InterruptedException {
+        if (!VirtualThreads.isSupported()) {
+            System.out.println("virtual threads are not supported, run on Java 21+");
+            return;
+        }
+        String[] counts = args.length > 0 ? args : new String[]{"10000", "100000", "1000000"};
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        System.out.println("mode\tmachines\tcreate ms\theap bytes/machine\tround ms\tns/event");
+        for (String count : counts) {
+            measurePooled(Integer.parseInt(count), pool);
+            measureVirtual(Integer.parseInt(count));
+        }
+        pool.shutdown();
+    }
+}
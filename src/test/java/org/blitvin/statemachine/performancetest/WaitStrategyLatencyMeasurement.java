@@ -0,0 +1,68 @@
+package org.blitvin.statemachine.performancetest;
+
+import java.util.Arrays;
+import org.blitvin.statemachine.BadStateMachineSpecification;
+import org.blitvin.statemachine.InvalidEventException;
+import org.blitvin.statemachine.StateMachineBuilder;
+import org.blitvin.statemachine.concurrent.ConcurrentStateMachine;
+import org.blitvin.statemachine.concurrent.WaitStrategy;
+
+/**
+ * Measures round trip latency of synchronous transit() on ring buffer backed
+ * ConcurrentStateMachine for each wait strategy (same strategy used by
+ * processing thread and by caller) and prints p50/p99/max. Spinning
+ * strategies are meaningful only if caller and processing thread run on
+ * distinct cores
+ * @author blitvin
+ */
+public class WaitStrategyLatencyMeasurement {
+
+    static final int DEFAULT_SAMPLES = 100000;
+
+    static ConcurrentStateMachine<PerformanceEnum> createFSM(WaitStrategy strategy) throws BadStateMachineSpecification {
+        ConcurrentStateMachine<PerformanceEnum> fsm = new ConcurrentStateMachine<>(
+                new StateMachineBuilder<PerformanceEnum>(StateMachineBuilder.FSM_TYPES.BASIC, PerformanceEnum.class).
+                addState("first", new EmptyState()).markStateAsInitial().addTransition(PerformanceEnum.A, "second").
+                addState("second", new EmptyState()).addTransition(PerformanceEnum.A, "first").build(),
+                ConcurrentStateMachine.QUEUE_TYPE.RING_BUFFER, ConcurrentStateMachine.DEFAULT_RING_CAPACITY);
+        fsm.setProcessingWaitStrategy(strategy);
+        fsm.setReplyWaitStrategy(strategy);
+        fsm.start();
+        return fsm;
+    }
+
+    static long[] measure(WaitStrategy strategy, int samplesCount) throws BadStateMachineSpecification, InvalidEventException {
+        ConcurrentStateMachine<PerformanceEnum> fsm = createFSM(strategy);
+        PerformanceEvent event = new PerformanceEvent(PerformanceEnum.A);
+        long[] samples = new long[samplesCount];
+        try {
+            for (int i = 0; i < samplesCount / 5; ++i) {
+                fsm.transit(event);
+            }
+            for (int i = 0; i < samplesCount; ++i) {
+                long start = System.nanoTime();
+                fsm.transit(event);
+                samples[i] = System.nanoTime() - start;
+            }
+        } finally {
+            fsm.shutDown();
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    /**
+     * @param args optional number of samples per strategy
+     */
+    public static void main(String args[]) throws BadStateMachineSpecification, InvalidEventException {
+        int samplesCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SAMPLES;
+        WaitStrategy[] strategies = {WaitStrategy.BLOCKING, WaitStrategy.sleeping(1000), WaitStrategy.YIELDING,
+            WaitStrategy.BUSY_SPIN, WaitStrategy.spinThenPark(1000), WaitStrategy.spinThenPark(100000)};
+        System.out.println("strategy\tp50 ns\tp99 ns\tmax ns");
+        for (WaitStrategy strategy : strategies) {
+            long[] samples = measure(strategy, samplesCount);
+            System.out.println(strategy + "\t" + samples[samplesCount / 2] + '\t' + samples[samplesCount * 99 / 100]
+                    + '\t' + samples[samplesCount - 1]);
+        }
+    }
+}